@@ -17,19 +17,77 @@
 
 package net.floodlightcontroller.core;
 
+import java.util.Arrays;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is a context object where floodlight listeners can register 
  * and later retrieve context information associated with an
  * event
+ *
+ * The values are kept in an array indexed by the slot of their
+ * {@link FloodlightContextKey}, so a context costs a single small
+ * allocation and can be recycled with {@link #clear()}. A context is
+ * used by the one thread processing its event and is not thread-safe.
  * @author readams
  */
 public class FloodlightContext {
-    protected ConcurrentHashMap<String, Object> storage =
-            new ConcurrentHashMap<String, Object>();
+    private static final Object[] EMPTY = new Object[0];
 
+    private Object[] slots;
+    /* one past the highest slot written since the last clear() */
+    private int used;
+
+    public FloodlightContext() {
+        int size = FloodlightContextKey.size();
+        slots = size == 0 ? EMPTY : new Object[size];
+    }
+
+    Object get(int index) {
+        Object[] s = slots;
+        return index < s.length ? s[index] : null;
+    }
+
+    void put(int index, Object value) {
+        if (index >= slots.length) {
+            if (value == null)
+                return;
+            slots = Arrays.copyOf(slots, Math.max(index + 1, FloodlightContextKey.size()));
+        }
+        slots[index] = value;
+        if (value != null && index >= used)
+            used = index + 1;
+    }
+
+    /**
+     * Remove all values, so that the context can be reused
+     */
+    public void clear() {
+        Arrays.fill(slots, 0, used, null);
+        used = 0;
+    }
+
+    public boolean isEmpty() {
+        for (int i = 0; i < used; i++) {
+            if (slots[i] != null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a copy of the values, keyed by their key name. Changes to the
+     * returned map are not reflected in the context.
+     * @deprecated use {@link FloodlightContextStore} or
+     * {@link FloodlightContextKey} to access the values
+     */
+    @Deprecated
     public ConcurrentHashMap<String, Object> getStorage() {
+        ConcurrentHashMap<String, Object> storage = new ConcurrentHashMap<String, Object>();
+        for (int i = 0; i < used; i++) {
+            if (slots[i] != null)
+                storage.put(FloodlightContextKey.nameOf(i), slots[i]);
+        }
         return storage;
     }
 }
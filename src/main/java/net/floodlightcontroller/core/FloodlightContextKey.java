@@ -0,0 +1,118 @@
+/**
+*    Licensed under the Apache License, Version 2.0 (the "License"); you may
+*    not use this file except in compliance with the License. You may obtain
+*    a copy of the License at
+*
+*         http://www.apache.org/licenses/LICENSE-2.0
+*
+*    Unless required by applicable law or agreed to in writing, software
+*    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+*    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+*    License for the specific language governing permissions and limitations
+*    under the License.
+**/
+
+package net.floodlightcontroller.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A typed key of the {@link FloodlightContext}. Every key name is registered
+ * once and resolves to a slot, an index into the context's array, so that
+ * a lookup is an array access instead of a hash map operation.
+ *
+ * Modules should register their keys once, e.g. in a static final field,
+ * and use them instead of the string keys of {@link FloodlightContextStore},
+ * which resolve their key to the same slot on every call.
+ *
+ * @param <V> type of the value stored under the key
+ */
+public final class FloodlightContextKey<V> {
+    private static final ConcurrentHashMap<String, FloodlightContextKey<?>> keys =
+            new ConcurrentHashMap<String, FloodlightContextKey<?>>();
+    private static volatile String[] names = new String[0];
+
+    private final String name;
+    private final int index;
+
+    private FloodlightContextKey(String name, int index) {
+        this.name = name;
+        this.index = index;
+    }
+
+    /**
+     * Register a key, or return the already registered key of that name.
+     * @param name key name, as used with {@link FloodlightContextStore}
+     * @return the key
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> FloodlightContextKey<V> register(String name) {
+        if (name == null)
+            throw new NullPointerException("name must not be null");
+        FloodlightContextKey<?> key = keys.get(name);
+        if (key == null) {
+            key = registerNew(name);
+        }
+        return (FloodlightContextKey<V>) key;
+    }
+
+    private static synchronized FloodlightContextKey<?> registerNew(String name) {
+        FloodlightContextKey<?> key = keys.get(name);
+        if (key == null) {
+            String[] n = new String[names.length + 1];
+            System.arraycopy(names, 0, n, 0, names.length);
+            n[names.length] = name;
+            key = new FloodlightContextKey<Object>(name, names.length);
+            names = n;
+            keys.put(name, key);
+        }
+        return key;
+    }
+
+    /** @return slot of the key of that name, registering it if needed */
+    static int indexOf(String name) {
+        return register(name).index;
+    }
+
+    /** @return slot of the key of that name, -1 if it is not registered */
+    static int find(String name) {
+        FloodlightContextKey<?> key = keys.get(name);
+        return key == null ? -1 : key.index;
+    }
+
+    /** @return name of the key of a slot */
+    static String nameOf(int index) {
+        return names[index];
+    }
+
+    /** @return number of registered keys */
+    static int size() {
+        return names.length;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(FloodlightContext bc) {
+        return (V) bc.get(index);
+    }
+
+    public void put(FloodlightContext bc, V value) {
+        bc.put(index, value);
+    }
+
+    public void remove(FloodlightContext bc) {
+        bc.put(index, null);
+    }
+
+    @Override
+    public String toString() {
+        return "FloodlightContextKey [name=" + name + ", index=" + index + "]";
+    }
+}
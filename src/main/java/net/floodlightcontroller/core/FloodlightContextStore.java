@@ -17,18 +17,35 @@
 
 package net.floodlightcontroller.core;
 
+/**
+ * Typed access to the values of a {@link FloodlightContext} by key name.
+ * Every name resolves to the slot of its {@link FloodlightContextKey};
+ * use {@link #key(String)} once to skip that lookup on every access.
+ * Only put() and key() register a name; getting or removing a name nothing
+ * was ever stored under does not use up a slot.
+ */
 public class FloodlightContextStore<V> {
     
     @SuppressWarnings("unchecked")
     public V get(FloodlightContext bc, String key) {
-        return (V)bc.storage.get(key);
+        int index = FloodlightContextKey.find(key);
+        return index < 0 ? null : (V)bc.get(index);
     }
     
     public void put(FloodlightContext bc, String key, V value) {
-        bc.storage.put(key, value);
+        bc.put(FloodlightContextKey.indexOf(key), value);
     }
     
     public void remove(FloodlightContext bc, String key) {
-        bc.storage.remove(key);
+        int index = FloodlightContextKey.find(key);
+        if (index >= 0)
+            bc.put(index, null);
+    }
+
+    /**
+     * @return the typed key of that name, registering it if needed
+     */
+    public FloodlightContextKey<V> key(String key) {
+        return FloodlightContextKey.register(key);
     }
 }
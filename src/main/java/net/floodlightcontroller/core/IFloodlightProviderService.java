@@ -22,6 +22,7 @@ import java.util.Map;
 
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.EthernetView;
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.HARole;
 import net.floodlightcontroller.core.IHAListener;
@@ -29,6 +30,7 @@ import net.floodlightcontroller.core.IInfoProvider;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.RoleInfo;
+import net.floodlightcontroller.core.internal.PacketInAdmissionControl;
 import net.floodlightcontroller.core.internal.RoleManager;
 import net.floodlightcontroller.core.internal.Controller.IUpdate;
 import net.floodlightcontroller.core.internal.Controller.ModuleLoaderState;
@@ -60,6 +62,33 @@ public interface IFloodlightProviderService extends
     public static final FloodlightContextStore<Ethernet> bcStore =
             new FloodlightContextStore<Ethernet>();
 
+    /**
+     * A value stored in the floodlight context containing a lazily decoded
+     * view of the payload of a packet-in message. Unlike CONTEXT_PI_PAYLOAD
+     * it does not depend on the controller decoding packet-ins: the first
+     * listener which needs it creates it from the packet-in data and stores
+     * it here for the listeners after it. Modules which only use the view
+     * work with 'deserializeEthPacketIns' set to FALSE.
+     */
+    public static final String CONTEXT_PI_PAYLOAD_VIEW =
+            "net.floodlightcontroller.core.IFloodlightProvider.piPayloadView";
+
+    /**
+     * A FloodlightContextStore object that can be used to retrieve the
+     * packet-in payload view
+     */
+    public static final FloodlightContextStore<EthernetView> bcViewStore =
+            new FloodlightContextStore<EthernetView>();
+
+    /**
+     * Typed keys of the packet-in payload and its view, resolving directly
+     * to their slot in the floodlight context
+     */
+    public static final FloodlightContextKey<Ethernet> piPayloadKey =
+            bcStore.key(CONTEXT_PI_PAYLOAD);
+    public static final FloodlightContextKey<EthernetView> piPayloadViewKey =
+            bcViewStore.key(CONTEXT_PI_PAYLOAD_VIEW);
+
     /**
      * Service name used in the service directory representing
      * the OpenFlow controller-switch channel
@@ -89,6 +118,13 @@ public interface IFloodlightProviderService extends
      */
     public Map<OFType, List<IOFMessageListener>> getListeners();
 
+    /**
+     * Return the admission control applied to packet-ins before they are
+     * dispatched to the listeners
+     * @return the packet-in admission control
+     */
+    public PacketInAdmissionControl getPacketInAdmissionControl();
+
     /**
      * Get the current role of the controller
      */
@@ -20,20 +20,17 @@ package net.floodlightcontroller.core.internal;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Stack;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import net.floodlightcontroller.core.ControllerId;
@@ -52,6 +49,7 @@ import net.floodlightcontroller.core.LogicalOFMessageCategory;
 import net.floodlightcontroller.core.RoleInfo;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.FloodlightModuleLoader;
+import net.floodlightcontroller.core.util.EnumListenerDispatcher;
 import net.floodlightcontroller.core.util.ListenerDispatcher;
 import net.floodlightcontroller.core.web.CoreWebRoutable;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
@@ -85,7 +83,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     protected static final Logger log = LoggerFactory.getLogger(Controller.class);
 
     /* OpenFlow message listeners and dispatchers */
-    protected static ConcurrentMap<OFType, ListenerDispatcher<OFType,IOFMessageListener>> messageListeners;
+    protected static EnumListenerDispatcher<OFType, IOFMessageListener> messageListeners;
     protected static ConcurrentLinkedQueue<IControllerCompletionListener> completionListeners;
     
     /* 
@@ -111,6 +109,8 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     private static IDebugCounterService debugCounterService;
     private static IRestApiService restApiService;
     private static IPktInProcessingTimeService pktinProcTimeService;
+    /* the packet-in listeners the performance monitor was last bootstrapped with */
+    private static volatile IOFMessageListener[] timedListeners;
     private static IThreadPoolService threadPoolService;
     private static ISyncService syncService;
     private static IShutdownService shutdownService;
@@ -163,6 +163,27 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     
     protected static boolean alwaysDecodeEth = true;
 
+    /* Staged packet-in processing, see PacketInDispatcher */
+    protected static boolean packetInPipeline = false;
+    protected static int packetInWorkerThreads = 4;
+    protected static int packetInQueueSize = 1024;
+    protected static PacketInDispatcher.OverflowPolicy packetInOverflowPolicy =
+            PacketInDispatcher.OverflowPolicy.DROP_NEWEST;
+    protected static long packetInBlockMs = 10;
+    private static PacketInDispatcher packetInDispatcher;
+
+    /* Packet-in admission control, see PacketInAdmissionControl */
+    protected static boolean packetInAdmission = false;
+    protected static PacketInAdmissionControl.Limit packetInSwitchLimit =
+            new PacketInAdmissionControl.Limit(5000, 10000);
+    protected static PacketInAdmissionControl.Limit packetInPortLimit =
+            new PacketInAdmissionControl.Limit(1000, 2000);
+    protected static PacketInAdmissionControl.Limit packetInMacLimit =
+            new PacketInAdmissionControl.Limit(0, 0);
+    protected static boolean packetInAdaptive = false;
+    protected static long packetInTargetLatencyUs = 1000;
+    private static PacketInAdmissionControl packetInAdmissionControl;
+
     @Override
     public ModuleLoaderState getModuleLoaderState(){
         return moduleLoaderState;
@@ -292,14 +313,19 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     
     // Handler for SwitchPortsChanged was here (notifyPortChanged). Handled in OFSwitchManager
 
+    /**
+     * Maximum number of free contexts kept per thread
+     */
+    protected static final int FLCONTEXT_CACHE_SIZE = 64;
+
     /**
      * flcontext_cache - Keep a thread local stack of contexts
      */
-    protected static final ThreadLocal<Stack<FloodlightContext>> flcontext_cache =
-        new ThreadLocal <Stack<FloodlightContext>> () {
+    protected static final ThreadLocal<ArrayDeque<FloodlightContext>> flcontext_cache =
+        new ThreadLocal <ArrayDeque<FloodlightContext>> () {
             @Override
-            protected Stack<FloodlightContext> initialValue() {
-                return new Stack<FloodlightContext>();
+            protected ArrayDeque<FloodlightContext> initialValue() {
+                return new ArrayDeque<FloodlightContext>(FLCONTEXT_CACHE_SIZE);
             }
         };
 
@@ -308,15 +334,10 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * @return FloodlightContext
      */
     protected static FloodlightContext flcontext_alloc() {
-        FloodlightContext flcontext = null;
-
-        if (flcontext_cache.get().empty()) {
+        FloodlightContext flcontext = flcontext_cache.get().pollFirst();
+        if (flcontext == null) {
             flcontext = new FloodlightContext();
         }
-        else {
-            flcontext = flcontext_cache.get().pop();
-        }
-
         return flcontext;
     }
 
@@ -325,8 +346,11 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
      * @param flcontext
      */
     protected void flcontext_free(FloodlightContext flcontext) {
-        flcontext.getStorage().clear();
-        flcontext_cache.get().push(flcontext);
+        flcontext.clear();
+        ArrayDeque<FloodlightContext> cache = flcontext_cache.get();
+        if (cache.size() < FLCONTEXT_CACHE_SIZE) {
+            cache.offerFirst(flcontext);
+        }
     }
 
 
@@ -367,60 +391,110 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
                     return;
                 }
 
-                if (alwaysDecodeEth) {
+                if (!packetInAdmissionControl.admit(sw, pi)) {
+                    return;
+                }
+
+                // Nobody would read the decoded payload
+                if (alwaysDecodeEth && messageListeners.getListeners(OFType.PACKET_IN).length > 0) {
                     eth = new Ethernet();
                     eth.deserialize(pi.getData(), 0, pi.getData().length);
                 }
+
+                // Hand the decoded packet-in to the worker of its switch,
+                // unless the caller owns the context
+                if (packetInDispatcher != null && bContext == null) {
+                    packetInDispatcher.dispatch(sw, m, eth);
+                    return;
+                }
                 // fall through to default case...
 
             default:
+                dispatchToListeners(sw, m, eth, bContext);
+        }
+    }
 
-                List<IOFMessageListener> listeners = null;
-                if (messageListeners.containsKey(m.getType())) {
-                    listeners = messageListeners.get(m.getType()).getOrderedListeners();
-                }
-
-                FloodlightContext bc = null;
-                if (listeners != null) {
-                    // Check if floodlight context is passed from the calling
-                    // function, if so use that floodlight context, otherwise
-                    // allocate one
-                    if (bContext == null) {
-                        bc = flcontext_alloc();
-                    } else {
-                        bc = bContext;
-                    }
-                    if (eth != null) {
-                        IFloodlightProviderService.bcStore.put(bc,
-                                IFloodlightProviderService.CONTEXT_PI_PAYLOAD,
-                                eth);
-                    }
+    /**
+     * Run the IOFMessageListener chain and the completion listeners
+     * for a message.
+     *
+     * @param sw The switch sending the message
+     * @param m The message the switch sent
+     * @param eth The decoded payload of a packet-in, or null
+     * @param bContext The floodlight context to use for this message. If
+     * null, a new context will be allocated.
+     */
+    protected void dispatchToListeners(IOFSwitch sw, OFMessage m, Ethernet eth,
+                                       FloodlightContext bContext) {
+        IOFMessageListener[] listeners = messageListeners.getListeners(m.getType());
+
+        FloodlightContext bc = null;
+        if (listeners.length > 0) {
+            // Check if floodlight context is passed from the calling
+            // function, if so use that floodlight context, otherwise
+            // allocate one
+            if (bContext == null) {
+                bc = flcontext_alloc();
+            } else {
+                bc = bContext;
+            }
+            if (eth != null) {
+                IFloodlightProviderService.piPayloadKey.put(bc, eth);
+            }
 
-                    // Get the starting time (overall and per-component) of
-                    // the processing chain for this packet if performance
-                    // monitoring is turned on
-                    pktinProcTimeService.bootstrap(listeners);
-                    pktinProcTimeService.recordStartTimePktIn();
-                    Command cmd;
-                    for (IOFMessageListener listener : listeners) {
-                        pktinProcTimeService.recordStartTimeComp(listener);
-                        cmd = listener.receive(sw, m, bc);
-                        pktinProcTimeService.recordEndTimeComp(listener);
-
-                        if (Command.STOP.equals(cmd)) {
-                            break;
-                        }
+            long start = System.nanoTime();
+            if (pktinProcTimeService.isLatencyTracked()) {
+                // Time the processing chain (overall and per-component)
+                // of this message for the latency histograms and, for
+                // packet-ins, the performance monitor if it is on
+                long end = dispatchTimed(listeners, sw, m, bc, start);
+                pktinProcTimeService.recordMessageTime(sw, m, bc, end - start, end);
+            } else {
+                for (IOFMessageListener listener : listeners) {
+                    if (Command.STOP.equals(listener.receive(sw, m, bc))) {
+                        break;
                     }
-                    pktinProcTimeService.recordEndTimePktIn(sw, m, bc);
                 }
-                // paag
-                // And just before we exit the controller loop we see if anyone
-                // is interested in knowing that we are exiting the loop
-                for (IControllerCompletionListener listener : completionListeners)
-                	listener.onMessageConsumed(sw, m, bc);
-                
-                if ((bContext == null) && (bc != null)) flcontext_free(bc);
+            }
+            if (m.getType() == OFType.PACKET_IN) {
+                packetInAdmissionControl.recordLatency(System.nanoTime() - start);
+            }
         }
+        // paag
+        // And just before we exit the controller loop we see if anyone
+        // is interested in knowing that we are exiting the loop
+        for (IControllerCompletionListener listener : completionListeners)
+            listener.onMessageConsumed(sw, m, bc);
+
+        if ((bContext == null) && (bc != null)) flcontext_free(bc);
+    }
+
+    /**
+     * Run the listener chain, recording the processing time of each
+     * listener by its position in the chain. The performance monitor is
+     * bootstrapped again whenever the packet-in chain changes.
+     *
+     * @return the time the chain ended, in ns
+     */
+    private long dispatchTimed(IOFMessageListener[] listeners, IOFSwitch sw,
+                               OFMessage m, FloodlightContext bc, long start) {
+        OFType type = m.getType();
+        if (type == OFType.PACKET_IN && listeners != timedListeners
+                && pktinProcTimeService.isEnabled()) {
+            timedListeners = listeners;
+            pktinProcTimeService.bootstrap(Arrays.asList(listeners));
+        }
+        long now = start;
+        for (int i = 0; i < listeners.length; i++) {
+            Command cmd = listeners[i].receive(sw, m, bc);
+            long end = System.nanoTime();
+            pktinProcTimeService.recordComponentTime(type, i, listeners[i], end - now, end);
+            now = end;
+            if (Command.STOP.equals(cmd)) {
+                break;
+            }
+        }
+        return now;
     }
     
     // ***************
@@ -458,35 +532,24 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     }
     
     @Override
-    public synchronized void addOFMessageListener(OFType type, IOFMessageListener listener) {
-        ListenerDispatcher<OFType, IOFMessageListener> ldd =
-            messageListeners.get(type);
-        if (ldd == null) {
-            ldd = new ListenerDispatcher<OFType, IOFMessageListener>();
-            messageListeners.put(type, ldd);
-        }
-        ldd.addListener(type, listener);
+    public void addOFMessageListener(OFType type, IOFMessageListener listener) {
+        messageListeners.addListener(type, listener);
     }
 
     @Override
-    public synchronized void removeOFMessageListener(OFType type, IOFMessageListener listener) {
-        ListenerDispatcher<OFType, IOFMessageListener> ldd =
-            messageListeners.get(type);
-        if (ldd != null) {
-            ldd.removeListener(listener);
-        }
+    public void removeOFMessageListener(OFType type, IOFMessageListener listener) {
+        messageListeners.removeListener(type, listener);
     }
 
     private void logListeners() {
-        for (Map.Entry<OFType, ListenerDispatcher<OFType, IOFMessageListener>> entry : messageListeners.entrySet()) {
+        for (Map.Entry<OFType, List<IOFMessageListener>> entry : messageListeners.getOrderedListeners().entrySet()) {
             OFType type = entry.getKey();
-            ListenerDispatcher<OFType, IOFMessageListener> ldd = entry.getValue();
 
             StringBuilder sb = new StringBuilder();
             sb.append("OFListeners for ");
             sb.append(type);
             sb.append(": ");
-            for (IOFMessageListener l : ldd.getOrderedListeners()) {
+            for (IOFMessageListener l : entry.getValue()) {
                 sb.append(l.getName());
                 sb.append(",");
             }
@@ -503,17 +566,17 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
     }
 
     public void removeOFMessageListeners(OFType type) {
-        messageListeners.remove(type);
+        messageListeners.removeListeners(type);
+    }
+
+    @Override
+    public PacketInAdmissionControl getPacketInAdmissionControl() {
+        return packetInAdmissionControl;
     }
 
     @Override
     public Map<OFType, List<IOFMessageListener>> getListeners() {
-        Map<OFType, List<IOFMessageListener>> lers =
-            new HashMap<OFType, List<IOFMessageListener>>();
-        for(Entry<OFType, ListenerDispatcher<OFType, IOFMessageListener>> e : messageListeners.entrySet()) {
-            lers.put(e.getKey(), e.getValue().getOrderedListeners());
-        }
-        return Collections.unmodifiableMap(lers);
+        return messageListeners.getOrderedListeners();
     }
 
     @Override
@@ -525,16 +588,9 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
 
         FloodlightContext bc = new FloodlightContext();
 
-        List<IOFMessageListener> listeners = null;
-        if (messageListeners.containsKey(m.getType())) {
-            listeners = messageListeners.get(m.getType()).getOrderedListeners();
-        }
-
-        if (listeners != null) {
-            for (IOFMessageListener listener : listeners) {
-                if (Command.STOP.equals(listener.receive(sw, m, bc))) {
-                    break;
-                }
+        for (IOFMessageListener listener : messageListeners.getListeners(m.getType())) {
+            if (Command.STOP.equals(listener.receive(sw, m, bc))) {
+                break;
             }
         }
     }
@@ -646,10 +702,83 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
 	        		+ "required or when benchmarking core performance");
         } else {
             log.info("Controller will not automatically deserialize all Ethernet packet-in messages. "
-            		+ "Set 'deserializeEthPacketIns' to 'TRUE' to enable this feature");
+            		+ "Set 'deserializeEthPacketIns' to 'TRUE' to enable this feature. "
+            		+ "Only modules using the payload view (CONTEXT_PI_PAYLOAD_VIEW) "
+            		+ "or decoding the payload themselves will see it");
+        }
+
+        String admission = configParams.get("packetInAdmission");
+        packetInAdmission = !Strings.isNullOrEmpty(admission) && Boolean.parseBoolean(admission.trim());
+        if (packetInAdmission) {
+            try {
+                packetInSwitchLimit = parseLimit(configParams, "packetInSwitchRate", "packetInSwitchBurst", packetInSwitchLimit);
+                packetInPortLimit = parseLimit(configParams, "packetInPortRate", "packetInPortBurst", packetInPortLimit);
+                packetInMacLimit = parseLimit(configParams, "packetInMacRate", "packetInMacBurst", packetInMacLimit);
+                String adaptive = configParams.get("packetInAdaptive");
+                if (!Strings.isNullOrEmpty(adaptive)) {
+                    packetInAdaptive = Boolean.parseBoolean(adaptive.trim());
+                }
+                String target = configParams.get("packetInTargetLatencyUs");
+                if (!Strings.isNullOrEmpty(target)) {
+                    packetInTargetLatencyUs = Long.parseLong(target.trim());
+                }
+            } catch (IllegalArgumentException e) {
+                log.error("Invalid packet-in admission config, {}", e.getMessage());
+                throw new FloodlightModuleException("Invalid packet-in admission config: " + e.getMessage());
+            }
+            log.info("Packet-in admission control enabled: per switch {}, per port {}, per MAC {}, adaptive {}",
+                    new Object[] { packetInSwitchLimit, packetInPortLimit, packetInMacLimit, packetInAdaptive });
+        }
+
+        String pipeline = configParams.get("packetInPipeline");
+        packetInPipeline = !Strings.isNullOrEmpty(pipeline) && Boolean.parseBoolean(pipeline.trim());
+        if (packetInPipeline) {
+            try {
+                String threads = configParams.get("packetInWorkerThreads");
+                if (!Strings.isNullOrEmpty(threads)) {
+                    packetInWorkerThreads = Integer.parseInt(threads.trim());
+                }
+                String queueSize = configParams.get("packetInQueueSize");
+                if (!Strings.isNullOrEmpty(queueSize)) {
+                    packetInQueueSize = Integer.parseInt(queueSize.trim());
+                }
+                String policy = configParams.get("packetInOverflowPolicy");
+                if (!Strings.isNullOrEmpty(policy)) {
+                    packetInOverflowPolicy = PacketInDispatcher.OverflowPolicy.valueOf(policy.trim().toUpperCase());
+                }
+                String blockMs = configParams.get("packetInBlockMs");
+                if (!Strings.isNullOrEmpty(blockMs)) {
+                    packetInBlockMs = Long.parseLong(blockMs.trim());
+                }
+            } catch (IllegalArgumentException e) {
+                log.error("Invalid packet-in pipeline config, {}", e.getMessage());
+                throw new FloodlightModuleException("Invalid packet-in pipeline config: " + e.getMessage());
+            }
+            log.info("Packet-ins will be processed by {} worker thread(s), "
+                    + "{} queued packet-ins per worker, {} when full",
+                    new Object[] { packetInWorkerThreads, packetInQueueSize, packetInOverflowPolicy });
+        } else {
+            log.info("Packet-ins will be processed on the OpenFlow I/O threads. "
+                    + "Set 'packetInPipeline' to 'TRUE' to use packet-in worker threads");
         }
     }
 
+    private static PacketInAdmissionControl.Limit parseLimit(Map<String, String> configParams,
+            String rateKey, String burstKey, PacketInAdmissionControl.Limit defaultLimit) {
+        double rate = defaultLimit.rate;
+        double burst = defaultLimit.burst;
+        String value = configParams.get(rateKey);
+        if (!Strings.isNullOrEmpty(value)) {
+            rate = Double.parseDouble(value.trim());
+            burst = Math.max(1, rate * 2);
+        }
+        value = configParams.get(burstKey);
+        if (!Strings.isNullOrEmpty(value)) {
+            burst = Double.parseDouble(value.trim());
+        }
+        return new PacketInAdmissionControl.Limit(rate, burst);
+    }
+
     /**
      * Initialize internal data structures
      */
@@ -659,7 +788,7 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
 
         // These data structures are initialized here because other
         // module's startUp() might be called before ours        
-        messageListeners = new ConcurrentHashMap<OFType, ListenerDispatcher<OFType, IOFMessageListener>>();
+        messageListeners = new EnumListenerDispatcher<OFType, IOFMessageListener>(OFType.class, IOFMessageListener.class);
         haListeners = new ListenerDispatcher<HAListenerTypeMarker, IHAListener>();
         controllerNodeIPsCache = new HashMap<String, String>();
         updates = new LinkedBlockingQueue<IUpdate>();
@@ -678,6 +807,27 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         // Switch Service Startup
         switchService.registerLogicalOFMessageCategory(LogicalOFMessageCategory.MAIN);
         counters = new ControllerCounters(debugCounterService);
+
+        packetInAdmissionControl = new PacketInAdmissionControl(counters, packetInAdmission,
+                packetInSwitchLimit, packetInPortLimit, packetInMacLimit);
+        packetInAdmissionControl.setAdaptive(packetInAdaptive, packetInTargetLatencyUs);
+
+        if (packetInDispatcher != null) {
+            packetInDispatcher.shutdown();
+            packetInDispatcher = null;
+        }
+        if (packetInPipeline) {
+            try {
+                packetInDispatcher = new PacketInDispatcher(new PacketInDispatcher.IPacketInHandler() {
+                    @Override
+                    public void handle(IOFSwitch sw, OFMessage m, Ethernet eth) {
+                        dispatchToListeners(sw, m, eth, null);
+                    }
+                }, counters, packetInWorkerThreads, packetInQueueSize, packetInOverflowPolicy, packetInBlockMs);
+            } catch (IllegalArgumentException e) {
+                throw new FloodlightModuleException("Invalid packet-in pipeline config: " + e.getMessage());
+            }
+        }
      }
 
     /**
@@ -955,6 +1105,11 @@ public class Controller implements IFloodlightProviderService, IStorageSourceLis
         Map<String, Object> info = new HashMap<String, Object>();
 
         info.put("# Switches", switchService.getAllSwitchDpids().size());
+        if (packetInDispatcher != null) {
+            info.put("# Queued packet-ins", packetInDispatcher.getQueueDepth());
+            info.put("# Max queued packet-ins per worker", packetInDispatcher.getMaxQueueDepth());
+            info.put("# Dropped packet-ins", packetInDispatcher.getDroppedCount());
+        }
         return info;
     }
 
@@ -17,6 +17,12 @@ public class ControllerCounters {
     public final IDebugCounter dispatchMessageWhileStandby;
     public final IDebugCounter dispatchMessage;
     public final IDebugCounter packetIn;
+    public final IDebugCounter packetInQueued;
+    public final IDebugCounter packetInDropped;
+    public final IDebugCounter packetInAdmitted;
+    public final IDebugCounter packetInRejectedSwitch;
+    public final IDebugCounter packetInRejectedPort;
+    public final IDebugCounter packetInRejectedMac;
 
     public ControllerCounters(IDebugCounterService debugCounters) {
         debugCounters.registerModule(prefix);
@@ -44,5 +50,35 @@ public class ControllerCounters {
                                                            MetaData.ERROR);
         
         packetIn = debugCounters.registerCounter(prefix, "packet-in", "Number of packet_in's seen");
+
+        packetInQueued = debugCounters.registerCounter(prefix,
+                                                       "packet-in-queued",
+                                                       "Number of packet_in's handed to the "
+                                                               + "packet-in worker threads");
+        packetInDropped = debugCounters.registerCounter(prefix,
+                                                        "packet-in-dropped",
+                                                        "Number of packet_in's dropped because the "
+                                                                + "queue of their packet-in worker was full",
+                                                        MetaData.WARN);
+
+        packetInAdmitted = debugCounters.registerCounter(prefix,
+                                                         "packet-in-admitted",
+                                                         "Number of packet_in's accepted by the "
+                                                                 + "packet-in admission control");
+        packetInRejectedSwitch = debugCounters.registerCounter(prefix,
+                                                               "packet-in-rejected-switch",
+                                                               "Number of packet_in's dropped because their "
+                                                                       + "switch exceeded its packet-in rate",
+                                                               MetaData.WARN);
+        packetInRejectedPort = debugCounters.registerCounter(prefix,
+                                                             "packet-in-rejected-port",
+                                                             "Number of packet_in's dropped because their "
+                                                                     + "in-port exceeded its packet-in rate",
+                                                             MetaData.WARN);
+        packetInRejectedMac = debugCounters.registerCounter(prefix,
+                                                            "packet-in-rejected-mac",
+                                                            "Number of packet_in's dropped because their "
+                                                                    + "source MAC exceeded its packet-in rate",
+                                                            MetaData.WARN);
     }
 }
@@ -54,7 +54,7 @@ import com.google.common.base.Preconditions;
  *  messages to the higher orders of control.
  * @author Jason Parraga <Jason.Parraga@Bigswitch.com>
  */
-class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>> {
+class OFChannelHandler extends SimpleChannelInboundHandler<OFMessage> {
 
 	private static final Logger log = LoggerFactory.getLogger(OFChannelHandler.class);
 
@@ -689,18 +689,16 @@ class OFChannelHandler extends SimpleChannelInboundHandler<Iterable<OFMessage>>
 	}
 
 	@Override
-	public void channelRead0(ChannelHandlerContext ctx, Iterable<OFMessage> msgList) throws Exception {
-		for (OFMessage ofm : msgList) {
-			try {
-				// Do the actual packet processing
-				state.processOFMessage(ofm);
-			}
-			catch (Exception ex) {
-				// We are the last handler in the stream, so run the
-				// exception through the channel again by passing in
-				// ctx.getChannel().
-				ctx.fireExceptionCaught(ex);
-			}
+	public void channelRead0(ChannelHandlerContext ctx, OFMessage ofm) throws Exception {
+		try {
+			// Do the actual packet processing
+			state.processOFMessage(ofm);
+		}
+		catch (Exception ex) {
+			// We are the last handler in the stream, so run the
+			// exception through the channel again by passing in
+			// ctx.getChannel().
+			ctx.fireExceptionCaught(ex);
 		}
 	}
 
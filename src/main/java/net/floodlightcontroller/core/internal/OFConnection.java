@@ -21,6 +21,7 @@ import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,6 +54,7 @@ import org.projectfloodlight.openflow.protocol.OFRequest;
 import org.projectfloodlight.openflow.protocol.OFStatsReply;
 import org.projectfloodlight.openflow.protocol.OFStatsReplyFlags;
 import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFAuxId;
 import org.projectfloodlight.openflow.types.U64;
@@ -102,6 +104,45 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 
 	private volatile U64 latency;
 
+	/**
+	 * Write batching (flush coalescing) defaults for new connections, set by
+	 * the OFSwitchManager from its configuration. When enabled, the messages
+	 * are written to the channel without a flush, and the flush is deferred
+	 * until maxMessages are pending, or until the event loop has run the
+	 * writes queued so far (maxDelayMicros = 0), or until maxDelayMicros have
+	 * passed. This trades a little latency for far fewer syscalls when many
+	 * small messages (e.g. flow-mods and packet-outs) go to one switch.
+	 */
+	private static volatile boolean defaultWriteBatching = false;
+	private static volatile int defaultFlushMaxMessages = 64;
+	private static volatile long defaultFlushMaxDelayMicros = 0;
+
+	/**
+	 * Messages which are always flushed right away, together with anything
+	 * written before them, since the switch (or the keepalive logic) is
+	 * waiting for them.
+	 */
+	private static final Set<OFType> IMMEDIATE_FLUSH_TYPES =
+			Collections.unmodifiableSet(EnumSet.of(OFType.ECHO_REQUEST,
+					OFType.ECHO_REPLY,
+					OFType.BARRIER_REQUEST));
+
+	private volatile boolean writeBatching;
+	private volatile int flushMaxMessages;
+	private volatile long flushMaxDelayMicros;
+
+	/* only accessed from the channel's event loop */
+	private int unflushedMessages;
+	private boolean flushScheduled;
+
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flushScheduled = false;
+			flush();
+		}
+	};
+
 	/**
 	 * Used to write messages to ensure order w/Netty4.
 	 * It also ensures we do not reuse the array, since
@@ -116,12 +157,61 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 
 		@Override
 		public void run() {
+			int count = 0;
+			boolean immediate = false;
 			for (OFMessage m : msglist) {
 				if (logger.isTraceEnabled())
 					logger.trace("{}: send {}", this, m);
 				counters.updateWriteStats(m);
+				if (IMMEDIATE_FLUSH_TYPES.contains(m.getType()))
+					immediate = true;
+				count++;
+			}
+
+			if (!writeBatching) {
+				channel.writeAndFlush(msglist);
+				/* the flush counters only track batched writes, but count
+				 * what was pending when batching was turned off */
+				if (unflushedMessages > 0) {
+					counters.updateFlushStats(unflushedMessages);
+					unflushedMessages = 0;
+				}
+				return;
+			}
+
+			unflushedMessages += count;
+			if (immediate) {
+				/* also flushes whatever is pending, so order is kept */
+				channel.writeAndFlush(msglist);
+				counters.updateImmediateFlushStats();
+				counters.updateFlushStats(unflushedMessages);
+				unflushedMessages = 0;
+				return;
+			}
+
+			channel.write(msglist);
+			if (unflushedMessages >= flushMaxMessages) {
+				flush();
+			} else if (!flushScheduled) {
+				flushScheduled = true;
+				if (flushMaxDelayMicros > 0) {
+					channel.eventLoop().schedule(flushTask, flushMaxDelayMicros, TimeUnit.MICROSECONDS);
+				} else {
+					channel.eventLoop().execute(flushTask);
+				}
 			}
-			channel.writeAndFlush(msglist);
+		}
+	}
+
+	/**
+	 * Flush the messages written since the last flush. Must run on the
+	 * channel's event loop.
+	 */
+	private void flush() {
+		if (unflushedMessages > 0) {
+			channel.flush();
+			counters.updateFlushStats(unflushedMessages);
+			unflushedMessages = 0;
 		}
 	}
 
@@ -147,6 +237,41 @@ public class OFConnection implements IOFConnection, IOFConnectionBackend{
 		this.counters = new OFConnectionCounters(debugCounters, dpid, this.auxId);
 		this.timer = timer;
 		this.latency = U64.ZERO;
+		this.writeBatching = defaultWriteBatching;
+		this.flushMaxMessages = defaultFlushMaxMessages;
+		this.flushMaxDelayMicros = defaultFlushMaxDelayMicros;
+	}
+
+	/**
+	 * Set the write batching defaults of the connections created from now on.
+	 *
+	 * @param enabled whether writes are batched; if not, every write is flushed
+	 * @param maxMessages flush as soon as this many messages are pending
+	 * @param maxDelayMicros longest a write is held back; 0 flushes once the
+	 * event loop has run the writes already queued
+	 */
+	static void setDefaultWriteBatching(boolean enabled, int maxMessages, long maxDelayMicros) {
+		Preconditions.checkArgument(maxMessages > 0, "maxMessages must be positive");
+		Preconditions.checkArgument(maxDelayMicros >= 0, "maxDelayMicros must not be negative");
+		defaultFlushMaxMessages = maxMessages;
+		defaultFlushMaxDelayMicros = maxDelayMicros;
+		defaultWriteBatching = enabled;
+	}
+
+	/**
+	 * Override the write batching of this connection.
+	 * @see #setDefaultWriteBatching(boolean, int, long)
+	 */
+	public void setWriteBatching(boolean enabled, int maxMessages, long maxDelayMicros) {
+		Preconditions.checkArgument(maxMessages > 0, "maxMessages must be positive");
+		Preconditions.checkArgument(maxDelayMicros >= 0, "maxDelayMicros must not be negative");
+		this.flushMaxMessages = maxMessages;
+		this.flushMaxDelayMicros = maxDelayMicros;
+		this.writeBatching = enabled;
+	}
+
+	public boolean isWriteBatching() {
+		return writeBatching;
 	}
 
 	/**
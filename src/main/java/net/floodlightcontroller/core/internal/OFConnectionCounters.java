@@ -101,6 +101,12 @@ public class OFConnectionCounters {
     private final IDebugCounter ctrReadRequestForward;
     private final IDebugCounter ctrReadControllerStatus;
 
+    // Flush Counters
+    //
+    private final IDebugCounter ctrFlushes;
+    private final IDebugCounter ctrFlushedMessages;
+    private final IDebugCounter ctrImmediateFlushes;
+
     private static final Logger logger =
             LoggerFactory.getLogger(OFConnectionCounters.class);
 
@@ -529,6 +535,28 @@ public class OFConnectionCounters {
                 hierarchy,
                 stringId,
                 OFType.CONTROLLER_STATUS.toString());
+
+        // Register Flush Counters, messages/flush is
+        // messages divided by flushes
+        //
+        hierarchy = "/flush";
+
+        registerCounterLocal(counters,
+                             hierarchy,
+                             stringId,
+                             "");
+        ctrFlushes =
+                counters.registerCounter(COUNTER_MODULE,
+                                         stringId + hierarchy + "/flushes",
+                                         "Number of flushes of batched writes in this connection");
+        ctrFlushedMessages =
+                counters.registerCounter(COUNTER_MODULE,
+                                         stringId + hierarchy + "/messages",
+                                         "Number of messages written by batched flushes in this connection");
+        ctrImmediateFlushes =
+                counters.registerCounter(COUNTER_MODULE,
+                                         stringId + hierarchy + "/immediate",
+                                         "Number of writes flushed without waiting for the batch in this connection");
     }
     
     /**
@@ -541,6 +569,22 @@ public class OFConnectionCounters {
     	return debugCounterService.removeCounterHierarchy(COUNTER_MODULE, dpidAndConnIdString);
     }
 
+   /**
+    * Update Flush Counters for one flush of batched writes
+    * @param messages number of messages written since the previous flush
+    */
+   public void updateFlushStats(int messages) {
+       ctrFlushes.increment();
+       ctrFlushedMessages.add(messages);
+   }
+
+   /**
+    * Update Flush Counters for a write which was flushed right away
+    */
+   public void updateImmediateFlushStats() {
+       ctrImmediateFlushes.increment();
+   }
+
    /**
     * Update Write Counters for Open flow messages
     * @param ofm openflow message
@@ -17,8 +17,6 @@
 
 package net.floodlightcontroller.core.internal;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import io.netty.buffer.ByteBuf;
@@ -33,6 +31,7 @@ import org.projectfloodlight.openflow.protocol.OFVersion;
 
 /**
  * Decode an openflow message from a channel, for use in a netty pipeline.
+ * Every decoded {@link OFMessage} is passed down the pipeline individually.
  *
  * @author Andreas Wundsam <andreas.wundsam@bigswitch.com>
  */
@@ -66,39 +65,17 @@ public class OFMessageDecoder extends ByteToMessageDecoder {
 			return;
 		}
 
-		// Note(andiw): netty4 adds support for more efficient handling of lists messages in the
-		// pipeline itself.
-		// Instead of constructing a list of messages here, we could also just add the individual
-		// messages to the "out" list provided by netty. This would require changing all the handlers
-		// in the pipeline to accept "OFMessage" instead of "Iterable<OFMessage>". Probably
-		// a good idea, but left for a future cleanup.
-
-		OFMessage singleMessage = null;
-		List<OFMessage> list = null;
-		boolean first = true;
+		// Each message is handed to netty on its own: ByteToMessageDecoder fires
+		// the entries of its (recycled) out list one at a time down the pipeline,
+		// so there is no list to allocate per read. The reader copies everything
+		// it needs out of the buffer, which lets netty release or reuse the
+		// cumulation buffer as soon as it has been consumed.
 		for (;;) {
 			OFMessage message = reader.readFrom(in);
 			if (message == null) {
 				break;
 			}
-			if (first) {
-				// first message read
-				singleMessage = message;
-				first = false;
-			} else {
-				// more messages read, use the list
-				if (list == null) {
-					list = new ArrayList<>();
-					list.add(singleMessage);
-					singleMessage = null;
-				}
-				list.add(message);
-			}
-		}
-		if (list != null) {
-			out.add(list);
-		} else if (singleMessage != null) {
-			out.add(Collections.singletonList(singleMessage));
+			out.add(message);
 		}
 	}
 }
\ No newline at end of file
@@ -74,6 +74,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
@@ -848,6 +849,31 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
             tcpSendBufferSize = Integer.parseInt(tcpBuffer);
         }
 
+        /* OpenFlow write batching (flush coalescing) */
+        boolean writeBatching = false;
+        int writeBatchMaxMessages = 64;
+        long writeBatchMaxDelayMicros = 0;
+        String batching = configParams.get("writeBatching");
+        if (!Strings.isNullOrEmpty(batching)) {
+            writeBatching = Boolean.parseBoolean(batching.trim());
+        }
+        String batchMessages = configParams.get("writeBatchMaxMessages");
+        if (!Strings.isNullOrEmpty(batchMessages)) {
+            writeBatchMaxMessages = Integer.parseInt(batchMessages.trim());
+        }
+        String batchDelay = configParams.get("writeBatchMaxDelayMicros");
+        if (!Strings.isNullOrEmpty(batchDelay)) {
+            writeBatchMaxDelayMicros = Long.parseLong(batchDelay.trim());
+        }
+        try {
+            OFConnection.setDefaultWriteBatching(writeBatching, writeBatchMaxMessages, writeBatchMaxDelayMicros);
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid OpenFlow write batching config, {}", e.getMessage());
+            throw new FloodlightModuleException("Invalid OpenFlow write batching config: " + e.getMessage());
+        }
+        log.info("OpenFlow write batching {}, flush after {} message(s) or {} us",
+                new Object[] { writeBatching ? "enabled" : "disabled", writeBatchMaxMessages, writeBatchMaxDelayMicros });
+
         log.info("Listening for OpenFlow switches on {}:{}", openFlowAddresses, openFlowPort);
         log.info("OpenFlow socket config: "
                 + "{} boss thread(s), "
@@ -1036,7 +1062,13 @@ IHAListener, IFloodlightModule, IOFSwitchService, IStoreListener<DatapathId> {
                     .option(ChannelOption.TCP_NODELAY, true)
                     .option(ChannelOption.SO_SNDBUF, tcpSendBufferSize)
                     .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectionTimeoutMsec)
-                    .option(ChannelOption.SO_BACKLOG, connectionBacklog);
+                    .option(ChannelOption.SO_BACKLOG, connectionBacklog)
+                    /*
+                     * Read buffers, the decoder's cumulation buffer and the encoder's
+                     * output come from the pool and go back to it once released, rather
+                     * than being allocated afresh for every read and write.
+                     */
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
 
             OFChannelInitializer initializer = new OFChannelInitializer(
                     this, 
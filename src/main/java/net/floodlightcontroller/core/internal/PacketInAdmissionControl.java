@@ -0,0 +1,386 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.base.Preconditions;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.util.OFMessageUtils;
+
+/**
+ * Admission control for packet-ins, run before they are decoded and handed
+ * to the IOFMessageListeners, so that a flood on one switch (an ARP storm, a
+ * misconfigured host) can't saturate the controller.
+ *
+ * A packet-in has to take a token from the bucket of its switch, of its
+ * switch and in-port, and optionally of its source MAC; if any of them is
+ * empty it is rejected, and the tokens it took from the others are given
+ * back, so that a flooding port or host only drains its own bucket and not
+ * the budget of the rest of its switch. A rate of 0 disables that level.
+ *
+ * When adaptive, the rates are scaled down while the average time spent in
+ * the listener chain is above the target latency, and back up once it has
+ * dropped below half of it.
+ */
+public class PacketInAdmissionControl {
+
+    /** Minimum time between two adjustments of the adaptive scale */
+    private static final long ADJUST_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final double MIN_SCALE = 0.05;
+    private static final double EWMA_WEIGHT = 0.1;
+
+    public enum Level {
+        SWITCH, PORT, MAC
+    }
+
+    /**
+     * Limits of one level: sustained rate in packet-ins per second and the
+     * burst (bucket size).
+     */
+    public static class Limit {
+        public final double rate;
+        public final double burst;
+
+        public Limit(double rate, double burst) {
+            Preconditions.checkArgument(rate >= 0, "rate must not be negative");
+            Preconditions.checkArgument(rate == 0 || burst >= 1, "burst must be at least 1");
+            this.rate = rate;
+            this.burst = burst;
+        }
+
+        public boolean isEnabled() {
+            return rate > 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Limit [rate=" + rate + ", burst=" + burst + "]";
+        }
+    }
+
+    /**
+     * Token bucket, refilled on access. The rate is passed in, so that the
+     * buckets follow changes of the limits and of the adaptive scale.
+     */
+    static class TokenBucket {
+        private double tokens;
+        private long lastRefillNs;
+
+        TokenBucket(double burst, long now) {
+            this.tokens = burst;
+            this.lastRefillNs = now;
+        }
+
+        synchronized boolean tryAcquire(double rate, double burst, long now) {
+            long elapsed = now - lastRefillNs;
+            if (elapsed > 0) {
+                tokens = Math.min(burst, tokens + rate * elapsed / 1e9);
+                lastRefillNs = now;
+            }
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Give back a token taken by tryAcquire()
+         */
+        synchronized void release(double burst) {
+            tokens = Math.min(burst, tokens + 1);
+        }
+
+        synchronized double getTokens() {
+            return tokens;
+        }
+    }
+
+    private static class PortKey {
+        final DatapathId dpid;
+        final OFPort port;
+
+        PortKey(DatapathId dpid, OFPort port) {
+            this.dpid = dpid;
+            this.port = port;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * dpid.hashCode() + port.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PortKey))
+                return false;
+            PortKey other = (PortKey) obj;
+            return dpid.equals(other.dpid) && port.equals(other.port);
+        }
+    }
+
+    private final ControllerCounters counters;
+
+    private volatile boolean enabled;
+    private volatile Limit switchLimit;
+    private volatile Limit portLimit;
+    private volatile Limit macLimit;
+    private volatile int maxMacBuckets;
+
+    private volatile boolean adaptive;
+    private volatile long targetLatencyNs;
+    private volatile double scale = 1.0;
+    private volatile double avgLatencyNs;
+    private volatile long lastAdjustNs = System.nanoTime();
+
+    private final ConcurrentMap<DatapathId, TokenBucket> switchBuckets =
+            new ConcurrentHashMap<DatapathId, TokenBucket>();
+    private final ConcurrentMap<PortKey, TokenBucket> portBuckets =
+            new ConcurrentHashMap<PortKey, TokenBucket>();
+    private final ConcurrentMap<MacAddress, TokenBucket> macBuckets =
+            new ConcurrentHashMap<MacAddress, TokenBucket>();
+
+    /**
+     * @param counters controller counters, may be null
+     * @param switchLimit limit per switch
+     * @param portLimit limit per switch and in-port
+     * @param macLimit limit per source MAC
+     */
+    public PacketInAdmissionControl(ControllerCounters counters, boolean enabled,
+            Limit switchLimit, Limit portLimit, Limit macLimit) {
+        this.counters = counters;
+        this.enabled = enabled;
+        this.maxMacBuckets = 100000;
+        setLimits(switchLimit, portLimit, macLimit);
+    }
+
+    /**
+     * Decide whether a packet-in may be processed.
+     * @return false if the packet-in has to be dropped
+     */
+    public boolean admit(IOFSwitch sw, OFPacketIn pi) {
+        if (!enabled) {
+            return true;
+        }
+        long now = System.nanoTime();
+        double s = scale;
+        DatapathId dpid = sw.getId();
+
+        TokenBucket switchBucket = null;
+        Limit switchL = switchLimit;
+        if (switchL.isEnabled()) {
+            switchBucket = switchBuckets.get(dpid);
+            if (switchBucket == null) {
+                switchBucket = putIfAbsent(switchBuckets, dpid, new TokenBucket(switchL.burst, now));
+            }
+            if (!switchBucket.tryAcquire(switchL.rate * s, switchL.burst, now)) {
+                return reject(Level.SWITCH);
+            }
+        }
+
+        TokenBucket portBucket = null;
+        Limit portL = portLimit;
+        if (portL.isEnabled()) {
+            PortKey key = new PortKey(dpid, OFMessageUtils.getInPort(pi));
+            portBucket = portBuckets.get(key);
+            if (portBucket == null) {
+                portBucket = putIfAbsent(portBuckets, key, new TokenBucket(portL.burst, now));
+            }
+            if (!portBucket.tryAcquire(portL.rate * s, portL.burst, now)) {
+                release(switchBucket, switchL);
+                return reject(Level.PORT);
+            }
+        }
+
+        Limit macL = macLimit;
+        if (macL.isEnabled()) {
+            byte[] data = pi.getData();
+            if (data.length >= 12) {
+                MacAddress src = MacAddress.of(((data[6] & 0xffL) << 40) | ((data[7] & 0xffL) << 32)
+                        | ((data[8] & 0xffL) << 24) | ((data[9] & 0xffL) << 16)
+                        | ((data[10] & 0xffL) << 8) | (data[11] & 0xffL));
+                TokenBucket b = macBuckets.get(src);
+                if (b == null) {
+                    /* a flood of random source MACs must not grow the map without bound */
+                    if (macBuckets.size() >= maxMacBuckets) {
+                        macBuckets.clear();
+                    }
+                    b = putIfAbsent(macBuckets, src, new TokenBucket(macL.burst, now));
+                }
+                if (!b.tryAcquire(macL.rate * s, macL.burst, now)) {
+                    release(switchBucket, switchL);
+                    release(portBucket, portL);
+                    return reject(Level.MAC);
+                }
+            }
+        }
+
+        if (counters != null) {
+            counters.packetInAdmitted.increment();
+        }
+        return true;
+    }
+
+    private static <K> TokenBucket putIfAbsent(ConcurrentMap<K, TokenBucket> map, K key, TokenBucket b) {
+        TokenBucket old = map.putIfAbsent(key, b);
+        return old != null ? old : b;
+    }
+
+    private static void release(TokenBucket b, Limit l) {
+        if (b != null) {
+            b.release(l.burst);
+        }
+    }
+
+    private boolean reject(Level level) {
+        if (counters != null) {
+            switch (level) {
+            case SWITCH:
+                counters.packetInRejectedSwitch.increment();
+                break;
+            case PORT:
+                counters.packetInRejectedPort.increment();
+                break;
+            default:
+                counters.packetInRejectedMac.increment();
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record the time one packet-in spent in the listener chain, to adapt
+     * the rates when adaptive.
+     */
+    public void recordLatency(long nanos) {
+        if (!enabled || !adaptive) {
+            return;
+        }
+        double avg = avgLatencyNs;
+        avgLatencyNs = avg == 0 ? nanos : avg + EWMA_WEIGHT * (nanos - avg);
+
+        long now = System.nanoTime();
+        if (now - lastAdjustNs < ADJUST_INTERVAL_NS) {
+            return;
+        }
+        synchronized (this) {
+            if (now - lastAdjustNs < ADJUST_INTERVAL_NS) {
+                return;
+            }
+            lastAdjustNs = now;
+            double target = targetLatencyNs;
+            if (avgLatencyNs > target) {
+                scale = Math.max(MIN_SCALE, scale * 0.8);
+            } else if (avgLatencyNs < target / 2) {
+                scale = Math.min(1.0, scale * 1.1);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public synchronized void setLimits(Limit switchLimit, Limit portLimit, Limit macLimit) {
+        Preconditions.checkNotNull(switchLimit, "switchLimit");
+        Preconditions.checkNotNull(portLimit, "portLimit");
+        Preconditions.checkNotNull(macLimit, "macLimit");
+        this.switchLimit = switchLimit;
+        this.portLimit = portLimit;
+        this.macLimit = macLimit;
+    }
+
+    public Limit getLimit(Level level) {
+        switch (level) {
+        case SWITCH:
+            return switchLimit;
+        case PORT:
+            return portLimit;
+        default:
+            return macLimit;
+        }
+    }
+
+    public void setMaxMacBuckets(int maxMacBuckets) {
+        Preconditions.checkArgument(maxMacBuckets > 0, "maxMacBuckets must be positive");
+        this.maxMacBuckets = maxMacBuckets;
+    }
+
+    /**
+     * @param adaptive whether to scale the rates with the dispatch latency
+     * @param targetLatencyMicros average listener chain latency to stay below
+     */
+    public synchronized void setAdaptive(boolean adaptive, long targetLatencyMicros) {
+        Preconditions.checkArgument(targetLatencyMicros > 0, "targetLatencyMicros must be positive");
+        this.adaptive = adaptive;
+        this.targetLatencyNs = TimeUnit.MICROSECONDS.toNanos(targetLatencyMicros);
+        if (!adaptive) {
+            scale = 1.0;
+        }
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public long getTargetLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(targetLatencyNs);
+    }
+
+    /** @return factor currently applied to all rates */
+    public double getScale() {
+        return scale;
+    }
+
+    public long getAverageLatencyMicros() {
+        return TimeUnit.NANOSECONDS.toMicros((long) avgLatencyNs);
+    }
+
+    /** @return tokens left in the bucket of each switch */
+    public Map<DatapathId, Double> getSwitchTokens() {
+        Map<DatapathId, Double> tokens = new HashMap<DatapathId, Double>();
+        for (Map.Entry<DatapathId, TokenBucket> e : switchBuckets.entrySet()) {
+            tokens.put(e.getKey(), e.getValue().getTokens());
+        }
+        return tokens;
+    }
+
+    public int getBucketCount(Level level) {
+        switch (level) {
+        case SWITCH:
+            return switchBuckets.size();
+        case PORT:
+            return portBuckets.size();
+        default:
+            return macBuckets.size();
+        }
+    }
+}
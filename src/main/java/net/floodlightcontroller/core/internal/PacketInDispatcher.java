@@ -0,0 +1,259 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.internal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.packet.Ethernet;
+
+/**
+ * Second stage of the packet-in processing. The Netty I/O thread decodes the
+ * packet-in and queues it here; a pool of worker threads then runs the
+ * IOFMessageListener chain, so that a slow listener no longer stalls every
+ * switch sharing the I/O thread's event loop.
+ *
+ * Every switch is pinned to one worker (by its DPID), so the packet-ins of a
+ * switch are still processed one at a time and in the order they arrived.
+ * Each worker has its own bounded queue; when it is full the
+ * {@link OverflowPolicy} decides whether the I/O thread waits for room
+ * (backpressure, which eventually stops reading from the switch) or a
+ * packet-in is dropped.
+ */
+class PacketInDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(PacketInDispatcher.class);
+
+    public enum OverflowPolicy {
+        /** wait up to blockMillis for room, then drop the new packet-in */
+        BLOCK,
+        /** drop the new packet-in */
+        DROP_NEWEST,
+        /** drop the oldest queued packet-in of the worker */
+        DROP_OLDEST
+    }
+
+    /** Runs the listener chain for one queued packet-in */
+    interface IPacketInHandler {
+        void handle(IOFSwitch sw, OFMessage m, Ethernet eth);
+    }
+
+    private static class Event {
+        final IOFSwitch sw;
+        final OFMessage m;
+        final Ethernet eth;
+
+        Event(IOFSwitch sw, OFMessage m, Ethernet eth) {
+            this.sw = sw;
+            this.m = m;
+            this.eth = eth;
+        }
+    }
+
+    private final IPacketInHandler handler;
+    private final ControllerCounters counters;
+    private final OverflowPolicy policy;
+    private final long blockMillis;
+    private final Worker[] workers;
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param handler runs the listener chain
+     * @param counters controller counters, may be null
+     * @param threads number of worker threads
+     * @param queueSize capacity of the queue of each worker
+     * @param policy what to do when the queue of a worker is full
+     * @param blockMillis how long to wait for room with OverflowPolicy.BLOCK
+     */
+    PacketInDispatcher(IPacketInHandler handler, ControllerCounters counters,
+            int threads, int queueSize, OverflowPolicy policy, long blockMillis) {
+        Preconditions.checkNotNull(handler, "handler");
+        Preconditions.checkNotNull(policy, "policy");
+        Preconditions.checkArgument(threads > 0, "threads must be positive");
+        Preconditions.checkArgument(queueSize > 0, "queueSize must be positive");
+        Preconditions.checkArgument(blockMillis >= 0, "blockMillis must not be negative");
+
+        this.handler = handler;
+        this.counters = counters;
+        this.policy = policy;
+        this.blockMillis = blockMillis;
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i, queueSize);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queue a packet-in for the worker of its switch.
+     * @return false if the packet-in was dropped
+     */
+    boolean dispatch(IOFSwitch sw, OFMessage m, Ethernet eth) {
+        Worker worker = workers[workerIndex(sw)];
+        Event event = new Event(sw, m, eth);
+        boolean ok;
+
+        switch (policy) {
+        case BLOCK:
+            try {
+                ok = worker.queue.offer(event, blockMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ok = false;
+            }
+            break;
+        case DROP_OLDEST:
+            ok = worker.queue.offer(event);
+            while (!ok) {
+                if (worker.queue.poll() != null) {
+                    drop();
+                }
+                ok = worker.queue.offer(event);
+            }
+            break;
+        default:
+            ok = worker.queue.offer(event);
+            break;
+        }
+
+        if (!ok) {
+            drop();
+            return false;
+        }
+
+        queued.incrementAndGet();
+        if (counters != null) {
+            counters.packetInQueued.increment();
+        }
+        int depth = worker.queue.size();
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+        return true;
+    }
+
+    private void drop() {
+        dropped.incrementAndGet();
+        if (counters != null) {
+            counters.packetInDropped.increment();
+        }
+    }
+
+    private int workerIndex(IOFSwitch sw) {
+        long dpid = (sw != null && sw.getId() != null) ? sw.getId().getLong() : 0;
+        int hash = (int) (dpid ^ (dpid >>> 32));
+        hash ^= (hash >>> 16);
+        return (hash & Integer.MAX_VALUE) % workers.length;
+    }
+
+    /**
+     * Stop the workers. Queued packet-ins are discarded.
+     */
+    void shutdown() {
+        running = false;
+        for (Worker w : workers) {
+            w.interrupt();
+            w.queue.clear();
+        }
+    }
+
+    int getThreads() {
+        return workers.length;
+    }
+
+    OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /** @return packet-ins currently queued across all workers */
+    int getQueueDepth() {
+        int depth = 0;
+        for (Worker w : workers) {
+            depth += w.queue.size();
+        }
+        return depth;
+    }
+
+    /** @return packet-ins currently queued for each worker */
+    int[] getQueueDepths() {
+        int[] depths = new int[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            depths[i] = workers[i].queue.size();
+        }
+        return depths;
+    }
+
+    /** @return largest queue depth of a single worker seen so far */
+    int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    long getQueuedCount() {
+        return queued.get();
+    }
+
+    long getDroppedCount() {
+        return dropped.get();
+    }
+
+    long getProcessedCount() {
+        return processed.get();
+    }
+
+    private class Worker extends Thread {
+        final BlockingQueue<Event> queue;
+
+        Worker(int index, int queueSize) {
+            super("PacketInWorker-" + index);
+            this.queue = new ArrayBlockingQueue<Event>(queueSize);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                Event event;
+                try {
+                    event = queue.take();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                try {
+                    handler.handle(event.sw, event.m, event.eth);
+                } catch (Exception e) {
+                    log.error("Exception processing packet-in from switch {}",
+                              event.sw != null ? event.sw.getId() : null, e);
+                }
+                processed.incrementAndGet();
+            }
+        }
+    }
+}
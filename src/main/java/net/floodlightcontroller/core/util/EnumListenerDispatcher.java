@@ -0,0 +1,137 @@
+/**
+*    Licensed under the Apache License, Version 2.0 (the "License"); you may
+*    not use this file except in compliance with the License. You may obtain
+*    a copy of the License at
+*
+*         http://www.apache.org/licenses/LICENSE-2.0
+*
+*    Unless required by applicable law or agreed to in writing, software
+*    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+*    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+*    License for the specific language governing permissions and limitations
+*    under the License.
+**/
+
+package net.floodlightcontroller.core.util;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import net.floodlightcontroller.core.IListener;
+
+/**
+ * Maintain one {@link ListenerDispatcher} per value of an enum (e.g. per
+ * OFType), and publish the ordered listeners of every type as an immutable
+ * array.
+ *
+ * The arrays are rebuilt, and published together in a new EnumMap, every
+ * time a listener is added or removed. Readers, i.e. the dispatch loop, get
+ * the listeners of a type with a single volatile load and an array access,
+ * and iterate over them without any lock or copy. Adding and removing
+ * listeners are rare and synchronized.
+ *
+ * @param <U> the listener type enum
+ * @param <T> the listener interface
+ */
+public class EnumListenerDispatcher<U extends Enum<U>, T extends IListener<U>> {
+    private final Class<U> typeClass;
+    private final T[] noListeners;
+    /* guarded by this */
+    private final EnumMap<U, ListenerDispatcher<U, T>> dispatchers;
+    /* never modified once published */
+    private volatile EnumMap<U, T[]> snapshot;
+
+    @SuppressWarnings("unchecked")
+    public EnumListenerDispatcher(Class<U> typeClass, Class<T> listenerClass) {
+        this.typeClass = typeClass;
+        this.noListeners = (T[]) Array.newInstance(listenerClass, 0);
+        this.dispatchers = new EnumMap<U, ListenerDispatcher<U, T>>(typeClass);
+        this.snapshot = new EnumMap<U, T[]>(typeClass);
+    }
+
+    /**
+     * Add a listener of the given type
+     * @param type
+     * @param listener
+     */
+    public synchronized void addListener(U type, T listener) {
+        ListenerDispatcher<U, T> ld = dispatchers.get(type);
+        if (ld == null) {
+            ld = new ListenerDispatcher<U, T>();
+            dispatchers.put(type, ld);
+        }
+        ld.addListener(type, listener);
+        publish();
+    }
+
+    /**
+     * Remove a listener of the given type
+     * @param type
+     * @param listener
+     */
+    public synchronized void removeListener(U type, T listener) {
+        ListenerDispatcher<U, T> ld = dispatchers.get(type);
+        if (ld != null) {
+            ld.removeListener(listener);
+            publish();
+        }
+    }
+
+    /**
+     * Remove all the listeners of the given type
+     * @param type
+     */
+    public synchronized void removeListeners(U type) {
+        if (dispatchers.remove(type) != null) {
+            publish();
+        }
+    }
+
+    /**
+     * Remove all the listeners
+     */
+    public synchronized void clearListeners() {
+        dispatchers.clear();
+        publish();
+    }
+
+    private void publish() {
+        EnumMap<U, T[]> s = new EnumMap<U, T[]>(typeClass);
+        for (Map.Entry<U, ListenerDispatcher<U, T>> e : dispatchers.entrySet()) {
+            List<T> ordered = e.getValue().getOrderedListeners();
+            if (!ordered.isEmpty()) {
+                s.put(e.getKey(), ordered.toArray(noListeners));
+            }
+        }
+        snapshot = s;
+    }
+
+    /**
+     * Get the listeners of a type, ordered by dependencies. The array is
+     * shared and must not be modified. A new array is published whenever
+     * the listeners of any type change, so callers may compare arrays by
+     * identity to detect changes.
+     * @param type
+     * @return the listeners, an empty array if there are none
+     */
+    public T[] getListeners(U type) {
+        T[] listeners = snapshot.get(type);
+        return listeners == null ? noListeners : listeners;
+    }
+
+    /**
+     * Get the ordered listeners of all the types which have any
+     * @return an unmodifiable map of unmodifiable lists
+     */
+    public Map<U, List<T>> getOrderedListeners() {
+        EnumMap<U, List<T>> lists = new EnumMap<U, List<T>>(typeClass);
+        for (Map.Entry<U, T[]> e : snapshot.entrySet()) {
+            lists.put(e.getKey(), Collections.unmodifiableList(Arrays.asList(e.getValue())));
+        }
+        return Collections.unmodifiableMap(lists);
+    }
+}
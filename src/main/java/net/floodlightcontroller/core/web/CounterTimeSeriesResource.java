@@ -0,0 +1,115 @@
+package net.floodlightcontroller.core.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.debugcounter.CounterSamples;
+
+import org.restlet.data.MediaType;
+import org.restlet.data.Reference;
+import org.restlet.data.Status;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+
+/**
+ * Stream the samples of a counter, one JSON object per line:
+ * {"time": ms since the epoch, "value": counter value, "rate": per second
+ * since the previous sample}.
+ *
+ * Query parameters:
+ * since  - only the samples taken after this time (ms since the epoch)
+ * follow - keep the connection open for that many seconds (at most
+ *          MAX_FOLLOW_SECONDS) and write new samples as they are taken.
+ *          At most MAX_FOLLOW_STREAMS requests follow at a time, the
+ *          others only get the samples already taken.
+ */
+public class CounterTimeSeriesResource extends CounterResourceBase {
+    /* bound the time and the number of REST threads held by clients */
+    protected static final long MAX_FOLLOW_SECONDS = 60;
+    protected static final int MAX_FOLLOW_STREAMS = 4;
+
+    private static final AtomicInteger followStreams = new AtomicInteger();
+
+    @Get("json")
+    public Representation retrieve() {
+        final String counterModule = Reference.decode((String) getRequestAttributes().get(CoreWebRoutable.STR_CTR_MODULE));
+        final String counterTitle = Reference.decode((String) getRequestAttributes().get(CoreWebRoutable.STR_CTR_TITLE));
+        final long since;
+        final long follow;
+        try {
+            since = Long.parseLong(getQueryValue("since") == null ? "0" : getQueryValue("since"));
+            follow = Math.min(MAX_FOLLOW_SECONDS,
+                    Long.parseLong(getQueryValue("follow") == null ? "0" : getQueryValue("follow")));
+        } catch (NumberFormatException e) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "since and follow must be numbers");
+            return null;
+        }
+
+        final CounterSamples samples = debugCounterService.getCounterSamples(counterModule, counterTitle, since);
+        if (samples == null) {
+            setStatus(Status.CLIENT_ERROR_NOT_FOUND, "No samples of counter " + counterModule
+                    + "/" + counterTitle + ". Is it registered and are time series enabled?");
+            return null;
+        }
+
+        return new OutputRepresentation(MediaType.APPLICATION_JSON) {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                boolean following = follow > 0 && followStreams.incrementAndGet() <= MAX_FOLLOW_STREAMS;
+                try {
+                    write(out, following ? follow : 0);
+                } finally {
+                    if (follow > 0) {
+                        followStreams.decrementAndGet();
+                    }
+                }
+            }
+
+            private void write(OutputStream out, long followSeconds) throws IOException {
+                long deadline = System.currentTimeMillis() + followSeconds * 1000;
+                long resolution = debugCounterService.getTimeSeriesResolutionMs();
+                CounterSamples s = samples;
+                long last = since;
+                boolean written = false;
+                /* sample 0 of a refetch is the last one written, only
+                 * fetched again as the base of the next rate */
+                int first = 0;
+                while (true) {
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = first; i < s.size(); i++) {
+                        /* the first sample has no rate */
+                        double rate = i == 0 ? Double.NaN : s.getRate(i);
+                        sb.append("{\"time\":").append(s.getTime(i))
+                          .append(",\"value\":").append(s.getValue(i))
+                          .append(",\"rate\":").append(Double.isNaN(rate) ? "null" : String.valueOf(rate))
+                          .append("}\n");
+                        last = s.getTime(i);
+                        written = true;
+                    }
+                    out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+
+                    if (System.currentTimeMillis() >= deadline || resolution <= 0) {
+                        return;
+                    }
+                    try {
+                        Thread.sleep(Math.min(resolution, Math.max(1, deadline - System.currentTimeMillis())));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    s = debugCounterService.getCounterSamples(counterModule, counterTitle,
+                            written ? last - 1 : last);
+                    if (s == null) {
+                        /* the counter was removed */
+                        return;
+                    }
+                    first = written && s.size() > 0 && s.getTime(0) == last ? 1 : 0;
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.web;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.restlet.resource.Get;
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.internal.PacketInAdmissionControl;
+import net.floodlightcontroller.core.internal.PacketInAdmissionControl.Level;
+import net.floodlightcontroller.core.internal.PacketInAdmissionControl.Limit;
+
+/**
+ * Inspect and adjust the packet-in admission control.
+ *
+ * GET returns the limits, the adaptive state and the tokens left per switch.
+ * POST takes any of enabled, adaptive, target_latency_us, switch_rate,
+ * switch_burst, port_rate, port_burst, mac_rate and mac_burst; a rate of 0
+ * disables that level.
+ */
+public class PacketInAdmissionResource extends ServerResource {
+    protected static Logger log = LoggerFactory.getLogger(PacketInAdmissionResource.class);
+
+    private static final String STR_ENABLED = "enabled";
+    private static final String STR_ADAPTIVE = "adaptive";
+    private static final String STR_TARGET_LATENCY = "target_latency_us";
+    private static final String STR_AVG_LATENCY = "average_latency_us";
+    private static final String STR_SCALE = "scale";
+    private static final String STR_RATE = "_rate";
+    private static final String STR_BURST = "_burst";
+    private static final String STR_BUCKETS = "_buckets";
+    private static final String STR_SWITCH_TOKENS = "switch_tokens";
+
+    private PacketInAdmissionControl getAdmissionControl() {
+        IFloodlightProviderService floodlightProvider =
+                (IFloodlightProviderService)getContext().getAttributes().
+                    get(IFloodlightProviderService.class.getCanonicalName());
+        return floodlightProvider.getPacketInAdmissionControl();
+    }
+
+    @Get("json")
+    public Map<String, Object> getAdmission() {
+        PacketInAdmissionControl admission = getAdmissionControl();
+        Map<String, Object> retValue = new HashMap<String, Object>();
+        retValue.put(STR_ENABLED, admission.isEnabled());
+        retValue.put(STR_ADAPTIVE, admission.isAdaptive());
+        retValue.put(STR_TARGET_LATENCY, admission.getTargetLatencyMicros());
+        retValue.put(STR_AVG_LATENCY, admission.getAverageLatencyMicros());
+        retValue.put(STR_SCALE, admission.getScale());
+        for (Level level : Level.values()) {
+            String name = level.name().toLowerCase();
+            Limit limit = admission.getLimit(level);
+            retValue.put(name + STR_RATE, limit.rate);
+            retValue.put(name + STR_BURST, limit.burst);
+            retValue.put(name + STR_BUCKETS, admission.getBucketCount(level));
+        }
+        Map<String, Double> tokens = new HashMap<String, Double>();
+        for (Entry<DatapathId, Double> e : admission.getSwitchTokens().entrySet()) {
+            tokens.put(e.getKey().toString(), e.getValue());
+        }
+        retValue.put(STR_SWITCH_TOKENS, tokens);
+        return retValue;
+    }
+
+    @Post
+    public Map<String, Object> setAdmission(String json) {
+        PacketInAdmissionControl admission = getAdmissionControl();
+        Map<String, String> values = new HashMap<String, String>();
+
+        MappingJsonFactory f = new MappingJsonFactory();
+        try {
+            JsonParser jp = f.createParser(json);
+            jp.nextToken();
+            if (jp.getCurrentToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected START_OBJECT");
+            }
+            while (jp.nextToken() != JsonToken.END_OBJECT) {
+                if (jp.getCurrentToken() != JsonToken.FIELD_NAME) {
+                    throw new IOException("Expected FIELD_NAME");
+                }
+                String n = jp.getCurrentName().toLowerCase();
+                jp.nextToken();
+                values.put(n, jp.getText());
+            }
+        } catch (IOException e) {
+            log.error("Could not parse packet-in admission request {}", json, e);
+            return error("Could not parse JSON: " + e.getMessage());
+        }
+
+        try {
+            Limit switchLimit = parseLimit(values, Level.SWITCH, admission.getLimit(Level.SWITCH));
+            Limit portLimit = parseLimit(values, Level.PORT, admission.getLimit(Level.PORT));
+            Limit macLimit = parseLimit(values, Level.MAC, admission.getLimit(Level.MAC));
+            boolean adaptive = values.containsKey(STR_ADAPTIVE)
+                    ? Boolean.parseBoolean(values.get(STR_ADAPTIVE)) : admission.isAdaptive();
+            long target = values.containsKey(STR_TARGET_LATENCY)
+                    ? Long.parseLong(values.get(STR_TARGET_LATENCY)) : admission.getTargetLatencyMicros();
+
+            admission.setLimits(switchLimit, portLimit, macLimit);
+            admission.setAdaptive(adaptive, target);
+            if (values.containsKey(STR_ENABLED)) {
+                admission.setEnabled(Boolean.parseBoolean(values.get(STR_ENABLED)));
+            }
+        } catch (IllegalArgumentException e) {
+            return error(e.getMessage());
+        }
+        return getAdmission();
+    }
+
+    private static Limit parseLimit(Map<String, String> values, Level level, Limit current) {
+        String name = level.name().toLowerCase();
+        double rate = current.rate;
+        double burst = current.burst;
+        if (values.containsKey(name + STR_RATE)) {
+            rate = Double.parseDouble(values.get(name + STR_RATE));
+            if (!values.containsKey(name + STR_BURST)) {
+                burst = Math.max(1, rate * 2);
+            }
+        }
+        if (values.containsKey(name + STR_BURST)) {
+            burst = Double.parseDouble(values.get(name + STR_BURST));
+        }
+        return new Limit(rate, burst);
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> retValue = new HashMap<String, Object>();
+        retValue.put("ERROR", message);
+        return retValue;
+    }
+}
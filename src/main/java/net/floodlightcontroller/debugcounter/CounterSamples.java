@@ -0,0 +1,112 @@
+package net.floodlightcontroller.debugcounter;
+
+import javax.annotation.concurrent.Immutable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Values of a counter sampled at regular intervals, oldest first, as
+ * returned by {@link IDebugCounterService#getCounterSamples}.
+ *
+ * Rates are computed from the differences between consecutive samples. A
+ * counter whose value went down was reset in between, and is assumed to
+ * have counted from zero since.
+ */
+@Immutable
+public class CounterSamples {
+    private final String moduleName;
+    private final String counterHierarchy;
+    private final long[] times;
+    private final long[] values;
+
+    CounterSamples(String moduleName, String counterHierarchy,
+                   long[] times, long[] values) {
+        this.moduleName = moduleName;
+        this.counterHierarchy = counterHierarchy;
+        this.times = times;
+        this.values = values;
+    }
+
+    @JsonProperty("module")
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    @JsonProperty("hierarchy")
+    public String getCounterHierarchy() {
+        return counterHierarchy;
+    }
+
+    @JsonIgnore
+    public int size() {
+        return times.length;
+    }
+
+    /**
+     * @return the time of each sample, in ms since the epoch
+     */
+    @JsonProperty("times")
+    public long[] getTimes() {
+        return times.clone();
+    }
+
+    @JsonProperty("values")
+    public long[] getValues() {
+        return values.clone();
+    }
+
+    public long getTime(int index) {
+        return times[index];
+    }
+
+    public long getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return how much the counter was incremented between the sample
+     * before index and the one at index
+     */
+    public long getDelta(int index) {
+        long delta = values[index] - values[index - 1];
+        return delta < 0 ? values[index] : delta;
+    }
+
+    /**
+     * @return the rate per second between the sample before index and the
+     * one at index
+     */
+    public double getRate(int index) {
+        long interval = times[index] - times[index - 1];
+        return interval <= 0 ? Double.NaN : getDelta(index) * 1000.0 / interval;
+    }
+
+    /**
+     * @return the rate per second between consecutive samples; it has one
+     * element less than the samples
+     */
+    @JsonProperty("rates")
+    public double[] getRates() {
+        double[] rates = new double[Math.max(0, times.length - 1)];
+        for (int i = 1; i < times.length; i++) {
+            rates[i - 1] = getRate(i);
+        }
+        return rates;
+    }
+
+    /**
+     * @return the average rate per second over all the samples, NaN if
+     * there are less than two
+     */
+    @JsonProperty("rate")
+    public double getRate() {
+        if (times.length < 2 || times[times.length - 1] <= times[0])
+            return Double.NaN;
+        long total = 0;
+        for (int i = 1; i < times.length; i++) {
+            total += getDelta(i);
+        }
+        return total * 1000.0 / (times[times.length - 1] - times[0]);
+    }
+}
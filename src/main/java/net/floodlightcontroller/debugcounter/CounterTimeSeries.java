@@ -0,0 +1,102 @@
+package net.floodlightcontroller.debugcounter;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Samples the values of all the counters at a fixed resolution into ring
+ * buffers covering the retention period.
+ *
+ * The buffers are primitive long arrays: the time of the samples is kept
+ * once for all the counters, and every counter holds an array of its values
+ * (see {@link DebugCounterImpl#samples}), so the memory used is fixed
+ * at 8 bytes per sample per counter, e.g. 4.8 kB per counter for 1s samples
+ * kept for 10 minutes. A counter registered later starts with the next
+ * sample; a removed counter goes away with its samples.
+ */
+class CounterTimeSeries {
+    private final long resolutionMs;
+    private final int capacity;
+
+    @GuardedBy("this")
+    private final long[] times;
+    /* number of samples taken so far */
+    @GuardedBy("this")
+    private long count;
+
+    /**
+     * @param resolutionMs interval between two samples
+     * @param retentionMs how long samples are kept
+     */
+    CounterTimeSeries(long resolutionMs, long retentionMs) {
+        if (resolutionMs <= 0 || retentionMs < resolutionMs)
+            throw new IllegalArgumentException("Invalid time series resolution "
+                    + resolutionMs + "ms or retention " + retentionMs + "ms");
+        this.resolutionMs = resolutionMs;
+        long c = retentionMs / resolutionMs + 1;
+        if (c > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many samples to keep: " + c);
+        this.capacity = (int) c;
+        this.times = new long[capacity];
+    }
+
+    long getResolutionMs() {
+        return resolutionMs;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Take a sample of the given counters
+     * @param counters all the registered counters
+     * @param nowMs time of the sample
+     */
+    synchronized void sample(Iterable<DebugCounterImpl> counters, long nowMs) {
+        int slot = (int) (count % capacity);
+        times[slot] = nowMs;
+        for (DebugCounterImpl c : counters) {
+            if (c.samples == null) {
+                c.samples = new long[capacity];
+                c.firstSample = count;
+            }
+            c.samples[slot] = c.getCounterValue();
+        }
+        count++;
+    }
+
+    /**
+     * @return time of the last sample taken, 0 if none
+     */
+    synchronized long getLastSampleTime() {
+        return count == 0 ? 0 : times[(int) ((count - 1) % capacity)];
+    }
+
+    /**
+     * @param counter the counter
+     * @param sinceMs only return the samples taken after this time
+     * @return the samples of the counter, oldest first
+     */
+    synchronized CounterSamples getSamples(DebugCounterImpl counter, long sinceMs) {
+        long first = Math.max(count - capacity, 0);
+        if (counter.samples == null) {
+            first = count;
+        } else {
+            first = Math.max(first, counter.firstSample);
+        }
+        /* samples are in time order, skip the older ones */
+        while (first < count && times[(int) (first % capacity)] <= sinceMs) {
+            first++;
+        }
+        int n = (int) (count - first);
+        long[] t = new long[n];
+        long[] v = new long[n];
+        for (int i = 0; i < n; i++) {
+            int slot = (int) ((first + i) % capacity);
+            t[i] = times[slot];
+            v[i] = counter.samples[slot];
+        }
+        return new CounterSamples(counter.getModuleName(),
+                counter.getCounterHierarchy(), t, v);
+    }
+}
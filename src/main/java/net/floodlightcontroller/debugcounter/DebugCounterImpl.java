@@ -1,8 +1,7 @@
 package net.floodlightcontroller.debugcounter;
 
 import java.util.Collection;
-import java.util.Date;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.Nonnull;
 
@@ -12,15 +11,34 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 
 
+/**
+ * A counter incremented concurrently by many threads, e.g. the I/O threads
+ * handling packet-ins. The value is kept in striped cells (a LongAdder), so
+ * that threads incrementing the same counter do not contend on one cache
+ * line, and the cells are summed when the counter is read.
+ *
+ * The last modification time is not stamped on every increment either. It
+ * is computed when it is read: a counter whose value changed since the
+ * previous read was last modified at the time of this read. It is thus the
+ * time the modification was first observed, which is later than the actual
+ * modification by at most the interval between two reads.
+ */
 class DebugCounterImpl implements IDebugCounter {
     private final String moduleName;
     private final String counterHierarchy;
     private final String description;
     private final ImmutableSet<IDebugCounterService.MetaData> metaData;
 
-    private final AtomicLong value = new AtomicLong();
+    private final LongAdder value = new LongAdder();
 
-    private final Date lastModified = new Date(); // should return long ms to ensure immutability
+    /* guarded by this */
+    private long lastModified;
+    private long lastObservedValue;
+
+    /* ring of sampled values, guarded by the CounterTimeSeries taking them */
+    long[] samples;
+    /* index of the first sample taken of this counter */
+    long firstSample;
 
     DebugCounterImpl(@Nonnull String moduleName,
                      @Nonnull String counterHierarchy,
@@ -30,7 +48,7 @@ class DebugCounterImpl implements IDebugCounter {
         this.counterHierarchy = counterHierarchy;
         this.description = description;
         this.metaData = Sets.immutableEnumSet(metaData);
-        this.lastModified.setTime(System.currentTimeMillis());
+        this.lastModified = System.currentTimeMillis();
     }
 
     @Nonnull
@@ -57,14 +75,16 @@ class DebugCounterImpl implements IDebugCounter {
 
     @Override
     public void reset() {
-        value.set(0);
-        lastModified.setTime(System.currentTimeMillis());
+        value.reset();
+        synchronized (this) {
+            lastObservedValue = 0;
+            lastModified = System.currentTimeMillis();
+        }
     }
 
     @Override
     public void increment() {
-        value.incrementAndGet();
-        lastModified.setTime(System.currentTimeMillis());
+        value.increment();
     }
 
     @Override
@@ -73,18 +93,22 @@ class DebugCounterImpl implements IDebugCounter {
             throw new IllegalArgumentException("increment must be > 0. Was "
                     + increment);
         }
-        value.addAndGet(increment);
-        lastModified.setTime(System.currentTimeMillis());
+        value.add(increment);
     }
 
     @Override
     public long getCounterValue() {
-        return value.get();
+        return value.sum();
     }
     
 	@Override
-	public long getLastModified() {
-		return lastModified.getTime();
+	public synchronized long getLastModified() {
+		long v = value.sum();
+		if (v != lastObservedValue) {
+			lastObservedValue = v;
+			lastModified = Math.max(lastModified, System.currentTimeMillis());
+		}
+		return lastModified;
 	}
 
     @Override
@@ -126,7 +150,7 @@ class DebugCounterImpl implements IDebugCounter {
         } else if (!moduleName.equals(other.moduleName)) return false;
         if (value == null) {
             if (other.value != null) return false;
-        } else if (value.get() != other.value.get()) return false;
+        } else if (value.sum() != other.value.sum()) return false;
         return true;
     }
 
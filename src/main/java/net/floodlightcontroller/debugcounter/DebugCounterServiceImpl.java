@@ -3,13 +3,16 @@ package net.floodlightcontroller.debugcounter;
 import net.floodlightcontroller.core.IShutdownListener;
 import net.floodlightcontroller.core.IShutdownService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.concurrent.GuardedBy;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounterService {
@@ -28,6 +31,15 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
      */
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
+    /**
+     * Time series of the counters, null if disabled
+     */
+    private volatile CounterTimeSeries timeSeries;
+
+    protected static final String TIME_SERIES_STR = "timeSeries";
+    protected static final String TIME_SERIES_RESOLUTION_STR = "timeSeriesResolutionSeconds";
+    protected static final String TIME_SERIES_RETENTION_STR = "timeSeriesRetentionSeconds";
+
     static void verifyStringSanity(String str, String name) {
         if (str == null) {
             if (name == null) {
@@ -225,6 +237,74 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
         }
     }
 
+    @Override
+    public CounterSamples getCounterSamples(String moduleName,
+                                            String counterHierarchy, long sinceMs) {
+        verifyModuleNameSanity(moduleName);
+        verifyStringSanity(counterHierarchy, "counterHierarchy");
+        CounterTimeSeries ts = timeSeries;
+        if (ts == null) {
+            return null;
+        }
+        List<String> hierarchyElements =
+                CounterNode.getHierarchyElements(moduleName, counterHierarchy);
+        DebugCounterImpl counter;
+        lock.readLock().lock();
+        try {
+            CounterNode node = root.lookup(hierarchyElements);
+            counter = (node == null) ? null : node.getCounter();
+        } finally {
+            lock.readLock().unlock();
+        }
+        return (counter == null) ? null : ts.getSamples(counter, sinceMs);
+    }
+
+    @Override
+    public double getCounterRate(String moduleName, String counterHierarchy,
+                                 long periodMs) {
+        CounterTimeSeries ts = timeSeries;
+        if (ts == null) {
+            return Double.NaN;
+        }
+        /* the sample just before the period is needed for the first delta */
+        CounterSamples samples = getCounterSamples(moduleName, counterHierarchy,
+                ts.getLastSampleTime() - periodMs - ts.getResolutionMs());
+        return (samples == null) ? Double.NaN : samples.getRate();
+    }
+
+    @Override
+    public long getTimeSeriesResolutionMs() {
+        CounterTimeSeries ts = timeSeries;
+        return (ts == null) ? 0 : ts.getResolutionMs();
+    }
+
+    /**
+     * Keep samples of all the counters
+     * @param resolutionMs interval between two samples, which are taken
+     * by calling {@link #sampleCounters(long)}
+     * @param retentionMs how long samples are kept
+     */
+    void enableTimeSeries(long resolutionMs, long retentionMs) {
+        timeSeries = new CounterTimeSeries(resolutionMs, retentionMs);
+    }
+
+    /**
+     * Take a sample of all the counters
+     * @param nowMs time of the sample, in ms since the epoch
+     */
+    void sampleCounters(long nowMs) {
+        CounterTimeSeries ts = timeSeries;
+        if (ts == null) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            ts.sample(root.getCountersInHierarchy(), nowMs);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
     private class ShutdownListenenerDelegate implements IShutdownListener {
         @Override
         public void floodlightIsShuttingDown() {
@@ -262,11 +342,37 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
        ArrayList<Class<? extends IFloodlightService>> deps =
                new ArrayList<Class<? extends IFloodlightService>>();
        deps.add(IShutdownService.class);
+       deps.add(IThreadPoolService.class);
        return deps;
    }
 
    @Override
-   public void init(FloodlightModuleContext context) {
+   public void init(FloodlightModuleContext context) throws FloodlightModuleException {
+       Map<String, String> config = context.getConfigParams(this);
+       /* off unless asked for: each counter keeps retention / resolution samples
+        * and all of them are walked at every sample */
+       boolean enabled = false;
+       long resolution = 1;
+       long retention = 600;
+       try {
+           if (config.containsKey(TIME_SERIES_STR)) {
+               enabled = Boolean.parseBoolean(config.get(TIME_SERIES_STR).trim());
+           }
+           if (config.containsKey(TIME_SERIES_RESOLUTION_STR)) {
+               resolution = Long.parseLong(config.get(TIME_SERIES_RESOLUTION_STR).trim());
+           }
+           if (config.containsKey(TIME_SERIES_RETENTION_STR)) {
+               retention = Long.parseLong(config.get(TIME_SERIES_RETENTION_STR).trim());
+           }
+           if (enabled) {
+               enableTimeSeries(resolution * 1000, retention * 1000);
+           }
+       } catch (IllegalArgumentException e) {
+           throw new FloodlightModuleException("Invalid counter time series configuration: "
+                   + e.getMessage());
+       }
+       logger.info("Counter time series {}", enabled ? "sampled every " + resolution
+               + "s, kept for " + retention + "s" : "disabled");
    }
 
    @Override
@@ -274,6 +380,22 @@ public class DebugCounterServiceImpl implements IFloodlightModule, IDebugCounter
        IShutdownService shutdownService =
                context.getServiceImpl(IShutdownService.class);
        shutdownService.registerShutdownListener(new ShutdownListenenerDelegate());
+
+       CounterTimeSeries ts = timeSeries;
+       IThreadPoolService threadPoolService =
+               context.getServiceImpl(IThreadPoolService.class);
+       if (ts != null && threadPoolService != null) {
+           threadPoolService.getScheduledExecutor().scheduleAtFixedRate(new Runnable() {
+               @Override
+               public void run() {
+                   try {
+                       sampleCounters(System.currentTimeMillis());
+                   } catch (Exception e) {
+                       logger.error("Exception while sampling counters", e);
+                   }
+               }
+           }, ts.getResolutionMs(), ts.getResolutionMs(), TimeUnit.MILLISECONDS);
+       }
    }
 
 }
@@ -130,4 +130,39 @@ public interface IDebugCounterService extends IFloodlightService {
      */
     public  List<DebugCounterResource> getModuleCounterValues(String moduleName);
 
+    /**
+     * Get the values of a counter sampled at regular intervals, see
+     * {@link #getTimeSeriesResolutionMs()}, for the retention period of
+     * the samples.
+     *
+     * @param moduleName
+     * @param counterHierarchy the counter; the counters below it are not
+     *                         returned
+     * @param sinceMs          only return the samples taken after this time,
+     *                         in ms since the epoch; 0 for all of them
+     * @return the samples, oldest first, or null if the counter does not
+     *         exist or the time series are disabled
+     */
+    public CounterSamples getCounterSamples(String moduleName, String counterHierarchy,
+                                            long sinceMs);
+
+    /**
+     * Get the rate at which a counter was incremented, computed from its
+     * samples.
+     *
+     * @param moduleName
+     * @param counterHierarchy
+     * @param periodMs         the period to average over, ending now
+     * @return the rate per second, or NaN if the counter does not exist,
+     *         the time series are disabled or there are not enough samples
+     */
+    public double getCounterRate(String moduleName, String counterHierarchy,
+                                 long periodMs);
+
+    /**
+     * @return interval between two samples of the counters, or 0 if the
+     *         time series are disabled
+     */
+    public long getTimeSeriesResolutionMs();
+
 }
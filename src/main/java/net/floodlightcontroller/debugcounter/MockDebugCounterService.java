@@ -52,6 +52,23 @@ public class MockDebugCounterService implements IFloodlightModule, IDebugCounter
 
     }
 
+    @Override
+    public CounterSamples getCounterSamples(String moduleName,
+                                            String counterHierarchy, long sinceMs) {
+        return null;
+    }
+
+    @Override
+    public double getCounterRate(String moduleName, String counterHierarchy,
+                                 long periodMs) {
+        return Double.NaN;
+    }
+
+    @Override
+    public long getTimeSeriesResolutionMs() {
+        return 0;
+    }
+
     @Override
     public boolean registerModule(String moduleName) {
         return true;
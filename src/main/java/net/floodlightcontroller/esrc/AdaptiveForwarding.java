@@ -8,9 +8,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
-import net.floodlightcontroller.packet.ARP;
-import net.floodlightcontroller.packet.Ethernet;
-import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.EthernetView;
 import net.floodlightcontroller.statistics.IStatisticsService;
 import net.floodlightcontroller.statistics.StatisticsCollector;
 import net.floodlightcontroller.statistics.SwitchPortBandwidth;
@@ -95,7 +93,11 @@ public class AdaptiveForwarding implements IAdaptiveListener, IOFMessageListener
     public Command receive(IOFSwitch sw, OFMessage msg, FloodlightContext cntx) {
         switch (msg.getType()) {
             case PACKET_IN:
-                Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+                EthernetView eth = IFloodlightProviderService.piPayloadViewKey.get(cntx);
+                if (eth == null) {
+                    eth = EthernetView.of(((OFPacketIn) msg).getData());
+                    IFloodlightProviderService.piPayloadViewKey.put(cntx, eth);
+                }
                 OFFactory ofFactory = sw.getOFFactory();
                 switchDpids = switchManager.getAllSwitchDpids().stream().collect(Collectors.toList());
 
@@ -113,27 +115,26 @@ public class AdaptiveForwarding implements IAdaptiveListener, IOFMessageListener
                     if (eth.getEtherType() == EthType.ARP) {
                         logger.debug("-SWITCH: " + switchDpids.get(0).toString());
                         logger.debug("--ARP");
-                        ARP arpPkt = (ARP) eth.getPayload();
-                        if (arpPkt.getTargetProtocolAddress().equals(r1MininetIpAddr)) {
+                        IPv4Address arpTarget = eth.getArpTargetProtocolAddress();
+                        if (r1MininetIpAddr.equals(arpTarget)) {
                             logger.debug("---To R1");
                             OFPacketOut pktOut = ofFactory.buildPacketOut()
-                                    .setData(eth.serialize())
+                                    .setData(eth.getData())
                                     .setActions(Collections.singletonList(ofFactory.actions().output(OFPort.of(1), 0)))
                                     .setInPort(OFPort.CONTROLLER)
                                     .build();
                             sw.write(pktOut);
-                        } else if (arpPkt.getTargetProtocolAddress().equals(r2MininetIpAddr)) {
+                        } else if (r2MininetIpAddr.equals(arpTarget)) {
                             logger.debug("---To R2");
                             OFPacketOut pktOut = ofFactory.buildPacketOut()
-                                    .setData(eth.serialize())
+                                    .setData(eth.getData())
                                     .setActions(Collections.singletonList(ofFactory.actions().output(OFPort.of(2), 0)))
                                     .setInPort(OFPort.CONTROLLER)
                                     .build();
                             sw.write(pktOut);
                         }
                     } else if (eth.getEtherType() == EthType.IPv4) {
-                        IPv4 ipPkt = (IPv4) eth.getPayload();
-                        if (ipPkt.getProtocol() == IpProtocol.UDP) break;
+                        if (eth.getIpProtocol() == IpProtocol.UDP) break;
                         logger.debug("-SWITCH: " + switchDpids.get(0).toString());
                         logger.debug("--IPv4");
                         Match matchIpToR1 = ofFactory.buildMatch()
@@ -204,27 +205,26 @@ public class AdaptiveForwarding implements IAdaptiveListener, IOFMessageListener
                     if (eth.getEtherType() == EthType.ARP) {
                         logger.debug("-SWITCH: " + sw.getId().toString());
                         logger.debug("--ARP");
-                        ARP arpPkt = (ARP) eth.getPayload();
-                        if (arpPkt.getTargetProtocolAddress().equals(r1MininetIpAddr)) {
+                        IPv4Address arpTarget = eth.getArpTargetProtocolAddress();
+                        if (r1MininetIpAddr.equals(arpTarget)) {
                             logger.debug("---To R1");
                             OFPacketOut pktOut = ofFactory.buildPacketOut()
-                                    .setData(eth.serialize())
+                                    .setData(eth.getData())
                                     .setActions(Collections.singletonList(ofFactory.actions().output(OFPort.of(2), 0)))
                                     .setInPort(OFPort.CONTROLLER)
                                     .build();
                             sw.write(pktOut);
-                        } else if (arpPkt.getTargetProtocolAddress().equals(r2MininetIpAddr)) {
+                        } else if (r2MininetIpAddr.equals(arpTarget)) {
                             logger.debug("---To R2");
                             OFPacketOut pktOut = ofFactory.buildPacketOut()
-                                    .setData(eth.serialize())
+                                    .setData(eth.getData())
                                     .setActions(Collections.singletonList(ofFactory.actions().output(OFPort.of(1), 0)))
                                     .setInPort(OFPort.CONTROLLER)
                                     .build();
                             sw.write(pktOut);
                         }
                     } else if (eth.getEtherType() == EthType.IPv4) {
-                        IPv4 ipPkt = (IPv4) eth.getPayload();
-                        if (ipPkt.getProtocol() == IpProtocol.UDP) break;
+                        if (eth.getIpProtocol() == IpProtocol.UDP) break;
                         logger.debug("-SWITCH: " + sw.getId().toString());
                         logger.debug("--IPv4");
                         Match matchIpToR1 = ofFactory.buildMatch()
@@ -483,10 +483,15 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
 
         U64 flowSetId = flowSetIdRegistry.generateFlowSetId();
         U64 cookie = makeForwardingCookie(decision, flowSetId);
-        Path path = routingEngineService.getPath(srcSw, 
-                srcPort,
-                dstAp.getNodeId(),
-                dstAp.getPortId());
+        Path path = PICK_LEAST_LOADED_PATH
+                ? routingEngineService.getLeastLoadedPath(srcSw,
+                        srcPort,
+                        dstAp.getNodeId(),
+                        dstAp.getPortId())
+                : routingEngineService.getPath(srcSw, 
+                        srcPort,
+                        dstAp.getNodeId(),
+                        dstAp.getPortId());
 
         Match m = createMatchFromPacket(sw, srcPort, pi, cntx);
 
@@ -869,6 +874,16 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule, IOF
         } else {
             log.info("Flows will not be removed on link/port down events");
         }
+
+        tmp = configParameters.get("pick-least-loaded-path");
+        if (tmp != null) {
+            PICK_LEAST_LOADED_PATH = Boolean.parseBoolean(tmp);
+        }
+        if (PICK_LEAST_LOADED_PATH) {
+            log.info("Flows will take the least loaded of the precomputed paths");
+        } else {
+            log.info("Flows will take the lowest cost path");
+        }
     }
 
     @Override
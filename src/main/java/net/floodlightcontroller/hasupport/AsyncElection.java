@@ -16,556 +16,849 @@ package net.floodlightcontroller.hasupport;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.Set;
-import java.util.StringTokenizer;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
 import net.floodlightcontroller.hasupport.NetworkInterface.ElectionState;
 import net.floodlightcontroller.hasupport.NetworkInterface.netState;
 
 /**
  * The Election class
  *
- * This class implements a simple self stabilizing, leader election protocol
- * which is fault tolerant up to N nodes. The concept behind this implementation
- * is described in Scott D. Stoller's 1997 paper 'Leader Election in Distributed
- * Systems with Crash Failures' The ALE1 & ALE2' requirements are being
- * followed.
+ * This class implements a term based leader election, along the lines of the
+ * leader election in Raft (Ongaro and Ousterhout, 'In Search of an
+ * Understandable Consensus Algorithm', 2014).
+ *
+ * Every node keeps a monotonically increasing term number, and votes for at
+ * most one candidate per term. A follower which has not heard from a leader
+ * for a randomized election timeout first runs a pre-vote: it asks the other
+ * nodes whether they would vote for it in the next term, without changing
+ * anybody's term. Only if a majority of all configured nodes (including
+ * itself) agree does it increment its term and ask for real votes, and it
+ * becomes the leader once a majority has voted for it. The pre-vote keeps a
+ * node that was partitioned away from bumping the term and disrupting a
+ * healthy leader when it comes back.
+ *
+ * Leader lease: the leader sends a HEARTBEAT every heartbeat interval, and
+ * followers do not grant (pre-)votes to anyone while they have heard from
+ * their leader within the election timeout. The leader in turn only holds
+ * its lease for a little less than that, counted from the start of the last
+ * heartbeat round which a majority acknowledged, and steps down as soon as
+ * the lease runs out. A leader in a minority partition thus steps down before
+ * the majority partition can elect a new one, and any message carrying a
+ * higher term makes a stale leader step down immediately.
+ *
+ * Election priorities, if set, order the election timeouts of the nodes so
+ * that the preferred nodes stand for election first.
  *
- * We have an additional constraint that AT LEAST 51% of the nodes must be fully
- * connected before the election happens, this is in order to ensure that there
- * will be at least one group which will produce a majority response to elect
- * one leader. However, the drawback of this system is that 51% of the nodes
- * have to be connected in order for the election to begin. (transition from
- * CONNECT -> ELECT)
+ * The state machine (CONNECT, ELECT, SPIN, COORDINATE) is event driven: all
+ * state transitions happen on a single event loop. A HashedWheelTimer delivers
+ * a TICK every heartbeat interval, or at the election deadline if that comes
+ * first, and leader changes made by the HAServer are delivered as
+ * LEADER_CHANGED events. Between events the loop is idle. The publish and
+ * subscribe hooks of the HAWorkers run on a separate thread so that they can
+ * never delay a heartbeat.
  *
- * FD: expireOldConnections() uses PULSE to detect failures.
+ * Messages from nodes running the old election carry term zero, and the
+ * HAServer still answers them the way it used to.
  *
  * Possible improvements: a. Messages between nodes are being sent sequentially
  * in a for loop, this can be modified to happen in parallel.
  *
- * b. Find out about the Raft leader election algorithm and implement it, and
- * see if it can offer better performance.
- *
  * @author Bhargav Srinivasan, Om Kale
  */
 
 public class AsyncElection implements Runnable {
 
 	private static final Logger logger = LoggerFactory.getLogger(AsyncElection.class);
-	private static NetworkNode network;
+	private static NetworkNode activeNetwork;
 
 	protected static IHAWorkerService haworker;
 
+	/**
+	 * The network of the election started by the HAController, used for the
+	 * send and recv functions of IHAControllerService.
+	 */
+
 	public static NetworkNode getNetwork() {
-		return network;
+		return activeNetwork;
 	}
 
 	public static void setNetwork(NetworkNode network) {
-		AsyncElection.network = network;
+		AsyncElection.activeNetwork = network;
 	}
 
+	/**
+	 * Events delivered to the election event loop.
+	 */
+
+	private enum ElectionEvent {
+		TICK, LEADER_CHANGED, PUBLISH, SUBSCRIBE
+	};
+
+	private final NetworkNode network;
 	private final String serverPort;
 	private final List<Integer> electionPriorities = new ArrayList<>();
-	private final Queue<String> publishQueue = new LinkedBlockingQueue<>();
-
-	private final Queue<String> subscribeQueue = new LinkedBlockingQueue<>();
+	private final List<ILeaderChangeListener> leaderListeners = new CopyOnWriteArrayList<>();
 
 	private final String controllerID;
 
 	/**
-	 * Indicates who the current leader of the entire system is.
+	 * Indicates who the current leader of the entire system is. Guarded by
+	 * leaderLock, which is also used to wake up threads waiting for a leader.
 	 */
 	private String leader = "none";
 	private String tempLeader = "none";
+	private final Object leaderLock = new Object();
 	private final String none = "none";
-	private final String ack = "ACK";
-	private final String publish = "BPUBLISH";
-	private final String subscribe = "KSUBSCRIBE";
-	private final String pulse = "PULSE";
-	private final String you = "YOU?";
-	private final String no = "NO";
-	private final String leadok = "LEADOK";
-	private final String iwon;
-	private final String setlead;
-	private final String leadermsg;
-	private final String heartbeat;
+	private final int cid;
+
+	/**
+	 * Term state, guarded by leaderLock. votedFor is the candidate this node
+	 * voted for in currentTerm. lastContact is the last time this node heard
+	 * from its leader or granted a vote, and restarts the election timeout.
+	 * leaderContact is the last time it heard from its leader, and is what the
+	 * leader's lease is honoured against. leaseExpiry is the end of this
+	 * node's own lease while it is the leader.
+	 */
+
+	private long currentTerm = 0;
+	private int votedFor = HAMessage.NO_CONTROLLER;
+	private long lastContact = System.nanoTime();
+	private long leaderContact = System.nanoTime();
+	private long leaseExpiry = System.nanoTime();
+
+	/**
+	 * Only read and written on the election event loop.
+	 */
 
 	private ElectionState currentState = ElectionState.CONNECT;
 
-	private Map<String, netState> connectionDict;
+	private Map<String, netState> connectionDict = new HashMap<>();
+
+	private long electionJitter = 0;
+
+	private final Random random = new Random();
+
+	/**
+	 * The leader sends a HEARTBEAT every heartbeatInterval ms, and followers
+	 * stand for election if they have not heard from it for
+	 * heartbeatTimeoutMultiple intervals plus a random jitter of up to as much
+	 * again. Connections to the other nodes are refreshed every
+	 * connectionCheckTicks intervals.
+	 */
+
+	private long heartbeatInterval = 100;
+	private int heartbeatTimeoutMultiple = 3;
+	private final int connectionCheckTicks = 10;
+	private long ticks = 0;
+
+	private EventLoopGroup electionGroup;
+	private EventLoop electionLoop;
+	private Timer timer;
+	private HAServer server;
+	private ExecutorService serverExecutor;
+	private volatile boolean stopped = false;
 
 	/**
-	 * Standardized sleep time for spinning in the rest state.
+	 * The HAWorker hooks are run on the HAWorkerPipelines of the
+	 * IHAWorkerService, where requests that arrive while one is already
+	 * pending are coalesced.
 	 */
 
-	private final Integer chill = new Integer(5);
+	private volatile String subscribeTo = none;
+
+	private final TimerTask tickTask = new TimerTask() {
+		@Override
+		public void run(Timeout timeout) throws Exception {
+			fire(ElectionEvent.TICK);
+		}
+	};
+
+	/**
+	 * Timestamp of the current round of messages, echoed back by the other
+	 * nodes so that replies to an older round can be told apart. Guarded by
+	 * timestampLock.
+	 */
 
-	private String timestamp = new String();
+	private long timestamp = HAMessage.NO_TIMESTAMP;
+	private final Object timestampLock = new Object();
 
 	public AsyncElection(String sp, String cid) {
 		serverPort = sp;
 		controllerID = cid;
-		setlead = "SETLEAD " + controllerID;
-		leadermsg = "LEADER " + controllerID;
-		iwon = "IWON " + controllerID;
-		heartbeat = "HEARTBEAT " + controllerID;
+		this.cid = HAMessage.parseId(cid);
+		network = null;
 	}
 
 	public AsyncElection(String serverPort, String controllerID, IHAWorkerService haw) {
-		AsyncElection.setNetwork(new NetworkNode(serverPort, controllerID));
+		this(serverPort, controllerID, haw, false);
+	}
+
+	public AsyncElection(String serverPort, String controllerID, IHAWorkerService haw, boolean legacyText) {
+		this(serverPort, controllerID, new NetworkNode(serverPort, controllerID, legacyText), haw);
+		AsyncElection.setNetwork(network);
+	}
+
+	/**
+	 * Creates an election over the given network, which lets several nodes
+	 * run in the same process.
+	 */
+
+	public AsyncElection(String serverPort, String controllerID, NetworkNode network, IHAWorkerService haw) {
 		this.serverPort = serverPort;
 		this.controllerID = controllerID;
-		setlead = "SETLEAD " + this.controllerID;
-		leadermsg = "LEADER " + this.controllerID;
-		iwon = "IWON " + this.controllerID;
-		heartbeat = "HEARTBEAT " + this.controllerID;
+		cid = HAMessage.parseId(controllerID);
+		this.network = network;
 		AsyncElection.haworker = haw;
 	}
 
 	/**
-	 * These are the different possible states the controller can be in during
-	 * the election process.
+	 * Register a listener which is notified whenever the leader changes.
 	 */
 
-	private void cases() {
-		try {
-			while (!Thread.currentThread().isInterrupted()) {
-				// logger.info("[AsyncElection] Current State:
-				// "+currentState.toString());
-				switch (currentState) {
-
-				case CONNECT:
-
-					/**
-					 * Block until a majority of the servers have connected.
-					 */
-					currentState = network.blockUntilConnected();
-
-					/**
-					 * Majority of the servers have connected, moving on to
-					 * elect.
-					 */
-					break;
+	public void addLeaderChangeListener(ILeaderChangeListener listener) {
+		leaderListeners.add(listener);
+	}
+
+	/**
+	 * Blocks until a leader is known, or until the timeout expires.
+	 *
+	 * @param timeoutMs
+	 *            : Maximum time to wait, in milliseconds.
+	 * @return Current network-wide leader, "none" if the wait timed out.
+	 */
 
-				case ELECT:
-
-					/**
-					 * Check for new nodes to connect to, and refresh the socket
-					 * connections.
-					 */
-					connectionDict = network.checkForNewConnections();
-
-					// logger.info("[ELECT] =======SIZES+++++ {} {}", new
-					// Object[] {network.socketDict.size(), network.majority});
-
-					/**
-					 * Ensure that a majority of nodes have connected, otherwise
-					 * demote state.
-					 */
-					if (network.getSocketDict().size() < network.getMajority()) {
-						currentState = ElectionState.CONNECT;
-						break;
-					}
-
-					/**
-					 * Start the election if a majority of nodes have connected.
-					 */
-					this.elect();
-
-					/**
-					 * Once the election is done and the leader is confirmed,
-					 * proceed to the COORDINATE or FOLLOW state.
-					 */
+	public String awaitLeader(long timeoutMs) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+		synchronized (leaderLock) {
+			while (leader.equals(none)) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
 					break;
+				}
+				TimeUnit.NANOSECONDS.timedWait(leaderLock, remaining);
+			}
+			return leader;
+		}
+	}
 
-				case SPIN:
-
-					/**
-					 * This is the resting state after the election.
-					 */
-					connectionDict = network.checkForNewConnections();
-
-					/**
-					 * Check For Leader: This function ensures that there is
-					 * only one leader set for the entire network. None or
-					 * multiple leaders causes it to set the currentState to
-					 * ELECT.
-					 */
-					timestamp = String.valueOf(System.nanoTime());
-					this.checkForLeader();
-
-					if (leader.equals(none)) {
-						currentState = ElectionState.ELECT;
-						break;
-					}
-
-					/**
-					 * This is the follower state, currently there is a leader
-					 * in the network.
-					 */
-					// logger.info("+++++++++++++++ [FOLLOWER] Leader is set to:
-					// "+this.leader.toString());
-
-					if (!publishQueue.isEmpty()) {
-						for (String wrkr : AsyncElection.haworker.getWorkerKeys()) {
-							AsyncElection.haworker.getService(wrkr).publishHook();
-						}
-						publishQueue.clear();
-					}
-
-					if (!subscribeQueue.isEmpty()) {
-						String cid = subscribeQueue.remove();
-						for (String wrkr : AsyncElection.haworker.getWorkerKeys()) {
-							AsyncElection.haworker.getService(wrkr).subscribeHook(cid);
-						}
-						// logger.info("[Follower Subscribe] Subscribing to:
-						// {}", new Object[]{cid});
-						subscribeQueue.clear();
-					}
-
-					TimeUnit.SECONDS.sleep(chill.intValue());
+	/**
+	 * Won the election for the given term: take over as leader and assert it
+	 * with a heartbeat straight away.
+	 */
 
-					break;
+	private void becomeLeader(long term, long roundStart) {
+		synchronized (leaderLock) {
+			if (currentTerm != term || votedFor != cid) {
+				return;
+			}
+			leaseExpiry = roundStart + leaseNanos();
+		}
+		logger.info("[Election] Elected as leader for term {}", term);
+		setTempLeader(none);
+		setLeader(controllerID);
+		currentState = ElectionState.COORDINATE;
+		this.sendHeartBeat(System.nanoTime());
+	}
 
-				case COORDINATE:
-
-					/**
-					 * This is the resting state of the leader after the
-					 * election.
-					 */
-					connectionDict = network.checkForNewConnections();
-
-					/**
-					 * Keep sending a heartbeat message, and receive a majority
-					 * of acceptors, otherwise go to the elect state.
-					 */
-					timestamp = String.valueOf(System.nanoTime());
-					this.sendHeartBeat();
-
-					if (leader.equals(none)) {
-						currentState = ElectionState.ELECT;
-						break;
-					}
-
-					/**
-					 * This is the follower state, currently I am the leader of
-					 * the network.
-					 */
-					// logger.info("+++++++++++++++ [LEADER] Leader is set to:
-					// "+this.leader.toString());
-
-					/**
-					 * Keep the leader in coordinate state.
-					 */
-					timestamp = String.valueOf(System.nanoTime());
-					this.sendIWon();
-					this.sendLeaderMsg();
-					if (leader.equals(network.getControllerID())) {
-						this.setAsLeader();
-					}
-
-					if (!publishQueue.isEmpty()) {
-						AsyncElection.haworker.getService("LDHAWorker").publishHook();
-						AsyncElection.haworker.getService("TopoHAWorker").publishHook();
-						/**
-						 * Network-wide publish
-						 */
-						publish();
-						publishQueue.clear();
-					}
-
-					if (!subscribeQueue.isEmpty()) {
-						String cid = subscribeQueue.remove();
-						AsyncElection.haworker.getService("LDHAWorker").subscribeHook(cid);
-						AsyncElection.haworker.getService("TopoHAWorker").subscribeHook(cid);
-						/**
-						 * Network-wide Subscribe
-						 */
-						subscribe(cid);
-						subscribeQueue.clear();
-					}
-
-					TimeUnit.SECONDS.sleep(chill.intValue());
+	/**
+	 * Sends the given pre-vote or vote request to every connected node.
+	 *
+	 * @return The number of votes granted, -1 if a node replied with a newer
+	 *         term, in which case this node is no longer a candidate.
+	 */
 
-					break;
+	private int collectVotes(HAMessage request) {
+		int votes = 0;
+		try {
 
+			for (HAMessage reply : exchange(request).values()) {
+				if (reply.getTerm() > request.getTerm()) {
+					observeTerm(reply.getTerm());
+					return -1;
+				}
+				if (reply.getType() == HAMessage.Type.VOTEOK && reply.getTimestamp() == request.getTimestamp()) {
+					votes += 1;
 				}
-
 			}
 
-		} catch (InterruptedException ie) {
-			logger.debug("[Election] Exception in cases!");
-			ie.printStackTrace();
 		} catch (Exception e) {
-			logger.debug("[Election] Error in cases!");
+			logger.debug("[Election] Error while collecting votes!");
 			e.printStackTrace();
 		}
 
+		return votes;
 	}
 
 	/**
-	 * Ask each node if they are the leader, you should get an ACK from only one
-	 * of them, if not, then reset the leader.
+	 * Sends the message to every connected node, and then collects their
+	 * replies until half a heartbeat interval after the first was sent. The
+	 * replies are queued by the connections as they arrive, so they are
+	 * awaited in parallel: a node which is connected but does not answer only
+	 * holds the election loop until the deadline, well before the followers'
+	 * election timeout, rather than for a socket timeout per node.
+	 *
+	 * @return The replies received in time, by node.
 	 */
 
-	private void checkForLeader() {
+	private Map<String, HAMessage> exchange(HAMessage message) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(heartbeatInterval / 2, 1));
+		List<String> sent = new ArrayList<>();
+		for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
+			if (entry.getValue().equals(netState.ON) && Boolean.TRUE.equals(network.send(entry.getKey(), message))) {
+				sent.add(entry.getKey());
+			}
+		}
+
+		Map<String, HAMessage> replies = new HashMap<>();
+		for (String node : sent) {
+			HAMessage reply = network.recvMessage(node, deadline);
+			if (reply != null) {
+				replies.put(node, reply);
+			}
+		}
+		return replies;
+	}
+
+	/**
+	 * Checks whether this node is still the candidate of the given term, i.e.
+	 * nobody with a newer term or an elected leader has been heard of in the
+	 * meantime.
+	 */
+
+	private boolean isCandidate(long term) {
+		synchronized (leaderLock) {
+			return currentTerm == term && votedFor == cid && leader.equals(none);
+		}
+	}
+
+	/**
+	 * Election timeout before any jitter, in nanoseconds.
+	 */
+
+	private long electionTimeoutNanos() {
+		return TimeUnit.MILLISECONDS.toNanos(heartbeatInterval * heartbeatTimeoutMultiple);
+	}
+
+	/**
+	 * Time at which this node stands for election, unless it hears from a
+	 * leader before then.
+	 */
+
+	private long electionDeadline() {
+		synchronized (leaderLock) {
+			return lastContact + electionTimeoutNanos() + electionJitter;
+		}
+	}
+
+	/**
+	 * Delivers an event to the election event loop. Events fired before the
+	 * election has been started are dropped.
+	 */
+
+	private void fire(final ElectionEvent event) {
+		if (electionLoop == null || stopped) {
+			return;
+		}
+		electionLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				handleEvent(event);
+			}
+		});
+	}
+
+	/**
+	 * Gets the current election term of this node.
+	 */
+
+	public long getTerm() {
+		synchronized (leaderLock) {
+			return currentTerm;
+		}
+	}
 
-		HashSet<String> leaderSet = new HashSet<>();
-		String reply = new String();
-		String r1 = new String();
-		String r2 = new String();
-		StringTokenizer st = new StringTokenizer(reply);
+	/**
+	 * Handles one event, on the election event loop.
+	 */
 
+	private void handleEvent(ElectionEvent event) {
 		try {
+			switch (event) {
 
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					network.send(entry.getKey(), you + " " + timestamp);
-					reply = network.recv(entry.getKey());
-					st = new StringTokenizer(reply);
-					r1 = st.nextToken();
-					if (st.hasMoreTokens()) {
-						r2 = st.nextToken();
-					}
-
-					if ((!r1.equals(no)) && (r2.equals(timestamp))) {
-						leaderSet.add(r1);
-					} else {
-						// logger.info("[AsyncElection] Check Leader: " + reply
-						// +" from "+entry.getKey().toString());
-						continue;
-					}
+			case TICK:
+				ticks += 1;
+				onTick();
+				scheduleTick();
+				break;
 
+			case LEADER_CHANGED:
+
+				/**
+				 * The HAServer accepted a leader (or reset it), act on it now
+				 * instead of waiting for the next tick.
+				 */
+				String current = getLeader();
+				if (currentState == ElectionState.COORDINATE && !current.equals(controllerID)) {
+					logger.info("[Election] Stepping down, {} is the leader now.", current);
+					currentState = ElectionState.SPIN;
+				} else if (!current.equals(none) && !current.equals(controllerID)
+						&& (currentState == ElectionState.ELECT || currentState == ElectionState.CONNECT)) {
+					currentState = ElectionState.SPIN;
 				}
+				break;
+
+			case PUBLISH:
+
+				/**
+				 * Network-wide publish
+				 */
+				if (currentState == ElectionState.COORDINATE) {
+					publish();
+				}
+				break;
+
+			case SUBSCRIBE:
+
+				/**
+				 * Network-wide Subscribe
+				 */
+				if (currentState == ElectionState.COORDINATE) {
+					subscribe(subscribeTo);
+				}
+				break;
+
 			}
+		} catch (Exception e) {
+			logger.debug("[Election] Error while handling {}!", event);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Called by the HAServer for a HEARTBEAT. A heartbeat of the current or a
+	 * newer term makes the sender this node's leader, and restarts the
+	 * election timeout. Heartbeats without a term come from the old election,
+	 * and are accepted from the current leader only.
+	 *
+	 * @return The reply to send back.
+	 */
 
-			// logger.info("[AsyncElection checkForLeader] Leader Set:
-			// "+leaderSet.toString());
+	protected HAMessage handleHeartbeat(HAMessage hb) {
+		String sender = HAMessage.idString(hb.getControllerId());
+		String oldLeader;
+		long term;
 
-			/**
-			 * Remove blank objects from set, if any.
-			 */
-			if (leaderSet.contains(new String(""))) {
-				leaderSet.remove(new String(""));
+		synchronized (leaderLock) {
+			long now = System.nanoTime();
+			if (hb.getTerm() == 0) {
+				if (!leader.equals(sender)) {
+					return HAMessage.NO;
+				}
+				lastContact = now;
+				leaderContact = now;
+				return new HAMessage(HAMessage.Type.HBACK, cid, hb.getTimestamp());
 			}
 
-			/**
-			 * Remove none from set, if any.
-			 */
-			if (leaderSet.contains(none)) {
-				leaderSet.remove(none);
+			if (hb.getTerm() < currentTerm) {
+				return new HAMessage(HAMessage.Type.NO, currentTerm, cid, hb.getTimestamp());
+			}
+			if (hb.getTerm() > currentTerm) {
+				currentTerm = hb.getTerm();
+				votedFor = HAMessage.NO_CONTROLLER;
 			}
+			term = currentTerm;
+			lastContact = now;
+			leaderContact = now;
+			oldLeader = leader;
+			leader = sender;
+			leaderLock.notifyAll();
+		}
 
-			/**
-			 * Remove null objects from set, if any.
-			 */
-			if (leaderSet.contains(null)) {
-				// logger.info("[Election] Leader Set contains null");
-				leaderSet.remove(null);
+		leaderChanged(oldLeader, sender);
+		return new HAMessage(HAMessage.Type.HBACK, term, cid, hb.getTimestamp());
+	}
+
+	/**
+	 * Called by the HAServer for a PREVOTE or a VOTE request. Nodes which
+	 * still hear from their leader do not grant either, so that a healthy
+	 * leader keeps its lease. A pre-vote is granted to any candidate whose
+	 * proposed term is newer than ours, without changing any state. A vote
+	 * moves this node to the candidate's term if it is newer, and is granted
+	 * to the first candidate asking in that term.
+	 *
+	 * @return The reply to send back.
+	 */
+
+	protected HAMessage handleVoteRequest(HAMessage req) {
+		String oldLeader = none;
+		HAMessage reply;
+
+		synchronized (leaderLock) {
+			long now = System.nanoTime();
+			HAMessage no = new HAMessage(HAMessage.Type.NO, currentTerm, cid, req.getTimestamp());
+
+			if (req.getTerm() < currentTerm || holdsLease(now)) {
+				return no;
 			}
 
-			if (leaderSet.size() == 1) {
-				setLeader(leaderSet.stream().findFirst().get());
-			} else if (leaderSet.size() > 1) {
-				setLeader(none);
-				// logger.info("[Election checkForLeader] SPLIT BRAIN!!");
-				// logger.info("[Election checkForLeader] Current Leader is
-				// none");
-			} else if (leaderSet.size() < 1) {
-				setLeader(none);
-				// logger.info("[Election checkForLeader] Current Leader is none
-				// "+ this.leader.toString() );
+			if (req.getType() == HAMessage.Type.PREVOTE) {
+				if (req.getTerm() > currentTerm) {
+					return new HAMessage(HAMessage.Type.VOTEOK, currentTerm, cid, req.getTimestamp());
+				}
+				return no;
 			}
 
-			return;
+			if (req.getTerm() > currentTerm) {
+				currentTerm = req.getTerm();
+				votedFor = HAMessage.NO_CONTROLLER;
+				oldLeader = leader;
+				leader = none;
+			}
 
-		} catch (Exception e) {
-			logger.debug("[Election] Error in CheckForLeader");
-			e.printStackTrace();
+			if (votedFor == HAMessage.NO_CONTROLLER || votedFor == req.getControllerId()) {
+				votedFor = req.getControllerId();
+				lastContact = now;
+				reply = new HAMessage(HAMessage.Type.VOTEOK, currentTerm, cid, req.getTimestamp());
+			} else {
+				reply = new HAMessage(HAMessage.Type.NO, currentTerm, cid, req.getTimestamp());
+			}
 		}
 
+		leaderChanged(oldLeader, none);
+		return reply;
 	}
 
 	/**
-	 * Election: All nodes will pick the max CID which they see in the network,
-	 * any scenario wherein two different leaders might be picked gets resolved
-	 * using the checkForLeader function.
+	 * Whether a leader's lease is being honoured at the given time: either
+	 * this node is the leader and its own lease is still running, or it has
+	 * heard from its leader within the election timeout. Must be called with
+	 * leaderLock held.
 	 */
 
-	private void elect() {
-
-		/**
-		 * Ensure that majority are still connected.
-		 */
-		if (network.getSocketDict().size() < network.getMajority()) {
-			return;
+	private boolean holdsLease(long now) {
+		if (leader.equals(none)) {
+			return false;
+		}
+		if (leader.equals(controllerID)) {
+			return (now - leaseExpiry) < 0;
 		}
+		return (now - leaderContact) < electionTimeoutNanos();
+	}
 
-		/**
-		 * Clear leader variables.
-		 */
-		setTempLeader(none);
-		setLeader(none);
+	/**
+	 * Notifies the listeners, and the event loop if the change was made by
+	 * another thread, of a leader change. Must not be called with leaderLock
+	 * held.
+	 */
 
-		/**
-		 * Check if actually in elect state
-		 */
-		if (!(currentState == ElectionState.ELECT)) {
-			return;
+	private void leaderChanged(String oldLeader, String newLeader) {
+		if (!oldLeader.equals(newLeader)) {
+			for (ILeaderChangeListener listener : leaderListeners) {
+				listener.leaderChanged(oldLeader, newLeader);
+			}
+			if (electionLoop != null && !electionLoop.inEventLoop()) {
+				fire(ElectionEvent.LEADER_CHANGED);
+			}
 		}
+	}
 
-		/**
-		 * Node joins AFTER election: To check if a node joined after election,
-		 * i.e. a leader is already present. Run the checkForLeader function and
-		 * if it returns a leader then accept the existing leader and go to the
-		 * SPIN state.
-		 */
+	/**
+	 * The leader's lease, a heartbeat interval shorter than the election
+	 * timeout of the followers to make up for the time the heartbeat takes to
+	 * reach them.
+	 */
 
-		timestamp = String.valueOf(System.nanoTime());
-		this.checkForLeader();
+	private long leaseNanos() {
+		long timeout = electionTimeoutNanos();
+		long interval = TimeUnit.MILLISECONDS.toNanos(heartbeatInterval);
+		return (timeout > interval) ? timeout - interval : timeout / 2;
+	}
 
-		/**
-		 * If a leader has already been set, exit election state and SPIN.
-		 */
-		if (!leader.equals(none)) {
-			currentState = ElectionState.SPIN;
-			return;
+	/**
+	 * Random part of the election timeout, between zero and the election
+	 * timeout. If election priorities are set, each node draws from its own
+	 * slot of that range, in priority order.
+	 */
+
+	private long nextJitter() {
+		long timeout = electionTimeoutNanos();
+		int rank;
+		synchronized (electionPriorities) {
+			rank = electionPriorities.indexOf(Integer.valueOf(cid));
+		}
+		if (rank >= 0) {
+			long slot = timeout / (network.getTotalRounds() + 1);
+			return rank * slot + (long) (random.nextDouble() * slot);
 		}
+		return (long) (random.nextDouble() * timeout);
+	}
 
-		/**
-		 * End of Node joins AFTER election.
-		 */
+	/**
+	 * Moves this node to a newer term it has learnt about from a reply, and
+	 * makes it a follower.
+	 */
 
-		/**
-		 * Actual election logic.
-		 */
-		this.electionLogic();
-
-		if (leader.equals(network.getControllerID())) {
-			// logger.info("[Election] I WON THE ELECTION!");
-			timestamp = String.valueOf(System.nanoTime());
-			this.sendIWon();
-			this.sendLeaderMsg();
-			if (leader.equals(network.getControllerID())) {
-				this.setAsLeader();
+	private void observeTerm(long term) {
+		String oldLeader = none;
+		synchronized (leaderLock) {
+			if (term <= currentTerm) {
+				return;
 			}
-		} else if (leader.equals(none)) {
-			currentState = ElectionState.ELECT;
-		} else {
+			logger.info("[Election] Moving from term {} to newer term {}", currentTerm, term);
+			currentTerm = term;
+			votedFor = HAMessage.NO_CONTROLLER;
+			if (leader.equals(controllerID)) {
+				oldLeader = leader;
+				leader = none;
+				leaderLock.notifyAll();
+			}
+		}
+		leaderChanged(oldLeader, none);
+		if (currentState == ElectionState.COORDINATE || currentState == ElectionState.ELECT) {
 			currentState = ElectionState.SPIN;
 		}
-
-		/**
-		 * End of Actual Election logic.
-		 */
-		return;
 	}
 
 	/**
-	 * This is the logic that will be performed by the controller in order to
-	 * pick a leader. It is an operation which is performed on the priorities
-	 * array provided it supplied earlier, otherwise it constructs an array
-	 * which contains all configured nodes in the descending order of their
-	 * controller IDs.
+	 * These are the different possible states the controller can be in during
+	 * the election process. Called on every TICK, on the election event loop.
 	 */
 
-	private void electionLogic() {
-		/**
-		 * List of controllerIDs of all nodes.
-		 */
-		ArrayList<Integer> nodes = new ArrayList<>();
-		Integer maxNode = new Integer(0);
+	private void onTick() {
+		switch (currentState) {
+
+		case CONNECT:
 
-		if ((electionPriorities.size() > 0) && (electionPriorities.size() == network.getTotalRounds() + 1)) {
-			nodes.addAll(electionPriorities);
-		} else {
 			/**
-			 * Generate list of total possible CIDs.
+			 * Try to connect to a majority of the servers, and stay in this
+			 * state until they have connected.
 			 */
-			for (Integer i = (network.getTotalRounds() + 1); i > 0; i--) {
-				nodes.add(i);
+			if (network.tryConnect() != ElectionState.ELECT) {
+				break;
 			}
+
+			/**
+			 * Majority of the servers have connected, wait for a leader to
+			 * show up, or for the election timeout.
+			 */
+			connectionDict = network.getConnectDict();
+			resetElectionTimeout();
+			currentState = ElectionState.ELECT;
+			break;
+
+		case ELECT:
+		case SPIN:
+
+			/**
+			 * This is the resting state of a follower (SPIN), or of a
+			 * candidate which has not been elected yet (ELECT). Stand for
+			 * election once the election timeout has passed without hearing
+			 * from a leader.
+			 */
+			if (ticks % connectionCheckTicks == 0) {
+				connectionDict = network.checkForNewConnections();
+			}
+
+			if ((System.nanoTime() - electionDeadline()) >= 0) {
+				this.elect();
+			}
+			break;
+
+		case COORDINATE:
+
+			/**
+			 * This is the resting state of the leader after the election.
+			 */
+			if (ticks % connectionCheckTicks == 0) {
+				connectionDict = network.checkForNewConnections();
+			}
+
+			if (!getLeader().equals(controllerID)) {
+				currentState = ElectionState.SPIN;
+				break;
+			}
+
+			/**
+			 * Keep sending a heartbeat message, and renew the lease while a
+			 * majority acknowledges them, otherwise step down.
+			 */
+			this.sendHeartBeat(System.nanoTime());
+			break;
+
+		}
+	}
+
+	/**
+	 * Number of nodes, including this one, that form a majority of all
+	 * configured nodes.
+	 */
+
+	private int quorum() {
+		return (network.getTotalRounds() + 1) / 2 + 1;
+	}
+
+	/**
+	 * Restarts the election timeout, with a new random jitter.
+	 */
+
+	private void resetElectionTimeout() {
+		electionJitter = nextJitter();
+		synchronized (leaderLock) {
+			lastContact = System.nanoTime();
 		}
+	}
+
+	/**
+	 * Schedules the next TICK after a heartbeat interval, or at the election
+	 * deadline if that is sooner, so that a failed leader is replaced as soon
+	 * as its lease allows.
+	 */
 
-		// logger.info("[AsyncElection ElectionLogic] Nodes participating:
-		// "+nodes.toString());
+	private void scheduleTick() {
+		if (stopped) {
+			return;
+		}
+		long delay = TimeUnit.MILLISECONDS.toNanos(heartbeatInterval);
+		if (currentState == ElectionState.SPIN || currentState == ElectionState.ELECT) {
+			long untilDeadline = electionDeadline() - System.nanoTime();
+			delay = Math.max(0, Math.min(delay, untilDeadline));
+		}
+		timer.newTimeout(tickTask, delay, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stops the election event loop, the timer and the HAServer.
+	 */
+
+	public void stop() {
+		stopped = true;
+		if (timer != null) {
+			timer.stop();
+		}
+		if (electionGroup != null) {
+			electionGroup.shutdownGracefully();
+		}
+		if (server != null) {
+			server.stop();
+		}
+		if (serverExecutor != null) {
+			serverExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Election: Run a pre-vote for the next term, and if a majority would vote
+	 * for this node, increment the term and ask for the real votes. If a
+	 * majority grants them, this node becomes the leader. Otherwise it tries
+	 * again after another, randomized, election timeout unless it hears from a
+	 * leader in the meantime.
+	 */
+
+	private void elect() {
+
+		resetElectionTimeout();
+		currentState = ElectionState.ELECT;
 
 		/**
-		 * Get the node whose CID is numerically greater.
+		 * Check for new nodes to connect to, and refresh the socket
+		 * connections.
 		 */
-		Set<String> connectDictKeys = connectionDict.keySet();
-		HashSet<Integer> activeCIDs = new HashSet<>();
+		connectionDict = network.checkForNewConnections();
 
 		/**
-		 * Convert active controller ports into a Set of their IDs.
+		 * Ensure that a majority of nodes are connected, otherwise there is
+		 * no point in asking for votes.
 		 */
-		for (String port : connectDictKeys) {
-			if (connectionDict.get(port) != null && connectionDict.get(port).equals(netState.ON)) {
-				activeCIDs.add(network.getNetcontrollerIDStatic().get(port));
-			}
+		if (network.getSocketDict().size() + 1 < quorum()) {
+			logger.debug("[Election] Not enough nodes connected for an election.");
+			return;
 		}
 
-		activeCIDs.add(new Integer(controllerID));
-
-		// logger.info("[AsyncElection ElectionLogic] Active controllers:
-		// "+activeCIDs.toString()+" ConnectDict Keys:
-		// "+connectDictKeys.toString());
-
 		/**
-		 * Find the current active maxNode.
+		 * The leader has not been heard of for an election timeout, it is
+		 * considered lost.
 		 */
-
-		for (Integer i = 0; i < nodes.size(); i++) {
-			if (activeCIDs.contains(nodes.get(i))) {
-				maxNode = nodes.get(i);
-				break;
+		long roundStart = System.nanoTime();
+		long term;
+		String oldLeader;
+		synchronized (leaderLock) {
+			if (holdsLease(roundStart)) {
+				return;
 			}
+			term = currentTerm + 1;
+			oldLeader = leader;
+			leader = none;
+		}
+		if (!oldLeader.equals(none)) {
+			logger.info("[Election] Lost the leader {}, starting an election.", oldLeader);
+			leaderChanged(oldLeader, none);
 		}
 
 		/**
-		 * Edge case where you are the max node && you are ON.
+		 * Pre-vote, which leaves the term of every node untouched.
 		 */
-		if (controllerID.equals(maxNode.toString())) {
-			setLeader(maxNode.toString());
+		setTimeStamp(roundStart);
+		int votes = collectVotes(new HAMessage(HAMessage.Type.PREVOTE, term, cid, roundStart));
+		if (votes < 0 || votes + 1 < quorum()) {
+			logger.debug("[Election] Pre-vote for term {} failed with {} votes", term, votes);
 			return;
 		}
 
-		String maxNodePort = network.getControllerIDNetStatic().get(maxNode.toString()).toString();
-
 		/**
-		 * Check if Max Node is alive, and set it as leader if it is.
+		 * Actual election, in the next term.
 		 */
-		try {
-
-			for (int i = 0; i < network.getNumberOfPulses(); i++) {
-
-				network.send(maxNodePort, pulse);
-				String reply = network.recv(maxNodePort);
-
-				if (reply.equals(ack)) {
-					setLeader(maxNode.toString());
-				}
+		synchronized (leaderLock) {
+			if (currentTerm + 1 != term || !leader.equals(none)) {
+				return;
 			}
+			currentTerm = term;
+			votedFor = cid;
+		}
 
-		} catch (Exception e) {
-			// logger.debug("[AsyncElection] Error in electionLogic!");
-			e.printStackTrace();
+		long ts = System.nanoTime();
+		setTimeStamp(ts);
+		votes = collectVotes(new HAMessage(HAMessage.Type.VOTE, term, cid, ts));
+		if (votes + 1 >= quorum() && isCandidate(term)) {
+			becomeLeader(term, roundStart);
+		} else {
+			logger.debug("[Election] Election for term {} failed with {} votes", term, votes);
 		}
 
 		return;
+	}
 
+	/**
+	 * Gives up leadership, because the lease has run out.
+	 */
+
+	private void stepDown() {
+		synchronized (leaderLock) {
+			if (!leader.equals(controllerID)) {
+				return;
+			}
+		}
+		logger.info("[Election] Lease expired, stepping down as leader.");
+		setLeader(none);
+		resetElectionTimeout();
+		currentState = ElectionState.SPIN;
 	}
 
 	/**
@@ -575,11 +868,39 @@ public class AsyncElection implements Runnable {
 	 */
 
 	public String getLeader() {
-		final String lead;
-		synchronized (leader) {
-			lead = leader;
+		synchronized (leaderLock) {
+			return leader;
+		}
+	}
+
+	/**
+	 * Sets the interval at which the leader sends heartbeats, and the number
+	 * of missed intervals after which followers start a new election. Must be
+	 * called before the election is started.
+	 *
+	 * @param intervalMs
+	 *            : Heartbeat interval in milliseconds.
+	 * @param timeoutMultiple
+	 *            : Number of heartbeat intervals without a heartbeat after
+	 *            which the leader is considered failed.
+	 */
+
+	public void setHeartbeatInterval(long intervalMs, int timeoutMultiple) {
+		if (intervalMs <= 0 || timeoutMultiple <= 0) {
+			logger.info("[AsyncElection] Invalid heartbeat interval, keeping {} ms x {}", heartbeatInterval,
+					heartbeatTimeoutMultiple);
+			return;
 		}
-		return lead;
+		heartbeatInterval = intervalMs;
+		heartbeatTimeoutMultiple = timeoutMultiple;
+	}
+
+	/**
+	 * Schedules a task on the election timer.
+	 */
+
+	public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+		return timer.newTimeout(task, delay, unit);
 	}
 
 
@@ -590,11 +911,9 @@ public class AsyncElection implements Runnable {
 	 */
 
 	public String gettempLeader() {
-		final String tempLead;
-		synchronized (tempLeader) {
-			tempLead = tempLeader;
+		synchronized (leaderLock) {
+			return tempLeader;
 		}
-		return tempLead;
 	}
 
 	/**
@@ -604,11 +923,20 @@ public class AsyncElection implements Runnable {
 	 */
 
 	public String getTimeStamp() {
-		final String ts;
-		synchronized (timestamp) {
-			ts = timestamp;
+		final long ts = getTimeStampValue();
+		return (ts == HAMessage.NO_TIMESTAMP) ? none : String.valueOf(ts);
+	}
+
+	/**
+	 * Gets the timestamp variable before sending/receiving messages
+	 * 
+	 * @return long timestamp, HAMessage.NO_TIMESTAMP if not set.
+	 */
+
+	public long getTimeStampValue() {
+		synchronized (timestampLock) {
+			return timestamp;
 		}
-		return ts;
 	}
 
 	/**
@@ -622,18 +950,12 @@ public class AsyncElection implements Runnable {
 			 * network.checkForNewConnections();
 			 */
 
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
+			exchange(HAMessage.PUBLISH);
 
-					network.send(entry.getKey(), publish);
-					network.recv(entry.getKey());
-
-					/**
-					 * If we get an ACK, that's good. logger.debug("[Publish]
-					 * Received ACK from "+entry.getKey().toString());
-					 */
-				}
-			}
+			/**
+			 * If we get an ACK, that's good. logger.debug("[Publish] Received
+			 * ACK from "+entry.getKey().toString());
+			 */
 
 			return;
 
@@ -645,215 +967,97 @@ public class AsyncElection implements Runnable {
 	}
 
 	/**
-	 * Adds a control message instructing the controller to call publsihHook
+	 * Instructs the controller to call the publishHook of every HAWorker. If
+	 * this node is the leader, it also asks all other nodes to publish. The
+	 * hooks run on the pipeline of each HAWorker, see HAWorkerPipeline.
 	 */
 	public void publishQueue() {
-		synchronized (publishQueue) {
-			publishQueue.offer("PUBLISH");
+		if (AsyncElection.haworker != null) {
+			AsyncElection.haworker.publishHooks();
 		}
+		fire(ElectionEvent.PUBLISH);
 		return;
 	}
 
+	/**
+	 * Starts the HAServer and the election event loop, and returns. The
+	 * election itself runs on the event loop, driven by the timer.
+	 */
+
 	@Override
 	public void run() {
 
-		ScheduledExecutorService sesElection = Executors.newScheduledThreadPool(5);
+		if (network == null) {
+			logger.info("[Election] No network configured, not starting the election.");
+			return;
+		}
 
 		try {
 
-			Integer noServers = new Integer(0);
-			HAServer serverTh = new HAServer(serverPort, this, controllerID);
-
-			if (network.getTotalRounds() <= 1) {
-				noServers = 1;
-			} else {
-				noServers = (int) Math.ceil(Math.log10(network.getTotalRounds()));
-			}
-
-			if (noServers <= 1) {
-				noServers = 1;
-			}
-
-			sesElection.scheduleAtFixedRate(network, 0, 30000, TimeUnit.MICROSECONDS);
-			for (Integer i = 0; i < noServers; i++) {
-				sesElection.scheduleAtFixedRate(serverTh, 0, 30000, TimeUnit.MICROSECONDS);
-			}
+			server = new HAServer(serverPort, this, controllerID);
+			serverExecutor = Executors.newSingleThreadExecutor();
+			serverExecutor.execute(server);
 
 			// logger.info("[Election] Network majority:
 			// "+network.majority.toString());
 			// logger.info("[Election] Get netControllerIDStatic:
 			// "+network.getnetControllerIDStatic().toString());
-			this.cases();
+
+			electionGroup = new NioEventLoopGroup(1);
+			electionLoop = electionGroup.next();
+			timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+			logger.info("[Election] Heartbeat interval: {} ms, timeout: {} intervals", heartbeatInterval,
+					heartbeatTimeoutMultiple);
+			fire(ElectionEvent.TICK);
 
 		} catch (Exception e) {
 			// logger.debug("[AsyncElection] Was interrrupted! "+e.toString());
 			e.printStackTrace();
-			sesElection.shutdownNow();
+			stop();
 		}
 	}
 
 	/**
-	 * The Leader will send a HEARTBEAT message in the COORDINATE state after
-	 * the election and will expect a reply from a majority of acceptors.
+	 * The Leader will send a HEARTBEAT message in the COORDINATE state, and
+	 * renews its lease whenever a majority acknowledges one. If the lease runs
+	 * out, or a node replies with a newer term, it steps down.
+	 *
+	 * @param start
+	 *            : Time at which this heartbeat round started.
 	 */
 
-	private void sendHeartBeat() {
+	private void sendHeartBeat(long start) {
 
-		HashSet<String> noSet = new HashSet<>();
+		long term = getTerm();
+		int acks = 1;
+		setTimeStamp(start);
+		HAMessage heartbeat = new HAMessage(HAMessage.Type.HEARTBEAT, term, cid, start);
 		try {
 
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					/**
-					 * If the HeartBeat is rejected, populate the noSet.
-					 */
-					network.send(entry.getKey(), heartbeat + " " + timestamp);
-					String reply = network.recv(entry.getKey());
-
-					if (reply.equals(no) || (!reply.equals(ack + timestamp))) {
-						noSet.add(entry.getKey());
-					}
-					// If we get an ACK, that's good.
-					// logger.info("[Election] Received HEARTBEAT reply from
-					// "+entry.getKey().toString()+" saying: "+reply);
+			for (HAMessage reply : exchange(heartbeat).values()) {
+				if (reply.getTerm() > term) {
+					observeTerm(reply.getTerm());
+					return;
 				}
-			}
-
-			if (noSet.size() >= network.getMajority()) {
-				setLeader(none);
-				currentState = ElectionState.ELECT;
-			}
-
-			return;
-
-		} catch (Exception e) {
-			logger.debug("[Election] Error in sendHeartBeat!");
-			e.printStackTrace();
-		}
-
-	}
-
-	/**
-	 * The winner of the election, or the largest node that is currently active
-	 * in the network sends an "IWON" message in order to initiate the three
-	 * phase commit to set itself as the leader of the network. Phase 1 of the
-	 * three phase commit.
-	 */
-
-	private void sendIWon() {
-
-		try {
-			Set<String> reply = new HashSet<>();
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					network.send(entry.getKey(), iwon + " " + timestamp);
-					reply.add(network.recv(entry.getKey()));
-					// logger.info("Received reply for IWON from:
-					// "+entry.getKey().toString() + reply.toString());
-
+				if (reply.getType() == HAMessage.Type.HBACK && reply.getTimestamp() == start) {
+					acks += 1;
 				}
 			}
 
-			if (reply.contains(ack)) {
-				setTempLeader(controllerID);
-			}
-
-			return;
-
 		} catch (Exception e) {
-			logger.debug("[Election] Error in sendIWon!");
+			logger.debug("[Election] Error in sendHeartBeat!");
 			e.printStackTrace();
 		}
 
-	}
-
-	/**
-	 * Send a "LEADER" message to all nodes and try to receive "LEADOK" messages
-	 * from them. If count("LEADOK") > majority, then you have won the election
-	 * and hence become the leader. Phase 2 of the three phase commit.
-	 */
-
-	private void sendLeaderMsg() {
-
-		HashSet<String> acceptors = new HashSet<>();
-		try {
-
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					network.send(entry.getKey(), leadermsg + " " + timestamp);
-					String reply = network.recv(entry.getKey());
-					if (reply.equals(leadok)) {
-						acceptors.add(entry.getKey());
-					}
-				}
-
+		boolean expired;
+		synchronized (leaderLock) {
+			if (acks >= quorum()) {
+				leaseExpiry = start + leaseNanos();
 			}
-
-			if (acceptors.size() >= network.getMajority()) {
-				// logger.info("[Election sendLeaderMsg] Accepted leader:
-				// "+this.controllerID+" Majority:
-				// "+network.majority+"Acceptors: "+acceptors.toString());
-				setLeader(network.getControllerID());
-				currentState = ElectionState.COORDINATE;
-			} else {
-				// logger.info("[Election sendLeaderMsg] Did not accept leader:
-				// "+this.controllerID+" Majority:
-				// "+network.majority+"Acceptors: "+acceptors.toString());
-				setLeader(none);
-				currentState = ElectionState.ELECT;
-			}
-
-			return;
-
-		} catch (Exception e) {
-			logger.debug("[Election] Error in sendLeaderMsg!");
-			e.printStackTrace();
+			expired = (System.nanoTime() - leaseExpiry) >= 0;
 		}
-
-	}
-
-	/**
-	 * The leader will set itself as leader during each COORDINATE state loop,
-	 * to ensure that all nodes see it as the leader. Phase 3 of the three phase
-	 * commit.
-	 */
-
-	private void setAsLeader() {
-
-		HashSet<String> noSet = new HashSet<>();
-		try {
-
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
-
-					/**
-					 * If the leader is rejected, populate the noSet.
-					 */
-					network.send(entry.getKey(), setlead + " " + timestamp);
-					String reply = network.recv(entry.getKey());
-
-					if (reply.equals(no)) {
-						noSet.add(entry.getKey());
-					}
-
-					// If we get an ACK, that's good.
-					// logger.info("[Election] Received SETLEAD ACK from
-					// "+entry.getKey().toString());
-				}
-			}
-
-			if (noSet.size() >= network.getMajority()) {
-				setLeader(none);
-			}
-
-			return;
-
-		} catch (Exception e) {
-			logger.debug("[Election] Error in setAsLeader!");
-			e.printStackTrace();
+		if (expired) {
+			stepDown();
 		}
 
 	}
@@ -885,9 +1089,14 @@ public class AsyncElection implements Runnable {
 	 */
 
 	public void setLeader(String leader) {
-		synchronized (this.leader) {
+		String oldLeader;
+		synchronized (leaderLock) {
+			oldLeader = this.leader;
 			this.leader = leader;
+			leaderLock.notifyAll();
 		}
+
+		leaderChanged(oldLeader, leader);
 		return;
 	}
 
@@ -899,7 +1108,7 @@ public class AsyncElection implements Runnable {
 	 */
 
 	public void setTempLeader(String tempLeader) {
-		synchronized (this.tempLeader) {
+		synchronized (leaderLock) {
 			this.tempLeader = tempLeader;
 		}
 		return;
@@ -913,7 +1122,25 @@ public class AsyncElection implements Runnable {
 	 */
 
 	public void setTimeStamp(String ts) {
-		synchronized (timestamp) {
+		long value;
+		try {
+			value = Long.parseLong(ts);
+		} catch (NumberFormatException e) {
+			value = HAMessage.NO_TIMESTAMP;
+		}
+		setTimeStamp(value);
+		return;
+	}
+
+	/**
+	 * Sets the timestamp variable before sending/receiving messages.
+	 * 
+	 * @param long
+	 *            timestamp
+	 */
+
+	public void setTimeStamp(long ts) {
+		synchronized (timestampLock) {
 			timestamp = ts;
 		}
 		return;
@@ -927,6 +1154,7 @@ public class AsyncElection implements Runnable {
 	 *            ID you wish to subscribe to.
 	 */
 	public void subscribe(String cid) {
+		HAMessage submsg = new HAMessage(HAMessage.Type.SUBSCRIBE, HAMessage.parseId(cid), HAMessage.NO_TIMESTAMP);
 		try {
 			/**
 			 * Check for new nodes to connect to, and refresh the socket
@@ -934,21 +1162,14 @@ public class AsyncElection implements Runnable {
 			 * network.checkForNewConnections();
 			 */
 
-			for (HashMap.Entry<String, netState> entry : connectionDict.entrySet()) {
-				if (connectionDict.get(entry.getKey()).equals(netState.ON)) {
+			// logger.info("[Leader Subscribe] Subscribing to: {}", new
+			// Object[]{cid});
 
-					String submsg = new String(subscribe + " " + cid);
-					// logger.info("[Leader Subscribe] Subscribing to: {}", new
-					// Object[]{cid});
+			exchange(submsg);
 
-					network.send(entry.getKey(), submsg);
-					network.recv(entry.getKey());
-
-					// If we get an ACK, that's good.
-					// logger.info("[Subscribe] Received ACK from
-					// "+entry.getKey().toString());
-				}
-			}
+			// If we get an ACK, that's good.
+			// logger.info("[Subscribe] Received ACK from
+			// "+entry.getKey().toString());
 
 			return;
 
@@ -960,12 +1181,17 @@ public class AsyncElection implements Runnable {
 	}
 
 	/**
-	 * Adds a control message instructing the controller to call subscribeHook
+	 * Instructs the controller to call the subscribeHook of every HAWorker
+	 * for the given controller ID. If this node is the leader, it also asks
+	 * all other nodes to subscribe. The hooks run on the pipeline of each
+	 * HAWorker, see HAWorkerPipeline.
 	 */
 	public void subscribeQueue(String sub) {
-		synchronized (subscribeQueue) {
-			subscribeQueue.offer(sub);
+		subscribeTo = sub;
+		if (AsyncElection.haworker != null) {
+			AsyncElection.haworker.subscribeHooks(sub);
 		}
+		fire(ElectionEvent.SUBSCRIBE);
 		return;
 	}
 
@@ -14,22 +14,26 @@
 
 package net.floodlightcontroller.hasupport;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
 /**
  * The Controller's Logic
  *
- * This thread ensures that the election class is polled every "pollTime"
- * seconds such that it checks if a new leader is present in the network. Once
- * you get the leader, you can do role based programming in this thread; meaning
- * you can specify functions that the leader of the network should do, and
- * separate functions that the followers do. Currently, the leader is used to
- * manage network-wide publishing and subscribing of updates across all nodes.
+ * This class is notified by the election class whenever the network-wide
+ * leader changes. Once you get the leader, you can do role based programming
+ * here; meaning you can specify functions that the leader of the network
+ * should do, and separate functions that the followers do. Currently, the
+ * leader is used to manage network-wide publishing and subscribing of updates
+ * across all nodes, every "pollTime" seconds.
+ *
+ * Everything is driven by the election's timer, so no thread is spent
+ * polling the election for the leader.
  *
  * Possible extensions: a. Offer "Leader Role" and "Follower Role" as a service
  * which other modules can access in order to be able to do role based
@@ -39,7 +43,7 @@ import org.slf4j.LoggerFactory;
  *
  */
 
-public class ControllerLogic implements Runnable {
+public class ControllerLogic implements Runnable, ILeaderChangeListener {
 
 	private static final Logger logger = LoggerFactory.getLogger(ControllerLogic.class);
 
@@ -50,9 +54,44 @@ public class ControllerLogic implements Runnable {
 
 	private final Integer timeout = new Integer(60000);
 	private final Integer pollTime = new Integer(5);
-	private Integer ticks = new Integer(0);
-	private boolean timeoutFlag;
-	private Map<String,String> leaderChange = new HashMap<>();
+	private volatile boolean timeoutFlag;
+	private Timeout electionTimeout;
+	private long electionStart;
+
+	/**
+	 * Runs the role based functions every pollTime seconds.
+	 */
+
+	private final TimerTask roleTask = new TimerTask() {
+		@Override
+		public void run(Timeout t) throws Exception {
+			try {
+				roleFunctions();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			ael.newTimeout(this, pollTime, TimeUnit.SECONDS);
+		}
+	};
+
+	/**
+	 * If you can't get the leader within the specified timeout, keep running
+	 * your own hooks until one is elected. No leader is assumed: only a
+	 * majority of the nodes can elect one, so that a partitioned node never
+	 * acts as a second leader.
+	 */
+
+	private final TimerTask electionTimeoutTask = new TimerTask() {
+		@Override
+		public void run(Timeout t) throws Exception {
+			synchronized (ControllerLogic.this) {
+				if (ael.getLeader().equals(none)) {
+					logger.info("[ControllerLogic] No leader elected yet, is a majority of the nodes reachable?");
+					timeoutFlag = true;
+				}
+			}
+		}
+	};
 
 	public ControllerLogic(AsyncElection ae, String cID) {
 		ael = ae;
@@ -61,119 +100,89 @@ public class ControllerLogic implements Runnable {
 	}
 
 	@Override
-	public void run() {
-		logger.info("[ControllerLogic] Running...");
-		try {
-			String leader;
-			leaderChange.put("leader",none);
-			while (!Thread.currentThread().isInterrupted()) {
-
-				leader = ael.getLeader();
+	public synchronized void leaderChanged(String oldLeader, String newLeader) {
+		if (!newLeader.equals(none)) {
+			if (electionTimeout != null) {
+				electionTimeout.cancel();
+				electionTimeout = null;
+				Long duration = (long) ((System.nanoTime() - electionStart) / 1000000.000);
+				logger.info("[ControllerLogic] Got Leader: " + newLeader + " Elapsed :" + duration.toString());
+			} else {
+				logger.info("[ControllerLogic] Getting Leader: " + newLeader);
+			}
+			timeoutFlag = false;
+		} else if (electionTimeout == null) {
+			/**
+			 * Functions if you are neither a leader nor a follower and you are
+			 * active.
+			 */
+			electionStart = System.nanoTime();
+			electionTimeout = ael.newTimeout(electionTimeoutTask, timeout, TimeUnit.MILLISECONDS);
+		}
+	}
 
-				if (!leader.equals(none)) {
-					if(!leaderChange.get("leader").equals(leader)){
-						logger.info("[ControllerLogic] Getting Leader: " + ael.getLeader().toString());
-						leaderChange.put("leader",leader);
-					}
+	/**
+	 * Role based functions, called every pollTime seconds.
+	 */
+
+	private void roleFunctions() {
+		String leader = ael.getLeader();
+
+		if (leader.equals(none)) {
+			/**
+			 * If the election times out, then call your own publish and
+			 * subscribe hooks until there is a leader again.
+			 */
+			if (timeoutFlag) {
+				if (AsyncElection.haworker != null) {
+					AsyncElection.haworker.publishHooks();
+					AsyncElection.haworker.subscribeHooks(cid);
 				}
+			}
+			return;
+		}
 
-				/**
-				 * First try to get the leader:
-				 */
-				if (leader.equals(none)) {
-					/**
-					 * Functions if you are neither a leader nor a follower and
-					 * you are active.
-					 */
+		if (leader.equals(controllerID)) {
+			/**
+			 * Role based functions: Leader functions
+			 */
+
+			/**
+			 * LEADER initiates publish and subscribe
+			 */
+			// logger.info("[ControllerLogic] Calling Hooks...");
+
+			/**
+			 * Publish, meaning ask all nodes to call publish hook
+			 */
+			ael.publishQueue();
+			/**
+			 * Subscribe, ask all nodes to subscribe to the leader can be
+			 * modified to subscribe to updates from all other nodes as well by
+			 * calling this in a loop.
+			 */
+			ael.subscribeQueue(cid);
+
+		} else {
+			/**
+			 * Role based function: Follower functions
+			 */
 
-					timeoutFlag = true;
-					Long start = System.nanoTime();
-					Long duration = new Long(0);
-
-					while (duration <= timeout) {
-						duration = (long) ((System.nanoTime() - start) / 1000000.000);
-						if (!ael.getLeader().toString().equals(none)) {
-							timeoutFlag = false;
-							logger.info("[ControllerLogic] Got Leader: " + ael.getLeader().toString() + " Elapsed :"
-									+ duration.toString());
-							break;
-						}
-						TimeUnit.MILLISECONDS.sleep(25);
-					}
-
-					/**
-					 * If you can't get the leader within the specified timeout,
-					 * then default to controller 1 as the leader.
-					 */
-
-					if (timeoutFlag) {
-						logger.info("[ControllerLogic] Election timed out, setting Controller 1 as LEADER!");
-						ael.setTempLeader(new String("1"));
-						ael.setLeader(new String("1"));
-					}
-
-				} else {
-					/**
-					 * Role based functions:
-					 */
-
-					if (leader.equals(controllerID)) {
-						/**
-						 * Role based functions: Leader functions
-						 */
-
-						/**
-						 * LEADER initiates publish and subscribe
-						 */
-						// logger.info("[ControllerLogic] Calling Hooks...");
-
-						/**
-						 * Publish, meaning ask all nodes to call publish hook
-						 */
-						ael.publishQueue();
-						/**
-						 * Subscribe, ask all nodes to subscribe to the leader
-						 * can be modified to subscribe to updates from all
-						 * other nodes as well by calling this in a loop.
-						 */
-						ael.subscribeQueue(cid);
-
-					} else {
-						/**
-						 * Role based function: Follower functions
-						 */
-
-					}
-
-					/**
-					 * If the election times out, then call your own publish and
-					 * subscribe hooks
-					 */
-					if (timeoutFlag) {
-						for (String wrkr : AsyncElection.haworker.getWorkerKeys()) {
-							AsyncElection.haworker.getService(wrkr).publishHook();
-							AsyncElection.haworker.getService(wrkr).subscribeHook(cid);
-						}
-
-					}
-
-					TimeUnit.SECONDS.sleep(pollTime);
-
-					/**
-					 * Uncomment this: memory usage/too many files
-					 */
-					if (ticks > 5) {
-						System.gc();
-						ticks = 0;
-					}
-
-					ticks += 1;
-				}
+		}
+	}
 
-			}
+	/**
+	 * Registers with the election for leader changes and starts the role
+	 * based functions. Must be called after the election has been started.
+	 */
 
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+	@Override
+	public void run() {
+		logger.info("[ControllerLogic] Running...");
+		try {
+			ael.addLeaderChangeListener(this);
+			leaderChanged(none, ael.getLeader());
+			ael.newTimeout(roleTask, pollTime, TimeUnit.SECONDS);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
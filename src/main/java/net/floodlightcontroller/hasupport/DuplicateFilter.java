@@ -0,0 +1,268 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * DuplicateFilter
+ *
+ * The bounded duplicate filter used by the FilterQueues in enqueueForward().
+ * It is a rotating Bloom filter over 64 bit hashes of the updates: two
+ * generations of the same size, new entries go into the current generation
+ * and lookups check both. Once the current generation holds as many entries
+ * as it was sized for (or, if a window is configured, once it is older than
+ * the window) it becomes the previous generation and the old previous
+ * generation is cleared and reused. An update is therefore remembered for at
+ * least one generation, and the memory used never changes after construction.
+ *
+ * The filter is sized from a memory cap and a false positive rate (the rate
+ * at which a new update is wrongly reported as a duplicate, per generation
+ * that is checked): the cap gives the number of bits per generation, the rate
+ * gives the number of entries a generation takes and the number of hash
+ * functions.
+ *
+ * The hits, misses and size are kept for monitoring, see getHits(),
+ * getMisses(), size() and getResidentBytes().
+ */
+
+public class DuplicateFilter {
+
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+	public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+	public static final long DEFAULT_WINDOW_MILLIS = 0;
+
+	private static final double LN2 = Math.log(2);
+
+	private final double falsePositiveRate;
+	private final long windowMillis;
+	private final long bits;
+	private final int hashes;
+	private final int capacity;
+
+	private long[] current;
+	private long[] previous;
+	private int currentCount;
+	private int previousCount;
+	private long generationStart;
+
+	private long hits;
+	private long misses;
+
+	public DuplicateFilter() {
+		this(DEFAULT_FALSE_POSITIVE_RATE, DEFAULT_MAX_BYTES, DEFAULT_WINDOW_MILLIS);
+	}
+
+	/**
+	 * @param falsePositiveRate
+	 *            : Probability that a new entry is reported as a duplicate,
+	 *            between 0 and 1 (exclusive).
+	 * @param maxBytes
+	 *            : Memory cap for both generations together.
+	 * @param windowMillis
+	 *            : Maximum age of the current generation before it is rotated,
+	 *            0 to rotate only when it is full.
+	 */
+
+	public DuplicateFilter(double falsePositiveRate, long maxBytes, long windowMillis) {
+		if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1: " + falsePositiveRate);
+		}
+		if (maxBytes < 16 || windowMillis < 0) {
+			throw new IllegalArgumentException("Invalid size: " + maxBytes + " bytes, " + windowMillis + " ms");
+		}
+
+		int words = (int) Math.min(maxBytes / 16, Integer.MAX_VALUE - 8);
+		this.falsePositiveRate = falsePositiveRate;
+		this.windowMillis = windowMillis;
+		this.bits = (long) words * 64;
+		this.capacity = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+				(long) (bits * LN2 * LN2 / -Math.log(falsePositiveRate))));
+		this.hashes = (int) Math.max(1, Math.round((double) bits / capacity * LN2));
+		this.current = new long[words];
+		this.previous = new long[words];
+		this.generationStart = System.currentTimeMillis();
+	}
+
+	/**
+	 * A 64 bit, non-cryptographic hash of the given String (FNV-1a over the
+	 * chars, followed by the MurmurHash3 finalizer).
+	 */
+
+	public static long hash(CharSequence value) {
+		return hash(value, value.length());
+	}
+
+	/**
+	 * Same as hash(), over the first length chars of the value.
+	 */
+
+	public static long hash(CharSequence value, int length) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < length; i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * The MurmurHash3 64 bit finalizer, used to spread the bits of a hash
+	 * built from several fields.
+	 */
+
+	public static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * Adds the hash to the filter.
+	 *
+	 * @return : true if the hash was not seen before (a miss), false if it is
+	 *         a duplicate (a hit).
+	 */
+
+	public synchronized boolean add(long hash) {
+		return add(hash, null);
+	}
+
+	/**
+	 * Adds the hash to the filter if it was not seen before and the given
+	 * action accepts it. The check, the action and the add are atomic, so
+	 * e.g. a queue can remember only the updates it accepted, without two
+	 * producers of the same update both getting it in.
+	 *
+	 * @param accept
+	 *            : Run, with the filter locked, if the hash was not seen
+	 *            before. If it returns false the hash is not added.
+	 * @return : true if the hash was not seen before and was accepted.
+	 */
+
+	public synchronized boolean add(long hash, BooleanSupplier accept) {
+		if (windowMillis > 0 && System.currentTimeMillis() - generationStart >= windowMillis) {
+			rotate();
+		}
+
+		if (contains(current, hash) || (previousCount > 0 && contains(previous, hash))) {
+			hits++;
+			return false;
+		}
+		if (accept != null && !accept.getAsBoolean()) {
+			return false;
+		}
+
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashes; i++) {
+			long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bits;
+			current[(int) (bit >>> 6)] |= 1L << bit;
+		}
+		misses++;
+
+		if (++currentCount >= capacity) {
+			rotate();
+		}
+		return true;
+	}
+
+	public synchronized boolean mightContain(long hash) {
+		return contains(current, hash) || (previousCount > 0 && contains(previous, hash));
+	}
+
+	public synchronized void clear() {
+		Arrays.fill(current, 0);
+		Arrays.fill(previous, 0);
+		currentCount = 0;
+		previousCount = 0;
+		hits = 0;
+		misses = 0;
+		generationStart = System.currentTimeMillis();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return : Number of entries held by the two generations.
+	 */
+
+	public synchronized long size() {
+		return (long) currentCount + previousCount;
+	}
+
+	/**
+	 * @return : Number of entries a generation takes before it is rotated.
+	 */
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public double getFalsePositiveRate() {
+		return falsePositiveRate;
+	}
+
+	public int getHashCount() {
+		return hashes;
+	}
+
+	/**
+	 * @return : Memory held by the bit sets of both generations.
+	 */
+
+	public long getResidentBytes() {
+		return (long) (current.length + previous.length) * 8;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "DuplicateFilter [hits=" + hits + ", misses=" + misses + ", size=" + size() + ", capacity=" + capacity
+				+ ", residentBytes=" + getResidentBytes() + "]";
+	}
+
+	private boolean contains(long[] set, long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashes; i++) {
+			long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bits;
+			if ((set[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rotate() {
+		long[] cleared = previous;
+		Arrays.fill(cleared, 0);
+		previous = current;
+		previousCount = currentCount;
+		current = cleared;
+		currentCount = 0;
+		generationStart = System.currentTimeMillis();
+	}
+
+}
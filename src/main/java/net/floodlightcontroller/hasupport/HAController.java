@@ -17,13 +17,11 @@ package net.floodlightcontroller.hasupport;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 import org.sdnplatform.sync.IStoreClient;
 import org.sdnplatform.sync.IStoreListener;
@@ -38,7 +36,9 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.hasupport.linkdiscovery.LDFilterQueue;
 import net.floodlightcontroller.hasupport.linkdiscovery.LDHAWorker;
+import net.floodlightcontroller.hasupport.topology.TopoFilterQueue;
 import net.floodlightcontroller.hasupport.topology.TopoHAWorker;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
 import net.floodlightcontroller.storage.IStorageSourceService;
@@ -57,7 +57,8 @@ import net.floodlightcontroller.topology.ITopologyService;
  *
  * Individual *HAWorker classes register to the workers HashMap to hold their
  * current objects, in order to facilitate calling their publish and subscribe
- * hooks dynamically.
+ * hooks dynamically. The hooks of each HAWorker run on its own
+ * HAWorkerPipeline, so that a slow HAWorker doesn't hold up the others.
  *
  * Possible improvements: a. Implement a better scheduling algorithm, and
  * schedule the election and controller logic threads to engineer the scheduling
@@ -81,9 +82,8 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 	protected static TopoHAWorker topohaworker;
 
 	private static Map<String, String> config = new HashMap<>();
-	private static Map<String, IHAWorker> workers = new HashMap<>();
+	private static Map<String, HAWorkerPipeline> workers = new HashMap<>();
 	private final List<Integer> priorities = new ArrayList<>();
-	private final String none = new String("none");
 	private AsyncElection ael;
 	private ControllerLogic cLogic;
 
@@ -115,6 +115,14 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 
 	@Override
 	public IHAWorker getService(String serviceName) {
+		synchronized (workers) {
+			HAWorkerPipeline pipeline = workers.get(serviceName);
+			return (pipeline == null) ? null : pipeline.getWorker();
+		}
+	}
+
+	@Override
+	public HAWorkerPipeline getPipeline(String serviceName) {
 		synchronized (workers) {
 			return workers.get(serviceName);
 		}
@@ -140,7 +148,7 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 	@Override
 	public Set<String> getWorkerKeys() {
 		synchronized (workers) {
-			return workers.keySet();
+			return new HashSet<>(workers.keySet());
 		}
 	}
 
@@ -164,16 +172,7 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 	public String pollForLeader() {
 		try {
 			Integer timeout = new Integer(60000);
-			Long start = System.nanoTime();
-			Long duration = new Long(0);
-
-			while (duration <= timeout) {
-				duration = (long) ((System.nanoTime() - start) / 1000000.000);
-				if (!ael.getLeader().toString().equals(none)) {
-					break;
-				}
-				TimeUnit.MILLISECONDS.sleep(25);
-			}
+			return ael.awaitLeader(timeout);
 		} catch (InterruptedException e) {
 			logger.info("pollForLeader was interrupted!");
 			e.printStackTrace();
@@ -192,16 +191,39 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 
 	/**
 	 * Allows the HAWorker classes to register their class objects into the
-	 * hashmap, so that the HAController can use them.
+	 * hashmap, so that the HAController can use them. Each HAWorker gets a
+	 * HAWorkerPipeline, which runs its hooks on a thread of its own.
 	 *
 	 */
 
 	@Override
 	public void registerService(String serviceName, IHAWorker haw) {
 		synchronized (workers) {
-			workers.putIfAbsent(serviceName, haw);
+			if (!workers.containsKey(serviceName)) {
+				workers.put(serviceName, new HAWorkerPipeline(serviceName, haw));
+			}
+		}
+
+	}
+
+	@Override
+	public void publishHooks() {
+		for (HAWorkerPipeline pipeline : getPipelines()) {
+			pipeline.publish();
+		}
+	}
+
+	@Override
+	public void subscribeHooks(String controllerID) {
+		for (HAWorkerPipeline pipeline : getPipelines()) {
+			pipeline.subscribe(controllerID);
 		}
+	}
 
+	private List<HAWorkerPipeline> getPipelines() {
+		synchronized (workers) {
+			return new ArrayList<>(workers.values());
+		}
 	}
 
 	@Override
@@ -218,6 +240,20 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 	@Override
 	public void startUp(FloodlightModuleContext context) throws FloodlightModuleException {
 
+		try {
+			double falsePositiveRate = config.containsKey("dedupFalsePositiveRate")
+					? Double.parseDouble(config.get("dedupFalsePositiveRate").trim())
+					: DuplicateFilter.DEFAULT_FALSE_POSITIVE_RATE;
+			long maxBytes = config.containsKey("dedupMaxBytes") ? Long.parseLong(config.get("dedupMaxBytes").trim())
+					: DuplicateFilter.DEFAULT_MAX_BYTES;
+			long windowMillis = config.containsKey("dedupWindowMillis")
+					? Long.parseLong(config.get("dedupWindowMillis").trim()) : DuplicateFilter.DEFAULT_WINDOW_MILLIS;
+			LDFilterQueue.configureDuplicateFilter(falsePositiveRate, maxBytes, windowMillis);
+			TopoFilterQueue.configureDuplicateFilter(falsePositiveRate, maxBytes, windowMillis);
+		} catch (IllegalArgumentException e) {
+			logger.info("Invalid duplicate filter configuration, using the defaults: " + e.toString());
+		}
+
 		logger.info("LDHAWorker is starting...");
 		try {
 			HAController.syncService.registerStore("LDUpdates", Scope.GLOBAL);
@@ -247,21 +283,33 @@ public class HAController implements IFloodlightModule, IHAControllerService, IS
 		/**
 		 * Read config file and start the Election class with the right params.
 		 */
-		ScheduledExecutorService sesController = Executors.newScheduledThreadPool(10);
-		ael = new AsyncElection(config.get("serverPort"), config.get("nodeid"), haworker);
+		boolean legacyText = config.containsKey("legacyTextProtocol")
+				&& Boolean.parseBoolean(config.get("legacyTextProtocol").trim());
+		if (legacyText) {
+			logger.info("Using the legacy text protocol for the election");
+		}
+		ael = new AsyncElection(config.get("serverPort"), config.get("nodeid"), haworker, legacyText);
 		ael.setElectionPriorities((ArrayList<Integer>) priorities);
+		try {
+			if (config.containsKey("heartbeatInterval") && config.containsKey("heartbeatTimeoutMultiple")) {
+				ael.setHeartbeatInterval(Long.parseLong(config.get("heartbeatInterval").trim()),
+						Integer.parseInt(config.get("heartbeatTimeoutMultiple").trim()));
+			}
+		} catch (NumberFormatException e) {
+			logger.info("Invalid heartbeat configuration, using the defaults: " + e.toString());
+		}
 		cLogic = new ControllerLogic(ael, config.get("nodeid"));
 		try {
 			/**
-			 * The logic behind, the timing: Election scheduled at 60 ms which
-			 * schedules Network Node at 30 ms Controller Logic polls for leader
-			 * every 25 ms.
+			 * The election runs on its own event loop, driven by heartbeat
+			 * timers, and the controller logic is notified of leader changes
+			 * by the election. Neither of them polls.
 			 */
-			sesController.scheduleAtFixedRate(ael, 0, 60000, TimeUnit.MICROSECONDS);
-			sesController.scheduleAtFixedRate(cLogic, 20000, 25000, TimeUnit.MICROSECONDS);
+			ael.run();
+			cLogic.run();
 
 		} catch (Exception e) {
-			sesController.shutdownNow();
+			ael.stop();
 			logger.info("[Election] Was interrrupted! " + e.toString());
 			e.printStackTrace();
 		}
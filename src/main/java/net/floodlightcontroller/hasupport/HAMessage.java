@@ -0,0 +1,208 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+/**
+ * HAMessage
+ *
+ * A single message exchanged between the election transports (PeerConnection
+ * on the sending side, the HAServer pipeline on the receiving side). Every
+ * message carries the same four fields, so that it can be written as a fixed
+ * size binary record by the HAMessageCodec: the message type, the election
+ * term, the controller ID the message refers to and a timestamp which is
+ * echoed back in replies so that stale replies can be discarded.
+ *
+ * The term is the election term of the sender (see AsyncElection), and is
+ * zero for messages from nodes which do not take part in term based elections.
+ *
+ * Controller IDs are the numeric nodeids from the properties file. The
+ * election still keeps the current leader as a String, so idString() hands out
+ * cached Strings for the IDs in order to avoid allocating one per message.
+ */
+
+public class HAMessage {
+
+	/**
+	 * Sentinel values used when a message does not carry a controller ID or a
+	 * timestamp, e.g. a PULSE or a legacy text message without one.
+	 */
+
+	public static final int NO_CONTROLLER = -1;
+	public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+	public enum Type {
+		PULSE(1),
+		ACK(2),
+		NO(3),
+		IWON(4),
+		LEADER(5),
+		LEADOK(6),
+		SETLEAD(7),
+		YOU(8),
+		LEADERIS(9),
+		HEARTBEAT(10),
+		HBACK(11),
+		PUBLISH(12),
+		SUBSCRIBE(13),
+		DONTCARE(14),
+		PREVOTE(15),
+		VOTE(16),
+		VOTEOK(17);
+
+		private static final Type[] byCode = new Type[32];
+
+		static {
+			for (Type t : Type.values()) {
+				byCode[t.code] = t;
+			}
+		}
+
+		/**
+		 * Returns the type for the given wire code, or null if the code is not
+		 * known by this version of the protocol.
+		 */
+
+		public static Type fromCode(int code) {
+			if (code < 0 || code >= byCode.length) {
+				return null;
+			}
+			return byCode[code];
+		}
+
+		private final int code;
+
+		private Type(int code) {
+			this.code = code;
+		}
+
+		public int getCode() {
+			return code;
+		}
+	};
+
+	private static final String[] idStrings = new String[256];
+
+	static {
+		for (int i = 0; i < idStrings.length; i++) {
+			idStrings[i] = String.valueOf(i);
+		}
+	}
+
+	public static final HAMessage PULSE = new HAMessage(Type.PULSE, 0, NO_CONTROLLER, NO_TIMESTAMP);
+	public static final HAMessage ACK = new HAMessage(Type.ACK, 0, NO_CONTROLLER, NO_TIMESTAMP);
+	public static final HAMessage NO = new HAMessage(Type.NO, 0, NO_CONTROLLER, NO_TIMESTAMP);
+	public static final HAMessage LEADOK = new HAMessage(Type.LEADOK, 0, NO_CONTROLLER, NO_TIMESTAMP);
+	public static final HAMessage PUBLISH = new HAMessage(Type.PUBLISH, 0, NO_CONTROLLER, NO_TIMESTAMP);
+	public static final HAMessage DONTCARE = new HAMessage(Type.DONTCARE, 0, NO_CONTROLLER, NO_TIMESTAMP);
+
+	/**
+	 * Returns the String form of a controller ID, cached for the IDs that
+	 * are likely to appear in a server configuration.
+	 *
+	 * @param controllerId
+	 *            : Numeric controller ID.
+	 * @return : Decimal String representation of the controller ID.
+	 */
+
+	public static String idString(int controllerId) {
+		if (controllerId >= 0 && controllerId < idStrings.length) {
+			return idStrings[controllerId];
+		}
+		return String.valueOf(controllerId);
+	}
+
+	/**
+	 * Parses a controller ID such as "2" or "C2" into its numeric form.
+	 *
+	 * @return : The controller ID, or NO_CONTROLLER if it is not numeric.
+	 */
+
+	public static int parseId(String controllerId) {
+		if (controllerId == null || controllerId.isEmpty()) {
+			return NO_CONTROLLER;
+		}
+		int start = (controllerId.charAt(0) == 'C') ? 1 : 0;
+		try {
+			return Integer.parseInt(controllerId.substring(start));
+		} catch (NumberFormatException e) {
+			return NO_CONTROLLER;
+		}
+	}
+
+	private final Type type;
+	private final long term;
+	private final int controllerId;
+	private final long timestamp;
+
+	public HAMessage(Type type, long term, int controllerId, long timestamp) {
+		this.type = type;
+		this.term = term;
+		this.controllerId = controllerId;
+		this.timestamp = timestamp;
+	}
+
+	public HAMessage(Type type, int controllerId, long timestamp) {
+		this(type, 0, controllerId, timestamp);
+	}
+
+	public int getControllerId() {
+		return controllerId;
+	}
+
+	public long getTerm() {
+		return term;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public boolean hasTimestamp() {
+		return timestamp != NO_TIMESTAMP;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		HAMessage other = (HAMessage) obj;
+		return type == other.type && term == other.term && controllerId == other.controllerId
+				&& timestamp == other.timestamp;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = type.hashCode();
+		result = 31 * result + (int) (term ^ (term >>> 32));
+		result = 31 * result + controllerId;
+		result = 31 * result + (int) (timestamp ^ (timestamp >>> 32));
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "HAMessage [type=" + type + ", term=" + term + ", controllerId=" + controllerId + ", timestamp="
+				+ timestamp + "]";
+	}
+
+}
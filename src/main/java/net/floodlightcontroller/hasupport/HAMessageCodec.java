@@ -0,0 +1,389 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.nio.ByteBuffer;
+import java.util.StringTokenizer;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * HAMessageCodec
+ *
+ * Shared wire format for the election transport, used by the PeerConnections
+ * on the sending side and by the HAServer pipeline (HAMessageDecoder,
+ * HAMessageEncoder) on the receiving side. Every message is a length-prefixed
+ * binary frame:
+ *
+ * | magic (1) | version (1) | body length (2) | type (1) | term (8) |
+ * controllerId (4) | timestamp (8) |
+ *
+ * The body length lets TCP split or coalesce frames freely, and lets a newer
+ * peer append fields which an older decoder simply skips.
+ *
+ * The magic byte is not a valid leading byte in UTF-8, so a server can tell a
+ * binary frame apart from the old whitespace separated text messages ("IWON 2
+ * 1234", "PULSE", ...) by looking at the first byte. The legacy* methods
+ * translate between HAMessage and the old text format, so that nodes running
+ * the old protocol can still take part in the election during a rolling
+ * upgrade. The election term is appended to the old text messages as an
+ * optional last argument, which old nodes ignore; messages without it have
+ * term zero.
+ */
+
+public class HAMessageCodec {
+
+	public static final byte MAGIC = (byte) 0xA7;
+	public static final byte VERSION = 1;
+	public static final int HEADER_LENGTH = 4;
+	public static final int BODY_LENGTH = 21;
+	public static final int FRAME_LENGTH = HEADER_LENGTH + BODY_LENGTH;
+
+	private static final String none = "none";
+
+	/**
+	 * Decodes one frame from the given ByteBuf. The reader index is only
+	 * advanced if a complete frame was available.
+	 *
+	 * @param in
+	 *            : Buffer positioned at the start of a frame.
+	 * @return : The decoded message, or null if the frame is incomplete.
+	 * @throws IllegalArgumentException
+	 *             if the buffer does not start with a valid frame.
+	 */
+
+	public static HAMessage decode(ByteBuf in) {
+		if (in.readableBytes() < HEADER_LENGTH) {
+			return null;
+		}
+		int start = in.readerIndex();
+		checkHeader(in.getByte(start), in.getByte(start + 1));
+		int length = in.getUnsignedShort(start + 2);
+		if (length < BODY_LENGTH) {
+			throw new IllegalArgumentException("Frame body too short: " + length);
+		}
+		if (in.readableBytes() < HEADER_LENGTH + length) {
+			return null;
+		}
+
+		in.skipBytes(HEADER_LENGTH);
+		HAMessage.Type type = HAMessage.Type.fromCode(in.readUnsignedByte());
+		long term = in.readLong();
+		int controllerId = in.readInt();
+		long timestamp = in.readLong();
+		in.skipBytes(length - BODY_LENGTH);
+
+		return build(type, term, controllerId, timestamp);
+	}
+
+	/**
+	 * Decodes one frame from the given ByteBuffer, which must be in read mode
+	 * (flipped). The position is only advanced if a complete frame was
+	 * available.
+	 *
+	 * @param in
+	 *            : Buffer positioned at the start of a frame.
+	 * @return : The decoded message, or null if the frame is incomplete.
+	 * @throws IllegalArgumentException
+	 *             if the buffer does not start with a valid frame.
+	 */
+
+	public static HAMessage decode(ByteBuffer in) {
+		if (in.remaining() < HEADER_LENGTH) {
+			return null;
+		}
+		int start = in.position();
+		checkHeader(in.get(start), in.get(start + 1));
+		int length = in.getShort(start + 2) & 0xFFFF;
+		if (length < BODY_LENGTH) {
+			throw new IllegalArgumentException("Frame body too short: " + length);
+		}
+		if (in.remaining() < HEADER_LENGTH + length) {
+			return null;
+		}
+
+		in.position(start + HEADER_LENGTH);
+		HAMessage.Type type = HAMessage.Type.fromCode(in.get() & 0xFF);
+		long term = in.getLong();
+		int controllerId = in.getInt();
+		long timestamp = in.getLong();
+		in.position(start + HEADER_LENGTH + length);
+
+		return build(type, term, controllerId, timestamp);
+	}
+
+	/**
+	 * Writes the given message as one binary frame.
+	 */
+
+	public static void encode(HAMessage msg, ByteBuf out) {
+		out.ensureWritable(FRAME_LENGTH);
+		out.writeByte(MAGIC);
+		out.writeByte(VERSION);
+		out.writeShort(BODY_LENGTH);
+		out.writeByte(msg.getType().getCode());
+		out.writeLong(msg.getTerm());
+		out.writeInt(msg.getControllerId());
+		out.writeLong(msg.getTimestamp());
+	}
+
+	/**
+	 * Writes the given message as one binary frame. The buffer must have at
+	 * least FRAME_LENGTH bytes remaining.
+	 */
+
+	public static void encode(HAMessage msg, ByteBuffer out) {
+		out.put(MAGIC);
+		out.put(VERSION);
+		out.putShort((short) BODY_LENGTH);
+		out.put((byte) msg.getType().getCode());
+		out.putLong(msg.getTerm());
+		out.putInt(msg.getControllerId());
+		out.putLong(msg.getTimestamp());
+	}
+
+	/**
+	 * Checks whether the given first byte of a message starts a binary frame,
+	 * as opposed to a legacy text message.
+	 */
+
+	public static boolean isFramed(byte first) {
+		return first == MAGIC;
+	}
+
+	/**
+	 * Parses a request in the legacy text format, the same way the HAServer
+	 * used to: by looking at the first character of the message, followed by
+	 * up to two whitespace separated arguments and the optional term.
+	 *
+	 * @param mssg
+	 *            : Text message as received from an old peer.
+	 * @return : The equivalent message, DONTCARE if it is not understood.
+	 */
+
+	public static HAMessage legacyDecodeRequest(String mssg) {
+		if (mssg == null || mssg.isEmpty()) {
+			return HAMessage.DONTCARE;
+		}
+
+		StringTokenizer st = new StringTokenizer(mssg);
+		String r2 = null;
+		String r3 = null;
+		String r4 = null;
+		if (st.hasMoreTokens()) {
+			st.nextToken();
+		}
+		if (st.hasMoreTokens()) {
+			r2 = st.nextToken();
+		}
+		if (st.hasMoreTokens()) {
+			r3 = st.nextToken();
+		}
+		if (st.hasMoreTokens()) {
+			r4 = st.nextToken();
+		}
+
+		switch (mssg.charAt(0)) {
+		case 'I':
+			return legacyElectionMessage(HAMessage.Type.IWON, r2, r3, r4);
+		case 'L':
+			return legacyElectionMessage(HAMessage.Type.LEADER, r2, r3, r4);
+		case 'S':
+			return legacyElectionMessage(HAMessage.Type.SETLEAD, r2, r3, r4);
+		case 'H':
+			return legacyElectionMessage(HAMessage.Type.HEARTBEAT, r2, r3, r4);
+		case 'R':
+			return legacyElectionMessage(HAMessage.Type.PREVOTE, r2, r3, r4);
+		case 'V':
+			return legacyElectionMessage(HAMessage.Type.VOTE, r2, r3, r4);
+		case 'Y':
+			return new HAMessage(HAMessage.Type.YOU, HAMessage.NO_CONTROLLER, legacyTimestamp(r2));
+		case 'P':
+			return HAMessage.PULSE;
+		case 'B':
+			return HAMessage.PUBLISH;
+		case 'K':
+			int cid = HAMessage.parseId(r2);
+			if (cid == HAMessage.NO_CONTROLLER) {
+				return HAMessage.DONTCARE;
+			}
+			return new HAMessage(HAMessage.Type.SUBSCRIBE, cid, HAMessage.NO_TIMESTAMP);
+		case 'm':
+			/**
+			 * Messages from other modules, see IHAControllerService.
+			 */
+			return HAMessage.PULSE;
+		default:
+			return HAMessage.DONTCARE;
+		}
+	}
+
+	/**
+	 * Parses a reply in the legacy text format.
+	 *
+	 * @param reply
+	 *            : Text reply as received from an old peer.
+	 * @return : The equivalent message, or null if nothing was received.
+	 */
+
+	public static HAMessage legacyDecodeReply(String reply) {
+		if (reply == null || reply.isEmpty() || reply.equals(none)) {
+			return null;
+		}
+		if (reply.equals("ACK")) {
+			return HAMessage.ACK;
+		} else if (reply.equals("NO")) {
+			return HAMessage.NO;
+		} else if (reply.equals("LEADOK")) {
+			return HAMessage.LEADOK;
+		} else if (reply.equals("DONTCARE")) {
+			return HAMessage.DONTCARE;
+		}
+
+		StringTokenizer st = new StringTokenizer(reply);
+		if (reply.startsWith("NO ")) {
+			st.nextToken();
+			return new HAMessage(HAMessage.Type.NO, legacyTerm(st.nextToken()), HAMessage.NO_CONTROLLER,
+					HAMessage.NO_TIMESTAMP);
+		} else if (reply.startsWith("VOTEOK")) {
+			st.nextToken();
+			String term = st.hasMoreTokens() ? st.nextToken() : null;
+			String ts = st.hasMoreTokens() ? st.nextToken() : null;
+			return new HAMessage(HAMessage.Type.VOTEOK, legacyTerm(term), HAMessage.NO_CONTROLLER,
+					legacyTimestamp(ts));
+		} else if (reply.startsWith("ACK")) {
+			st = new StringTokenizer(reply.substring(3));
+			String ts = st.hasMoreTokens() ? st.nextToken() : null;
+			String term = st.hasMoreTokens() ? st.nextToken() : null;
+			return new HAMessage(HAMessage.Type.HBACK, legacyTerm(term), HAMessage.NO_CONTROLLER,
+					legacyTimestamp(ts));
+		}
+
+		int cid = HAMessage.parseId(st.nextToken());
+		if (cid == HAMessage.NO_CONTROLLER) {
+			return HAMessage.DONTCARE;
+		}
+		String ts = st.hasMoreTokens() ? st.nextToken() : null;
+		return new HAMessage(HAMessage.Type.LEADERIS, cid, legacyTimestamp(ts));
+	}
+
+	/**
+	 * Renders the given message in the legacy text format.
+	 */
+
+	public static String legacyEncode(HAMessage msg) {
+		switch (msg.getType()) {
+		case PULSE:
+			return "PULSE";
+		case ACK:
+			return "ACK";
+		case NO:
+			return "NO" + legacyTerm(msg);
+		case LEADOK:
+			return "LEADOK";
+		case IWON:
+			return "IWON " + msg.getControllerId() + " " + legacyTimestamp(msg) + legacyTerm(msg);
+		case LEADER:
+			return "LEADER " + msg.getControllerId() + " " + legacyTimestamp(msg) + legacyTerm(msg);
+		case SETLEAD:
+			return "SETLEAD " + msg.getControllerId() + " " + legacyTimestamp(msg) + legacyTerm(msg);
+		case HEARTBEAT:
+			return "HEARTBEAT " + msg.getControllerId() + " " + legacyTimestamp(msg) + legacyTerm(msg);
+		case PREVOTE:
+			return "RPREVOTE " + msg.getControllerId() + " " + legacyTimestamp(msg) + " " + msg.getTerm();
+		case VOTE:
+			return "VOTE " + msg.getControllerId() + " " + legacyTimestamp(msg) + " " + msg.getTerm();
+		case VOTEOK:
+			return "VOTEOK " + msg.getTerm() + " " + legacyTimestamp(msg);
+		case YOU:
+			return "YOU? " + legacyTimestamp(msg);
+		case LEADERIS:
+			return msg.getControllerId() + " " + legacyTimestamp(msg);
+		case HBACK:
+			return "ACK" + legacyTimestamp(msg) + legacyTerm(msg);
+		case PUBLISH:
+			return "BPUBLISH";
+		case SUBSCRIBE:
+			return "KSUBSCRIBE C" + msg.getControllerId();
+		case DONTCARE:
+		default:
+			return "DONTCARE";
+		}
+	}
+
+	private static HAMessage build(HAMessage.Type type, long term, int controllerId, long timestamp) {
+		if (type == null) {
+			/**
+			 * A message type added by a newer peer, which we do not
+			 * understand.
+			 */
+			return HAMessage.DONTCARE;
+		}
+		return new HAMessage(type, term, controllerId, timestamp);
+	}
+
+	private static void checkHeader(byte magic, byte version) {
+		if (magic != MAGIC) {
+			throw new IllegalArgumentException("Bad frame magic: " + magic);
+		}
+		if (version < VERSION) {
+			throw new IllegalArgumentException("Unsupported frame version: " + version);
+		}
+	}
+
+	private static HAMessage legacyElectionMessage(HAMessage.Type type, String cid, String ts, String term) {
+		int id = HAMessage.parseId(cid);
+		if (id == HAMessage.NO_CONTROLLER) {
+			return HAMessage.DONTCARE;
+		}
+		return new HAMessage(type, legacyTerm(term), id, legacyTimestamp(ts));
+	}
+
+	/**
+	 * The term is only written when it is set, so that messages from the old
+	 * election look exactly as they used to.
+	 */
+
+	private static String legacyTerm(HAMessage msg) {
+		return (msg.getTerm() != 0) ? " " + msg.getTerm() : "";
+	}
+
+	private static long legacyTerm(String term) {
+		if (term == null || term.isEmpty()) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(term);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static String legacyTimestamp(HAMessage msg) {
+		return msg.hasTimestamp() ? String.valueOf(msg.getTimestamp()) : none;
+	}
+
+	private static long legacyTimestamp(String ts) {
+		if (ts == null || ts.isEmpty()) {
+			return HAMessage.NO_TIMESTAMP;
+		}
+		try {
+			return Long.parseLong(ts);
+		} catch (NumberFormatException e) {
+			return HAMessage.NO_TIMESTAMP;
+		}
+	}
+
+}
@@ -0,0 +1,60 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.AttributeKey;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Decodes HAMessages for the HAServer pipeline. Binary frames are decoded
+ * with the HAMessageCodec, as many as are available in the buffer, and
+ * incomplete frames are left for the next read.
+ *
+ * Anything that does not start with the frame magic byte is treated as a
+ * message in the legacy text format, which is sent unframed, so the entire
+ * readable buffer is taken to be one message. The channel is then marked as
+ * legacy, so that the HAMessageEncoder replies in the same format.
+ */
+
+public class HAMessageDecoder extends ByteToMessageDecoder {
+
+	public static final AttributeKey<Boolean> LEGACY_TEXT = AttributeKey.valueOf("HALegacyText");
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		while (in.isReadable()) {
+			if (!HAMessageCodec.isFramed(in.getByte(in.readerIndex()))) {
+				ctx.channel().attr(LEGACY_TEXT).set(Boolean.TRUE);
+				String mssg = in.toString(CharsetUtil.UTF_8).trim();
+				in.skipBytes(in.readableBytes());
+				out.add(HAMessageCodec.legacyDecodeRequest(mssg));
+				return;
+			}
+
+			ctx.channel().attr(LEGACY_TEXT).set(Boolean.FALSE);
+			HAMessage msg = HAMessageCodec.decode(in);
+			if (msg == null) {
+				return;
+			}
+			out.add(msg);
+		}
+	}
+
+}
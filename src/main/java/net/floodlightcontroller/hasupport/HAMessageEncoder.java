@@ -0,0 +1,39 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Encodes HAMessages for the HAServer pipeline, as binary frames, or in the
+ * legacy text format if the HAMessageDecoder has seen a legacy message on this
+ * channel.
+ */
+
+public class HAMessageEncoder extends MessageToByteEncoder<HAMessage> {
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, HAMessage msg, ByteBuf out) throws Exception {
+		if (Boolean.TRUE.equals(ctx.channel().attr(HAMessageDecoder.LEGACY_TEXT).get())) {
+			out.writeBytes(HAMessageCodec.legacyEncode(msg).getBytes(CharsetUtil.UTF_8));
+		} else {
+			HAMessageCodec.encode(msg, out);
+		}
+	}
+
+}
@@ -20,7 +20,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
@@ -54,6 +56,8 @@ public class HAServer implements Runnable {
 
 	public final Integer socketTimeout = new Integer(500);
 
+	private volatile Channel serverChannel;
+
 	/**
 	 * Instantiate a HAServer object. The AsyncElection class will instantiate a
 	 * server object, which will be provided with the port it should run on, the
@@ -85,12 +89,14 @@ public class HAServer implements Runnable {
 		ServerBootstrap sb = new ServerBootstrap();
 		sb.group(serverbossPool, serverworkerPool).channel(NioServerSocketChannel.class)
 				.localAddress(new InetSocketAddress("0.0.0.0", lastfour))
+				.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+				.childOption(ChannelOption.TCP_NODELAY, true)
 				.childHandler(new ServerChannelInitializer(aelection, controllerID));
 
 		try {
-			Channel ls = sb.bind().sync().channel();
+			serverChannel = sb.bind().sync().channel();
 			logger.info("Starting HAServer...");
-			ls.closeFuture().sync();
+			serverChannel.closeFuture().sync();
 		} catch (InterruptedException e) {
 		} finally {
 			serverbossPool.shutdownGracefully();
@@ -100,4 +106,16 @@ public class HAServer implements Runnable {
 		return;
 	}
 
+	/**
+	 * Closes the listening channel, which also shuts down the accepted
+	 * connections.
+	 */
+
+	public void stop() {
+		Channel ls = serverChannel;
+		if (ls != null) {
+			ls.close();
+		}
+	}
+
 }
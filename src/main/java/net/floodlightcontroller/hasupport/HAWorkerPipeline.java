@@ -0,0 +1,196 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HAWorkerPipeline
+ *
+ * Runs the publish and subscribe hooks of one registered HAWorker on a thread
+ * of its own, so that a slow HAWorker only delays its own replication and
+ * not that of the others (e.g. the topology).
+ *
+ * At most one publish and one subscribe are pending per HAWorker: a request
+ * made while the previous one has not started yet is coalesced with it
+ * (the pending subscribe picks up the latest controller ID). This is the
+ * backpressure of the pipeline, a HAWorker which can't keep up with the
+ * leader's polls skips polls instead of queueing them up.
+ */
+
+public class HAWorkerPipeline {
+
+	private static final Logger logger = LoggerFactory.getLogger(HAWorkerPipeline.class);
+
+	private final String name;
+	private final IHAWorker worker;
+	private final ExecutorService executor;
+
+	private final AtomicBoolean publishPending = new AtomicBoolean(false);
+	private final AtomicBoolean subscribePending = new AtomicBoolean(false);
+	private volatile String subscribeTo;
+
+	private final AtomicLong publishes = new AtomicLong();
+	private final AtomicLong subscribes = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private volatile long lastPublishNanos;
+	private volatile long lastSubscribeNanos;
+
+	public HAWorkerPipeline(final String name, IHAWorker worker) {
+		this.name = name;
+		this.worker = worker;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "HAWorker-" + name);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public IHAWorker getWorker() {
+		return worker;
+	}
+
+	/**
+	 * Schedules a call to the publishHook of the HAWorker, unless one is
+	 * already pending.
+	 *
+	 * @return : false if the request was coalesced with a pending one.
+	 */
+
+	public boolean publish() {
+		if (!publishPending.compareAndSet(false, true)) {
+			coalesced.incrementAndGet();
+			return false;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					publishPending.set(false);
+					long start = System.nanoTime();
+					try {
+						worker.publishHook();
+					} catch (Exception e) {
+						failures.incrementAndGet();
+						logger.debug("[HAWorkerPipeline] " + name + " publishHook failed!");
+						e.printStackTrace();
+					}
+					lastPublishNanos = System.nanoTime() - start;
+					publishes.incrementAndGet();
+				}
+			});
+		} catch (Exception e) {
+			publishPending.set(false);
+			logger.debug("[HAWorkerPipeline] " + name + " is stopped, publish ignored.");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Schedules a call to the subscribeHook of the HAWorker for the given
+	 * controller ID, unless one is already pending, in which case the pending
+	 * one will use this controller ID.
+	 *
+	 * @return : false if the request was coalesced with a pending one.
+	 */
+
+	public boolean subscribe(String controllerID) {
+		subscribeTo = controllerID;
+		if (!subscribePending.compareAndSet(false, true)) {
+			coalesced.incrementAndGet();
+			return false;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					subscribePending.set(false);
+					String cid = subscribeTo;
+					long start = System.nanoTime();
+					try {
+						worker.subscribeHook(cid);
+					} catch (Exception e) {
+						failures.incrementAndGet();
+						logger.debug("[HAWorkerPipeline] " + name + " subscribeHook failed!");
+						e.printStackTrace();
+					}
+					lastSubscribeNanos = System.nanoTime() - start;
+					subscribes.incrementAndGet();
+				}
+			});
+		} catch (Exception e) {
+			subscribePending.set(false);
+			logger.debug("[HAWorkerPipeline] " + name + " is stopped, subscribe ignored.");
+			return false;
+		}
+		return true;
+	}
+
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	public long getPublishCount() {
+		return publishes.get();
+	}
+
+	public long getSubscribeCount() {
+		return subscribes.get();
+	}
+
+	/**
+	 * @return : Number of publish and subscribe requests which were merged
+	 *         into a pending one.
+	 */
+
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	public long getFailureCount() {
+		return failures.get();
+	}
+
+	public long getLastPublishNanos() {
+		return lastPublishNanos;
+	}
+
+	public long getLastSubscribeNanos() {
+		return lastSubscribeNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "HAWorkerPipeline [name=" + name + ", publishes=" + publishes + ", subscribes=" + subscribes
+				+ ", coalesced=" + coalesced + ", failures=" + failures + "]";
+	}
+
+}
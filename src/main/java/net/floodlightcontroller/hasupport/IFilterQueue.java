@@ -28,6 +28,9 @@ import java.util.List;
  * reverse queue. Then the subscribeHook() in HAWorker calls the
  * dequeueReverse() method to finally get the updates.
  *
+ * getDuplicateFilter() returns the filter used by enqueueForward(), whose
+ * hits, misses and size can be used to monitor the queue.
+ *
  * @author Bhargav Srinivasan, Om Kale
  *
  */
@@ -41,6 +44,8 @@ public interface IFilterQueue {
 
 	public boolean enqueueReverse(String value);
 
+	public DuplicateFilter getDuplicateFilter();
+
 	public void subscribe(String controllerID);
 
 }
@@ -27,6 +27,11 @@ import net.floodlightcontroller.core.module.IFloodlightService;
  * module in order to obtain the updates/state information stored by these
  * HAWorkers.
  *
+ * Every registered HAWorker gets a HAWorkerPipeline, which runs its hooks on
+ * a thread of its own, so that the HAWorkers don't wait for one another.
+ * Modules which don't have an HAWorker of their own can register a
+ * ReplicationPipeline.
+ *
  * @author Bhargav Srinivasan, Om Kale
  *
  */
@@ -66,4 +71,32 @@ public interface IHAWorkerService extends IFloodlightService {
 
 	public void registerService(String serviceName, IHAWorker haw);
 
+	/**
+	 * Get the pipeline which runs the hooks of a registered HAWorker, e.g.
+	 * to read its counters.
+	 *
+	 * @param serviceName
+	 *            : Unique name corresponding to the HAWorker class object
+	 * @return The HAWorkerPipeline of 'serviceName', or null.
+	 */
+
+	public HAWorkerPipeline getPipeline(String serviceName);
+
+	/**
+	 * Calls the publish hook of every registered HAWorker, each on its own
+	 * pipeline. Returns without waiting for the hooks.
+	 */
+
+	public void publishHooks();
+
+	/**
+	 * Calls the subscribe hook of every registered HAWorker, each on its own
+	 * pipeline. Returns without waiting for the hooks.
+	 *
+	 * @param controllerID
+	 *            : Controller whose updates to subscribe to.
+	 */
+
+	public void subscribeHooks(String controllerID);
+
 }
@@ -0,0 +1,40 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+/**
+ * ILeaderChangeListener
+ *
+ * Implemented by classes which need to react when the network-wide leader
+ * seen by this node changes, instead of polling AsyncElection.getLeader().
+ * The listener is called on the thread which changed the leader, i.e. the
+ * election event loop or a HAServer worker thread, so implementations must
+ * return quickly and must not block.
+ */
+
+public interface ILeaderChangeListener {
+
+	/**
+	 * Called after the leader has changed.
+	 *
+	 * @param oldLeader
+	 *            : Previous leader, "none" if there was no leader.
+	 * @param newLeader
+	 *            : Current leader, "none" if there is no leader.
+	 */
+
+	public void leaderChanged(String oldLeader, String newLeader);
+
+}
@@ -0,0 +1,55 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+/**
+ * IReplicationCodec
+ *
+ * Describes how the updates of a module are stored in the syncDB by a
+ * ReplicationPipeline: the key an update is stored under (updates with the
+ * same key form its history), the hash used to filter out duplicates, and the
+ * String form of the update. See LDUpdateRecord for an example of such a
+ * format.
+ */
+
+public interface IReplicationCodec<T> {
+
+	/**
+	 * @return : The syncDB key of the update, the same for every update of
+	 *         the same entity. Must not contain ", ".
+	 */
+
+	public String getKey(T update);
+
+	/**
+	 * @return : A 64 bit hash of the update, equal for duplicate updates.
+	 */
+
+	public long hash(T update);
+
+	/**
+	 * @return : The update as a String, which must not contain ", " nor start
+	 *         with '{'.
+	 */
+
+	public String encode(T update);
+
+	/**
+	 * @return : The update, or null if the value can't be decoded.
+	 */
+
+	public T decode(String value);
+
+}
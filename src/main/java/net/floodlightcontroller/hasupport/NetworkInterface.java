@@ -54,6 +54,17 @@ public interface NetworkInterface {
 
 	public ElectionState blockUntilConnected();
 
+	/**
+	 * Non-blocking variant of blockUntilConnected(), used by the event driven
+	 * election. Makes one attempt to connect to the configured nodes and
+	 * returns immediately.
+	 *
+	 * @return : ELECT if a majority of the nodes are now connected, CONNECT
+	 *         otherwise.
+	 */
+
+	public ElectionState tryConnect();
+
 	/**
 	 * This function is used to TRY connecting to the nodes that are not yet
 	 * connected but are present in the server configuration. It updates the
@@ -26,7 +26,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
-import org.python.modules.math;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +50,14 @@ import org.slf4j.LoggerFactory;
  * using the extended request-reply pattern, mentioned in the ZGuide. We could
  * identify a good alternative and implement it.
  *
+ * The connections to the other nodes are long-lived PeerConnections, which
+ * share one Netty event loop: once a node is connected, its connection stays
+ * open for as long as it is reachable, and the election and heartbeat
+ * messages never wait for a TCP handshake. A node is only dropped from the
+ * socketDict when its connection is closed or when maxFailures exchanges with
+ * it failed in a row, and a node which is down is retried with a backoff
+ * (see PeerConnection).
+ *
  * @author Bhargav Srinivasan, Om Kale
  */
 
@@ -58,7 +65,7 @@ public class NetworkNode implements NetworkInterface, Runnable {
 
 	private static final Logger logger = LoggerFactory.getLogger(NetworkNode.class);
 
-	private NioClient clientSock;
+	private PeerConnection clientSock;
 	private final String controllerID;
 	private final String serverPort;
 
@@ -72,20 +79,18 @@ public class NetworkNode implements NetworkInterface, Runnable {
 	private List<String> allServerList = new LinkedList<>();
 	private Set<String> connectSet = new HashSet<>();
 
-	private final String pulse = "PULSE";
-	private final String ack = "ACK";
 
 	/**
 	 * Holds the connection state/ socket object for each of the client
 	 * connections.
 	 */
 
-	private Map<String, NioClient> socketDict = new HashMap<>();
+	private Map<String, PeerConnection> socketDict = new HashMap<>();
 	private Map<String, netState> connectDict = new HashMap<>();
 	private Map<String, String> controllerIDNetStatic = new HashMap<>();
 	private Map<String, Integer> netcontrollerIDStatic = new HashMap<>();
-	private Map<String, NioClient> allsocketDict = new HashMap<>();
-	private Map<String, NioClient> delmark = new HashMap<>();
+	private Map<String, PeerConnection> allsocketDict = new HashMap<>();
+	private Map<String, PeerConnection> delmark = new HashMap<>();
 
 	/**
 	 * Standardized sleep times for socket timeouts, number of pulses to send
@@ -100,22 +105,39 @@ public class NetworkNode implements NetworkInterface, Runnable {
 	 */
 
 	private final Integer socketTimeout = new Integer(500);
-	private final Integer linger = new Integer(0);
 	private final Integer numberOfPulses = new Integer(1);
+
+	/**
+	 * Number of failed exchanges in a row after which a connected node is
+	 * considered down, and how long a connection may stay idle before it is
+	 * checked with a PULSE. Any successful exchange (e.g. a heartbeat) counts
+	 * as a check.
+	 */
+
+	private final Integer maxFailures = new Integer(3);
+	private final long pulseIntervalNanos = TimeUnit.MILLISECONDS.toNanos(socketTimeout);
 	private final Integer pollTime = new Integer(1);
 	private Integer ticks = new Integer(0);
 
 	/**
-	 * Majority is a variable that holds what % of servers need to be active in
-	 * order for the election to start happening. Total rounds is the number of
-	 * expected failures which is set to len(serverList) beacuse we assume that
-	 * any/every node can fail.
+	 * Majority is a variable that holds how many of the other servers need to
+	 * be active in order for the election to start happening, i.e. together
+	 * with this node they form a strict majority of all configured nodes. Total
+	 * rounds is the number of expected failures which is set to
+	 * len(serverList) beacuse we assume that any/every node can fail.
 	 */
 
 	private final Integer majority;
 	private final Integer totalRounds;
 	private String response = new String();
 
+	/**
+	 * Whether to talk to the other nodes using the legacy text protocol
+	 * instead of binary HAMessage frames, during a rolling upgrade.
+	 */
+
+	private final boolean legacyText;
+
 	/**
 	 * Constructor needs both the backend and frontend ports and the serverList
 	 * file which specifies a port number for each connected client.
@@ -126,21 +148,39 @@ public class NetworkNode implements NetworkInterface, Runnable {
 	 */
 
 	public NetworkNode(String serverPort, String controllerID) {
+		this(serverPort, controllerID, false);
+	}
+
+	public NetworkNode(String serverPort, String controllerID, boolean legacyText) {
+		this(serverPort, controllerID, null, legacyText);
+	}
+
+	/**
+	 * Creates a node for the given list of servers instead of the ones in
+	 * server.config, e.g. to run several nodes on loopback ports.
+	 *
+	 * @param servers
+	 *            : IP:ports of all configured nodes, in controller ID order.
+	 *            Read from server.config if null.
+	 */
+
+	public NetworkNode(String serverPort, String controllerID, List<String> servers, boolean legacyText) {
 		/**
 		 * The port variables needed in order to start the back-end and
 		 * front-end of the queue device.
 		 */
 		this.serverPort = serverPort.toString();
 		this.controllerID = controllerID;
-		preStart();
+		this.legacyText = legacyText;
+		if (servers == null) {
+			preStart();
+		} else {
+			preStart(servers);
+		}
 		totalRounds = new Integer(connectSet.size());
 		logger.debug("Total Rounds: " + totalRounds.toString());
 
-		if (totalRounds >= 2) {
-			majority = new Integer((int) math.ceil(new Double(0.51 * connectSet.size())));
-		} else {
-			majority = new Integer(1);
-		}
+		majority = new Integer((connectSet.size() + 1) / 2);
 		logger.debug(
 				"Other Servers: " + connectSet.toString() + "Majority: " + majority + "ServerPort: " + this.serverPort);
 
@@ -184,6 +224,40 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		return ElectionState.ELECT;
 	}
 
+	/**
+	 * Makes a single attempt to connect a majority of the configured nodes,
+	 * refreshing the connection state every 250 attempts in order to avoid too
+	 * many open files. Called on every tick of the election event loop while in
+	 * the CONNECT state.
+	 */
+
+	@Override
+	public ElectionState tryConnect() {
+		try {
+			if (ticks == 0) {
+				cleanState();
+			}
+
+			this.connectClients();
+
+			ticks += 1;
+			if (ticks > 250) {
+				logger.debug("[NetworkNode] Refreshing state....");
+				ticks = 0;
+			}
+		} catch (Exception e) {
+			logger.debug("[NetworkNode] TryConnect errored out: " + e.toString());
+		}
+
+		if (socketDict.size() < majority) {
+			return ElectionState.CONNECT;
+		}
+
+		ticks = 0;
+		updateConnectDict();
+		return ElectionState.ELECT;
+	}
+
 	/**
 	 * This method is periodically called by the election class so that we can
 	 * identify if any more of the configured nodes have become active, and if
@@ -207,49 +281,27 @@ public class NetworkNode implements NetworkInterface, Runnable {
 	}
 
 	/**
-	 * This method is used to completely refresh the state of the connection
-	 * manager, closing all sockets, both active and inactive, and spawning new
-	 * socket objects for all configured nodes. This function is called by the
-	 * blockUntilConnected() method in order to refresh state every five minutes
-	 * in order to avoid an excess of open files / sockets.
+	 * This method is used to refresh the state of the connection manager:
+	 * every node is removed from the socketDict, so that it has to answer a
+	 * PULSE again before it is considered connected, and the connections which
+	 * are no longer open are closed. Open connections are kept, so that
+	 * reconnecting to a node which is still up doesn't need a new TCP
+	 * connection.
 	 *
 	 */
 
 	public void cleanState() {
 
 		this.setConnectSet(new HashSet<>(serverList));
-		delmark = new HashMap<>();
 
 		for (String client : connectSet) {
-			allsocketDict.get(client).deleteConnection();
-			allsocketDict.put(client, new NioClient(socketTimeout, linger));
-		}
-
-		for (Map.Entry<String, NioClient> entry : socketDict.entrySet()) {
-			try {
-				// logger.info("[Node] Closing connection:
-				// "+entry.getKey().toString());
-				entry.getValue().deleteConnection();
-				delmark.put(entry.getKey(), entry.getValue());
-
-			} catch (NullPointerException ne) {
-				// logger.info("[Node] BlockUntil: Reply had a null
-				// value"+entry.getKey().toString());
-				delmark.put(entry.getKey(), entry.getValue());
-				// ne.printStackTrace();
-			} catch (Exception e) {
-				// logger.info("[Node] Error closing connection:
-				// "+entry.getKey().toString());
-				delmark.put(entry.getKey(), entry.getValue());
-				e.printStackTrace();
+			PeerConnection conn = allsocketDict.get(client);
+			if (conn != null && !conn.isActive()) {
+				conn.close();
 			}
 		}
 
-		for (Map.Entry<String, NioClient> entry : delmark.entrySet()) {
-			socketDict.remove(entry.getKey());
-		}
-
-		this.setSocketDict(new HashMap<String, NioClient>());
+		this.setSocketDict(new HashMap<String, PeerConnection>());
 
 		return;
 
@@ -274,7 +326,7 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		/**
 		 * Delete the already connected connections from the ToConnect Set.
 		 */
-		for (Map.Entry<String, NioClient> entry : socketDict.entrySet()) {
+		for (Map.Entry<String, PeerConnection> entry : socketDict.entrySet()) {
 			if (connectSet.contains(entry.getKey())) {
 				connectSet.remove(entry.getKey());
 				// logger.info("Discarding already connected client:
@@ -300,7 +352,7 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		Set<String> diffSet = new HashSet<>();
 		Set<String> connectedNodes = new HashSet<>();
 
-		for (Map.Entry<String, NioClient> entry : socketDict.entrySet()) {
+		for (Map.Entry<String, PeerConnection> entry : socketDict.entrySet()) {
 			connectedNodes.add(entry.getKey());
 		}
 
@@ -314,44 +366,32 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		 * Try connecting to all nodes that are in the diffSet and store the
 		 * successful ones in the socketDict.
 		 */
-		String reply;
+		HAMessage reply;
 		for (String client : diffSet) {
-			reply = "";
+			reply = null;
 			clientSock = allsocketDict.get(client);
+			if (clientSock == null) {
+				continue;
+			}
 			try {
 				// logger.info("[Node] Trying to connect to Client:
 				// "+client.toString()+"Client Sock: "+clientSock.toString());
-				clientSock.connectClient(client);
-				clientSock.send(pulse);
-				reply = clientSock.recv();
-
-				if (reply.equals(ack)) {
-					// logger.info("[Node] Client: "+client.toString()+"Client
-					// Sock: "+clientSock.toString());
-					if (!socketDict.containsKey(client)) {
-						socketDict.put(client, clientSock);
-					} else {
-						// logger.info("[Node] This socket already exists,
-						// refreshing: "+client.toString());
-						clientSock.deleteConnection();
-						socketDict.remove(client);
-						socketDict.put(client, new NioClient(socketTimeout, linger));
-					}
-				} else {
+				if (!clientSock.connect()) {
+					continue;
+				}
+				clientSock.send(HAMessage.PULSE);
+				reply = clientSock.recvMessage();
+
+				if (reply != null && reply.getType() == HAMessage.Type.ACK) {
+					socketDict.put(client, clientSock);
+				} else if (clientSock.getConsecutiveFailures() >= maxFailures) {
 					// logger.info("[Node] Received bad reply:
 					// "+client.toString()+" "+reply);
-					clientSock.deleteConnection();
-					// logger.info("[Node] Closed Socket"+client.toString());
+					clientSock.close();
 				}
 
-			} catch (NullPointerException ne) {
-				logger.debug("[NetworkNode] ConnectClients: Reply had a null value from: " + client.toString());
-				// ne.printStackTrace();
 			} catch (Exception e) {
-				if (clientSock != null) {
-					clientSock.deleteConnection();
-					allsocketDict.put(client, new NioClient(socketTimeout, linger));
-				}
+				clientSock.close();
 				logger.debug("[NetworkNode] ConnectClients errored out: " + client.toString());
 				// e.printStackTrace();
 			}
@@ -376,27 +416,38 @@ public class NetworkNode implements NetworkInterface, Runnable {
 	public Map<String, netState> expireOldConnections() {
 		// logger.info("Expiring old connections...");
 		delmark = new HashMap<>();
-		String reply;
-		for (Map.Entry<String, NioClient> entry : socketDict.entrySet()) {
+		HAMessage reply;
+		long now = System.nanoTime();
+		for (Map.Entry<String, PeerConnection> entry : socketDict.entrySet()) {
 			clientSock = entry.getValue();
-			reply = "";
 			try {
+				if (!clientSock.isActive()) {
+					delmark.put(entry.getKey(), clientSock);
+					continue;
+				}
+
+				/**
+				 * A node which answered recently, e.g. a heartbeat, doesn't
+				 * need to be pulsed.
+				 */
+				if (now - clientSock.getLastSuccessNanos() < pulseIntervalNanos
+						&& clientSock.getConsecutiveFailures() == 0) {
+					continue;
+				}
+
+				reply = null;
 				for (int i = 0; i < numberOfPulses; i++) {
-					clientSock.send(pulse);
-					reply = clientSock.recv();
+					clientSock.send(HAMessage.PULSE);
+					reply = clientSock.recvMessage();
 				}
 
-				if (!reply.equals(ack)) {
+				if ((reply == null || reply.getType() != HAMessage.Type.ACK)
+						&& clientSock.getConsecutiveFailures() >= maxFailures) {
 					// logger.info("[Node] Closing stale connection:
 					// "+entry.getKey().toString());
-					entry.getValue().deleteConnection();
-					delmark.put(entry.getKey(), entry.getValue());
+					delmark.put(entry.getKey(), clientSock);
 				}
 
-			} catch (NullPointerException ne) {
-				logger.debug("[NetworkNode] Expire: Reply had a null value: " + entry.getKey().toString());
-				delmark.put(entry.getKey(), entry.getValue());
-				// ne.printStackTrace();
 			} catch (Exception e) {
 				logger.debug("[NetworkNode] Expire: Exception! : " + entry.getKey().toString());
 				delmark.put(entry.getKey(), entry.getValue());
@@ -408,10 +459,10 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		 * Pop out all the expired connections from socketDict.
 		 */
 		try {
-			for (Map.Entry<String, NioClient> entry : delmark.entrySet()) {
+			for (Map.Entry<String, PeerConnection> entry : delmark.entrySet()) {
 				socketDict.remove(entry.getKey());
 				if (entry.getValue() != null) {
-					entry.getValue().deleteConnection();
+					entry.getValue().close();
 				}
 			}
 		} catch (Exception e) {
@@ -466,7 +517,7 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		return serverList;
 	}
 
-	public Map<String, NioClient> getSocketDict() {
+	public Map<String, PeerConnection> getSocketDict() {
 		return socketDict;
 	}
 
@@ -474,6 +525,28 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		return totalRounds;
 	}
 
+	public boolean isLegacyText() {
+		return legacyText;
+	}
+
+	/**
+	 * Returns the connections to all the configured nodes, connected or not,
+	 * e.g. to read their health.
+	 */
+
+	public Map<String, PeerConnection> getPeers() {
+		return Collections.unmodifiableMap(allsocketDict);
+	}
+
+	/**
+	 * Creates the connection to one of the configured nodes, using the
+	 * protocol this node was configured with.
+	 */
+
+	private PeerConnection newClient(String client) {
+		return new PeerConnection(client, socketTimeout, legacyText);
+	}
+
 	/**
 	 * Parses server.config located in the resources folder in order to obtain
 	 * the IP:ports of all the nodes that are configured to be a part of this
@@ -488,25 +561,15 @@ public class NetworkNode implements NetworkInterface, Runnable {
 			FileReader configFile = new FileReader(filename);
 			String line = null;
 			BufferedReader br = new BufferedReader(configFile);
+			List<String> servers = new LinkedList<>();
 
-			Integer cidIter = new Integer(1);
 			while ((line = br.readLine()) != null) {
-				serverList.add(new String(line.trim()));
-				allServerList.add(new String(line.trim()));
-				netcontrollerIDStatic.put(new String(line.trim()), cidIter);
-				controllerIDNetStatic.put(cidIter.toString(), new String(line.trim()));
-				cidIter += 1;
-			}
-
-			serverList.remove(serverPort);
-			this.setConnectSet(new HashSet<>(serverList));
-
-			for (String client : connectSet) {
-				allsocketDict.put(client, new NioClient(socketTimeout, linger));
+				servers.add(new String(line.trim()));
 			}
 
 			br.close();
 			configFile.close();
+			preStart(servers);
 
 		} catch (FileNotFoundException e) {
 			logger.debug(
@@ -516,6 +579,29 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		}
 	}
 
+	/**
+	 * Sets up the server list from the given IP:ports, the n-th server having
+	 * controller ID n.
+	 */
+
+	public void preStart(List<String> servers) {
+		Integer cidIter = new Integer(1);
+		for (String server : servers) {
+			serverList.add(server);
+			allServerList.add(server);
+			netcontrollerIDStatic.put(server, cidIter);
+			controllerIDNetStatic.put(cidIter.toString(), server);
+			cidIter += 1;
+		}
+
+		serverList.remove(serverPort);
+		this.setConnectSet(new HashSet<>(serverList));
+
+		for (String client : connectSet) {
+			allsocketDict.put(client, newClient(client));
+		}
+	}
+
 	/**
 	 * Receives a message from the specified IP:port, if possible.
 	 *
@@ -532,15 +618,43 @@ public class NetworkNode implements NetworkInterface, Runnable {
 			// "+receivingPort.toString()+response);
 			return response;
 		} catch (Exception e) {
-			if (clientSock.getSocketChannel() != null) {
-				clientSock.deleteConnection();
-			}
 			logger.debug("[NetworkNode] Recv Failed on port: " + receivingPort.toString());
 			return "";
 		}
 
 	}
 
+	/**
+	 * Receives an election message from the specified IP:port, if possible.
+	 *
+	 * @return The received message, or null if the receive failed.
+	 */
+
+	public HAMessage recvMessage(String receivingPort) {
+		return recvMessage(receivingPort, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(socketTimeout));
+	}
+
+	/**
+	 * Receives an election message from the specified IP:port, waiting no
+	 * later than the deadline.
+	 *
+	 * @param deadlineNanos
+	 *            : System.nanoTime() after which to give up.
+	 * @return The received message, or null if none arrived in time.
+	 */
+
+	public HAMessage recvMessage(String receivingPort, long deadlineNanos) {
+		clientSock = socketDict.get(receivingPort);
+		if (clientSock == null) {
+			return null;
+		}
+		HAMessage reply = clientSock.recvMessage(deadlineNanos);
+		if (reply == null) {
+			logger.debug("[NetworkNode] Recv Failed on port: " + receivingPort);
+		}
+		return reply;
+	}
+
 	@Override
 	public void run() {
 		try {
@@ -567,18 +681,36 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		try {
 			// logger.info("[NetworkNode] Sending: "+message+" sent through
 			// port: "+clientPort.toString());
-			clientSock.send(message);
-			return Boolean.TRUE;
+			return clientSock.send(message);
 
 		} catch (Exception e) {
-			if (clientSock.getSocketChannel() != null) {
-				clientSock.deleteConnection();
-			}
 			logger.debug("[NetworkNode] Send Failed: " + message + " not sent through port: " + clientPort.toString());
 			return Boolean.FALSE;
 		}
 	}
 
+	/**
+	 * Sends an election message to a specified client IP:port, if possible.
+	 *
+	 * @return boolean value that indicates success or failure.
+	 */
+
+	public Boolean send(String clientPort, HAMessage message) {
+		if (message == null) {
+			return Boolean.FALSE;
+		}
+
+		clientSock = socketDict.get(clientPort);
+		if (clientSock == null) {
+			return Boolean.FALSE;
+		}
+		Boolean sent = clientSock.send(message);
+		if (!sent) {
+			logger.debug("[NetworkNode] Send Failed: {} not sent through port: {}", message, clientPort);
+		}
+		return sent;
+	}
+
 	public void setAllServerList(List<String> allServerList) {
 		this.allServerList = allServerList;
 	}
@@ -599,7 +731,7 @@ public class NetworkNode implements NetworkInterface, Runnable {
 		this.serverList = serverList;
 	}
 
-	public void setSocketDict(Map<String, NioClient> socketDict) {
+	public void setSocketDict(Map<String, PeerConnection> socketDict) {
 		this.socketDict = socketDict;
 	}
 
@@ -617,7 +749,7 @@ public class NetworkNode implements NetworkInterface, Runnable {
 			connectDict.put(seten, netState.OFF);
 		}
 
-		for (Map.Entry<String, NioClient> entry : socketDict.entrySet()) {
+		for (Map.Entry<String, PeerConnection> entry : socketDict.entrySet()) {
 			connectDict.put(entry.getKey(), netState.ON);
 		}
 
@@ -0,0 +1,386 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * The long-lived connection from this node to one of the other configured
+ * nodes, used by the NetworkNode instead of opening a new blocking socket
+ * whenever a node has to be (re)connected.
+ *
+ * All the connections of the process share one Netty event loop and are
+ * created with TCP_NODELAY, so that the election and heartbeat messages,
+ * which are small and latency bound, are neither delayed by Nagle's algorithm
+ * nor by a TCP handshake: the connection is kept open for as long as the
+ * other node is up, and is only re-established once it has been lost.
+ *
+ * The election uses a request-reply pattern, so the replies read by the event
+ * loop are queued, and recvMessage() / recv() wait up to the socket timeout,
+ * or up to a given deadline, for the next one. A request can thus be sent to
+ * every node before the replies are collected, in parallel. Replies which arrive after their request timed out are
+ * dropped when the next request is sent.
+ *
+ * Health is tracked per connection: the time and round trip time of the last
+ * successful exchange and the number of consecutive failed ones. Failed
+ * connection attempts are retried with an exponential backoff, between
+ * MIN_BACKOFF_MILLIS and MAX_BACKOFF_MILLIS, so that a node which is down
+ * doesn't cost a connection attempt on every tick of the election.
+ */
+
+public class PeerConnection {
+
+	private static final Logger logger = LoggerFactory.getLogger(PeerConnection.class);
+
+	public static final long MIN_BACKOFF_MILLIS = 10;
+	public static final long MAX_BACKOFF_MILLIS = 5000;
+
+	private static EventLoopGroup clientGroup;
+
+	private final String address;
+	private final int timeoutMillis;
+	private final boolean legacyText;
+	private final LinkedBlockingQueue<Object> inbound = new LinkedBlockingQueue<>();
+
+	private volatile Channel channel;
+	private long backoffMillis = MIN_BACKOFF_MILLIS;
+	private long nextAttemptNanos;
+	private long sentNanos;
+
+	private volatile int consecutiveFailures;
+	private volatile long lastSuccessNanos;
+	private volatile long lastRttNanos = -1;
+	private volatile long connects;
+
+	/**
+	 * @param address
+	 *            : IP:port of the other node.
+	 * @param timeoutMillis
+	 *            : Connect and receive timeout.
+	 * @param legacyText
+	 *            : Whether to use the legacy text protocol.
+	 */
+
+	public PeerConnection(String address, int timeoutMillis, boolean legacyText) {
+		this.address = address;
+		this.timeoutMillis = timeoutMillis;
+		this.legacyText = legacyText;
+	}
+
+	/**
+	 * The event loop shared by all the client connections of this process.
+	 * Its thread is a daemon, so that it never keeps the process alive.
+	 */
+
+	private static synchronized EventLoopGroup getClientGroup() {
+		if (clientGroup == null) {
+			clientGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("HAPeerConnection", true));
+		}
+		return clientGroup;
+	}
+
+	public String getAddress() {
+		return address;
+	}
+
+	public boolean isActive() {
+		Channel ch = channel;
+		return ch != null && ch.isActive();
+	}
+
+	/**
+	 * Connects to the other node, unless the connection is already open or
+	 * the previous attempt failed less than the current backoff ago.
+	 *
+	 * @return : true if the connection is open.
+	 */
+
+	public synchronized boolean connect() {
+		if (isActive()) {
+			return true;
+		}
+		long now = System.nanoTime();
+		if (now - nextAttemptNanos < 0) {
+			return false;
+		}
+
+		close();
+		try {
+			int port = Integer.parseInt(address.substring(address.lastIndexOf(':') + 1));
+			String host = address.substring(0, address.lastIndexOf(':'));
+			Bootstrap b = new Bootstrap();
+			b.group(getClientGroup()).channel(NioSocketChannel.class)
+					.option(ChannelOption.TCP_NODELAY, true)
+					.option(ChannelOption.SO_KEEPALIVE, true)
+					.option(ChannelOption.SO_REUSEADDR, true)
+					.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+					.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, timeoutMillis)
+					.handler(new ChannelInitializer<SocketChannel>() {
+						@Override
+						protected void initChannel(SocketChannel ch) throws Exception {
+							ch.attr(HAMessageDecoder.LEGACY_TEXT).set(legacyText);
+							ch.pipeline().addLast(new ReplyDecoder());
+							ch.pipeline().addLast(new HAMessageEncoder());
+							ch.pipeline().addLast(new ReplyHandler());
+						}
+					});
+
+			ChannelFuture f = b.connect(new InetSocketAddress(host, port));
+			if (f.awaitUninterruptibly(timeoutMillis) && f.isSuccess()) {
+				channel = f.channel();
+				inbound.clear();
+				backoffMillis = MIN_BACKOFF_MILLIS;
+				nextAttemptNanos = now;
+				connects++;
+				return true;
+			}
+			f.cancel(false);
+			if (f.channel() != null) {
+				f.channel().close();
+			}
+		} catch (Exception e) {
+			logger.debug("[PeerConnection] Connect to " + address + " failed: " + e.toString());
+		}
+
+		consecutiveFailures++;
+		nextAttemptNanos = now + TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+		backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+		return false;
+	}
+
+	/**
+	 * Closes the connection, the next connect() will open a new one.
+	 */
+
+	public synchronized void close() {
+		Channel ch = channel;
+		channel = null;
+		if (ch != null) {
+			ch.close();
+		}
+		inbound.clear();
+	}
+
+	/**
+	 * Sends one election message.
+	 *
+	 * @return : false if the connection is not open.
+	 */
+
+	public Boolean send(HAMessage message) {
+		return write(message);
+	}
+
+	/**
+	 * Sends a raw text message, as sent by the legacy protocol or by other
+	 * modules through IHAControllerService.
+	 */
+
+	public Boolean send(String message) {
+		if (message == null) {
+			return Boolean.FALSE;
+		}
+		return write(Unpooled.wrappedBuffer(message.getBytes(CharsetUtil.UTF_8)));
+	}
+
+	private Boolean write(Object message) {
+		Channel ch = channel;
+		if (message == null || ch == null || !ch.isActive()) {
+			return Boolean.FALSE;
+		}
+		/**
+		 * Any reply still queued belongs to a request which timed out.
+		 */
+		inbound.clear();
+		sentNanos = System.nanoTime();
+		ch.writeAndFlush(message);
+		return Boolean.TRUE;
+	}
+
+	/**
+	 * Receives one election message, waiting up to the timeout for it.
+	 *
+	 * @return : The received message, or null if none arrived in time.
+	 */
+
+	public HAMessage recvMessage() {
+		return recvMessage(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+	}
+
+	/**
+	 * Receives one election message, waiting until the deadline for it.
+	 *
+	 * @param deadlineNanos
+	 *            : System.nanoTime() after which to give up.
+	 * @return : The received message, or null if none arrived in time.
+	 */
+
+	public HAMessage recvMessage(long deadlineNanos) {
+		Object reply = poll(deadlineNanos - System.nanoTime());
+		if (reply instanceof HAMessage) {
+			return (HAMessage) reply;
+		}
+		if (reply instanceof String) {
+			return HAMessageCodec.legacyDecodeReply((String) reply);
+		}
+		return null;
+	}
+
+	/**
+	 * Receives a raw text message, waiting up to the timeout for it.
+	 *
+	 * @return : The received text, or "none" if nothing arrived in time.
+	 */
+
+	public String recv() {
+		Object reply = poll(TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+		if (reply instanceof String) {
+			return (String) reply;
+		}
+		if (reply instanceof HAMessage) {
+			return HAMessageCodec.legacyEncode((HAMessage) reply);
+		}
+		return "none";
+	}
+
+	private Object poll(long timeoutNanos) {
+		Object reply = null;
+		try {
+			if (isActive() || !inbound.isEmpty()) {
+				reply = inbound.poll(Math.max(timeoutNanos, 0), TimeUnit.NANOSECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		if (reply == null) {
+			consecutiveFailures++;
+		} else {
+			long now = System.nanoTime();
+			lastRttNanos = now - sentNanos;
+			lastSuccessNanos = now;
+			consecutiveFailures = 0;
+		}
+		return reply;
+	}
+
+	/**
+	 * @return : Number of consecutive failed connection attempts and
+	 *         exchanges.
+	 */
+
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * @return : System.nanoTime() of the last successful exchange, 0 if
+	 *         there was none.
+	 */
+
+	public long getLastSuccessNanos() {
+		return lastSuccessNanos;
+	}
+
+	/**
+	 * @return : Round trip time of the last successful exchange, -1 if there
+	 *         was none.
+	 */
+
+	public long getLastRttNanos() {
+		return lastRttNanos;
+	}
+
+	/**
+	 * @return : Number of times the connection was established.
+	 */
+
+	public long getConnectCount() {
+		return connects;
+	}
+
+	public synchronized long getBackoffMillis() {
+		return backoffMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "PeerConnection [address=" + address + ", active=" + isActive() + ", failures=" + consecutiveFailures
+				+ ", rttMicros=" + (lastRttNanos < 0 ? -1 : lastRttNanos / 1000) + ", connects=" + connects + "]";
+	}
+
+	/**
+	 * Decodes the replies of the other node: binary frames with the
+	 * HAMessageCodec, and anything else as legacy text, which is sent
+	 * unframed, so the entire readable buffer is taken to be one reply.
+	 */
+
+	private static class ReplyDecoder extends ByteToMessageDecoder {
+		@Override
+		protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+			while (in.isReadable()) {
+				if (!HAMessageCodec.isFramed(in.getByte(in.readerIndex()))) {
+					String mssg = in.toString(CharsetUtil.UTF_8).trim();
+					in.skipBytes(in.readableBytes());
+					out.add(mssg);
+					return;
+				}
+				HAMessage msg = HAMessageCodec.decode(in);
+				if (msg == null) {
+					return;
+				}
+				out.add(msg);
+			}
+		}
+	}
+
+	private class ReplyHandler extends SimpleChannelInboundHandler<Object> {
+		@Override
+		protected void channelRead0(ChannelHandlerContext ctx, Object msg) throws Exception {
+			inbound.offer(msg);
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			logger.debug("[PeerConnection] " + address + ": " + cause.toString());
+			ctx.close();
+		}
+	}
+
+}
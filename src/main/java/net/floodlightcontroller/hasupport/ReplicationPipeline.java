@@ -0,0 +1,438 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.error.SyncException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ReplicationPipeline
+ *
+ * A generic HAWorker which any module (e.g. the DeviceManager, the
+ * StaticEntryPusher or the Firewall) can use to replicate its updates,
+ * without writing its own HAWorker, FilterQueue and SyncAdapter:
+ *
+ * offer() -> duplicate filter -> bounded queue -> publishHook() -> batch ->
+ * syncDB.
+ *
+ * The module offers its updates as they happen, and registers the pipeline
+ * with the IHAWorkerService, which then calls publishHook() and
+ * subscribeHook() on a thread of the pipeline's own (see HAWorkerPipeline).
+ * The syncDB layout is the one used by the LD and Topo SyncAdapters: the
+ * history of every key (IReplicationCodec.getKey()) is stored under that key,
+ * and the keys published by a controller are collated under its controller
+ * ID. Each batch is written with a single putAll(), and subscribeHook() only
+ * returns the updates written since the previous call (see SyncCursor).
+ *
+ * The queue holds at most queueCapacity updates. When it is full, the
+ * OverflowPolicy decides: BLOCK waits up to blockMillis for room (and then
+ * drops the update), DROP_NEWEST drops the offered update and DROP_OLDEST
+ * drops the oldest queued one. Dropped updates are counted, see
+ * getDroppedCount().
+ *
+ * A batch which could not be written is put back at the head of the queue,
+ * and retried by the next publishHook(); updates which no longer fit are
+ * dropped.
+ */
+
+public class ReplicationPipeline<T> implements IHAWorker {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplicationPipeline.class);
+	private static final String NONE = "none";
+	private static final String SEPARATOR = ", ";
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final long DEFAULT_BLOCK_MILLIS = 100;
+
+	public enum OverflowPolicy {
+		BLOCK, DROP_NEWEST, DROP_OLDEST
+	}
+
+	private final String name;
+	private final IStoreClient<String, String> store;
+	private final String controllerID;
+	private final IReplicationCodec<T> codec;
+	private final LinkedBlockingDeque<T> queue;
+	private final int batchSize;
+	private final OverflowPolicy policy;
+	private final long blockMillis;
+	private final DuplicateFilter duplicateFilter;
+	private final SyncCursor cursor;
+	/* notified when publishHook() takes updates off the queue */
+	private final Object room = new Object();
+
+	private final AtomicLong offered = new AtomicLong();
+	private final AtomicLong duplicates = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	public ReplicationPipeline(String name, IStoreClient<String, String> store, String controllerID,
+			IReplicationCodec<T> codec) {
+		this(name, store, controllerID, codec, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, OverflowPolicy.DROP_OLDEST,
+				DEFAULT_BLOCK_MILLIS, new DuplicateFilter());
+	}
+
+	/**
+	 * @param name
+	 *            : Name of the pipeline, used to register it as a HAWorker.
+	 * @param store
+	 *            : The syncDB store of the module.
+	 * @param controllerID
+	 *            : ID under which this controller's keys are collated.
+	 * @param codec
+	 *            : Format of the updates in the syncDB.
+	 * @param queueCapacity
+	 *            : Maximum number of updates waiting to be published.
+	 * @param batchSize
+	 *            : Maximum number of updates written with one putAll().
+	 * @param policy
+	 *            : What to do when the queue is full.
+	 * @param blockMillis
+	 *            : How long offer() waits for room with OverflowPolicy.BLOCK.
+	 * @param duplicateFilter
+	 *            : Filter for duplicate updates, null to keep them all.
+	 */
+
+	public ReplicationPipeline(String name, IStoreClient<String, String> store, String controllerID,
+			IReplicationCodec<T> codec, int queueCapacity, int batchSize, OverflowPolicy policy, long blockMillis,
+			DuplicateFilter duplicateFilter) {
+		if (queueCapacity < 1 || batchSize < 1 || blockMillis < 0 || policy == null) {
+			throw new IllegalArgumentException("Invalid pipeline configuration: queueCapacity=" + queueCapacity
+					+ ", batchSize=" + batchSize + ", policy=" + policy + ", blockMillis=" + blockMillis);
+		}
+		this.name = name;
+		this.store = store;
+		this.controllerID = controllerID;
+		this.codec = codec;
+		this.queue = new LinkedBlockingDeque<>(queueCapacity);
+		this.batchSize = batchSize;
+		this.policy = policy;
+		this.blockMillis = blockMillis;
+		this.duplicateFilter = duplicateFilter;
+		this.cursor = new SyncCursor(store);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Queues an update for the next publishHook().
+	 *
+	 * @return : false if the update was a duplicate or was dropped.
+	 */
+
+	public boolean offer(T update) {
+		if (update == null) {
+			return false;
+		}
+		offered.incrementAndGet();
+
+		if (duplicateFilter == null) {
+			return enqueue(update);
+		}
+
+		/**
+		 * Only updates which make it into the queue are remembered, so that a
+		 * dropped update can be offered again. The queue is only offered to
+		 * without waiting while the filter is locked: with OverflowPolicy.BLOCK
+		 * the wait for room is done outside of it, so that it doesn't hold up
+		 * the other producers, and the update is checked again.
+		 */
+		long hash = codec.hash(update);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockMillis);
+		final boolean[] duplicate = new boolean[1];
+		while (true) {
+			duplicate[0] = true;
+			boolean queued = duplicateFilter.add(hash, () -> {
+				duplicate[0] = false;
+				return tryEnqueue(update);
+			});
+			if (queued) {
+				return true;
+			}
+			if (duplicate[0]) {
+				duplicates.incrementAndGet();
+				return false;
+			}
+			if (policy != OverflowPolicy.BLOCK || !awaitRoom(deadline)) {
+				dropped.incrementAndGet();
+				return false;
+			}
+		}
+	}
+
+	private boolean enqueue(T update) {
+		boolean queued;
+		if (policy == OverflowPolicy.BLOCK) {
+			try {
+				queued = queue.offer(update, blockMillis, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				queued = false;
+			}
+		} else {
+			queued = tryEnqueue(update);
+		}
+
+		if (!queued) {
+			dropped.incrementAndGet();
+		}
+		return queued;
+	}
+
+	/**
+	 * Queues the update without waiting, dropping the oldest queued updates
+	 * to make room for it with OverflowPolicy.DROP_OLDEST.
+	 */
+
+	private boolean tryEnqueue(T update) {
+		boolean queued = queue.offer(update);
+		while (!queued && policy == OverflowPolicy.DROP_OLDEST) {
+			if (queue.poll() != null) {
+				dropped.incrementAndGet();
+			}
+			queued = queue.offer(update);
+		}
+		return queued;
+	}
+
+	/**
+	 * Waits for publishHook() to make room in the queue.
+	 *
+	 * @return : false if the queue was still full at the deadline (in
+	 *         System.nanoTime()), or the thread was interrupted.
+	 */
+
+	private boolean awaitRoom(long deadline) {
+		synchronized (room) {
+			while (queue.remainingCapacity() == 0) {
+				long left = deadline - System.nanoTime();
+				if (left <= 0) {
+					return false;
+				}
+				try {
+					TimeUnit.NANOSECONDS.timedWait(room, left);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the queued updates in their String form, without removing
+	 * them from the queue.
+	 */
+
+	@Override
+	public List<String> assembleUpdate() {
+		List<String> updates = new ArrayList<>();
+		for (T update : queue) {
+			updates.add(codec.encode(update));
+		}
+		return updates;
+	}
+
+	/**
+	 * Drains the queue into the syncDB, batchSize updates at a time.
+	 */
+
+	@Override
+	public boolean publishHook() {
+		/**
+		 * Only what was queued when the hook was called is drained, so that
+		 * a busy producer can't keep the hook running.
+		 */
+		int remaining = queue.size();
+		List<T> batch = new ArrayList<>(Math.min(batchSize, remaining + 1));
+		while (remaining > 0) {
+			int drained = queue.drainTo(batch, Math.min(batchSize, remaining));
+			if (drained == 0) {
+				break;
+			}
+			remaining -= drained;
+			if (policy == OverflowPolicy.BLOCK) {
+				synchronized (room) {
+					room.notifyAll();
+				}
+			}
+			if (!write(batch)) {
+				requeue(batch);
+				return false;
+			}
+			batch.clear();
+		}
+		return true;
+	}
+
+	/**
+	 * Puts a batch which could not be written back at the head of the queue,
+	 * in its order. Its updates are already remembered by the duplicate
+	 * filter, so they would not be accepted by offer() again.
+	 */
+
+	private void requeue(List<T> batch) {
+		for (int i = batch.size() - 1; i >= 0; i--) {
+			if (!queue.offerFirst(batch.get(i))) {
+				dropped.addAndGet(i + 1);
+				logger.debug("[ReplicationPipeline] " + name + " Dropped " + (i + 1) + " updates after a failed write");
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Returns the updates published by the given controller since the last
+	 * call, in their String form.
+	 */
+
+	@Override
+	public List<String> subscribeHook(String controllerID) {
+		try {
+			return cursor.poll(controllerID);
+		} catch (SyncException e) {
+			logger.debug("[ReplicationPipeline] " + name + " Exception: subscribeHook!");
+			e.printStackTrace();
+		}
+		return new ArrayList<>();
+	}
+
+	/**
+	 * Same as subscribeHook(), with the updates decoded. Values which can't
+	 * be decoded are left out.
+	 */
+
+	public List<T> subscribe(String controllerID) {
+		List<T> updates = new ArrayList<>();
+		for (String value : subscribeHook(controllerID)) {
+			T update = codec.decode(value);
+			if (update != null) {
+				updates.add(update);
+			}
+		}
+		return updates;
+	}
+
+	/**
+	 * Writes one batch: the updates are grouped by key, each key is read
+	 * once, the new keys are appended to the collated keys, and everything is
+	 * written with a single putAll().
+	 */
+
+	private boolean write(List<T> updates) {
+		if (store == null) {
+			return false;
+		}
+
+		Map<String, StringBuilder> histories = new LinkedHashMap<>();
+		for (T update : updates) {
+			String key = codec.getKey(update);
+			StringBuilder history = histories.get(key);
+			if (history == null) {
+				histories.put(key, new StringBuilder(codec.encode(update)));
+			} else {
+				history.append(SEPARATOR).append(codec.encode(update));
+			}
+		}
+
+		try {
+			Map<String, String> puts = new LinkedHashMap<>();
+			StringBuilder newKeys = new StringBuilder();
+
+			for (Map.Entry<String, StringBuilder> entry : histories.entrySet()) {
+				String key = entry.getKey();
+				String value = entry.getValue().toString();
+				String old = store.getValue(key, NONE);
+
+				if (old.equals(NONE)) {
+					puts.put(key, value);
+					if (newKeys.length() > 0) {
+						newKeys.append(SEPARATOR);
+					}
+					newKeys.append(key);
+				} else if (old.isEmpty()) {
+					puts.put(key, value);
+				} else {
+					puts.put(key, old + SEPARATOR + value);
+				}
+			}
+
+			if (newKeys.length() > 0) {
+				String collated = store.getValue(controllerID, NONE);
+				puts.put(controllerID, collated.equals(NONE) ? newKeys.toString() : collated + SEPARATOR + newKeys);
+			}
+
+			store.putAll(puts);
+			written.addAndGet(updates.size());
+			batches.incrementAndGet();
+			return true;
+
+		} catch (SyncException se) {
+			logger.debug("[ReplicationPipeline] " + name + " Exception: sync write!");
+			se.printStackTrace();
+		} catch (Exception e) {
+			logger.debug("[ReplicationPipeline] " + name + " Exception: write!");
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	public long getOfferedCount() {
+		return offered.get();
+	}
+
+	public long getDuplicateCount() {
+		return duplicates.get();
+	}
+
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ReplicationPipeline [name=" + name + ", queued=" + queue.size() + ", offered=" + offered
+				+ ", duplicates=" + duplicates + ", dropped=" + dropped + ", written=" + written + ", batches="
+				+ batches + "]";
+	}
+
+}
@@ -14,183 +14,158 @@
 
 package net.floodlightcontroller.hasupport;
 
-import java.util.StringTokenizer;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.util.CharsetUtil;
 
-public class ServerChannelInboundHandler extends SimpleChannelInboundHandler<ByteBuf> {
+public class ServerChannelInboundHandler extends SimpleChannelInboundHandler<HAMessage> {
 
 	private static final Logger logger = LoggerFactory.getLogger(ServerChannelInboundHandler.class);
 
 	private final AsyncElection aelection;
 	private final String controllerID;
+	private final int cid;
 
 	/**
 	 * Possible outgoing server messages, replies.
 	 */
 
-	private final String ack = "ACK";
-	private final String no = "NO";
-	private final String lead = "LEADOK";
-	private final String dc = "DONTCARE";
 	private final String none = "none";
 
-	private String r1 = new String();
-	private String r2 = new String();
-	private String r3 = new String();
-	private StringTokenizer st = new StringTokenizer(r1);
-
 	protected ServerChannelInboundHandler(AsyncElection ae, String controllerID) {
 		aelection = ae;
 		this.controllerID = controllerID;
+		cid = HAMessage.parseId(controllerID);
 	}
 
 	@Override
-	protected void channelRead0(ChannelHandlerContext ctx, ByteBuf message) throws Exception {
-		ByteBuf rep = Unpooled.copiedBuffer(message);
-		ByteBuf resp = Unpooled.copiedBuffer(processServerMessage(rep.toString(CharsetUtil.UTF_8)).getBytes());
-		ctx.writeAndFlush(resp);
-		message.clear();
+	protected void channelRead0(ChannelHandlerContext ctx, HAMessage message) throws Exception {
+		ctx.writeAndFlush(processServerMessage(message));
 	}
 
 	/**
 	 * A function which processes the incoming message and sends appropriate
 	 * response. Only use the getters and setters provided.
-	 * 
+	 *
+	 * Messages arrive already decoded by the HAMessageDecoder, regardless of
+	 * whether the peer used the binary or the legacy text format, so the
+	 * message type can be switched on directly and the controller IDs and
+	 * timestamps are compared without any String parsing.
+	 *
+	 * The term based messages (HEARTBEAT, PREVOTE, VOTE) are answered by the
+	 * election itself. IWON, LEADER and SETLEAD are only sent by nodes running
+	 * the old election, and are answered as before.
+	 *
 	 * @param mssg
 	 * @return
 	 */
 
-	private String processServerMessage(String mssg) {
-		/**
-		 * Let's optimize the string comparision time, in order to get the best
-		 * perf: 1) using first 1 chars of 'stg' to find out what message it
-		 * was. 2) StringTokenizer to split the string at ' ' to get different
-		 * parts of the message rather than using String.split because split
-		 * uses a regex based match which is slower.
-		 */
-		char cmp = mssg.charAt(0);
-		st = new StringTokenizer(mssg);
-		r3 = none;
-		r1 = st.nextToken();
-		if (st.hasMoreTokens()) {
-			r2 = st.nextToken();
-		}
-		if (st.hasMoreTokens()) {
-			r3 = st.nextToken();
-		}
+	private HAMessage processServerMessage(HAMessage mssg) {
+		String r2 = HAMessage.idString(mssg.getControllerId());
+		long r3 = mssg.getTimestamp();
 
 		try {
 
-			if (cmp == 'I') {
+			switch (mssg.getType()) {
+
+			case IWON:
 
 				// logger.info("[HAServer] Received IWon message: " +
 				// mssg.toString());
 				aelection.setTempLeader(r2);
 				aelection.setTimeStamp(r3);
-				return ack;
+				return HAMessage.ACK;
 
-			} else if (cmp == 'L') {
+			case LEADER:
 
 				// logger.info("[HAServer] Received LEADER message: " +
 				// mssg.toString());
 
-				// logger.debug("[HAServer] Get tempLeader:
-				// "+this.aelection.gettempLeader());
-
-				if (aelection.gettempLeader().equals(r2) && aelection.getTimeStamp().equals(r3)) {
-					return lead;
+				if (aelection.gettempLeader().equals(r2) && aelection.getTimeStampValue() == r3) {
+					return HAMessage.LEADOK;
 				} else {
 					aelection.setTempLeader(none);
 					aelection.setLeader(none);
-					return no;
+					return HAMessage.NO;
 				}
 
-			} else if (cmp == 'S') {
+			case SETLEAD:
 
 				// logger.info("[HAServer] Received SETLEAD message: " +
 				// mssg.toString());
 
-				// logger.info("[HAServer] Get Leader:
-				// "+this.aelection.getLeader());
-
 				if (!aelection.gettempLeader().equals(controllerID)) {
-					if (aelection.gettempLeader().equals(r2) && aelection.getTimeStamp().equals(r3)) {
+					if (aelection.gettempLeader().equals(r2) && aelection.getTimeStampValue() == r3) {
 						aelection.setLeader(r2);
 						aelection.setTempLeader(none);
-						return ack;
+						return HAMessage.ACK;
 					} else {
 						aelection.setTempLeader(none);
 						aelection.setLeader(none);
-						return no;
+						return HAMessage.NO;
 					}
 				} else {
 					aelection.setTempLeader(none);
 					aelection.setLeader(none);
-					return no;
+					return HAMessage.NO;
 				}
 
-			} else if (cmp == 'Y') {
+			case YOU:
 
 				// logger.info("[HAServer] Received YOU? message: " +
 				// mssg.toString());
 
 				if (aelection.getLeader().equals(controllerID)) {
-					return controllerID + " " + r2;
+					return new HAMessage(HAMessage.Type.LEADERIS, cid, r3);
 				} else {
-					return no;
+					return HAMessage.NO;
 				}
 
-			} else if (cmp == 'H') {
+			case HEARTBEAT:
 
 				// logger.info("[HAServer] Received HEARTBEAT message: " +
 				// mssg.toString());
 
-				if (aelection.getLeader().equals(r2)) {
-					return ack + r3;
-				} else {
-					return no;
-				}
+				return aelection.handleHeartbeat(mssg);
 
-			} else if (cmp == 'P') {
+			case PREVOTE:
+			case VOTE:
+
+				// logger.info("[HAServer] Received VOTE message: " +
+				// mssg.toString());
+
+				return aelection.handleVoteRequest(mssg);
+
+			case PULSE:
 
 				// logger.info("[HAServer] Received PULSE message: " +
 				// mssg.toString());
-				return ack;
+				return HAMessage.ACK;
 
-			} else if (cmp == 'B') {
+			case PUBLISH:
 
 				// logger.info("[HAServer] Received PUBLISH message");
 				aelection.publishQueue();
-				return ack;
+				return HAMessage.ACK;
 
-			} else if (cmp == 'K') {
+			case SUBSCRIBE:
 
 				// logger.info("[HAServer] Received SUBSCRIBE message");
-				aelection.subscribeQueue(r2);
-				return ack;
+				aelection.subscribeQueue("C" + r2);
+				return HAMessage.ACK;
 
-			} else if (cmp == 'm') {
-				return ack;
+			default:
+				return HAMessage.DONTCARE;
 			}
-		} catch (StringIndexOutOfBoundsException si) {
-			logger.debug("[HAServer] Possible buffer overflow!");
-			si.printStackTrace();
-			return dc;
+
 		} catch (Exception e) {
 			logger.debug("[HAServer] Error while processing message!");
 			e.printStackTrace();
-			return dc;
+			return HAMessage.DONTCARE;
 		}
 
-		return dc;
 	}
 
 }
@@ -29,6 +29,8 @@ public class ServerChannelInitializer extends ChannelInitializer<SocketChannel>
 	@Override
 	protected void initChannel(SocketChannel ch) throws Exception {
 		ch.pipeline().addLast(new ServerExceptionHandler());
+		ch.pipeline().addLast(new HAMessageDecoder());
+		ch.pipeline().addLast(new HAMessageEncoder());
 		ch.pipeline().addLast(new ServerChannelInboundHandler(aelection, controllerID));
 	}
 }
@@ -0,0 +1,254 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.IStoreListener;
+import org.sdnplatform.sync.error.SyncException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SyncCursor
+ *
+ * Keeps track of how far a follower has read the updates published by each
+ * controller, so that the SyncAdapters' unpackJSON() only returns the updates
+ * written since the last call instead of the whole history.
+ *
+ * Both the collated keys of a controller and the value under each key are
+ * only ever appended to by packRecords(), so the high-water mark of a
+ * controller is the length of its collated keys that has been read, and the
+ * length of the value of every key that has been read. Along with each length
+ * the cursor keeps a hash of the part that has been read, so that a value
+ * which was replaced rather than appended to (e.g. rewritten by another
+ * controller, or removed and written again) is read from the start; the
+ * updates which are returned again are left to the subscriber's duplicate
+ * filter. A value in the old JSON format is replaced as a whole, and is
+ * returned again whenever it changes.
+ *
+ * The cursor registers itself as an IStoreListener, and keysModified() marks
+ * the keys written locally or synced from a remote node. A call to poll()
+ * then reads only the marked keys of that controller, plus its collated keys
+ * if they were marked. The first poll() of a controller reads all of its
+ * keys. If the listener could not be registered, every poll() reads all the
+ * known keys of the controller again, but still returns only the new part of
+ * each value.
+ */
+
+public class SyncCursor implements IStoreListener<String> {
+
+	private static final Logger logger = LoggerFactory.getLogger(SyncCursor.class);
+	private static final String NONE = "none";
+	private static final String SEPARATOR = ", ";
+
+	private final IStoreClient<String, String> store;
+	private final Map<String, Cursor> cursors = new ConcurrentHashMap<>();
+	private volatile boolean listening;
+
+	/**
+	 * The read position of one source controller.
+	 */
+
+	private static class Cursor {
+		/**
+		 * Part of the collated keys already read.
+		 */
+		private Position index = Position.START;
+		/**
+		 * Keys of this controller, in the order they were published.
+		 */
+		private final List<String> keys = new ArrayList<>();
+		/**
+		 * Part of the value already read, for every key of this controller.
+		 */
+		private final Map<String, Position> consumed = new ConcurrentHashMap<>();
+		/**
+		 * Keys modified since the last poll().
+		 */
+		private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+		private boolean primed;
+	}
+
+	/**
+	 * The length and hash of the part of a value already read.
+	 */
+
+	private static class Position {
+		private static final Position START = new Position("", false);
+
+		private final int length;
+		private final long hash;
+		/**
+		 * Whether the value was in the old JSON format.
+		 */
+		private final boolean json;
+
+		private Position(String value, boolean json) {
+			this.length = value.length();
+			this.hash = DuplicateFilter.hash(value);
+			this.json = json;
+		}
+
+		/**
+		 * @return : The length already read, if the value starts with the
+		 *         part already read, otherwise 0.
+		 */
+
+		private int offsetIn(String value) {
+			if (json || length > value.length() || DuplicateFilter.hash(value, length) != hash) {
+				return 0;
+			}
+			return length;
+		}
+	}
+
+	public SyncCursor(IStoreClient<String, String> store) {
+		this.store = store;
+		if (store == null) {
+			return;
+		}
+		try {
+			store.addStoreListener(this);
+			listening = true;
+		} catch (Exception e) {
+			logger.debug("[SyncCursor] Could not register store listener, polling all keys.");
+			e.printStackTrace();
+		}
+	}
+
+	@Override
+	public void keysModified(Iterator<String> keys, UpdateType type) {
+		while (keys.hasNext()) {
+			String key = keys.next();
+			for (Map.Entry<String, Cursor> entry : cursors.entrySet()) {
+				Cursor cursor = entry.getValue();
+				if (key.equals(entry.getKey()) || cursor.consumed.containsKey(key)) {
+					cursor.dirty.add(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the updates published by the given controller since the last
+	 * call: the Base64 records appended to its keys, and the values in the
+	 * old JSON format which changed, in the order of its collated keys for
+	 * new keys.
+	 */
+
+	public List<String> poll(String controllerID) throws SyncException {
+		List<String> updates = new ArrayList<>();
+		if (store == null) {
+			return updates;
+		}
+
+		Cursor cursor = cursors.get(controllerID);
+		if (cursor == null) {
+			cursors.putIfAbsent(controllerID, new Cursor());
+			cursor = cursors.get(controllerID);
+		}
+
+		synchronized (cursor) {
+			List<String> changed = new ArrayList<>();
+			boolean readIndex;
+
+			if (!listening || !cursor.primed) {
+				changed.addAll(cursor.keys);
+				cursor.dirty.clear();
+				readIndex = true;
+				cursor.primed = true;
+			} else {
+				readIndex = false;
+				for (Iterator<String> it = cursor.dirty.iterator(); it.hasNext();) {
+					String key = it.next();
+					it.remove();
+					if (key.equals(controllerID)) {
+						readIndex = true;
+					} else {
+						changed.add(key);
+					}
+				}
+			}
+
+			if (readIndex) {
+				String collated = store.getValue(controllerID, NONE);
+				if (!collated.equals(NONE)) {
+					for (String key : collated.substring(cursor.index.offsetIn(collated)).split(SEPARATOR)) {
+						if (!key.isEmpty() && !cursor.consumed.containsKey(key)) {
+							cursor.keys.add(key);
+							cursor.consumed.put(key, Position.START);
+							changed.add(key);
+						}
+					}
+					cursor.index = new Position(collated, false);
+				}
+			}
+
+			for (String key : changed) {
+				Position read = cursor.consumed.get(key);
+				if (read == null) {
+					continue;
+				}
+				String value = store.getValue(key, NONE);
+				if (value.equals(NONE) || value.isEmpty()) {
+					continue;
+				}
+
+				/**
+				 * A value in the old JSON format is never read from an
+				 * offset, so that a history which replaces it is read from
+				 * the start.
+				 */
+				if (value.startsWith("{")) {
+					Position position = new Position(value, true);
+					if (!read.json || read.length != position.length || read.hash != position.hash) {
+						updates.add(value);
+					}
+					cursor.consumed.put(key, position);
+					continue;
+				}
+				for (String rec : value.substring(read.offsetIn(value)).split(SEPARATOR)) {
+					if (!rec.isEmpty()) {
+						updates.add(rec);
+					}
+				}
+				cursor.consumed.put(key, new Position(value, false));
+			}
+		}
+
+		return updates;
+	}
+
+	/**
+	 * Forgets the read position of the given controller, so that the next
+	 * poll() returns all of its updates again.
+	 */
+
+	public void reset(String controllerID) {
+		cursors.remove(controllerID);
+	}
+
+	public boolean isListening() {
+		return listening;
+	}
+
+}
@@ -15,25 +15,28 @@
 package net.floodlightcontroller.hasupport.linkdiscovery;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.sdnplatform.sync.IStoreClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.floodlightcontroller.hasupport.DuplicateFilter;
 import net.floodlightcontroller.hasupport.IFilterQueue;
 
 /**
  * Two Queues to store LDupdates
  *
- * Filters out duplicates up to a specified capacity.
+ * Filters out duplicates using a DuplicateFilter, which remembers the hashes
+ * of the updates it has seen in a fixed amount of memory (see
+ * configureDuplicateFilter()), and forgets the oldest ones once it is full.
  *
- * Possible improvements: a. Implement a data structure which can eliminate
- * duplicates completely, without a threshold on the amount of filtering it can
- * do which is currently limited by the mapCapacity.
+ * Updates from the LDHAWorker travel as LDUpdateRecords (see
+ * enqueueForward(LDUpdateRecord)), which are filtered on a hash of their fields
+ * rather than of their JSON form. The String methods of the
+ * IFilterQueue are still supported, and both kinds of update are handed to
+ * the LDSyncAdapter by dequeueForward().
  *
  * @author Bhargav Srinivasan, Om Kale
  */
@@ -45,9 +48,10 @@ public class LDFilterQueue implements IFilterQueue {
 	private static LDSyncAdapter syncAdapter;
 
 	public static LinkedBlockingQueue<String> filterQueue = new LinkedBlockingQueue<>();
-	public static Map<String, String> myMap = new HashMap<>();
 	public static LinkedBlockingQueue<String> reverseFilterQueue = new LinkedBlockingQueue<>();
-	private final Integer mapCapacity = new Integer(1073741000);
+	public static LinkedBlockingQueue<LDUpdateRecord> recordQueue = new LinkedBlockingQueue<>();
+	public static DuplicateFilter duplicateFilter = new DuplicateFilter();
+	public static LinkedBlockingQueue<LDUpdateRecord> reverseRecordQueue = new LinkedBlockingQueue<>();
 
 	protected String controllerID;
 
@@ -68,13 +72,22 @@ public class LDFilterQueue implements IFilterQueue {
 	public boolean dequeueForward() {
 		try {
 			ArrayList<String> LDupds = new ArrayList<>();
+			ArrayList<LDUpdateRecord> LDrecs = new ArrayList<>();
 			if (!filterQueue.isEmpty()) {
 				filterQueue.drainTo(LDupds);
 			}
-			if (!LDupds.isEmpty()) {
+			if (!recordQueue.isEmpty()) {
+				recordQueue.drainTo(LDrecs);
+			}
+			if (!LDupds.isEmpty() || !LDrecs.isEmpty()) {
 				// logger.debug("[FilterQ] The update after drain: {} ", new
 				// Object [] {LDupds.toString()});
-				syncAdapter.packJSON(LDupds);
+				if (!LDrecs.isEmpty()) {
+					syncAdapter.packRecords(LDrecs);
+				}
+				if (!LDupds.isEmpty()) {
+					syncAdapter.packJSON(LDupds);
+				}
 				return true;
 			} else {
 				// logger.debug("[FilterQ] The linked list is empty");
@@ -92,6 +105,9 @@ public class LDFilterQueue implements IFilterQueue {
 	 * This method is used by the subscribeHook in HAWorker, in order to finally
 	 * obtain the updates from the syncDB, in order to display/process them.
 	 *
+	 * Records retrieved from the syncDB are rendered with
+	 * LDUpdateRecord.toJSON(), use dequeueReverseRecords() to get them typed.
+	 *
 	 * @return List<String> of updates in JSON format, which can be parsed using
 	 *         Jackson.
 	 */
@@ -103,6 +119,9 @@ public class LDFilterQueue implements IFilterQueue {
 			if (!reverseFilterQueue.isEmpty()) {
 				reverseFilterQueue.drainTo(LDupds);
 			}
+			for (LDUpdateRecord rec : dequeueReverseRecords()) {
+				LDupds.add(rec.toJSON());
+			}
 
 			if (!LDupds.isEmpty()) {
 				// logger.info("[ReverseFilterQ] The update after drain: {} ",
@@ -123,38 +142,68 @@ public class LDFilterQueue implements IFilterQueue {
 	}
 
 	/**
-	 * This method hashes the LDupdates received in form of JSON string using
-	 * md5 hashing and store them in the filter queue and in a map if not
-	 * already present.
+	 * This method stores the LDupdates received in form of JSON string in
+	 * the filter queue, unless the duplicate filter has seen the same String
+	 * before.
 	 *
 	 * @return boolean value indicating success or failure
 	 */
 
 	@Override
 	public boolean enqueueForward(String value) {
-		try {
-			String newMD5 = new String();
-			LDHAUtils myMD5 = new LDHAUtils();
-			newMD5 = myMD5.calculateMD5Hash(value);
-
-			if (LDFilterQueue.myMap.size() >= mapCapacity) {
-				// logger.debug("[LDFilterQ Clear] Clearing LDFilterQ's Map");
-				LDFilterQueue.myMap.clear();
-			}
+		if (value == null) {
+			return false;
+		}
+		if (duplicateFilter.add(DuplicateFilter.hash(value))) {
+			filterQueue.offer(value);
+		}
+		return true;
+	}
 
-			// logger.debug("[FilterQ] The MD5: {} The Value {}", new Object []
-			// {newMD5,value});
-			if ((!myMap.containsKey(newMD5)) && (!value.equals(null))) {
-				filterQueue.offer(value);
-				myMap.put(newMD5, value);
-			}
-			return true;
+	/**
+	 * Typed counterpart of enqueueForward(String): stores the record in the
+	 * filter queue unless the duplicate filter has seen an equal record (i.e.
+	 * the same update, regardless of when it was observed) before.
+	 *
+	 * @return boolean value indicating success or failure
+	 */
 
-		} catch (Exception e) {
-			logger.debug("[FilterQ] Exception: enqueueFwd!");
-			e.printStackTrace();
+	public boolean enqueueForward(LDUpdateRecord record) {
+		if (record == null) {
 			return false;
 		}
+		if (duplicateFilter.add(record.hash64())) {
+			recordQueue.offer(record);
+		}
+		return true;
+	}
+
+	/**
+	 * Typed counterpart of enqueueReverse(String), called by the LDSyncAdapter
+	 * for every record it decodes from the syncDB.
+	 *
+	 * @return boolean value indicating success.
+	 */
+
+	public boolean enqueueReverse(LDUpdateRecord record) {
+		if (record != null) {
+			reverseRecordQueue.offer(record);
+		}
+		return true;
+	}
+
+	/**
+	 * Drains the records retrieved from the syncDB by the last subscribe().
+	 *
+	 * @return List of the records, empty if there are none.
+	 */
+
+	public List<LDUpdateRecord> dequeueReverseRecords() {
+		ArrayList<LDUpdateRecord> LDrecs = new ArrayList<>();
+		if (!reverseRecordQueue.isEmpty()) {
+			reverseRecordQueue.drainTo(LDrecs);
+		}
+		return LDrecs;
 	}
 
 	/**
@@ -181,6 +230,20 @@ public class LDFilterQueue implements IFilterQueue {
 
 	}
 
+	/**
+	 * Replaces the duplicate filter with one of the given size, see
+	 * DuplicateFilter for the parameters.
+	 */
+
+	public static void configureDuplicateFilter(double falsePositiveRate, long maxBytes, long windowMillis) {
+		duplicateFilter = new DuplicateFilter(falsePositiveRate, maxBytes, windowMillis);
+	}
+
+	@Override
+	public DuplicateFilter getDuplicateFilter() {
+		return duplicateFilter;
+	}
+
 	/**
 	 * This method is used by the subscribeHook to initiate the retrieval of
 	 * updates from the syncDB. This method returns only after unpackJSON has
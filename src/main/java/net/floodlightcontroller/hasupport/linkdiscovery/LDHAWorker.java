@@ -43,6 +43,11 @@ import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryListener;
  * performed in the SyncAdapter class, because the data in the updates are 
  * relational in nature and this improves write efficiency.
  * 
+ * The LDUpdates received from link discovery skip that step: they are kept
+ * as typed LDUpdateRecords in synLDURecords and go through the FilterQueue and
+ * the SyncAdapter without being turned into Strings. synLDUList and
+ * assembleUpdate() are still used for updates that arrive as Strings.
+ * 
  * Forward flow:
  * 
  *  HAWorker         |             FilterQueue                  |     SyncAdapter
@@ -65,6 +70,7 @@ public class LDHAWorker implements IHAWorker, ILinkDiscoveryListener  {
 	public static String controllerID;
 	
 	List<String> synLDUList = Collections.synchronizedList(new ArrayList<String>());
+	List<LDUpdateRecord> synLDURecords = new ArrayList<LDUpdateRecord>();
 	private static LDFilterQueue myLDFilterQueue; 
 	
 	public LDHAWorker(IStoreClient<String, String> storeLD, String controllerID){		
@@ -119,6 +125,10 @@ public class LDHAWorker implements IHAWorker, ILinkDiscoveryListener  {
 					myLDFilterQueue.enqueueForward(update);
 				}
 				synLDUList.clear();
+				for (LDUpdateRecord record : synLDURecords) {
+					myLDFilterQueue.enqueueForward(record);
+				}
+				synLDURecords.clear();
 				myLDFilterQueue.dequeueForward();
 			}
 			return true;
@@ -151,7 +161,10 @@ public class LDHAWorker implements IHAWorker, ILinkDiscoveryListener  {
 	public void linkDiscoveryUpdate(List<LDUpdate> updateList) {
 		synchronized(synLDUList){	
 			for (LDUpdate update: updateList){	
-				synLDUList.add(update.toString());
+				LDUpdateRecord record = LDUpdateRecord.of(update);
+				if (record != null) {
+					synLDURecords.add(record);
+				}
 			}
 		}
 		
@@ -0,0 +1,505 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport.linkdiscovery;
+
+import java.util.Base64;
+import java.util.Map;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import net.floodlightcontroller.hasupport.DuplicateFilter;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.SwitchType;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.UpdateOperation;
+
+/**
+ * LDUpdateRecord
+ *
+ * A typed, binary form of an LDUpdate which is what the LDHAWorker pipeline
+ * (LDFilterQueue, LDSyncAdapter) carries end to end. It replaces the old
+ * LDUpdate.toString() -> parseChunk() -> Jackson round trip: the fields are
+ * copied straight out of the LDUpdate into a fixed size record of SIZE bytes,
+ * and the syncDB "KEY" is built from the primary key / low frequency fields
+ * without hashing a String.
+ *
+ * Record layout (big endian):
+ *
+ * version(1) operation(1) flags(1) linkType(1) srcType(1) src(8) srcPort(4)
+ * dst(8) dstPort(4) latency(8) timestamp(8)
+ *
+ * The flags say which of the optional fields are present, since switch and
+ * port updates do not carry the link fields. The timestamp is the time (in
+ * nanoseconds since the epoch) at which the update was observed. It is not
+ * part of equals() / hashCode(), so two records for the same event compare
+ * equal and have the same hash64(), which is what the duplicate filter in
+ * the LDFilterQueue needs.
+ *
+ * The syncDB stores Strings, so records are written into it in Base64, see
+ * toBase64() and fromBase64().
+ */
+
+public class LDUpdateRecord {
+
+	public static final byte VERSION = 1;
+	public static final int SIZE = 45;
+
+	/**
+	 * Presence flags for the optional fields.
+	 */
+
+	private static final int HAS_SRC_PORT = 0x01;
+	private static final int HAS_LINK = 0x02;
+	private static final int HAS_SRC_TYPE = 0x04;
+
+	private static final int NONE = 0xff;
+
+	/**
+	 * The wire codes are spelt out explicitly, rather than using ordinal(),
+	 * so that re-ordering the enums in ILinkDiscovery does not change the
+	 * meaning of records that are already in the syncDB.
+	 */
+
+	private static final UpdateOperation[] operations = new UpdateOperation[] { UpdateOperation.LINK_UPDATED,
+			UpdateOperation.LINK_REMOVED, UpdateOperation.SWITCH_UPDATED, UpdateOperation.SWITCH_REMOVED,
+			UpdateOperation.PORT_UP, UpdateOperation.PORT_DOWN, UpdateOperation.TUNNEL_PORT_ADDED,
+			UpdateOperation.TUNNEL_PORT_REMOVED };
+
+	private static final LinkType[] linkTypes = new LinkType[] { LinkType.INVALID_LINK, LinkType.DIRECT_LINK,
+			LinkType.MULTIHOP_LINK, LinkType.TUNNEL };
+
+	private static final SwitchType[] switchTypes = new SwitchType[] { SwitchType.BASIC_SWITCH,
+			SwitchType.CORE_SWITCH };
+
+	private static final OFPort[] namedPorts = new OFPort[] { OFPort.LOCAL, OFPort.CONTROLLER, OFPort.ANY,
+			OFPort.ALL, OFPort.FLOOD, OFPort.NORMAL, OFPort.TABLE, OFPort.IN_PORT };
+
+	private static final char[] hex = "0123456789abcdef".toCharArray();
+
+	private final UpdateOperation operation;
+	private final long src;
+	private final int srcPort;
+	private final long dst;
+	private final int dstPort;
+	private final long latency;
+	private final LinkType type;
+	private final SwitchType srcType;
+	private final int flags;
+	private final long timestamp;
+
+	private LDUpdateRecord(UpdateOperation operation, int flags, long src, int srcPort, long dst, int dstPort,
+			long latency, LinkType type, SwitchType srcType, long timestamp) {
+		this.operation = operation;
+		this.flags = flags;
+		this.src = src;
+		this.srcPort = srcPort;
+		this.dst = dst;
+		this.dstPort = dstPort;
+		this.latency = latency;
+		this.type = type;
+		this.srcType = srcType;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Copies the fields of the given LDUpdate into a record, stamped with the
+	 * current time.
+	 *
+	 * @param update
+	 *            : The update received by the LDHAWorker.
+	 * @return : The record, or null if the update has no operation or source.
+	 */
+
+	public static LDUpdateRecord of(LDUpdate update) {
+		return of(update, currentTimeNanos());
+	}
+
+	public static LDUpdateRecord of(LDUpdate update, long timestamp) {
+		if (update == null || update.getOperation() == null || update.getSrc() == null) {
+			return null;
+		}
+
+		int flags = 0;
+		int srcPort = 0;
+		long dst = 0;
+		int dstPort = 0;
+		LinkType type = null;
+
+		if (update.getSrcPort() != null) {
+			flags |= HAS_SRC_PORT;
+			srcPort = update.getSrcPort().getPortNumber();
+		}
+		if (update.getDst() != null && update.getDstPort() != null && update.getType() != null) {
+			flags |= HAS_LINK;
+			dst = update.getDst().getLong();
+			dstPort = update.getDstPort().getPortNumber();
+			type = update.getType();
+		}
+		if (update.getSrcType() != null) {
+			flags |= HAS_SRC_TYPE;
+		}
+
+		long latency = (update.getLatency() == null) ? 0 : update.getLatency().getValue();
+		return new LDUpdateRecord(update.getOperation(), flags, update.getSrc().getLong(), srcPort, dst, dstPort,
+				latency, type, update.getSrcType(), timestamp);
+	}
+
+	/**
+	 * Builds a record from the <"field", "value"> map of the legacy JSON form
+	 * of an LDUpdate, as produced by LDHAUtils.parseChunk(). Used by
+	 * LDSyncAdapter.packJSON() so that String updates end up in the same
+	 * format in the syncDB as typed ones.
+	 *
+	 * @return : The record, or null if the map does not describe an update.
+	 */
+
+	public static LDUpdateRecord fromJSON(Map<String, String> fields) {
+		UpdateOperation operation = parseOperation(fields.get("operation"));
+		String src = fields.get("src");
+		if (operation == null || src == null) {
+			return null;
+		}
+
+		try {
+			int flags = 0;
+			int srcPort = 0;
+			long dst = 0;
+			int dstPort = 0;
+			LinkType type = null;
+
+			OFPort port = parsePort(fields.get("srcPort"));
+			if (port != null) {
+				flags |= HAS_SRC_PORT;
+				srcPort = port.getPortNumber();
+			}
+
+			OFPort dport = parsePort(fields.get("dstPort"));
+			LinkType ltype = parseLinkType(fields.get("type"));
+			if (fields.get("dst") != null && dport != null && ltype != null) {
+				flags |= HAS_LINK;
+				dst = DatapathId.of(fields.get("dst")).getLong();
+				dstPort = dport.getPortNumber();
+				type = ltype;
+			}
+
+			long latency = 0;
+			String lat = fields.get("latency");
+			if (lat != null && !lat.isEmpty()) {
+				latency = lat.startsWith("0x") ? Long.parseUnsignedLong(lat.substring(2), 16)
+						: Long.parseUnsignedLong(lat);
+			}
+
+			return new LDUpdateRecord(operation, flags, DatapathId.of(src).getLong(), srcPort, dst, dstPort, latency,
+					type, null, currentTimeNanos());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes a record from its binary form.
+	 *
+	 * @return : The record, or null if the bytes are not a version 1 record.
+	 */
+
+	public static LDUpdateRecord decode(byte[] buf, int off) {
+		if (buf == null || buf.length - off < SIZE || buf[off] != VERSION) {
+			return null;
+		}
+
+		int op = buf[off + 1] & 0xff;
+		int flags = buf[off + 2] & 0xff;
+		int lt = buf[off + 3] & 0xff;
+		int st = buf[off + 4] & 0xff;
+
+		if (op >= operations.length) {
+			return null;
+		}
+
+		LinkType type = null;
+		if ((flags & HAS_LINK) != 0) {
+			if (lt >= linkTypes.length) {
+				return null;
+			}
+			type = linkTypes[lt];
+		}
+
+		SwitchType srcType = null;
+		if ((flags & HAS_SRC_TYPE) != 0) {
+			if (st >= switchTypes.length) {
+				return null;
+			}
+			srcType = switchTypes[st];
+		}
+
+		return new LDUpdateRecord(operations[op], flags, getLong(buf, off + 5), getInt(buf, off + 13),
+				getLong(buf, off + 17), getInt(buf, off + 25), getLong(buf, off + 29), type, srcType,
+				getLong(buf, off + 37));
+	}
+
+	public static LDUpdateRecord fromBase64(String value) {
+		try {
+			return decode(Base64.getDecoder().decode(value), 0);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes this record into buf at off; buf must have SIZE bytes free.
+	 */
+
+	public void encode(byte[] buf, int off) {
+		buf[off] = VERSION;
+		buf[off + 1] = (byte) code(operations, operation);
+		buf[off + 2] = (byte) flags;
+		buf[off + 3] = (byte) ((type == null) ? NONE : code(linkTypes, type));
+		buf[off + 4] = (byte) ((srcType == null) ? NONE : code(switchTypes, srcType));
+		putLong(buf, off + 5, src);
+		putInt(buf, off + 13, srcPort);
+		putLong(buf, off + 17, dst);
+		putInt(buf, off + 25, dstPort);
+		putLong(buf, off + 29, latency);
+		putLong(buf, off + 37, timestamp);
+	}
+
+	public byte[] toBytes() {
+		byte[] buf = new byte[SIZE];
+		encode(buf, 0);
+		return buf;
+	}
+
+	public String toBase64() {
+		return Base64.getEncoder().encodeToString(toBytes());
+	}
+
+	/**
+	 * The syncDB "KEY" for this update: the primary key / low frequency
+	 * fields (src, srcPort, dst, dstPort, type) written out as fixed width
+	 * hex. Unlike the MD5 hash it replaces it is collision free and needs no
+	 * intermediate Strings.
+	 */
+
+	public String getKey() {
+		char[] key = new char[50];
+		putHex(key, 0, src, 16);
+		putHex(key, 16, ((flags & HAS_SRC_PORT) != 0) ? srcPort : 0, 8);
+		putHex(key, 24, dst, 16);
+		putHex(key, 40, dstPort, 8);
+		putHex(key, 48, (type == null) ? NONE : code(linkTypes, type), 2);
+		return new String(key);
+	}
+
+	/**
+	 * Renders the record in the JSON form used by the String pipeline, i.e.
+	 * the fields of LDUpdate.toString() plus the timestamp.
+	 */
+
+	public String toJSON() {
+		StringBuilder sb = new StringBuilder(192);
+		sb.append("{\"operation\":\"").append(operation.toString()).append('"');
+		sb.append(",\"src\":\"").append(DatapathId.of(src).toString()).append('"');
+		if ((flags & HAS_SRC_PORT) != 0) {
+			sb.append(",\"srcPort\":\"").append(OFPort.of(srcPort).toString()).append('"');
+		}
+		if ((flags & HAS_LINK) != 0) {
+			sb.append(",\"dst\":\"").append(DatapathId.of(dst).toString()).append('"');
+			sb.append(",\"dstPort\":\"").append(OFPort.of(dstPort).toString()).append('"');
+			sb.append(",\"latency\":\"").append(U64.of(latency).toString()).append('"');
+			sb.append(",\"type\":\"").append(type.toString()).append('"');
+		}
+		sb.append(",\"timestamp\":\"").append(timestamp).append("\"}");
+		return sb.toString();
+	}
+
+	/**
+	 * Rebuilds the LDUpdate this record was made from.
+	 */
+
+	public LDUpdate toLDUpdate() {
+		if ((flags & HAS_LINK) != 0) {
+			return new LDUpdate(getSrc(), getSrcPort(), getDst(), getDstPort(), getLatency(), type, operation);
+		} else if ((flags & HAS_SRC_PORT) != 0) {
+			return new LDUpdate(getSrc(), getSrcPort(), operation);
+		}
+		return new LDUpdate(getSrc(), srcType, operation);
+	}
+
+	public UpdateOperation getOperation() {
+		return operation;
+	}
+
+	public DatapathId getSrc() {
+		return DatapathId.of(src);
+	}
+
+	public OFPort getSrcPort() {
+		return ((flags & HAS_SRC_PORT) != 0) ? OFPort.of(srcPort) : null;
+	}
+
+	public DatapathId getDst() {
+		return ((flags & HAS_LINK) != 0) ? DatapathId.of(dst) : null;
+	}
+
+	public OFPort getDstPort() {
+		return ((flags & HAS_LINK) != 0) ? OFPort.of(dstPort) : null;
+	}
+
+	public U64 getLatency() {
+		return U64.of(latency);
+	}
+
+	public LinkType getType() {
+		return type;
+	}
+
+	public SwitchType getSrcType() {
+		return srcType;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * A 64 bit hash of the same fields as equals(), for the DuplicateFilter.
+	 * Like the records, it uses the wire codes of the enums, so that it is
+	 * the same on every controller.
+	 */
+
+	public long hash64() {
+		long h = DuplicateFilter.mix(src ^ ((long) code(operations, operation) << 56) ^ ((long) flags << 48));
+		h = DuplicateFilter.mix(h ^ dst ^ ((long) srcPort << 32) ^ (dstPort & 0xffffffffL));
+		h = DuplicateFilter.mix(h ^ latency ^ code(linkTypes, type) ^ ((long) code(switchTypes, srcType) << 8));
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		LDUpdateRecord other = (LDUpdateRecord) obj;
+		return operation == other.operation && flags == other.flags && src == other.src
+				&& srcPort == other.srcPort && dst == other.dst && dstPort == other.dstPort
+				&& latency == other.latency && type == other.type && srcType == other.srcType;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = operation.hashCode();
+		result = 31 * result + flags;
+		result = 31 * result + (int) (src ^ (src >>> 32));
+		result = 31 * result + srcPort;
+		result = 31 * result + (int) (dst ^ (dst >>> 32));
+		result = 31 * result + dstPort;
+		result = 31 * result + (int) (latency ^ (latency >>> 32));
+		result = 31 * result + ((type == null) ? 0 : type.hashCode());
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "LDUpdateRecord [operation=" + operation + ", key=" + getKey() + ", latency=" + latency
+				+ ", timestamp=" + timestamp + "]";
+	}
+
+	private static long currentTimeNanos() {
+		return System.currentTimeMillis() * 1000000L + Math.floorMod(System.nanoTime(), 1000000L);
+	}
+
+	private static <T> int code(T[] table, T value) {
+		for (int i = 0; i < table.length; i++) {
+			if (table[i] == value) {
+				return i;
+			}
+		}
+		return NONE;
+	}
+
+	private static UpdateOperation parseOperation(String value) {
+		if (value != null) {
+			for (UpdateOperation op : operations) {
+				if (op.toString().equals(value)) {
+					return op;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static LinkType parseLinkType(String value) {
+		if (value != null) {
+			for (LinkType lt : linkTypes) {
+				if (lt.toString().equals(value)) {
+					return lt;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static OFPort parsePort(String value) {
+		if (value == null || value.isEmpty()) {
+			return null;
+		}
+		for (OFPort p : namedPorts) {
+			if (p.toString().equals(value)) {
+				return p;
+			}
+		}
+		return OFPort.of(Integer.parseInt(value));
+	}
+
+	private static void putHex(char[] dst, int off, long value, int digits) {
+		for (int i = digits - 1; i >= 0; i--) {
+			dst[off + i] = hex[(int) (value & 0xf)];
+			value >>>= 4;
+		}
+	}
+
+	private static void putLong(byte[] buf, int off, long v) {
+		for (int i = 7; i >= 0; i--) {
+			buf[off + i] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	private static void putInt(byte[] buf, int off, int v) {
+		buf[off] = (byte) (v >>> 24);
+		buf[off + 1] = (byte) (v >>> 16);
+		buf[off + 2] = (byte) (v >>> 8);
+		buf[off + 3] = (byte) v;
+	}
+
+	private static long getLong(byte[] buf, int off) {
+		long v = 0;
+		for (int i = 0; i < 8; i++) {
+			v = (v << 8) | (buf[off + i] & 0xff);
+		}
+		return v;
+	}
+
+	private static int getInt(byte[] buf, int off) {
+		return ((buf[off] & 0xff) << 24) | ((buf[off + 1] & 0xff) << 16) | ((buf[off + 2] & 0xff) << 8)
+				| (buf[off + 3] & 0xff);
+	}
+
+}
@@ -15,25 +15,29 @@
 package net.floodlightcontroller.hasupport.topology;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.sdnplatform.sync.IStoreClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.floodlightcontroller.hasupport.DuplicateFilter;
 import net.floodlightcontroller.hasupport.IFilterQueue;
+import net.floodlightcontroller.hasupport.linkdiscovery.LDUpdateRecord;
 
 /**
  * Two Queues to store Topology Updates
  *
- * Filters out duplicates up to a specified capacity.
+ * Filters out duplicates using a DuplicateFilter, which remembers the hashes
+ * of the updates it has seen in a fixed amount of memory (see
+ * configureDuplicateFilter()), and forgets the oldest ones once it is full.
  *
- * Possible improvements: a. Implement a data structure which can eliminate
- * duplicates completely, without a threshold on the amount of filtering it can
- * do which is currently limited by the mapCapacity.
+ * Topology updates are LDUpdates, so the TopoHAWorker hands them in as
+ * LDUpdateRecords (see enqueueForward(LDUpdateRecord)), which are filtered on
+ * a hash of their fields rather than of their JSON form. The String
+ * methods of the IFilterQueue are still supported, and both kinds of update
+ * are handed to the TopoSyncAdapter by dequeueForward().
  *
  * @author Bhargav Srinivasan, Om Kale
  */
@@ -45,10 +49,11 @@ public class TopoFilterQueue implements IFilterQueue {
 	private static TopoSyncAdapter syncAdapter;
 	public static LinkedBlockingQueue<String> filterQueue = new LinkedBlockingQueue<>();
 
-	public static Map<String, String> myMap = new HashMap<>();
 	public static LinkedBlockingQueue<String> reverseFilterQueue = new LinkedBlockingQueue<>();
+	public static LinkedBlockingQueue<LDUpdateRecord> recordQueue = new LinkedBlockingQueue<>();
+	public static DuplicateFilter duplicateFilter = new DuplicateFilter();
+	public static LinkedBlockingQueue<LDUpdateRecord> reverseRecordQueue = new LinkedBlockingQueue<>();
 	protected String controllerID;
-	private final Integer mapCapacity = new Integer(1073741000);
 
 	public TopoFilterQueue(IStoreClient<String, String> storeTopo, String controllerID) {
 		TopoFilterQueue.storeTopo = storeTopo;
@@ -67,13 +72,22 @@ public class TopoFilterQueue implements IFilterQueue {
 	public boolean dequeueForward() {
 		try {
 			ArrayList<String> TopoUpds = new ArrayList<>();
+			ArrayList<LDUpdateRecord> TopoRecs = new ArrayList<>();
 			if (!filterQueue.isEmpty()) {
 				filterQueue.drainTo(TopoUpds);
 			}
-			if (!TopoUpds.isEmpty()) {
+			if (!recordQueue.isEmpty()) {
+				recordQueue.drainTo(TopoRecs);
+			}
+			if (!TopoUpds.isEmpty() || !TopoRecs.isEmpty()) {
 				// logger.debug("[FilterQ] The update after drain: {} ", new
 				// Object [] {TopoUpds.toString()});
-				TopoFilterQueue.syncAdapter.packJSON(TopoUpds);
+				if (!TopoRecs.isEmpty()) {
+					TopoFilterQueue.syncAdapter.packRecords(TopoRecs);
+				}
+				if (!TopoUpds.isEmpty()) {
+					TopoFilterQueue.syncAdapter.packJSON(TopoUpds);
+				}
 				return true;
 			} else {
 				// logger.debug("[FilterQ] The linked list is empty");
@@ -90,6 +104,8 @@ public class TopoFilterQueue implements IFilterQueue {
 	/**
 	 * This method is used by the subscribeHook in HAWorker, in order to finally
 	 * obtain the updates from the syncDB, in order to display/process them.
+	 * Records retrieved from the syncDB are rendered with
+	 * LDUpdateRecord.toJSON(), use dequeueReverseRecords() to get them typed.
 	 *
 	 * @return List<String> of updates in JSON format, which can be parsed using
 	 *         Jackson.
@@ -102,6 +118,9 @@ public class TopoFilterQueue implements IFilterQueue {
 			if (!reverseFilterQueue.isEmpty()) {
 				reverseFilterQueue.drainTo(TopoUpds);
 			}
+			for (LDUpdateRecord rec : dequeueReverseRecords()) {
+				TopoUpds.add(rec.toJSON());
+			}
 
 			if (!TopoUpds.isEmpty()) {
 				// logger.info("[ReverseFilterQ] The update after drain: {} ", new Object[] { TopoUpds.toString() });
@@ -121,39 +140,68 @@ public class TopoFilterQueue implements IFilterQueue {
 	}
 
 	/**
-	 * This method hashes the Topology updates received in form of JSON string
-	 * using md5 hashing and store them in the filter queue and in a map if not
-	 * already present.
-	 * 
+	 * This method stores the Topology updates received in form of JSON string in
+	 * the filter queue, unless the duplicate filter has seen the same String
+	 * before.
+	 *
 	 * @return boolean value indicating success or failure
 	 */
 
 	@Override
 	public boolean enqueueForward(String value) {
-		try {
-			String newMD5 = new String();
-			TopoUtils myMD5 = new TopoUtils();
-			newMD5 = myMD5.calculateMD5Hash(value);
-
-			if (TopoFilterQueue.myMap.size() >= mapCapacity) {
-				// logger.debug("[TopoFilterQ Clear] Clearing TopoFilterQ's
-				// Map");
-				TopoFilterQueue.myMap.clear();
-			}
+		if (value == null) {
+			return false;
+		}
+		if (duplicateFilter.add(DuplicateFilter.hash(value))) {
+			filterQueue.offer(value);
+		}
+		return true;
+	}
 
-			// logger.debug("[FilterQ] The MD5: {} The Value {}", new Object []
-			// {newMD5,value});
-			if ((!myMap.containsKey(newMD5)) && (!value.equals(null))) {
-				filterQueue.offer(value);
-				myMap.put(newMD5, value);
-			}
-			return true;
+	/**
+	 * Typed counterpart of enqueueForward(String): stores the record in the
+	 * filter queue unless the duplicate filter has seen an equal record (i.e.
+	 * the same update, regardless of when it was observed) before.
+	 *
+	 * @return boolean value indicating success or failure
+	 */
 
-		} catch (Exception e) {
-			logger.debug("[FilterQ] Exception: enqueueFwd!");
-			e.printStackTrace();
+	public boolean enqueueForward(LDUpdateRecord record) {
+		if (record == null) {
 			return false;
 		}
+		if (duplicateFilter.add(record.hash64())) {
+			recordQueue.offer(record);
+		}
+		return true;
+	}
+
+	/**
+	 * Typed counterpart of enqueueReverse(String), called by the
+	 * TopoSyncAdapter for every record it decodes from the syncDB.
+	 *
+	 * @return boolean value indicating success.
+	 */
+
+	public boolean enqueueReverse(LDUpdateRecord record) {
+		if (record != null) {
+			reverseRecordQueue.offer(record);
+		}
+		return true;
+	}
+
+	/**
+	 * Drains the records retrieved from the syncDB by the last subscribe().
+	 *
+	 * @return List of the records, empty if there are none.
+	 */
+
+	public List<LDUpdateRecord> dequeueReverseRecords() {
+		ArrayList<LDUpdateRecord> TopoRecs = new ArrayList<>();
+		if (!reverseRecordQueue.isEmpty()) {
+			reverseRecordQueue.drainTo(TopoRecs);
+		}
+		return TopoRecs;
 	}
 
 	/**
@@ -180,6 +228,20 @@ public class TopoFilterQueue implements IFilterQueue {
 
 	}
 
+	/**
+	 * Replaces the duplicate filter with one of the given size, see
+	 * DuplicateFilter for the parameters.
+	 */
+
+	public static void configureDuplicateFilter(double falsePositiveRate, long maxBytes, long windowMillis) {
+		duplicateFilter = new DuplicateFilter(falsePositiveRate, maxBytes, windowMillis);
+	}
+
+	@Override
+	public DuplicateFilter getDuplicateFilter() {
+		return duplicateFilter;
+	}
+
 	/**
 	 * This method is used by the subscribeHook to initiate the retrieval of
 	 * updates from the syncDB. This method returns only after unpackJSON has
@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.floodlightcontroller.hasupport.IHAWorker;
+import net.floodlightcontroller.hasupport.linkdiscovery.LDUpdateRecord;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
 import net.floodlightcontroller.topology.ITopologyListener;
 import net.floodlightcontroller.topology.ITopologyService;
@@ -41,6 +42,12 @@ import net.floodlightcontroller.topology.ITopologyService;
  * SyncAdapter class, because the data in the updates are relational in nature
  * and this improves write efficiency.
  *
+ * The updates received from the topology service skip that step: they are
+ * kept as typed LDUpdateRecords in synTopoURecords and go through the
+ * FilterQueue and the SyncAdapter without being turned into Strings.
+ * synTopoUList and assembleUpdate() are still used for updates that arrive as
+ * Strings.
+ *
  * Forward flow:
  *
  * HAWorker | FilterQueue | SyncAdapter publishHook() -> enqueueForward() ->
@@ -62,6 +69,7 @@ public class TopoHAWorker implements IHAWorker, ITopologyListener {
 
 	private static TopoFilterQueue myTopoFilterQueue;
 	List<String> synTopoUList = Collections.synchronizedList(new ArrayList<String>());
+	List<LDUpdateRecord> synTopoURecords = new ArrayList<LDUpdateRecord>();
 
 	public TopoHAWorker(IStoreClient<String, String> storeTopo, String controllerID) {
 		TopoHAWorker.myTopoFilterQueue = new TopoFilterQueue(storeTopo, controllerID);
@@ -120,6 +128,10 @@ public class TopoHAWorker implements IHAWorker, ITopologyListener {
 					myTopoFilterQueue.enqueueForward(update);
 				}
 				synTopoUList.clear();
+				for (LDUpdateRecord record : synTopoURecords) {
+					myTopoFilterQueue.enqueueForward(record);
+				}
+				synTopoURecords.clear();
 				myTopoFilterQueue.dequeueForward();
 			}
 			return true;
@@ -154,7 +166,10 @@ public class TopoHAWorker implements IHAWorker, ITopologyListener {
 	public void topologyChanged(List<LDUpdate> linkUpdates) {
 		synchronized (synTopoUList) {
 			for (LDUpdate update : linkUpdates) {
-				synTopoUList.add(update.toString());
+				LDUpdateRecord record = LDUpdateRecord.of(update);
+				if (record != null) {
+					synTopoURecords.add(record);
+				}
 			}
 		}
 
@@ -14,8 +14,9 @@
 
 package net.floodlightcontroller.hasupport.topology;
 
-import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,14 +31,18 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.hasupport.ISyncAdapter;
+import net.floodlightcontroller.hasupport.SyncCursor;
+import net.floodlightcontroller.hasupport.linkdiscovery.LDUpdateRecord;
 
 /**
  * This class gets the updates from the Filter Queue and puts them into the
  * SyncDB.
  *
- * The primary key fields are MD5 hashed and the md5hashes are stored under the
- * controller ID which published them. Now each controller can exchange only the
- * md5hashes and stay up to date, and sync the actual update only if needed.
+ * The primary key fields form a key (LDUpdateRecord.getKey(), this used to be
+ * an MD5 hash) and the keys are stored under the controller ID which published
+ * them. Now each controller can exchange only the keys and stay up to date, and
+ * sync the actual update only if needed. The updates themselves are stored as
+ * Base64 encoded, versioned LDUpdateRecords, since the syncDB stores Strings.
  *
  * Low frequency fields (mentioned in LDUtils): These are the primary key
  * fields, i.e. when the data is viewed as relational data, these fields would
@@ -79,37 +84,38 @@ public class TopoSyncAdapter implements ISyncAdapter {
 
 	private static TopoFilterQueue myTopoFilterQueue;
 	private final String none = new String("none");
-	private final String[] highfields = new String[] { "operation", "latency", "timestamp" };
+	private final SyncCursor cursor;
 
 	protected String controllerID;
 
 	public TopoSyncAdapter(IStoreClient<String, String> storeTopo, String controllerID,
 			TopoFilterQueue topoFilterQueue) {
 		TopoSyncAdapter.storeTopo = storeTopo;
+		this.cursor = new SyncCursor(storeTopo);
 		this.controllerID = controllerID;
 		TopoSyncAdapter.myTopoFilterQueue = topoFilterQueue;
 	}
 
 	/**
-	 * Receives the updates from the FilterQueue's enqueueForward method, and
-	 * assembles the JSON object that is to be pushed into the syncDB using
-	 * Jackson.
+	 * Receives the updates from the FilterQueue's enqueueForward method, in
+	 * the JSON form produced by TopoUtils.parseChunk(), converts them into
+	 * LDUpdateRecords and pushes them into the syncDB using packRecords().
 	 *
 	 * This method first checks if the incoming update's primary key is already
 	 * in the syncDB, if so, it retrieves that particular update and appends the
-	 * new values to it along with a timestamp.
+	 * new record (which carries its own timestamp) to it.
 	 *
-	 * If the incoming update does not exist in the syncDB, it hashes the
-	 * primary key or low frequency fields of the update and this forms the
-	 * "KEY" for this update in the syncDB. It is appended with a timestamp and
-	 * then pushed into the syncDB.
+	 * If the incoming update does not exist in the syncDB, the primary key or
+	 * low frequency fields of the update form the "KEY" for this update in the
+	 * syncDB (see LDUpdateRecord.getKey()), and the record is pushed into the
+	 * syncDB under it.
 	 *
-	 * The MD5Hashes of the primary key fields or "KEY"s are collected in a
-	 * String called the collatedmd5hashes. Now this string is pushed into the
-	 * syncDB as well, with the corresponding controller ID from which it came
-	 * from as key: <C1, collatedmd5hashes>. Now every controller will have
-	 * access to the collatedmd5hashes of every other controller, and can hence
-	 * retrieve any update from any controller.
+	 * The "KEY"s are collected in a String called the collatedmd5hashes (the
+	 * name is kept from when the keys were MD5 hashes). Now this string is
+	 * pushed into the syncDB as well, with the corresponding controller ID from
+	 * which it came from as key: <C1, collatedmd5hashes>. Now every controller
+	 * will have access to the collatedmd5hashes of every other controller, and
+	 * can hence retrieve any update from any controller.
 	 *
 	 */
 
@@ -119,10 +125,7 @@ public class TopoSyncAdapter implements ISyncAdapter {
 		ObjectMapper myMapper = new ObjectMapper();
 		TypeReference<HashMap<String, String>> typeRef = new TypeReference<HashMap<String, String>>() {
 		};
-		Map<String, String> newUpdateMap = new HashMap<>();
-		Map<String, String> updateMap = new HashMap<>();
-		String cmd5Hash = new String();
-		TopoUtils topohautils = new TopoUtils();
+		List<LDUpdateRecord> records = new ArrayList<>();
 
 		if (newUpdates.isEmpty()) {
 			return;
@@ -130,95 +133,100 @@ public class TopoSyncAdapter implements ISyncAdapter {
 
 		for (String up : newUpdates) {
 			try {
+				Map<String, String> newUpdateMap = myMapper.readValue(up.toString(), typeRef);
+				LDUpdateRecord record = LDUpdateRecord.fromJSON(newUpdateMap);
+				if (record != null) {
+					records.add(record);
+				}
+			} catch (Exception e) {
+				logger.debug("[TopoSync] Exception: packJSON!");
+				e.printStackTrace();
+			}
+		}
 
-				newUpdateMap = myMapper.readValue(up.toString(), typeRef);
-				cmd5Hash = topohautils.getCMD5Hash(up, newUpdateMap);
+		packRecords(records);
+	}
 
-				/**
-				 * Make the high freq fields as lists.
-				 */
-				String operation = newUpdateMap.get(highfields[0]);
-				String latency = newUpdateMap.get(highfields[1]);
-				/**
-				 * Add timestamp field.
-				 */
+	/**
+	 * Pushes typed updates into the syncDB, see packJSON() for the layout.
+	 *
+	 * The "KEY" of an update is LDUpdateRecord.getKey() and the value stored
+	 * under it is the history of the update: the Base64 form of every record
+	 * seen for that key, comma separated. Every record starts with its schema
+	 * version (LDUpdateRecord.VERSION). A value in the old JSON format is
+	 * replaced by the new history, without adding the key to the collated
+	 * keys again.
+	 *
+	 * The updates are written as one batch: the records are grouped by key,
+	 * each key is read once, the keys which are new are appended to the
+	 * collated keys in one go, and all the values are written with a single
+	 * putAll().
+	 */
+
+	public void packRecords(List<LDUpdateRecord> newUpdates) {
 
-				Long ts = new Long(Instant.now().getEpochSecond());
-				Long nano = new Long(Instant.now().getNano());
+		if (newUpdates.isEmpty()) {
+			return;
+		}
+
+		/**
+		 * Group the records by key, in the order the keys first appear.
+		 */
+		Map<String, StringBuilder> batch = new LinkedHashMap<>();
+		for (LDUpdateRecord record : newUpdates) {
+			String key = record.getKey();
+			StringBuilder history = batch.get(key);
+			if (history == null) {
+				batch.put(key, new StringBuilder(record.toBase64()));
+			} else {
+				history.append(", ").append(record.toBase64());
+			}
+		}
 
-				newUpdateMap.put(highfields[0], operation);
-				newUpdateMap.put(highfields[1], latency);
-				newUpdateMap.put(highfields[2], ts.toString() + nano.toString());
+		try {
+			Map<String, String> puts = new LinkedHashMap<>();
+			StringBuilder newKeys = new StringBuilder();
+
+			for (Map.Entry<String, StringBuilder> entry : batch.entrySet()) {
+				String key = entry.getKey();
+				String value = entry.getValue().toString();
 
 				/**
 				 * Try to get previous update:
 				 */
-				String oldUpdates = storeTopo.getValue(cmd5Hash.toString(), none);
+				String oldUpdates = TopoSyncAdapter.storeTopo.getValue(key, none);
 
-				if (!oldUpdates.equals(none)) {
-
-					if (oldUpdates.isEmpty()) {
-						continue;
+				if (oldUpdates.equals(none)) {
+					puts.put(key, value);
+					if (newKeys.length() > 0) {
+						newKeys.append(", ");
 					}
-
-					/**
-					 * parse the Json String into a Map, then query the entries.
-					 */
-
-					updateMap = myMapper.readValue(oldUpdates.toString(), typeRef);
-
-					String oldOp = updateMap.get(highfields[0]);
-					String opList = topohautils.appendUpdate(oldOp, newUpdateMap.get(highfields[0]));
-					updateMap.put(highfields[0], opList);
-
-					String oldLatency = updateMap.get(highfields[1]);
-					String latList = topohautils.appendUpdate(oldLatency, newUpdateMap.get(highfields[1]));
-					updateMap.put(highfields[1], latList);
-
-					String oldTimestamp = updateMap.get(highfields[2]);
-					Long ts2 = new Long(Instant.now().getEpochSecond());
-					Long nano2 = new Long(Instant.now().getNano());
-					String tmList = topohautils.appendUpdate(oldTimestamp, ts2.toString() + nano2.toString());
-					updateMap.put(highfields[2], tmList);
-
-					TopoSyncAdapter.storeTopo.put(cmd5Hash.toString(), myMapper.writeValueAsString(updateMap));
-
+					newKeys.append(key);
+				} else if (oldUpdates.isEmpty() || oldUpdates.startsWith("{")) {
+					puts.put(key, value);
 				} else {
-
-					try {
-
-						TopoSyncAdapter.storeTopo.put(cmd5Hash.toString(), myMapper.writeValueAsString(newUpdateMap));
-
-						String collatedcmd5 = TopoSyncAdapter.storeTopo.getValue(controllerID.toString(), none);
-
-						if (collatedcmd5.equals(none)) {
-							collatedcmd5 = cmd5Hash;
-							// logger.debug("Collated CMD5: {} ", new Object []
-							// {collatedcmd5.toString()});
-						} else {
-							// logger.debug("================ Append update to
-							// HashMap ================");
-							collatedcmd5 = topohautils.appendUpdate(collatedcmd5, cmd5Hash);
-						}
-
-						TopoSyncAdapter.storeTopo.put(controllerID, collatedcmd5);
-
-					} catch (SyncException se) {
-						logger.debug("[TopoSync] Exception: sync packJSON!");
-						se.printStackTrace();
-					} catch (Exception e) {
-						logger.debug("[TopoSync] Exception: packJSON!");
-						e.printStackTrace();
-					}
+					puts.put(key, oldUpdates + ", " + value);
 				}
+			}
 
-			} catch (SyncException se) {
-				logger.debug("[TopoSync] Exception: sync packJSON!");
-				se.printStackTrace();
-			} catch (Exception e) {
-				logger.debug("[TopoSync] Exception: packJSON!");
-				e.printStackTrace();
+			if (newKeys.length() > 0) {
+				String collatedcmd5 = TopoSyncAdapter.storeTopo.getValue(controllerID, none);
+				if (collatedcmd5.equals(none)) {
+					collatedcmd5 = newKeys.toString();
+				} else {
+					collatedcmd5 = collatedcmd5 + ", " + newKeys;
+				}
+				puts.put(controllerID, collatedcmd5);
 			}
+
+			TopoSyncAdapter.storeTopo.putAll(puts);
+
+		} catch (SyncException se) {
+			logger.debug("[TopoSync] Exception: sync packRecords!");
+			se.printStackTrace();
+		} catch (Exception e) {
+			logger.debug("[TopoSync] Exception: packRecords!");
+			e.printStackTrace();
 		}
 
 	}
@@ -230,40 +238,28 @@ public class TopoSyncAdapter implements ISyncAdapter {
 	 * later read by the subscribe hook.
 	 *
 	 * It first retrieves the collatedmd5hashes, as explained above, for a
-	 * particular controller, and then retrieves the actual updates.
+	 * particular controller, and then retrieves the actual updates. Values
+	 * still in the old JSON format are passed on as they are.
+	 *
+	 * Only the updates written since the last call for the same controller
+	 * are retrieved: the SyncCursor keeps a high-water mark per controller
+	 * and, through its store listener, knows which keys were modified in the
+	 * meantime, so that only those are read again.
 	 *
 	 */
 
 	@Override
 	public void unpackJSON(String controllerID) {
-		/**
-		 * 1. Get all cmd5 hashes for the particular controller ID.
-		 */
 		try {
-			String collatedcmd5 = TopoSyncAdapter.storeTopo.getValue(controllerID, none);
-
-			if (!collatedcmd5.equals(none)) {
-
-				if (collatedcmd5.endsWith(", ")) {
-					collatedcmd5 = collatedcmd5.substring(0, collatedcmd5.length() - 2);
-				}
-
-				// logger.debug("[Unpack] Collated CMD5: {}", new Object[]
-				// {collatedcmd5.toString()});
-
-				String[] cmd5hashes = collatedcmd5.split(", ");
-				for (String cmd5 : cmd5hashes) {
-					String update = TopoSyncAdapter.storeTopo.getValue(cmd5, none);
-					if (!update.equals(none)) {
-						// logger.info("[Unpack]: {}", new Object[] { update.toString() });
-						myTopoFilterQueue.enqueueReverse(update);
-					}
+			for (String update : cursor.poll(controllerID)) {
+				if (update.startsWith("{")) {
+					myTopoFilterQueue.enqueueReverse(update);
+				} else {
+					myTopoFilterQueue.enqueueReverse(LDUpdateRecord.fromBase64(update));
 				}
 			}
-
-			return;
-
 		} catch (SyncException e) {
+			logger.debug("[TopoSync] Exception: unpackJSON!");
 			e.printStackTrace();
 		}
 
@@ -0,0 +1,334 @@
+/**
+*    Licensed under the Apache License, Version 2.0 (the "License"); you may
+*    not use this file except in compliance with the License. You may obtain
+*    a copy of the License at
+*
+*         http://www.apache.org/licenses/LICENSE-2.0
+*
+*    Unless required by applicable law or agreed to in writing, software
+*    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+*    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+*    License for the specific language governing permissions and limitations
+*    under the License.
+**/
+
+package net.floodlightcontroller.packet;
+
+import java.util.Arrays;
+
+import org.projectfloodlight.openflow.types.ArpOpcode;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+/**
+ * Read-only view of an Ethernet frame, decoded lazily from the original
+ * bytes (e.g. the data of a packet-in) instead of building the
+ * {@link Ethernet}, {@link IPv4}, {@link TCP}/{@link UDP} object tree.
+ *
+ * Only the offsets of the headers are computed, once, on first use; the
+ * accessors read the fields straight from the bytes and return null (or
+ * {@link Ethernet#VLAN_UNTAGGED} for the VLAN) when the frame does not carry
+ * them. The bytes are not copied, so they must not be modified while the
+ * view is in use, and {@link #getData()} returns them as they were received,
+ * ready to be sent in a packet-out without re-serialization.
+ *
+ * Like {@link Ethernet}, a single 802.1Q tag is understood.
+ */
+public class EthernetView {
+    private static final int ETH_HEADER_LENGTH = 14;
+    private static final int VLAN_TAG_LENGTH = 4;
+    private static final int IPV6_HEADER_LENGTH = 40;
+    private static final int ARP_IPV4_LENGTH = 28;
+
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+
+    /* computed on first use, -1 until then */
+    private volatile int l3Offset = -1;
+    private volatile int l4Offset = -1;
+    private EthType etherType;
+    private IpProtocol ipProtocol;
+
+    private EthernetView(byte[] data, int offset, int length) {
+        if (data == null)
+            throw new NullPointerException("data must not be null");
+        if (offset < 0 || length < 0 || offset + length > data.length)
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length
+                    + " out of bounds for " + data.length + " bytes");
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * @param data the frame; it is not copied
+     */
+    public static EthernetView of(byte[] data) {
+        return new EthernetView(data, 0, data.length);
+    }
+
+    /**
+     * @param data buffer holding the frame; it is not copied
+     * @param offset start of the frame in the buffer
+     * @param length length of the frame
+     */
+    public static EthernetView of(byte[] data, int offset, int length) {
+        return new EthernetView(data, offset, length);
+    }
+
+    /**
+     * @return True if the frame is long enough to hold an Ethernet header
+     */
+    public boolean isValid() {
+        return length >= ETH_HEADER_LENGTH;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return the frame as received. The returned array is the one backing
+     * this view when the view covers all of it, a copy otherwise.
+     */
+    public byte[] getData() {
+        if (offset == 0 && length == data.length)
+            return data;
+        return Arrays.copyOfRange(data, offset, offset + length);
+    }
+
+    /**
+     * @return the frame fully decoded into an {@link Ethernet}, for the
+     * modules which need the object tree
+     */
+    public Ethernet toEthernet() {
+        Ethernet eth = new Ethernet();
+        eth.deserialize(data, offset, length);
+        return eth;
+    }
+
+    public MacAddress getDestinationMACAddress() {
+        if (!isValid())
+            return null;
+        return MacAddress.of(getMac(offset));
+    }
+
+    public MacAddress getSourceMACAddress() {
+        if (!isValid())
+            return null;
+        return MacAddress.of(getMac(offset + 6));
+    }
+
+    public boolean isBroadcast() {
+        return isValid() && getMac(offset) == 0xffffffffffffL;
+    }
+
+    public boolean isMulticast() {
+        return isValid() && (data[offset] & 0x01) != 0;
+    }
+
+    /**
+     * @return the ethertype of the payload, after the VLAN tag if any
+     */
+    public EthType getEtherType() {
+        if (l3Offset < 0)
+            parseL2();
+        return etherType;
+    }
+
+    /**
+     * @return the VLAN ID, or {@link Ethernet#VLAN_UNTAGGED}
+     */
+    public short getVlanID() {
+        if (!isTagged())
+            return Ethernet.VLAN_UNTAGGED;
+        return (short) (getShort(offset + ETH_HEADER_LENGTH) & 0x0fff);
+    }
+
+    public byte getPriorityCode() {
+        if (!isTagged())
+            return 0;
+        return (byte) ((getShort(offset + ETH_HEADER_LENGTH) >> 13) & 0x07);
+    }
+
+    public boolean isTagged() {
+        return isValid() && (getShort(offset + 12) & 0xffff) == EthType.VLAN_FRAME.getValue()
+                && length >= ETH_HEADER_LENGTH + VLAN_TAG_LENGTH;
+    }
+
+    /**
+     * @return offset of the payload in the frame, or -1 if the frame is too
+     * short
+     */
+    public int getPayloadOffset() {
+        if (l3Offset < 0)
+            parseL2();
+        return etherType == null ? -1 : l3Offset - offset;
+    }
+
+    public boolean isIPv4() {
+        return getEtherType() == EthType.IPv4 && hasL3(20);
+    }
+
+    public boolean isIPv6() {
+        return getEtherType() == EthType.IPv6 && hasL3(IPV6_HEADER_LENGTH);
+    }
+
+    public boolean isARP() {
+        return getEtherType() == EthType.ARP && hasL3(ARP_IPV4_LENGTH);
+    }
+
+    public IPv4Address getIPv4Source() {
+        if (!isIPv4())
+            return null;
+        return IPv4Address.of(getInt(l3Offset + 12));
+    }
+
+    public IPv4Address getIPv4Destination() {
+        if (!isIPv4())
+            return null;
+        return IPv4Address.of(getInt(l3Offset + 16));
+    }
+
+    public IPv6Address getIPv6Source() {
+        if (!isIPv6())
+            return null;
+        return IPv6Address.of(getLong(l3Offset + 8), getLong(l3Offset + 16));
+    }
+
+    public IPv6Address getIPv6Destination() {
+        if (!isIPv6())
+            return null;
+        return IPv6Address.of(getLong(l3Offset + 24), getLong(l3Offset + 32));
+    }
+
+    /**
+     * @return the IPv4 protocol or the IPv6 next header, null for other
+     * ethertypes
+     */
+    public IpProtocol getIpProtocol() {
+        if (l4Offset < 0)
+            parseL3();
+        return ipProtocol;
+    }
+
+    /**
+     * @return True if the frame is an IPv4 fragment other than the first one,
+     * which carries no transport header
+     */
+    public boolean isIPv4Fragment() {
+        return isIPv4() && (getShort(l3Offset + 6) & 0x1fff) != 0;
+    }
+
+    /**
+     * @return the TCP, UDP or SCTP source port, null if there is none
+     */
+    public TransportPort getTransportSource() {
+        int l4 = getTransportOffset();
+        return l4 < 0 ? null : TransportPort.of(getShort(l4) & 0xffff);
+    }
+
+    /**
+     * @return the TCP, UDP or SCTP destination port, null if there is none
+     */
+    public TransportPort getTransportDestination() {
+        int l4 = getTransportOffset();
+        return l4 < 0 ? null : TransportPort.of(getShort(l4 + 2) & 0xffff);
+    }
+
+    public ArpOpcode getArpOpcode() {
+        if (!isARP())
+            return null;
+        return ArpOpcode.of(getShort(l3Offset + 6) & 0xffff);
+    }
+
+    public IPv4Address getArpSenderProtocolAddress() {
+        if (!isARP())
+            return null;
+        return IPv4Address.of(getInt(l3Offset + 14));
+    }
+
+    public IPv4Address getArpTargetProtocolAddress() {
+        if (!isARP())
+            return null;
+        return IPv4Address.of(getInt(l3Offset + 24));
+    }
+
+    private void parseL2() {
+        if (!isValid()) {
+            l3Offset = offset + length;
+            return;
+        }
+        int type = getShort(offset + 12) & 0xffff;
+        int l3 = offset + ETH_HEADER_LENGTH;
+        if (type == EthType.VLAN_FRAME.getValue()) {
+            if (length < ETH_HEADER_LENGTH + VLAN_TAG_LENGTH) {
+                l3Offset = offset + length;
+                return;
+            }
+            type = getShort(l3 + 2) & 0xffff;
+            l3 += VLAN_TAG_LENGTH;
+        }
+        etherType = EthType.of(type);
+        l3Offset = l3;
+    }
+
+    private void parseL3() {
+        int l4 = offset + length;
+        if (isIPv4()) {
+            int ihl = (data[l3Offset] & 0x0f) * 4;
+            ipProtocol = IpProtocol.of((short) (data[l3Offset + 9] & 0xff));
+            if (ihl >= 20)
+                l4 = l3Offset + ihl;
+        } else if (isIPv6()) {
+            ipProtocol = IpProtocol.of((short) (data[l3Offset + 6] & 0xff));
+            l4 = l3Offset + IPV6_HEADER_LENGTH;
+        }
+        l4Offset = l4;
+    }
+
+    private int getTransportOffset() {
+        IpProtocol proto = getIpProtocol();
+        if (proto != IpProtocol.TCP && proto != IpProtocol.UDP && proto != IpProtocol.SCTP)
+            return -1;
+        if (isIPv4Fragment())
+            return -1;
+        if (l4Offset + 4 > offset + length)
+            return -1;
+        return l4Offset;
+    }
+
+    private boolean hasL3(int headerLength) {
+        return l3Offset + headerLength <= offset + length;
+    }
+
+    private long getMac(int pos) {
+        return ((data[pos] & 0xffL) << 40) | ((data[pos + 1] & 0xffL) << 32)
+                | ((data[pos + 2] & 0xffL) << 24) | ((data[pos + 3] & 0xffL) << 16)
+                | ((data[pos + 4] & 0xffL) << 8) | (data[pos + 5] & 0xffL);
+    }
+
+    private short getShort(int pos) {
+        return (short) (((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff));
+    }
+
+    private int getInt(int pos) {
+        return ((data[pos] & 0xff) << 24) | ((data[pos + 1] & 0xff) << 16)
+                | ((data[pos + 2] & 0xff) << 8) | (data[pos + 3] & 0xff);
+    }
+
+    private long getLong(int pos) {
+        return ((long) getInt(pos) << 32) | (getInt(pos + 4) & 0xffffffffL);
+    }
+
+    @Override
+    public String toString() {
+        return "EthernetView [src=" + getSourceMACAddress() + ", dst=" + getDestinationMACAddress()
+                + ", type=" + getEtherType() + ", vlan=" + getVlanID() + ", length=" + length + "]";
+    }
+}
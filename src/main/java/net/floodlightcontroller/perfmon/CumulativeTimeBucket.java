@@ -29,6 +29,8 @@ import net.floodlightcontroller.core.IOFMessageListener;
 public class CumulativeTimeBucket {
     private long startTime_ns; // First pkt time-stamp in this bucket
     private Map<Integer, OneComponentTime> compStats;
+    // compStats in the order of the listener chain
+    private OneComponentTime[] compByIndex;
     private long totalPktCnt;
     private long totalProcTimeNs; // total processing time for one pkt in
     private long sumSquaredProcTimeNs2;
@@ -71,9 +73,12 @@ public class CumulativeTimeBucket {
 
     public CumulativeTimeBucket(List<IOFMessageListener> listeners) {
         compStats = new ConcurrentHashMap<Integer, OneComponentTime>(listeners.size());
+        compByIndex = new OneComponentTime[listeners.size()];
+        int i = 0;
         for (IOFMessageListener l : listeners) {
             OneComponentTime oct = new OneComponentTime(l);
             compStats.put(oct.hashCode(), oct);
+            compByIndex[i++] = compStats.get(oct.hashCode());
         }
         startTime_ns = System.nanoTime();
     }
@@ -133,6 +138,24 @@ public class CumulativeTimeBucket {
     }
     
     public void updateOneComponent(IOFMessageListener l, long procTimeNs) {
-        compStats.get(l.hashCode()).updatePerPacketCounters(procTimeNs);
+        OneComponentTime oct = compStats.get(l.hashCode());
+        if (oct != null) {
+            oct.updatePerPacketCounters(procTimeNs);
+        }
+    }
+
+    /**
+     * Update the counters of a component by its position in the listener
+     * chain the bucket was created with, without a map lookup
+     * @param index position of the listener in the chain
+     * @param l the listener, used when the chain has changed since
+     * @param procTimeNs processing time in ns
+     */
+    public void updateOneComponent(int index, IOFMessageListener l, long procTimeNs) {
+        if (index < compByIndex.length && compByIndex[index].hashCode() == l.hashCode()) {
+            compByIndex[index].updatePerPacketCounters(procTimeNs);
+        } else {
+            updateOneComponent(l, procTimeNs);
+        }
     }
 }
\ No newline at end of file
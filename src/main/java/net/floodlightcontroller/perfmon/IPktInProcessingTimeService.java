@@ -17,8 +17,10 @@
 package net.floodlightcontroller.perfmon;
 
 import java.util.List;
+import java.util.Map;
 
 import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IOFMessageListener;
@@ -44,7 +46,47 @@ public interface IPktInProcessingTimeService extends IFloodlightService {
     public void recordStartTimePktIn();
     
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx);
-    
+
+    /**
+     * @return True if the caller should time the listeners and call
+     * {@link #recordComponentTime} and {@link #recordMessageTime}, i.e. if
+     * the latency histograms or the performance monitor are on
+     */
+    public boolean isLatencyTracked();
+
+    /**
+     * Records the processing time of one listener in its latency histogram
+     * and, for packet-ins when the service is enabled, in the time bucket
+     * of the chain it was last bootstrapped with. The caller measures the
+     * time itself, so no state is shared between the dispatching threads.
+     * @param type the type of the message
+     * @param index position of the listener in the chain
+     * @param listener the listener
+     * @param procTimeNs processing time in ns
+     * @param nowNs the time the listener returned, from System.nanoTime()
+     */
+    public void recordComponentTime(OFType type, int index, IOFMessageListener listener,
+                                    long procTimeNs, long nowNs);
+
+    /**
+     * Records the processing time of a whole listener chain, measured by
+     * the caller.
+     * @param nowNs the time the chain ended, from System.nanoTime()
+     */
+    public void recordMessageTime(IOFSwitch sw, OFMessage m, FloodlightContext cntx,
+                                  long procTimeNs, long nowNs);
+
+    /**
+     * @return the latency histograms of the listener chains, by message type
+     */
+    public Map<OFType, LatencyHistogram> getMessageHistograms();
+
+    /**
+     * @return the latency histograms of the listeners, by message type and
+     * listener class name
+     */
+    public Map<OFType, Map<String, LatencyHistogram>> getListenerHistograms();
+
     public boolean isEnabled();
     
     public void setEnabled(boolean enabled);
@@ -0,0 +1,329 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Latency histogram cheap enough to be always on.
+ *
+ * Values (in ns) are counted in log-linear buckets, like an HDR histogram
+ * with 16 sub-buckets per power of two: values below 16 ns are exact, the
+ * others are within 1/16 (6.25%) of the reported value, up to
+ * {@link #MAX_VALUE_NS}, above which values are clamped.
+ *
+ * Every thread records into its own buckets, without locks or atomic
+ * operations, and the buckets of all the threads are merged when the
+ * histogram is read. The buckets are split into a ring of windows so that
+ * reads cover the last windowCount windows (a sliding window) rather than
+ * the whole uptime; a window is reset by its thread when it is reused.
+ * The buckets of a thread which died are dropped once its last values
+ * slide out of the windows read.
+ * Reads are not synchronized with the recording threads, so a snapshot
+ * may miss the values being recorded while it is taken.
+ */
+public class LatencyHistogram {
+    protected static final int SUB_BUCKET_BITS = 4;
+    protected static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /* highest power of two tracked */
+    protected static final int MAX_EXPONENT = 36;
+    public static final long MAX_VALUE_NS = (1L << (MAX_EXPONENT + 1)) - 1;
+    protected static final int BUCKETS =
+            (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final String name;
+    private final long windowNs;
+    private final int windowCount;
+    private final ThreadLocal<Recorder> recorder = new ThreadLocal<Recorder>() {
+        @Override
+        protected Recorder initialValue() {
+            Recorder r = new Recorder();
+            recorders.add(r);
+            return r;
+        }
+    };
+    private final CopyOnWriteArrayList<Recorder> recorders =
+            new CopyOnWriteArrayList<Recorder>();
+
+    /**
+     * @param name name of the histogram
+     * @param windowNs length of one window in ns
+     * @param windowCount number of windows read by {@link #getSnapshot()}
+     */
+    public LatencyHistogram(String name, long windowNs, int windowCount) {
+        if (windowNs <= 0 || windowCount <= 0)
+            throw new IllegalArgumentException("windowNs and windowCount must be positive");
+        this.name = name;
+        this.windowNs = windowNs;
+        this.windowCount = windowCount;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the period covered by a snapshot, in ns
+     */
+    public long getPeriodNs() {
+        return windowNs * windowCount;
+    }
+
+    /**
+     * Record a value
+     * @param valueNs the latency in ns
+     */
+    public void record(long valueNs) {
+        record(valueNs, System.nanoTime());
+    }
+
+    /**
+     * Record a value measured by the caller, which already knows the time
+     * @param valueNs the latency in ns
+     * @param nowNs current value of System.nanoTime()
+     */
+    public void record(long valueNs, long nowNs) {
+        recorder.get().record(bucketOf(valueNs), valueNs, nowNs);
+    }
+
+    /**
+     * @return the values recorded by all the threads in the last
+     * windowCount windows
+     */
+    public Snapshot getSnapshot() {
+        return getSnapshot(System.nanoTime());
+    }
+
+    protected Snapshot getSnapshot(long nowNs) {
+        long epoch = Math.floorDiv(nowNs, windowNs);
+        long[] counts = new long[BUCKETS];
+        long max = 0;
+        for (Recorder r : recorders) {
+            if (r.isOrphaned() && !r.hasWindowAfter(epoch - windowCount)) {
+                recorders.remove(r);
+                continue;
+            }
+            max = Math.max(max, r.merge(counts, epoch));
+        }
+        return new Snapshot(counts, max);
+    }
+
+    /**
+     * Forget all the recorded values
+     */
+    public void reset() {
+        for (Recorder r : recorders) {
+            if (r.isOrphaned()) {
+                recorders.remove(r);
+            } else {
+                r.reset();
+            }
+        }
+    }
+
+    /**
+     * @return the number of threads whose buckets are kept
+     */
+    protected int getRecorderCount() {
+        return recorders.size();
+    }
+
+    protected static int bucketOf(long valueNs) {
+        if (valueNs < SUB_BUCKETS)
+            return valueNs < 0 ? 0 : (int) valueNs;
+        if (valueNs > MAX_VALUE_NS)
+            valueNs = MAX_VALUE_NS;
+        int exp = 63 - Long.numberOfLeadingZeros(valueNs);
+        int shift = exp - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS)
+                + (int) ((valueNs >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /** @return the highest value counted in a bucket */
+    protected static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long low = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return low + (1L << shift) - 1;
+    }
+
+    /**
+     * The buckets of one thread. Only written by that thread.
+     */
+    private class Recorder {
+        /* weak, not to keep a dead thread around until its buckets are dropped */
+        private final WeakReference<Thread> owner =
+                new WeakReference<Thread>(Thread.currentThread());
+        private final int[][] counts = new int[windowCount][];
+        private final long[] epochs = new long[windowCount];
+        private final long[] maxima = new long[windowCount];
+        private int current;
+        private long currentEnd;
+        /* also makes the first record pick its window */
+        private volatile boolean resetRequested = true;
+
+        void record(int bucket, long valueNs, long nowNs) {
+            if (nowNs - currentEnd >= 0 || resetRequested)
+                rotate(nowNs);
+            counts[current][bucket]++;
+            if (valueNs > maxima[current])
+                maxima[current] = valueNs;
+        }
+
+        private void rotate(long nowNs) {
+            if (resetRequested) {
+                resetRequested = false;
+                Arrays.fill(epochs, Long.MIN_VALUE);
+                for (int[] c : counts) {
+                    if (c != null)
+                        Arrays.fill(c, 0);
+                }
+            }
+            long epoch = Math.floorDiv(nowNs, windowNs);
+            int slot = (int) Math.floorMod(epoch, (long) windowCount);
+            if (counts[slot] == null) {
+                counts[slot] = new int[BUCKETS];
+            } else if (epochs[slot] != epoch) {
+                /* mark the window stale while it is cleared */
+                epochs[slot] = Long.MIN_VALUE;
+                Arrays.fill(counts[slot], 0);
+            }
+            maxima[slot] = epochs[slot] == epoch ? maxima[slot] : 0;
+            epochs[slot] = epoch;
+            current = slot;
+            currentEnd = (epoch + 1) * windowNs;
+        }
+
+        long merge(long[] into, long epoch) {
+            long max = 0;
+            for (int slot = 0; slot < windowCount; slot++) {
+                int[] c = counts[slot];
+                long e = epochs[slot];
+                if (c == null || e > epoch || e <= epoch - windowCount)
+                    continue;
+                for (int i = 0; i < BUCKETS; i++) {
+                    into[i] += c[i];
+                }
+                max = Math.max(max, maxima[slot]);
+            }
+            return max;
+        }
+
+        /**
+         * @return true if the thread died, so its buckets no longer change
+         */
+        boolean isOrphaned() {
+            Thread t = owner.get();
+            return t == null || !t.isAlive();
+        }
+
+        /**
+         * @return true if one of the windows is after the given epoch
+         */
+        boolean hasWindowAfter(long epoch) {
+            for (int slot = 0; slot < windowCount; slot++) {
+                if (counts[slot] != null && epochs[slot] > epoch)
+                    return true;
+            }
+            return false;
+        }
+
+        void reset() {
+            /* only the recording thread writes the buckets */
+            resetRequested = true;
+            Arrays.fill(epochs, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Merged counts of a histogram
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long max;
+        private final double mean;
+
+        protected Snapshot(long[] counts, long max) {
+            this.counts = counts;
+            long n = 0;
+            double sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    n += counts[i];
+                    sum += (double) counts[i] * highestValueOf(i);
+                }
+            }
+            this.count = n;
+            this.max = max;
+            this.mean = n == 0 ? 0 : sum / n;
+        }
+
+        @JsonProperty("count")
+        public long getCount() {
+            return count;
+        }
+
+        @JsonProperty("max")
+        public long getMax() {
+            return max;
+        }
+
+        @JsonProperty("mean")
+        public long getMean() {
+            return (long) mean;
+        }
+
+        @JsonProperty("p50")
+        public long getP50() {
+            return getValueAtPercentile(50);
+        }
+
+        @JsonProperty("p99")
+        public long getP99() {
+            return getValueAtPercentile(99);
+        }
+
+        @JsonProperty("p999")
+        public long getP999() {
+            return getValueAtPercentile(99.9);
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the highest value of the bucket holding the percentile,
+         * never more than the largest value recorded, 0 if there are none
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0)
+                return 0;
+            long rank = (long) Math.ceil(percentile / 100 * count);
+            if (rank < 1)
+                rank = 1;
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(highestValueOf(i), max);
+            }
+            return max;
+        }
+    }
+}
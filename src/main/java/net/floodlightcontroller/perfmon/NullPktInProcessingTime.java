@@ -18,11 +18,13 @@ package net.floodlightcontroller.perfmon;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFType;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IOFMessageListener;
@@ -113,6 +115,33 @@ public class NullPktInProcessingTime
         
     }
 
+    @Override
+    public boolean isLatencyTracked() {
+        return false;
+    }
+
+    @Override
+    public void recordComponentTime(OFType type, int index, IOFMessageListener listener,
+                                    long procTimeNs, long nowNs) {
+
+    }
+
+    @Override
+    public void recordMessageTime(IOFSwitch sw, OFMessage m, FloodlightContext cntx,
+                                  long procTimeNs, long nowNs) {
+
+    }
+
+    @Override
+    public Map<OFType, LatencyHistogram> getMessageHistograms() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public Map<OFType, Map<String, LatencyHistogram>> getListenerHistograms() {
+        return Collections.emptyMap();
+    }
+
     @Override
     public void setEnabled(boolean enabled) {
     
@@ -16,6 +16,12 @@
 
 package net.floodlightcontroller.perfmon;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.projectfloodlight.openflow.protocol.OFType;
 import org.restlet.data.Status;
 import org.restlet.resource.Get;
 import org.restlet.resource.ServerResource;
@@ -24,19 +30,23 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * Return the performance monitoring data for the get rest api call
+ * Return the performance monitoring data for the get rest api call, or
+ * the latency histograms for /data/latency/json
  * @author subrata
  */
 public class PerfMonDataResource extends ServerResource {
     protected static Logger logger = LoggerFactory.getLogger(PerfMonDataResource.class);  
     
     @Get("json")
-    public CumulativeTimeBucket handleApiQuery() {        
+    public Object handleApiQuery() {        
         IPktInProcessingTimeService pktinProcTime = 
             (IPktInProcessingTimeService)getContext().getAttributes().
                 get(IPktInProcessingTimeService.class.getCanonicalName());
         
         setStatus(Status.SUCCESS_OK, "OK");
+        if ("latency".equals(getRequestAttributes().get("data"))) {
+            return getLatencies(pktinProcTime);
+        }
         // If the user is requesting this they must think that it is enabled, 
         // so lets enable it to prevent from erroring out
         if (!pktinProcTime.isEnabled()){
@@ -52,4 +62,42 @@ public class PerfMonDataResource extends ServerResource {
         
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Latency percentiles (in ns) of the message types and listeners which
+     * processed messages during the period of the histograms. They are
+     * always on and do not need the performance monitor to be enabled.
+     */
+    private Map<String, Object> getLatencies(IPktInProcessingTimeService pktinProcTime) {
+        Map<String, Object> messages = new TreeMap<String, Object>();
+        long periodNs = 0;
+        for (Entry<OFType, LatencyHistogram> e : pktinProcTime.getMessageHistograms().entrySet()) {
+            periodNs = e.getValue().getPeriodNs();
+            LatencyHistogram.Snapshot snapshot = e.getValue().getSnapshot();
+            if (snapshot.getCount() > 0) {
+                messages.put(e.getKey().toString(), snapshot);
+            }
+        }
+
+        Map<String, Object> modules = new TreeMap<String, Object>();
+        for (Entry<OFType, Map<String, LatencyHistogram>> e : pktinProcTime.getListenerHistograms().entrySet()) {
+            Map<String, Object> listeners = new TreeMap<String, Object>();
+            for (Entry<String, LatencyHistogram> l : e.getValue().entrySet()) {
+                LatencyHistogram.Snapshot snapshot = l.getValue().getSnapshot();
+                if (snapshot.getCount() > 0) {
+                    listeners.put(l.getKey(), snapshot);
+                }
+            }
+            if (!listeners.isEmpty()) {
+                modules.put(e.getKey().toString(), listeners);
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("enabled", pktinProcTime.isLatencyTracked());
+        result.put("period-seconds", periodNs / 1000000000);
+        result.put("messages", messages);
+        result.put("modules", modules);
+        return result;
+    }
+}
@@ -20,10 +20,14 @@
 package net.floodlightcontroller.perfmon;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -86,7 +90,32 @@ public class PktInProcessingTime
     protected boolean isInited = false;
     // Maintains the time when the last packet was processed
     protected long lastPktTime_ns;
-    private CumulativeTimeBucket ctb = null;
+    private volatile CumulativeTimeBucket ctb = null;
+
+    /*
+     * Always-on latency histograms, per message type and per listener.
+     * The histograms of the listeners are cached by message type and
+     * position in the chain, so recording does not need a map lookup.
+     */
+    protected boolean histogramsEnabled = false;
+    protected long histogramWindowNs = 10L * 1000000000;
+    protected int histogramWindows = 6;
+    private final EnumMap<OFType, LatencyHistogram> messageHistograms =
+            new EnumMap<OFType, LatencyHistogram>(OFType.class);
+    private final Map<OFType, Map<String, LatencyHistogram>> listenerHistograms =
+            new ConcurrentHashMap<OFType, Map<String, LatencyHistogram>>();
+    private final ListenerLatency[][] listenerLatencies =
+            new ListenerLatency[OFType.values().length][];
+
+    private static class ListenerLatency {
+        final IOFMessageListener listener;
+        final LatencyHistogram histogram;
+
+        ListenerLatency(IOFMessageListener listener, LatencyHistogram histogram) {
+            this.listener = listener;
+            this.histogram = histogram;
+        }
+    }
 
     
     /***
@@ -96,6 +125,10 @@ public class PktInProcessingTime
     protected static final int ONE_BUCKET_DURATION_SECONDS = 10;// seconds
     protected static final long ONE_BUCKET_DURATION_NANOSECONDS  =
                                 ONE_BUCKET_DURATION_SECONDS * 1000000000;
+
+    protected static final String HISTOGRAMS_STR = "latencyHistograms";
+    protected static final String HISTOGRAM_WINDOW_STR = "latencyWindowSeconds";
+    protected static final String HISTOGRAM_WINDOWS_STR = "latencyWindows";
     
     @Override
     public void bootstrap(List<IOFMessageListener> listeners) {
@@ -110,7 +143,8 @@ public class PktInProcessingTime
     @Override
     public void setEnabled(boolean enabled) {
     	if(enabled){
-    		bootstrap(floodlightProvider.getListeners().get(OFType.PACKET_IN));
+    		List<IOFMessageListener> listeners = floodlightProvider.getListeners().get(OFType.PACKET_IN);
+    		bootstrap(listeners != null ? listeners : Collections.<IOFMessageListener>emptyList());
     	}
         this.isEnabled = enabled;
         logger.debug("Setting module to " + isEnabled);
@@ -148,16 +182,99 @@ public class PktInProcessingTime
     @Override
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx) {
         if (isEnabled()) {
-            long procTimeNs = System.nanoTime() - startTimePktNs;
-            ctb.updatePerPacketCounters(procTimeNs);
-            
-            if (ptWarningThresholdInNano > 0 && 
-                    procTimeNs > ptWarningThresholdInNano) {
-                logger.warn("Time to process packet-in exceeded threshold: {}", 
-                            procTimeNs/1000);
+            updatePerPacketCounters(System.nanoTime() - startTimePktNs);
+        }
+    }
+
+    @Override
+    public boolean isLatencyTracked() {
+        return histogramsEnabled || isEnabled;
+    }
+
+    @Override
+    public void recordComponentTime(OFType type, int index, IOFMessageListener listener,
+                                    long procTimeNs, long nowNs) {
+        if (histogramsEnabled) {
+            ListenerLatency[] latencies = listenerLatencies[type.ordinal()];
+            ListenerLatency l;
+            if (latencies == null || index >= latencies.length
+                    || (l = latencies[index]) == null || l.listener != listener) {
+                l = addListenerLatency(type, index, listener);
+            }
+            l.histogram.record(procTimeNs, nowNs);
+        }
+        if (isEnabled && type == OFType.PACKET_IN) {
+            CumulativeTimeBucket b = ctb;
+            if (b != null) {
+                b.updateOneComponent(index, listener, procTimeNs);
             }
         }
     }
+
+    @Override
+    public void recordMessageTime(IOFSwitch sw, OFMessage m, FloodlightContext cntx,
+                                  long procTimeNs, long nowNs) {
+        if (histogramsEnabled) {
+            messageHistograms.get(m.getType()).record(procTimeNs, nowNs);
+        }
+        if (isEnabled && m.getType() == OFType.PACKET_IN) {
+            updatePerPacketCounters(procTimeNs);
+        }
+    }
+
+    private void updatePerPacketCounters(long procTimeNs) {
+        CumulativeTimeBucket b = ctb;
+        if (b == null)
+            return;
+        b.updatePerPacketCounters(procTimeNs);
+
+        if (ptWarningThresholdInNano > 0 && 
+                procTimeNs > ptWarningThresholdInNano) {
+            logger.warn("Time to process packet-in exceeded threshold: {}", 
+                        procTimeNs/1000);
+        }
+    }
+
+    /**
+     * Find or create the histogram of a listener and cache it at the
+     * listener's position in the chain of its message type
+     */
+    private synchronized ListenerLatency addListenerLatency(OFType type, int index,
+                                                            IOFMessageListener listener) {
+        Map<String, LatencyHistogram> histograms = listenerHistograms.get(type);
+        if (histograms == null) {
+            histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+            listenerHistograms.put(type, histograms);
+        }
+        // named after the class, like the components of the time buckets
+        String name = listener.getClass().getCanonicalName();
+        if (name == null) {
+            name = listener.getClass().getName();
+        }
+        LatencyHistogram h = histograms.get(name);
+        if (h == null) {
+            h = new LatencyHistogram(type + "/" + name, histogramWindowNs, histogramWindows);
+            histograms.put(name, h);
+        }
+
+        ListenerLatency[] latencies = listenerLatencies[type.ordinal()];
+        latencies = latencies == null ? new ListenerLatency[index + 1]
+                : Arrays.copyOf(latencies, Math.max(latencies.length, index + 1));
+        ListenerLatency l = new ListenerLatency(listener, h);
+        latencies[index] = l;
+        listenerLatencies[type.ordinal()] = latencies;
+        return l;
+    }
+
+    @Override
+    public Map<OFType, LatencyHistogram> getMessageHistograms() {
+        return Collections.unmodifiableMap(messageHistograms);
+    }
+
+    @Override
+    public Map<OFType, Map<String, LatencyHistogram>> getListenerHistograms() {
+        return Collections.unmodifiableMap(listenerHistograms);
+    }
     
     // IFloodlightModule methods
     
@@ -196,6 +313,32 @@ public class PktInProcessingTime
     	floodlightProvider = context
                 .getServiceImpl(IFloodlightProviderService.class);
         restApi = context.getServiceImpl(IRestApiService.class);
+
+        Map<String, String> config = context.getConfigParams(this);
+        histogramsEnabled = true;
+        if (config.containsKey(HISTOGRAMS_STR)) {
+            histogramsEnabled = Boolean.parseBoolean(config.get(HISTOGRAMS_STR).trim());
+        }
+        try {
+            if (config.containsKey(HISTOGRAM_WINDOW_STR)) {
+                histogramWindowNs = Integer.parseInt(config.get(HISTOGRAM_WINDOW_STR).trim()) * 1000000000L;
+            }
+            if (config.containsKey(HISTOGRAM_WINDOWS_STR)) {
+                histogramWindows = Integer.parseInt(config.get(HISTOGRAM_WINDOWS_STR).trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new FloodlightModuleException("Invalid latency histogram window: " + e.getMessage());
+        }
+        if (histogramWindowNs <= 0 || histogramWindows <= 0) {
+            throw new FloodlightModuleException("Latency histogram windows must be positive");
+        }
+        for (OFType type : OFType.values()) {
+            messageHistograms.put(type, new LatencyHistogram(type.toString(),
+                    histogramWindowNs, histogramWindows));
+        }
+        logger.info("Latency histograms {}, over the last {}x{}s", new Object[] {
+                histogramsEnabled ? "enabled" : "disabled", histogramWindows,
+                histogramWindowNs / 1000000000 });
     }
     
     @Override
@@ -97,6 +97,8 @@ public abstract class ForwardingBase implements IOFMessageListener {
 
     protected static boolean REMOVE_FLOWS_ON_LINK_OR_PORT_DOWN = true;
 
+    protected static boolean PICK_LEAST_LOADED_PATH = false;
+
     protected IFloodlightProviderService floodlightProviderService;
     protected IOFSwitchService switchService;
     protected IDeviceService deviceManagerService;
@@ -127,6 +127,19 @@ public interface IRoutingService extends IFloodlightService {
      */
     public Path getPath(DatapathId src, OFPort srcPort, DatapathId dst, OFPort dstPort);
 
+    /**
+     * Provides the least loaded of the paths {@link #getPathsFast(DatapathId, DatapathId)}
+     * returns, between srcPort on src and dstPort on dst: the one whose busiest
+     * port has the lowest utilization, as last sampled when routing is congestion
+     * aware. Without utilization samples, this is {@link #getPath(DatapathId, OFPort, DatapathId, OFPort)}.
+     * @param src source switch
+     * @param srcPort source port on source switch
+     * @param dst destination switch
+     * @param dstPort destination port on destination switch
+     * @return the least loaded path, of the lowest cost among those as loaded
+     */
+    public Path getLeastLoadedPath(DatapathId src, OFPort srcPort, DatapathId dst, OFPort dstPort);
+
     /**
      * Return all possible paths up to quantity of the globally configured max.
      * @param src source switch
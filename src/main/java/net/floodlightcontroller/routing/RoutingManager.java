@@ -103,6 +103,11 @@ public class RoutingManager implements IFloodlightModule, IRoutingService {
         return tm.getCurrentTopologyInstance().getPath(src, srcPort, dst, dstPort);
     }
 
+    @Override
+    public Path getLeastLoadedPath(DatapathId src, OFPort srcPort, DatapathId dst, OFPort dstPort) {
+        return tm.getCurrentTopologyInstance().getLeastLoadedPath(src, srcPort, dst, dstPort);
+    }
+
     @Override
     public List<Path> getPathsFast(DatapathId src, DatapathId dst) {
         return tm.getCurrentTopologyInstance().getPathsFast(src, dst, tm.getMaxPathsToCompute());
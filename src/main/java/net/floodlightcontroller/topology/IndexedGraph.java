@@ -0,0 +1,348 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+import net.floodlightcontroller.routing.BroadcastTree;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+/**
+ * The links of a topology instance compiled into int-indexed arrays, to run
+ * destination rooted dijkstra on.
+ *
+ * Switches are numbered in DPID order. The links towards switch v, i.e.
+ * the ones its shortest path tree can use to reach it, are edges
+ * edgeStart[v] to edgeStart[v + 1] - 1 (compressed sparse rows), each with
+ * the switch it comes from, the link and the port of v it is attached to.
+ * They are in Link order, so that ties between parallel links are broken
+ * the same way whatever the order of the sets they come from.
+ * The graph is immutable; dijkstra runs in a {@link Search}, which holds
+ * the arrays of one thread's runs so that a run allocates nothing.
+ */
+class IndexedGraph {
+    private final DatapathId[] nodes;
+    private final Map<DatapathId, Integer> nodeIndex;
+    /* switches with at least one link, the nodes of a BroadcastTree */
+    private final boolean[] hasLinks;
+
+    private final int[] edgeStart;
+    private final int[] edgeFrom;
+    private final Link[] edgeLink;
+    private final int[] edgePort;
+    private final Map<NodePortTuple, Integer> portIndex;
+
+    /**
+     * @param switches the switches of the topology
+     * @param portsWithLinks the ports of each switch that have links
+     * @param links the links of each switch port; only the ones between two
+     * of the switches are part of the graph
+     */
+    IndexedGraph(Set<DatapathId> switches, Map<DatapathId, Set<OFPort>> portsWithLinks,
+            Map<NodePortTuple, Set<Link>> links) {
+        nodes = switches.toArray(new DatapathId[switches.size()]);
+        Arrays.sort(nodes);
+        nodeIndex = new HashMap<DatapathId, Integer>(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++) {
+            nodeIndex.put(nodes[i], i);
+        }
+        hasLinks = new boolean[nodes.length];
+        portIndex = new HashMap<NodePortTuple, Integer>();
+
+        /* collect the links towards each switch in the order of its ports */
+        int[] count = new int[nodes.length];
+        List<Set<Link>> towards = new ArrayList<Set<Link>>(nodes.length);
+        List<Map<Link, NodePortTuple>> attachedTo = new ArrayList<Map<Link, NodePortTuple>>(nodes.length);
+        for (int v = 0; v < nodes.length; v++) {
+            towards.add(new LinkedHashSet<Link>());
+            attachedTo.add(new HashMap<Link, NodePortTuple>());
+            Set<OFPort> ports = portsWithLinks.get(nodes[v]);
+            if (ports == null) continue;
+            for (OFPort p : ports) {
+                NodePortTuple npt = new NodePortTuple(nodes[v], p);
+                Set<Link> portLinks = links.get(npt);
+                if (portLinks == null) continue;
+                for (Link l : portLinks) {
+                    if (!nodeIndex.containsKey(l.getSrc()) || !nodeIndex.containsKey(l.getDst())) continue;
+                    hasLinks[v] = true;
+                    /* links leaving the switch are in the trees of the other end */
+                    if (l.getSrc().equals(nodes[v])) continue;
+                    if (towards.get(v).add(l)) {
+                        attachedTo.get(v).put(l, npt);
+                        if (!portIndex.containsKey(npt)) {
+                            portIndex.put(npt, portIndex.size());
+                        }
+                    }
+                }
+            }
+            count[v] = towards.get(v).size();
+        }
+
+        edgeStart = new int[nodes.length + 1];
+        for (int v = 0; v < nodes.length; v++) {
+            edgeStart[v + 1] = edgeStart[v] + count[v];
+        }
+        int edges = edgeStart[nodes.length];
+        edgeFrom = new int[edges];
+        edgeLink = new Link[edges];
+        edgePort = new int[edges];
+        for (int v = 0; v < nodes.length; v++) {
+            int e = edgeStart[v];
+            List<Link> sorted = new ArrayList<Link>(towards.get(v));
+            Collections.sort(sorted);
+            for (Link l : sorted) {
+                edgeFrom[e] = nodeIndex.get(l.getSrc());
+                edgeLink[e] = l;
+                edgePort[e] = portIndex.get(attachedTo.get(v).get(l));
+                e++;
+            }
+        }
+    }
+
+    int getNodeCount() {
+        return nodes.length;
+    }
+
+    int getEdgeCount() {
+        return edgeLink.length;
+    }
+
+    /**
+     * @return the index of the switch, -1 if it is not in the graph
+     */
+    int indexOf(DatapathId sw) {
+        Integer i = nodeIndex.get(sw);
+        return i == null ? -1 : i;
+    }
+
+    DatapathId getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * @param linkCost the cost of each link, 1 for the ones missing or if null
+     * @return the cost of each edge, for {@link Search#run}
+     */
+    int[] getEdgeCosts(Map<Link, Integer> linkCost) {
+        int[] costs = new int[edgeLink.length];
+        for (int e = 0; e < costs.length; e++) {
+            Integer c = linkCost == null ? null : linkCost.get(edgeLink[e]);
+            costs[e] = c == null ? 1 : c;
+        }
+        return costs;
+    }
+
+    Search newSearch() {
+        return new Search();
+    }
+
+    /**
+     * Runs dijkstra on the graph, possibly without some of its switches and
+     * ports, reusing its arrays from one run to the next. Not thread safe.
+     */
+    class Search {
+        private final int[] dist = new int[nodes.length];
+        private final int[] next = new int[nodes.length];
+        /* dist and next are only valid for the nodes reached in this run */
+        private final int[] reached = new int[nodes.length];
+        private final int[] settled = new int[nodes.length];
+        private int run;
+
+        private final int[] excludedNode = new int[nodes.length];
+        private final int[] excludedPort = new int[portIndex.size()];
+        private int exclusions = 1;
+
+        /* binary min-heap of node indexes on (dist, index), with the position of each node */
+        private final int[] heap = new int[nodes.length];
+        private final int[] heapPos = new int[nodes.length];
+        private int heapSize;
+
+        private int root = -1;
+
+        /**
+         * Put back the switches and ports excluded so far
+         */
+        void clearExclusions() {
+            exclusions++;
+        }
+
+        /**
+         * Do not use the switch, nor any link to or from it
+         */
+        void excludeNode(DatapathId sw) {
+            int v = indexOf(sw);
+            if (v >= 0) {
+                excludedNode[v] = exclusions;
+            }
+        }
+
+        /**
+         * Do not use the links attached to the port
+         */
+        void excludePort(NodePortTuple npt) {
+            Integer p = portIndex.get(npt);
+            if (p != null) {
+                excludedPort[p] = exclusions;
+            }
+        }
+
+        /**
+         * Compute the shortest paths from every switch to the root, as
+         * TopologyInstance did on maps: among paths of equal cost the ones
+         * through the switch with the lower DPID settled first are kept, and
+         * paths costing MAX_PATH_WEIGHT or more are not found.
+         * @param rootSw the destination of the paths
+         * @param costs the cost of each edge, see {@link IndexedGraph#getEdgeCosts}
+         */
+        void run(DatapathId rootSw, int[] costs) {
+            run++;
+            heapSize = 0;
+            root = indexOf(rootSw);
+            if (root < 0 || excludedNode[root] == exclusions) {
+                return;
+            }
+            reach(root, 0, -1);
+            while (heapSize > 0) {
+                int v = poll();
+                int d = dist[v];
+                if (d >= TopologyInstance.MAX_PATH_WEIGHT) break;
+                settled[v] = run;
+                for (int e = edgeStart[v]; e < edgeStart[v + 1]; e++) {
+                    int u = edgeFrom[e];
+                    if (settled[u] == run || excludedNode[u] == exclusions
+                            || excludedPort[edgePort[e]] == exclusions) continue;
+                    int nd = d + costs[e];
+                    if (reached[u] != run) {
+                        if (nd < TopologyInstance.MAX_PATH_WEIGHT) {
+                            reach(u, nd, e);
+                        }
+                    } else if (nd < dist[u]) {
+                        dist[u] = nd;
+                        next[u] = e;
+                        siftUp(heapPos[u]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the cost of the path from the switch to the root in the
+         * last run, MAX_PATH_WEIGHT if it cannot reach it
+         */
+        int getDistance(DatapathId sw) {
+            return getDistance(indexOf(sw));
+        }
+
+        int getDistance(int v) {
+            return v < 0 || reached[v] != run ? TopologyInstance.MAX_PATH_WEIGHT : dist[v];
+        }
+
+        /**
+         * @return the link from the switch towards the root in the last run,
+         * null for the root or a switch that cannot reach it
+         */
+        Link getNextLink(DatapathId sw) {
+            int v = indexOf(sw);
+            return v < 0 || reached[v] != run || next[v] < 0 ? null : edgeLink[next[v]];
+        }
+
+        /**
+         * @return the tree of the last run, as the map based dijkstra built it
+         */
+        BroadcastTree toBroadcastTree() {
+            HashMap<DatapathId, Link> links = new HashMap<DatapathId, Link>();
+            HashMap<DatapathId, Integer> costs = new HashMap<DatapathId, Integer>();
+            for (int v = 0; v < nodes.length; v++) {
+                if (!hasLinks[v]) continue;
+                boolean r = reached[v] == run;
+                links.put(nodes[v], r && next[v] >= 0 ? edgeLink[next[v]] : null);
+                costs.put(nodes[v], r ? dist[v] : TopologyInstance.MAX_PATH_WEIGHT);
+            }
+            if (root >= 0) {
+                costs.put(nodes[root], 0);
+            }
+            return new BroadcastTree(links, costs);
+        }
+
+        private void reach(int v, int d, int e) {
+            reached[v] = run;
+            dist[v] = d;
+            next[v] = e;
+            heap[heapSize] = v;
+            heapPos[v] = heapSize;
+            siftUp(heapSize++);
+        }
+
+        private int poll() {
+            int top = heap[0];
+            heapSize--;
+            if (heapSize > 0) {
+                heap[0] = heap[heapSize];
+                heapPos[heap[0]] = 0;
+                siftDown(0);
+            }
+            return top;
+        }
+
+        private boolean less(int a, int b) {
+            return dist[a] < dist[b] || (dist[a] == dist[b] && a < b);
+        }
+
+        private void siftUp(int i) {
+            int v = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                int p = heap[parent];
+                if (!less(v, p)) break;
+                heap[i] = p;
+                heapPos[p] = i;
+                i = parent;
+            }
+            heap[i] = v;
+            heapPos[v] = i;
+        }
+
+        private void siftDown(int i) {
+            int v = heap[i];
+            int half = heapSize >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int c = heap[child];
+                int right = child + 1;
+                if (right < heapSize && less(heap[right], c)) {
+                    child = right;
+                    c = heap[child];
+                }
+                if (!less(c, v)) break;
+                heap[i] = c;
+                heapPos[c] = i;
+                i = child;
+            }
+            heap[i] = v;
+            heapPos[v] = i;
+        }
+    }
+}
@@ -19,12 +19,15 @@ package net.floodlightcontroller.topology;
 import com.google.common.collect.ImmutableSet;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.linkdiscovery.Link;
 import net.floodlightcontroller.routing.BroadcastTree;
 import net.floodlightcontroller.routing.Path;
 import net.floodlightcontroller.routing.PathId;
+import net.floodlightcontroller.routing.IRoutingService.PATH_METRIC;
 import net.floodlightcontroller.statistics.SwitchPortBandwidth;
 import net.floodlightcontroller.util.ClusterDFS;
+import net.floodlightcontroller.util.LRUHashMap;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFPort;
@@ -35,6 +38,10 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 
 /**
@@ -50,6 +57,8 @@ public class TopologyInstance {
     public static final int MAX_LINK_WEIGHT = 10000;
     public static final int MAX_PATH_WEIGHT = Integer.MAX_VALUE - MAX_LINK_WEIGHT - 1;
     public static final int PATH_CACHE_SIZE = 1000;
+    /* Percent of utilization of a port that costs as much as a hop */
+    public static final int UTILIZATION_PER_HOP = 10;
 
     private static final Logger log = LoggerFactory.getLogger(TopologyInstance.class);
 
@@ -81,6 +90,28 @@ public class TopologyInstance {
     private Map<DatapathId, Set<NodePortTuple>> portsBroadcastPerArchipelago; /* broadcast ports in each archipelago ID */
     private Map<PathId, List<Path>>             pathcache; /* contains computed paths ordered best to worst */
 
+    /* Paths computed on first request into a bounded pathcache rather than for every pair in compute() */
+    private final boolean                       lazyPaths;
+
+    /* Computes broadcast trees and paths in parallel if not null */
+    private final ForkJoinPool                  pool;
+
+    /* Number of switch pairs below which a PathTask computes paths rather than splitting */
+    private static final int                    PATH_TASK_PAIRS = 8;
+
+    /* The links compiled for dijkstra, and the cost of each link and edge; fixed for the life of the instance */
+    private final IndexedGraph                  graph;
+    private final Map<Link, Integer>            linkCost;
+    private final int[]                         edgeCosts;
+
+    /* What the paths in the pathcache depend on, to reuse them in the next instance; null if not reused */
+    private final Map<PathId, PathDeps>         pathDeps;
+    private final PATH_METRIC                   pathMetric;
+    private final int                           maxPaths;
+
+    /* The utilization of each port when the instance was created, which link costs are computed on */
+    private final Map<NodePortTuple, Integer>   portUtilization;
+
     protected TopologyInstance(Map<DatapathId, Set<OFPort>> portsWithLinks,
             Set<NodePortTuple> portsBlocked,
             Map<NodePortTuple, Set<Link>> linksNonBcastNonTunnel,
@@ -130,7 +161,32 @@ public class TopologyInstance {
         this.portsBroadcastAll= new HashSet<NodePortTuple>();
         this.portsBroadcastPerSwitch = new HashMap<DatapathId,Set<OFPort>>();
 
-        this.pathcache = new HashMap<PathId, List<Path>>();
+        this.lazyPaths = TopologyManager.isLazyPathComputationInternal();
+        this.pool = TopologyManager.getPathComputationPoolInternal();
+        if (lazyPaths) {
+            /* written to by whichever thread asks for paths first */
+            this.pathcache = Collections.synchronizedMap(
+                    new LRUHashMap<PathId, List<Path>>(TopologyManager.getPathCacheSizeInternal()));
+        } else {
+            this.pathcache = new HashMap<PathId, List<Path>>();
+        }
+        if (!TopologyManager.isIncrementalUpdatesInternal()) {
+            this.pathDeps = null;
+        } else if (lazyPaths) {
+            this.pathDeps = Collections.synchronizedMap(
+                    new LRUHashMap<PathId, PathDeps>(TopologyManager.getPathCacheSizeInternal()));
+        } else {
+            /* written to by the threads of the pool */
+            this.pathDeps = new ConcurrentHashMap<PathId, PathDeps>();
+        }
+        this.pathMetric = TopologyManager.getPathMetricInternal();
+        this.maxPaths = TopologyManager.getMaxPathsToComputeInternal();
+        this.portUtilization = TopologyManager.getPortUtilizationInternal();
+
+        /* computed once, for every run of dijkstra on whichever thread asks for paths */
+        this.graph = new IndexedGraph(this.switches, this.portsWithLinks, this.links);
+        this.linkCost = initLinkCostMap();
+        this.edgeCosts = graph.getEdgeCosts(linkCost);
 
         this.portsBroadcastPerArchipelago = new HashMap<DatapathId, Set<NodePortTuple>>();
 
@@ -138,6 +194,15 @@ public class TopologyInstance {
     }
 
     protected void compute() {
+        compute(null);
+    }
+
+    /**
+     * Computes the instance, reusing the paths of the previous instance of
+     * the topology that the links changed since do not affect.
+     * @param previous the current instance, null to compute every path
+     */
+    protected void compute(TopologyInstance previous) {
         /*
          * Step 1: Compute clusters ignoring ports with > 2 links and 
          * blocked links.
@@ -164,8 +229,22 @@ public class TopologyInstance {
          * within each archipelago and compute multiple paths. The shortest
          * path located (i.e. first run of dijkstra's algorithm) will be used 
          * as the broadcast tree for the archipelago.
+         * 
+         * When computing paths lazily, only compute the broadcast tree of each
+         * archipelago here. Paths are computed by Yens algorithm when first 
+         * requested, see getPaths().
+         *
+         * When the clusters and archipelagos are the same as in the previous
+         * instance, only compute the paths the changed links may affect, 
+         * see updatePaths().
          */
-        computeOrderedPaths();
+        if (updatePaths(previous)) {
+            addToCounter(TopologyManager.ctrIncrementalUpdate, 1);
+        } else if (lazyPaths) {
+            computeBroadcastTrees();
+        } else {
+            computeOrderedPaths();
+        }
 
         /*
          * Step 5: Determine the broadcast ports for each archipelago. These are
@@ -441,60 +520,6 @@ public class TopologyInstance {
         return portsBroadcastAll.contains(npt);
     }
 
-    private class NodeDist implements Comparable<NodeDist> {
-        private final DatapathId node;
-        public DatapathId getNode() {
-            return node;
-        }
-
-        private final int dist;
-        public int getDist() {
-            return dist;
-        }
-
-        public NodeDist(DatapathId node, int dist) {
-            this.node = node;
-            this.dist = dist;
-        }
-
-        @Override
-        public int compareTo(NodeDist o) {
-            if (o.dist == this.dist) {
-                return (int)(this.node.getLong() - o.node.getLong());
-            }
-            return this.dist - o.dist;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            NodeDist other = (NodeDist) obj;
-            if (!getOuterType().equals(other.getOuterType()))
-                return false;
-            if (node == null) {
-                if (other.node != null)
-                    return false;
-            } else if (!node.equals(other.node))
-                return false;
-            return true;
-        }
-
-        @Override
-        public int hashCode() {
-            assert false : "hashCode not designed";
-        return 42;
-        }
-
-        private TopologyInstance getOuterType() {
-            return TopologyInstance.this;
-        }
-    }
-
     protected void identifyArchipelagos() {
         // Iterate through each external link and create/merge archipelagos based on the
         // islands that each link is connected to
@@ -562,85 +587,6 @@ public class TopologyInstance {
     }
     
 
-    /*
-     * Dijkstra that calculates destination rooted trees over the entire topology.
-     */
-    private BroadcastTree dijkstra(Map<DatapathId, Set<Link>> links, DatapathId root,
-            Map<Link, Integer> linkCost,
-            boolean isDstRooted) {
-        HashMap<DatapathId, Link> nexthoplinks = new HashMap<DatapathId, Link>();
-        HashMap<DatapathId, Integer> cost = new HashMap<DatapathId, Integer>();
-        int w;
-
-        for (DatapathId node : links.keySet()) {
-            nexthoplinks.put(node, null);
-            cost.put(node, MAX_PATH_WEIGHT);
-            //log.debug("Added max cost to {}", node);
-        }
-
-        HashMap<DatapathId, Boolean> seen = new HashMap<DatapathId, Boolean>();
-        PriorityQueue<NodeDist> nodeq = new PriorityQueue<NodeDist>();
-        nodeq.add(new NodeDist(root, 0));
-        cost.put(root, 0);
-
-        //log.debug("{}", links);
-
-        while (nodeq.peek() != null) {
-            NodeDist n = nodeq.poll();
-            DatapathId cnode = n.getNode();
-            int cdist = n.getDist();
-
-            if (cdist >= MAX_PATH_WEIGHT) break;
-            if (seen.containsKey(cnode)) continue;
-            seen.put(cnode, true);
-
-            //log.debug("cnode {} and links {}", cnode, links.get(cnode));
-            if (links.get(cnode) == null) continue;
-            for (Link link : links.get(cnode)) {
-                DatapathId neighbor;
-
-                if (isDstRooted == true) {
-                    neighbor = link.getSrc();
-                } else {
-                    neighbor = link.getDst();
-                }
-
-                // links directed toward cnode will result in this condition
-                if (neighbor.equals(cnode)) continue;
-
-                if (seen.containsKey(neighbor)) continue;
-
-                if (linkCost == null || linkCost.get(link) == null) {
-                    w = 1;
-                } else {
-                    w = linkCost.get(link);
-                }
-
-                int ndist = cdist + w; // the weight of the link, always 1 in current version of floodlight.
-                log.debug("Neighbor: {}", neighbor);
-                log.debug("Cost: {}", cost);
-                log.debug("Neighbor cost: {}", cost.get(neighbor));
-
-                if (ndist < cost.get(neighbor)) {
-                    cost.put(neighbor, ndist);
-                    nexthoplinks.put(neighbor, link);
-
-                    NodeDist ndTemp = new NodeDist(neighbor, ndist);
-                    // Remove an object that's already in there.
-                    // Note that the comparison is based on only the node id,
-                    // and not node id and distance.
-                    nodeq.remove(ndTemp);
-                    // add the current object to the queue.
-                    nodeq.add(ndTemp);
-                }
-            }
-        }
-
-        BroadcastTree ret = new BroadcastTree(nexthoplinks, cost);
-
-        return ret;
-    }
-
     /*
      * Creates a map of links and the cost associated with each link
      */
@@ -648,7 +594,7 @@ public class TopologyInstance {
         Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
         int tunnel_weight = portsWithLinks.size() + 1;
 
-        switch (TopologyManager.getPathMetricInternal()){
+        switch (pathMetric){
         case HOPCOUNT_AVOID_TUNNELS:
             log.debug("Using hop count with tunnel bias for metrics");
             for (NodePortTuple npt : portsTunnel) {
@@ -730,27 +676,21 @@ public class TopologyInstance {
             return linkCost;
             
         case UTILIZATION:
-            TopologyManager.statisticsService.collectStatistics(true);
             log.debug("Using utilization for path metrics");
+            /* 
+             * A link costs a hop plus one per UTILIZATION_PER_HOP percent of
+             * utilization of the port it leaves from, as sampled by 
+             * TopologyManager, so that paths only change when the 
+             * utilization moved past its hysteresis.
+             */
             for (NodePortTuple npt : links.keySet()) {
                 if (links.get(npt) == null) continue;
-                SwitchPortBandwidth spb = TopologyManager.statisticsService
-                        .getBandwidthConsumption(npt.getNodeId(), npt.getPortId());
-                long bpsTx = 0;
-                if (spb != null) {
-                    bpsTx = spb.getBitsPerSecondTx().getValue();
-                }
                 for (Link link : links.get(npt)) {
                     if (link == null) {
                         continue;
                     }
-
-                    if ((bpsTx / 10^6) / 8 > 1) {
-                        int cost = (int) (bpsTx / 10^6) / 8;
-                        linkCost.put(link, cost);
-                    } else {
-                        linkCost.put(link, MAX_LINK_WEIGHT);
-                    }
+                    Integer u = portUtilization.get(new NodePortTuple(link.getSrc(), link.getSrcPort()));
+                    linkCost.put(link, 1 + (u == null ? 0 : u / UTILIZATION_PER_HOP));
                 }
             }
             return linkCost;
@@ -777,6 +717,7 @@ public class TopologyInstance {
         List<Path> paths;
         PathId pathId;
         pathcache.clear();
+        long start = System.nanoTime();
 
         for (Archipelago a : archipelagos) { /* for each archipelago */
             Set<DatapathId> srcSws = a.getSwitches();
@@ -784,30 +725,425 @@ public class TopologyInstance {
             log.debug("SRC {}", srcSws);
             log.debug("DST {}", dstSws);
 
+            if (pool != null) {
+                computeOrderedPathsParallel(a, new ArrayList<DatapathId>(srcSws));
+                continue;
+            }
+
             for (DatapathId src : srcSws) { /* permute all member switches */
                 for (DatapathId dst : dstSws) {
                     log.debug("Calling Yens {} {}", src, dst);
-                    paths = yens(src, dst, TopologyManager.getMaxPathsToComputeInternal(),
-                            getArchipelago(src), getArchipelago(dst));
+                    paths = computePaths(src, dst, a, true);
                     pathId = new PathId(src, dst);
                     pathcache.put(pathId, paths);
                     log.debug("Adding paths {}", paths);
                 }
             }
         }
+        addToCounter(TopologyManager.ctrPathComputeTime, (System.nanoTime() - start) / 1000);
+    }
+
+    /*
+     * Same as the loop of computeOrderedPaths() for one archipelago, with the
+     * pairs of switches split among the threads of the pool. The pathcache
+     * and the broadcast tree end up the same as computing them in sequence:
+     * paths are added in the same order, and the tree is the one of the last
+     * pair, i.e. rooted at the last switch.
+     */
+    private void computeOrderedPathsParallel(Archipelago a, List<DatapathId> sws) {
+        List<PathId> pairs = new ArrayList<PathId>(sws.size() * sws.size());
+        for (DatapathId src : sws) {
+            for (DatapathId dst : sws) {
+                pairs.add(new PathId(src, dst));
+            }
+        }
+        List<List<Path>> paths = pool.invoke(new PathTask(a, pairs, 0, pairs.size()));
+
+        for (int i = 0; i < pairs.size(); i++) {
+            pathcache.put(pairs.get(i), paths.get(i));
+        }
+        if (TopologyManager.getMaxPathsToComputeInternal() >= 1 && !sws.isEmpty()) {
+            a.setBroadcastTree(broadcastTree(sws.get(sws.size() - 1)));
+        }
+    }
+
+    /*
+     * Runs Yen's algorithm for the pairs of switches lo to hi of an
+     * archipelago, and returns the paths of each pair in order.
+     */
+    private class PathTask extends RecursiveTask<List<List<Path>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Archipelago a;
+        private final List<PathId> pairs;
+        private final int lo;
+        private final int hi;
+
+        PathTask(Archipelago a, List<PathId> pairs, int lo, int hi) {
+            this.a = a;
+            this.pairs = pairs;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected List<List<Path>> compute() {
+            if (hi - lo <= PATH_TASK_PAIRS) {
+                List<List<Path>> paths = new ArrayList<List<Path>>(hi - lo);
+                for (int i = lo; i < hi; i++) {
+                    paths.add(computePaths(pairs.get(i).getSrc(), pairs.get(i).getDst(), a, false));
+                }
+                return paths;
+            }
+            int mid = (lo + hi) >>> 1;
+            PathTask right = new PathTask(a, pairs, mid, hi);
+            right.fork();
+            List<List<Path>> paths = new PathTask(a, pairs, lo, mid).compute();
+            paths.addAll(right.join());
+            return paths;
+        }
+    }
+
+    /*
+     * Calculates the broadcast tree of each archipelago, rooted at the
+     * archipelago ID switch, without computing any path.
+     */
+    private void computeBroadcastTrees() {
+        if (pool != null) {
+            List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+            for (Archipelago a : archipelagos) {
+                tasks.add(pool.submit(() -> a.setBroadcastTree(broadcastTree(a.getId()))));
+            }
+            for (ForkJoinTask<?> t : tasks) {
+                t.join();
+            }
+            return;
+        }
+
+        for (Archipelago a : archipelagos) {
+            a.setBroadcastTree(broadcastTree(a.getId()));
+        }
+    }
+
+    private BroadcastTree broadcastTree(DatapathId root) {
+        IndexedGraph.Search search = graph.newSearch();
+        search.run(root, edgeCosts);
+        return search.toBroadcastTree();
+    }
+
+    /*
+     * Computes the paths from src to dst to put in the pathcache, keeping
+     * what they depend on if they are to be reused by the next instance.
+     */
+    private List<Path> computePaths(DatapathId src, DatapathId dst, Archipelago a, boolean setBroadcastTree) {
+        PathDeps deps = pathDeps == null ? null : new PathDeps();
+        List<Path> paths = yens(src, dst, TopologyManager.getMaxPathsToComputeInternal(), a, a,
+                setBroadcastTree, deps);
+        if (deps != null) {
+            deps.seal();
+            pathDeps.put(new PathId(src, dst), deps);
+        }
+        return paths;
+    }
+
+    /*
+     * Reuses the paths of the previous instance that the links changed since
+     * cannot affect, computes the others (right away, or on first request
+     * when computing paths lazily), and the broadcast trees as compute()
+     * does. Returns false, having done nothing, when the paths cannot be
+     * reused: the previous instance did not keep what they depend on, the
+     * path settings or the switches changed, link costs come from the speed
+     * switches report for their ports rather than from the links or the
+     * utilization sampled by TopologyManager, or the clusters or
+     * archipelagos changed.
+     *
+     * The paths of a pair of switches are reused when none of the links on
+     * the ports of the paths its run of Yen's algorithm considered changed,
+     * and none of the links added or made cheaper can give one of the
+     * switches it ran dijkstra from a path to dst at most as costly as the
+     * one it found. Every run of dijkstra then finds the same path, and
+     * Yen's algorithm the same paths.
+     */
+    private boolean updatePaths(TopologyInstance previous) {
+        if (previous == null || pathDeps == null || previous.pathDeps == null
+                || lazyPaths != previous.lazyPaths
+                || pathMetric != previous.pathMetric || maxPaths != previous.maxPaths
+                || pathMetric == PATH_METRIC.LINK_SPEED
+                || !switches.equals(previous.switches)
+                || !getClusterSwitches().equals(previous.getClusterSwitches())
+                || !getArchipelagoSwitches().equals(previous.getArchipelagoSwitches())) {
+            return false;
+        }
+
+        long start = System.nanoTime();
+        LinkChanges changes = new LinkChanges(previous);
+        int reused = 0;
+
+        if (lazyPaths) {
+            Map<PathId, List<Path>> previousPaths;
+            synchronized (previous.pathcache) {
+                previousPaths = new LinkedHashMap<PathId, List<Path>>(previous.pathcache);
+            }
+            for (Entry<PathId, List<Path>> e : previousPaths.entrySet()) {
+                PathDeps deps = previous.pathDeps.get(e.getKey());
+                if (deps != null && !changes.affect(e.getKey(), deps)) {
+                    pathcache.put(e.getKey(), e.getValue());
+                    pathDeps.put(e.getKey(), deps);
+                    reused++;
+                }
+            }
+            computeBroadcastTrees();
+        } else {
+            for (Archipelago a : archipelagos) {
+                List<DatapathId> sws = new ArrayList<DatapathId>(a.getSwitches());
+                List<PathId> pairs = new ArrayList<PathId>();
+                for (DatapathId src : sws) {
+                    for (DatapathId dst : sws) {
+                        PathId id = new PathId(src, dst);
+                        List<Path> paths = previous.pathcache.get(id);
+                        PathDeps deps = previous.pathDeps.get(id);
+                        if (paths != null && deps != null && !changes.affect(id, deps)) {
+                            pathcache.put(id, paths);
+                            pathDeps.put(id, deps);
+                            reused++;
+                        } else {
+                            pairs.add(id);
+                        }
+                    }
+                }
+
+                if (pool != null) {
+                    List<List<Path>> paths = pool.invoke(new PathTask(a, pairs, 0, pairs.size()));
+                    for (int i = 0; i < pairs.size(); i++) {
+                        pathcache.put(pairs.get(i), paths.get(i));
+                    }
+                } else {
+                    for (PathId id : pairs) {
+                        pathcache.put(id, computePaths(id.getSrc(), id.getDst(), a, false));
+                    }
+                }
+
+                /* the tree computeOrderedPaths() ends up with */
+                if (TopologyManager.getMaxPathsToComputeInternal() >= 1 && !sws.isEmpty()) {
+                    a.setBroadcastTree(broadcastTree(sws.get(sws.size() - 1)));
+                }
+            }
+        }
+
+        addToCounter(TopologyManager.ctrPathsReused, reused);
+        addToCounter(TopologyManager.ctrPathComputeTime, (System.nanoTime() - start) / 1000);
+        log.debug("Reused the paths of {} switch pairs, {} links changed", reused, changes.ports.size() / 2);
+        return true;
+    }
+
+    private Set<Set<DatapathId>> getClusterSwitches() {
+        Set<Set<DatapathId>> s = new HashSet<Set<DatapathId>>();
+        for (Cluster c : clusters) {
+            s.add(new HashSet<DatapathId>(c.getNodes()));
+        }
+        return s;
+    }
+
+    private Set<Set<DatapathId>> getArchipelagoSwitches() {
+        Set<Set<DatapathId>> s = new HashSet<Set<DatapathId>>();
+        for (Archipelago a : archipelagos) {
+            s.add(a.getSwitches());
+        }
+        return s;
+    }
+
+    private static int getLinkCost(Map<Link, Integer> linkCost, Link l) {
+        Integer c = linkCost.get(l);
+        return c == null ? 1 : c;
+    }
+
+    /*
+     * What a run of Yen's algorithm depends on: the ports of the paths it
+     * considered, the links of which give them their costs, and the switches
+     * it ran dijkstra from, i.e. src and the spur switches, with the cost of
+     * the path found, MAX_PATH_WEIGHT if there was none. Kept in arrays once
+     * sealed, there is one per pair of switches.
+     */
+    private static class PathDeps {
+        private Set<NodePortTuple> portSet = new HashSet<NodePortTuple>();
+        private List<DatapathId> spurList = new ArrayList<DatapathId>();
+        private List<Integer> spurCostList = new ArrayList<Integer>();
+
+        private NodePortTuple[] ports;
+        private DatapathId[] spurs;
+        private int[] spurCosts;
+
+        void addPath(Path p) {
+            if (p != null) {
+                portSet.addAll(p.getPath());
+            }
+        }
+
+        void addSpur(DatapathId sw, int cost) {
+            spurList.add(sw);
+            spurCostList.add(cost);
+        }
+
+        void seal() {
+            ports = portSet.toArray(new NodePortTuple[portSet.size()]);
+            spurs = spurList.toArray(new DatapathId[spurList.size()]);
+            spurCosts = new int[spurCostList.size()];
+            for (int i = 0; i < spurCosts.length; i++) {
+                spurCosts[i] = spurCostList.get(i);
+            }
+            portSet = null;
+            spurList = null;
+            spurCostList = null;
+        }
+    }
+
+    /*
+     * The links added, removed or changed since the previous instance.
+     */
+    private class LinkChanges {
+        /* the ports of the links that changed */
+        private final Set<NodePortTuple> ports = new HashSet<NodePortTuple>();
+        /* the links added or made cheaper, which paths may now go through */
+        private final List<Link> cheaper = new ArrayList<Link>();
+        private final int[] cheaperCosts;
+        /* the cost from every switch to the src of each of them */
+        private final int[][] toCheaper;
+        /* the cost from the dst of each of them to a switch, computed when needed */
+        private final Map<DatapathId, int[]> fromCheaper = new HashMap<DatapathId, int[]>();
+        private final IndexedGraph.Search search = graph.newSearch();
+
+        LinkChanges(TopologyInstance previous) {
+            Map<Link, Integer> previousLinkCost = previous.linkCost;
+            Map<Link, Link> previousLinks = new HashMap<Link, Link>();
+            for (Set<Link> ls : previous.links.values()) {
+                for (Link l : ls) {
+                    previousLinks.put(l, l);
+                }
+            }
+            Set<Link> currentLinks = new HashSet<Link>();
+            for (Set<Link> ls : links.values()) {
+                currentLinks.addAll(ls);
+            }
+
+            for (Link l : currentLinks) {
+                Link old = previousLinks.get(l);
+                int cost = getLinkCost(linkCost, l);
+                /* Link.equals() leaves the latency out */
+                if (old != null && cost == getLinkCost(previousLinkCost, old)
+                        && Objects.equals(l.getLatency(), old.getLatency())) continue;
+                addPorts(l);
+                if (old == null || cost < getLinkCost(previousLinkCost, old)) {
+                    cheaper.add(l);
+                }
+            }
+            for (Link l : previousLinks.keySet()) {
+                if (!currentLinks.contains(l)) {
+                    addPorts(l);
+                }
+            }
+
+            /* removeShortestPath() costs a path with the first link of each of its ports */
+            for (Entry<NodePortTuple, Set<Link>> e : links.entrySet()) {
+                Set<Link> ls = previous.links.get(e.getKey());
+                if (ls == null || ls.isEmpty() || e.getValue().isEmpty()
+                        || !ls.iterator().next().equals(e.getValue().iterator().next())) {
+                    ports.add(e.getKey());
+                }
+            }
+
+            cheaperCosts = new int[cheaper.size()];
+            toCheaper = new int[cheaper.size()][];
+            for (int i = 0; i < cheaper.size(); i++) {
+                cheaperCosts[i] = getLinkCost(linkCost, cheaper.get(i));
+                toCheaper[i] = new int[graph.getNodeCount()];
+                search.run(cheaper.get(i).getSrc(), edgeCosts);
+                for (int v = 0; v < toCheaper[i].length; v++) {
+                    toCheaper[i][v] = search.getDistance(v);
+                }
+            }
+        }
+
+        private void addPorts(Link l) {
+            ports.add(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+            ports.add(new NodePortTuple(l.getDst(), l.getDstPort()));
+        }
+
+        /*
+         * A path from x to dst through the link u->v costs at least
+         * cost(x, u) + cost(u->v) + cost(v, dst).
+         */
+        boolean affect(PathId id, PathDeps deps) {
+            for (NodePortTuple npt : deps.ports) {
+                if (ports.contains(npt)) return true;
+            }
+            if (cheaper.isEmpty()) return false;
+
+            int[] from = fromCheaper.get(id.getDst());
+            if (from == null) {
+                from = new int[cheaper.size()];
+                search.run(id.getDst(), edgeCosts);
+                for (int i = 0; i < from.length; i++) {
+                    from[i] = search.getDistance(cheaper.get(i).getDst());
+                }
+                fromCheaper.put(id.getDst(), from);
+            }
+            for (int j = 0; j < deps.spurs.length; j++) {
+                int x = graph.indexOf(deps.spurs[j]);
+                if (x < 0) return true;
+                for (int i = 0; i < from.length; i++) {
+                    long through = (long) toCheaper[i][x] + cheaperCosts[i] + from[i];
+                    if (through < MAX_PATH_WEIGHT && through <= deps.spurCosts[j]) return true;
+                }
+            }
+            return false;
+        }
     }
 
-    private Path buildPath(PathId id, BroadcastTree tree) {
+    /*
+     * Returns the paths from src to dst ordered best to worst, or null if
+     * there are none. When computing paths lazily, they are computed on the
+     * first request and kept in the pathcache, which only holds the most 
+     * recently used ones. Two threads asking for the same paths at once may
+     * both compute them; the result is the same.
+     */
+    private List<Path> getPaths(DatapathId src, DatapathId dst) {
+        PathId pathId = new PathId(src, dst);
+        List<Path> paths = pathcache.get(pathId);
+        if (!lazyPaths) {
+            return paths;
+        }
+        if (paths != null) {
+            addToCounter(TopologyManager.ctrPathCacheHit, 1);
+            return paths;
+        }
+
+        /* Paths are only computed within an archipelago, like computeOrderedPaths() does */
+        Archipelago a = getArchipelago(src);
+        if (a == null || !a.isMember(dst)) {
+            return null;
+        }
+
+        addToCounter(TopologyManager.ctrPathCacheMiss, 1);
+        long start = System.nanoTime();
+        paths = computePaths(src, dst, a, false);
+        addToCounter(TopologyManager.ctrPathComputeTime, (System.nanoTime() - start) / 1000);
+        pathcache.put(pathId, paths);
+        return paths;
+    }
+
+    private static void addToCounter(IDebugCounter counter, long value) {
+        if (counter != null) {
+            counter.add(value);
+        }
+    }
+
+    private Path buildPath(PathId id, IndexedGraph.Search search) {
         NodePortTuple npt;
         DatapathId srcId = id.getSrc();
         DatapathId dstId = id.getDst();
         //set of NodePortTuples on the route
         LinkedList<NodePortTuple> sPorts = new LinkedList<NodePortTuple>();
 
-        if (tree == null) return new Path(id, ImmutableList.of()); /* empty route */
-
-        Map<DatapathId, Link> nexthoplinks = tree.getLinks();
-
         if (!switches.contains(srcId) || !switches.contains(dstId)) {
             // This is a switch that is not connected to any other switch
             // hence there was no update for links (and hence it is not
@@ -817,14 +1153,14 @@ public class TopologyInstance {
             // The only possible non-null path for this case is
             // if srcId equals dstId --- and that too is an 'empty' path []
 
-        } else if ((nexthoplinks != null) && (nexthoplinks.get(srcId) != null)) {
+        } else if (search.getNextLink(srcId) != null) {
             while (!srcId.equals(dstId)) {
-                Link l = nexthoplinks.get(srcId);
+                Link l = search.getNextLink(srcId);
                 npt = new NodePortTuple(l.getSrc(), l.getSrcPort());
                 sPorts.addLast(npt);
                 npt = new NodePortTuple(l.getDst(), l.getDstPort());
                 sPorts.addLast(npt);
-                srcId = nexthoplinks.get(srcId).getDst();
+                srcId = l.getDst();
             }
         }
         // else, no path exists, and path equals null
@@ -861,30 +1197,6 @@ public class TopologyInstance {
         return true;
     }
 
-    private Map<DatapathId, Set<Link>> buildLinkDpidMap(Set<DatapathId> switches, Map<DatapathId,
-            Set<OFPort>> portsWithLinks, Map<NodePortTuple, Set<Link>> links) {
-
-        Map<DatapathId, Set<Link>> linkDpidMap = new HashMap<DatapathId, Set<Link>>();
-        for (DatapathId s : switches) {
-            if (portsWithLinks.get(s) == null) continue;
-            for (OFPort p : portsWithLinks.get(s)) {
-                NodePortTuple np = new NodePortTuple(s, p);
-                if (links.get(np) == null) continue;
-                for (Link l : links.get(np)) {
-                    if (switches.contains(l.getSrc()) && switches.contains(l.getDst())) {
-                        if (linkDpidMap.containsKey(s)) {
-                            linkDpidMap.get(s).add(l);
-                        } else {
-                            linkDpidMap.put(s, new HashSet<Link>(Arrays.asList(l)));
-                        }
-                    }
-                }
-            }
-        }
-
-        return linkDpidMap;
-    }
-
     /**
      *
      * This function returns K number of routes between a source and destination IF THEY EXIST IN THE ROUTECACHE.
@@ -898,8 +1210,7 @@ public class TopologyInstance {
      * @return ArrayList of Routes or null if bad parameters
      */
     public List<Path> getPathsFast(DatapathId src, DatapathId dst, int k) {
-        PathId routeId = new PathId(src, dst);
-        List<Path> routes = pathcache.get(routeId);
+        List<Path> routes = getPaths(src, dst);
 
         if (routes == null || k < 1) {
             return ImmutableList.of();
@@ -925,13 +1236,12 @@ public class TopologyInstance {
      * @return list of paths or empty
      */
     public List<Path> getPathsSlow(DatapathId src, DatapathId dst, int k) {
-        PathId pathId = new PathId(src, dst);
-        List<Path> paths = pathcache.get(pathId);
+        List<Path> paths = getPaths(src, dst);
 
         if (paths == null || k < 1) return ImmutableList.of();
 
         if (k >= TopologyManager.getMaxPathsToComputeInternal() || k >= paths.size()) {
-            return yens(src, dst, k, getArchipelago(src), getArchipelago(dst)); /* heavy computation */
+            return yens(src, dst, k, getArchipelago(src), getArchipelago(dst), false, null); /* heavy computation */
         }
         else {
             return new ArrayList<Path>(paths.subList(0, k));
@@ -973,18 +1283,18 @@ public class TopologyInstance {
 
     }
 
-    private List<Path> yens(DatapathId src, DatapathId dst, Integer K, Archipelago aSrc, Archipelago aDst) {
+    /*
+     * Computes the K best paths from src to dst. If deps is not null, adds to
+     * it what they depend on, see PathDeps.
+     */
+    private List<Path> yens(DatapathId src, DatapathId dst, Integer K, Archipelago aSrc, Archipelago aDst,
+            boolean setBroadcastTree, PathDeps deps) {
 
         log.debug("YENS ALGORITHM -----------------");
         log.debug("Asking for paths from {} to {}", src, dst);
         log.debug("Asking for {} paths", K);
 
-        // Find link costs
-        Map<Link, Integer> linkCost = initLinkCostMap();
-
-        Map<DatapathId, Set<Link>> linkDpidMap = buildLinkDpidMap(switches, portsWithLinks, links);
-
-        Map<DatapathId, Set<Link>> copyOfLinkDpidMap = new HashMap<DatapathId, Set<Link>>(linkDpidMap);
+        IndexedGraph.Search search = graph.newSearch();
 
         // A is the list of shortest paths. The number in the list at the end should be less than or equal to K
         // B is the list of possible shortest paths found in this function.
@@ -1008,12 +1318,17 @@ public class TopologyInstance {
         }
 
         /* Use Dijkstra's to find the shortest path, which will also be the first path in A */
-        BroadcastTree bt = dijkstra(copyOfLinkDpidMap, dst, linkCost, true);
+        search.run(dst, edgeCosts);
         /* add this initial tree as our archipelago's broadcast tree (aSrc == aDst) */
-        aSrc.setBroadcastTree(bt);
+        if (setBroadcastTree) {
+            aSrc.setBroadcastTree(search.toBroadcastTree());
+        }
         /* now add the shortest path */
-        log.debug("src {} dst {} tree {}", new Object[] {src, dst, bt});
-        Path newroute = buildPath(new PathId(src, dst), bt); /* guaranteed to be in same tree */
+        Path newroute = buildPath(new PathId(src, dst), search); /* guaranteed to be in same tree */
+        if (deps != null) {
+            deps.addSpur(src, search.getDistance(src));
+            deps.addPath(newroute);
+        }
 
         if (newroute != null && !newroute.getPath().isEmpty()) { /* should never be null, but might be empty */
             setPathCosts(newroute);
@@ -1043,29 +1358,31 @@ public class TopologyInstance {
                         path.subList(0, i));
 
 
-                Map<NodePortTuple, Set<Link>> allLinksCopy = new HashMap<NodePortTuple, Set<Link>>(links);
+                search.clearExclusions();
                 // Remove the links after the spur node that are part of other paths in A so that new paths
                 // found are unique
                 for (Path r : A) {
                     if (r.getPath().size() > (i + 1) && r.getPath().subList(0, i).equals(rootPath.getPath())) {
-                        allLinksCopy.remove(r.getPath().get(i));
-                        allLinksCopy.remove(r.getPath().get(i+1));
+                        search.excludePort(r.getPath().get(i));
+                        search.excludePort(r.getPath().get(i+1));
                     }
                 }
 
                 // Removes the root path so Dijkstra's doesn't try to go through it to find a path
-                Set<DatapathId> switchesCopy = new HashSet<DatapathId>(switches);
                 for (NodePortTuple npt : rootPath.getPath()) {
                     if (!npt.getNodeId().equals(spurNode)) {
-                        switchesCopy.remove(npt.getNodeId());
+                        search.excludeNode(npt.getNodeId());
                     }
                 }
 
-                // Builds the new topology without the parts we want removed
-                copyOfLinkDpidMap = buildLinkDpidMap(switchesCopy, portsWithLinks, allLinksCopy);
-
-                // Uses Dijkstra's to try to find a shortest path from the spur node to the destination
-                Path spurPath = buildPath(new PathId(spurNode, dst), dijkstra(copyOfLinkDpidMap, dst, linkCost, true));
+                // Uses Dijkstra's to try to find a shortest path from the spur node to the destination,
+                // in the topology without the parts removed
+                search.run(dst, edgeCosts);
+                Path spurPath = buildPath(new PathId(spurNode, dst), search);
+                if (deps != null) {
+                    deps.addSpur(spurNode, search.getDistance(spurNode));
+                    deps.addPath(spurPath);
+                }
                 if (spurPath == null || spurPath.getPath().isEmpty()) {
                     log.debug("spurPath is null");
                     continue;
@@ -1190,8 +1507,64 @@ public class TopologyInstance {
      */
     public Path getPath(DatapathId srcId, OFPort srcPort,
             DatapathId dstId, OFPort dstPort) {
-        Path r = getPath(srcId, dstId);
-        
+        return addEndpoints(getPath(srcId, dstId), srcId, srcPort, dstId, dstPort);
+    }
+
+    /**
+     * Computes end-to-end path including src/dst switch ports
+     * as {@link #getPath(DatapathId, OFPort, DatapathId, OFPort)}
+     * does, on the least loaded of the paths in the pathcache: the
+     * one whose busiest output port has the lowest utilization, as
+     * sampled by TopologyManager. Of paths as loaded, the one that
+     * comes first, i.e. costs least, is picked.
+     * @param srcId
+     * @param srcPort
+     * @param dstId
+     * @param dstPort
+     * @return
+     */
+    public Path getLeastLoadedPath(DatapathId srcId, OFPort srcPort,
+            DatapathId dstId, OFPort dstPort) {
+        Map<NodePortTuple, Integer> utilization = TopologyManager.getPortUtilizationInternal();
+        if (srcId.equals(dstId) || utilization.isEmpty()) {
+            return getPath(srcId, srcPort, dstId, dstPort);
+        }
+
+        List<Path> paths = getPaths(srcId, dstId);
+        if (paths == null || paths.size() < 2) {
+            return getPath(srcId, srcPort, dstId, dstPort);
+        }
+
+        Path best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (Path p : paths) {
+            int load = getLoad(p, utilization);
+            if (load < bestLoad) {
+                best = p;
+                bestLoad = load;
+            }
+        }
+        return addEndpoints(best, srcId, srcPort, dstId, dstPort);
+    }
+
+    /*
+     * The highest utilization of the ports the path leaves switches from,
+     * i.e. of every other port of the path starting with the first.
+     */
+    private static int getLoad(Path p, Map<NodePortTuple, Integer> utilization) {
+        int load = 0;
+        List<NodePortTuple> npts = p.getPath();
+        for (int i = 0; i < npts.size(); i += 2) {
+            Integer u = utilization.get(npts.get(i));
+            if (u != null && u > load) {
+                load = u;
+            }
+        }
+        return load;
+    }
+
+    private Path addEndpoints(Path r, DatapathId srcId, OFPort srcPort,
+            DatapathId dstId, OFPort dstPort) {
         /* Path cannot be null, but empty b/t 2 diff DPIDs -> not found */
         if (! srcId.equals(dstId) && r.getPath().isEmpty()) {
             return r;
@@ -1225,12 +1598,13 @@ public class TopologyInstance {
         }
 
         Path result = null;
+        List<Path> paths = getPaths(srcId, dstId);
 
-        try {
-            if (!pathcache.get(id).isEmpty()) {
-                result = pathcache.get(id).get(0);
+        if (paths != null) {
+            if (!paths.isEmpty()) {
+                result = paths.get(0);
             }
-        } catch (Exception e) {
+        } else {
             log.warn("Could not find route from {} to {}. If the path exists, wait for the topology to settle, and it will be detected", srcId, dstId);
         }
 
@@ -36,6 +36,7 @@ import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.routing.IRoutingService.PATH_METRIC;
 import net.floodlightcontroller.routing.web.RoutingWebRoutable;
 import net.floodlightcontroller.statistics.IStatisticsService;
+import net.floodlightcontroller.statistics.SwitchPortBandwidth;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.web.TopologyWebRoutable;
 import net.floodlightcontroller.util.OFMessageUtils;
@@ -53,6 +54,7 @@ import com.google.common.collect.ImmutableSet;
 
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -74,6 +76,48 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
      */
     private static volatile int maxPathsToCompute = 3;
 
+    /**
+     * Compute paths on first request instead of for every pair of switches
+     * upon topology updates, keeping at most pathCacheSize of them.
+     */
+    private static volatile boolean lazyPathComputation = false;
+    private static volatile int pathCacheSize = TopologyInstance.PATH_CACHE_SIZE;
+
+    /**
+     * Pool computing broadcast trees and paths of new topology instances in
+     * parallel, null to compute them on the thread updating the topology.
+     */
+    private static volatile ForkJoinPool pathComputationPool = null;
+
+    /**
+     * Reuse the paths of the current topology instance that link updates do
+     * not affect when computing the next one, instead of computing them all.
+     */
+    private static volatile boolean incrementalUpdates = false;
+
+    /**
+     * Sample the bandwidth StatisticsCollector measures on each port every
+     * utilizationUpdateInterval seconds, and recompute the paths when the
+     * utilization of a port moved by utilizationHysteresis percent or more
+     * since it last did, if paths are computed on utilization. The ports are
+     * sampled whenever paths are computed on utilization, whether or not
+     * this is set, see isSamplingUtilization().
+     */
+    private static volatile boolean congestionAwareRouting = false;
+    private static volatile int utilizationUpdateInterval = 10;
+    private static volatile int utilizationHysteresis = 10;
+
+    /**
+     * The utilization of each port, in percent, as of the last sample that
+     * moved it by utilizationHysteresis or more. Never modified, replaced.
+     */
+    private static volatile Map<NodePortTuple, Integer> portUtilization = Collections.emptyMap();
+
+    /**
+     * The speed of ports whose switch does not report it, in kbps.
+     */
+    protected static final long DEFAULT_PORT_SPEED_KBPS = 1000000;
+
     /**
      * Role of the controller.
      */
@@ -121,6 +165,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
     protected TopologyInstance currentInstance;
 
     protected SingletonTask newInstanceTask;
+    protected SingletonTask utilizationTask;
     private Date lastUpdateTime;
 
     /**
@@ -138,6 +183,12 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
      */
     protected boolean tunnelPortsUpdated;
 
+    /**
+     * Flag that indicates if the utilization of ports changed since the
+     * last topology instance was created.
+     */
+    protected boolean utilizationUpdated;
+
     protected int TOPOLOGY_COMPUTE_INTERVAL_MS = 500;
 
     private IHAListener haListener;
@@ -147,6 +198,12 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
      */
     protected static final String PACKAGE = TopologyManager.class.getPackage().getName();
     protected IDebugCounter ctrIncoming;
+    protected static IDebugCounter ctrPathCacheHit;
+    protected static IDebugCounter ctrPathCacheMiss;
+    protected static IDebugCounter ctrPathComputeTime;
+    protected static IDebugCounter ctrIncrementalUpdate;
+    protected static IDebugCounter ctrPathsReused;
+    protected static IDebugCounter ctrUtilizationUpdate;
 
     //  Getter/Setter methods
     /**
@@ -190,6 +247,109 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         }
     }
 
+    /**
+     * Samples the utilization of ports every utilizationUpdateInterval
+     * seconds, which bounds how often it recomputes the paths.
+     */
+    protected class UtilizationWorker implements Runnable {
+        @Override
+        public void run() {
+            try {
+                if (statisticsService != null) {
+                    updatePortUtilization(statisticsService.getBandwidthConsumption());
+                }
+            }
+            catch (Exception e) {
+                log.error("Error in port utilization task thread", e);
+            } finally {
+                if (floodlightProviderService.getRole() != HARole.STANDBY && isSamplingUtilization()) {
+                    utilizationTask.reschedule(utilizationUpdateInterval, TimeUnit.SECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if the utilization of ports is sampled: link costs need it
+     * when paths are computed on utilization, and so does getLeastLoadedPath()
+     * if congestion aware routing is on
+     */
+    protected static boolean isSamplingUtilization() {
+        return congestionAwareRouting || pathMetric == PATH_METRIC.UTILIZATION;
+    }
+
+    /**
+     * Starts sampling the utilization of ports after the given delay, with
+     * the statistics collection it is computed from, if it is needed and
+     * this controller is not in STANDBY.
+     */
+    private void startUtilizationSampling(long delaySeconds) {
+        if (utilizationTask == null || !isSamplingUtilization() || role == HARole.STANDBY) {
+            return;
+        }
+        if (statisticsService == null) {
+            log.error("Sampling port utilization needs the statistics module, which is not loaded. "
+                    + "Links will all cost the same with path metric {}", pathMetric.getMetricName());
+            return;
+        }
+        statisticsService.collectStatistics(true);
+        utilizationTask.reschedule(delaySeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Takes in a sample of the bandwidth of ports. The utilization of a port
+     * changes when it moved by utilizationHysteresis percent or more, so
+     * that paths do not flap with the noise of the samples; ports missing
+     * from the sample are dropped. If the utilization of any port changed
+     * and paths are computed on utilization, a new topology instance is
+     * computed.
+     * @param bandwidth the bandwidth of each port, see IStatisticsService
+     * @return true if a new topology instance was computed
+     */
+    protected synchronized boolean updatePortUtilization(Map<NodePortTuple, SwitchPortBandwidth> bandwidth) {
+        Map<NodePortTuple, Integer> previous = portUtilization;
+        Map<NodePortTuple, Integer> next = new HashMap<NodePortTuple, Integer>();
+        boolean changed = false;
+        for (Map.Entry<NodePortTuple, SwitchPortBandwidth> e : bandwidth.entrySet()) {
+            int u = getUtilization(e.getValue());
+            Integer old = previous.get(e.getKey());
+            if (old == null || Math.abs(u - old) >= utilizationHysteresis) {
+                changed |= old == null || u != old;
+                next.put(e.getKey(), u);
+            } else {
+                next.put(e.getKey(), old);
+            }
+        }
+        changed |= !next.keySet().equals(previous.keySet());
+        if (!changed) {
+            return false;
+        }
+
+        portUtilization = Collections.unmodifiableMap(next);
+        ctrUtilizationUpdate.increment();
+        if (pathMetric != PATH_METRIC.UTILIZATION) {
+            return false;
+        }
+        utilizationUpdated = true;
+        return updateTopology("port-utilization", false);
+    }
+
+    /**
+     * @return the transmit utilization of the port, in percent
+     */
+    private static int getUtilization(SwitchPortBandwidth spb) {
+        /* switches report their current speed in kbps */
+        long speedKbps = spb.getLinkSpeedBitsPerSec().getValue();
+        if (speedKbps <= 0) {
+            speedKbps = DEFAULT_PORT_SPEED_KBPS;
+        }
+        long txKbps = spb.getBitsPerSecondTx().getValue() / 1000;
+        if (txKbps < 0 || txKbps >= speedKbps) {
+            return 100;
+        }
+        return (int) (txKbps * 100 / speedKbps);
+    }
+
     // To be used for adding any periodic events that's required by topology.
     protected void handleMiscellaneousPeriodicEvents() {
         return;
@@ -339,7 +499,12 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
 
     @Override
     public void setPathMetric(PATH_METRIC metric) {
+        PATH_METRIC previous = pathMetric;
         pathMetric = metric;
+        /* link costs need the utilization, which was not sampled so far */
+        if (metric == PATH_METRIC.UTILIZATION && previous != PATH_METRIC.UTILIZATION && !congestionAwareRouting) {
+            startUtilizationSampling(0);
+        }
     }
 
     @Override
@@ -355,6 +520,44 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         return maxPathsToCompute;
     }
 
+    protected static boolean isLazyPathComputationInternal() {
+        return lazyPathComputation;
+    }
+
+    protected static int getPathCacheSizeInternal() {
+        return pathCacheSize;
+    }
+
+    protected static boolean isIncrementalUpdatesInternal() {
+        return incrementalUpdates;
+    }
+
+    protected static Map<NodePortTuple, Integer> getPortUtilizationInternal() {
+        return portUtilization;
+    }
+
+    protected static ForkJoinPool getPathComputationPoolInternal() {
+        return pathComputationPool;
+    }
+
+    /**
+     * @param threads number of threads computing paths, 0 for one per core,
+     * 1 to compute them on the thread updating the topology
+     */
+    protected static synchronized void setPathComputationThreads(int threads) {
+        if (threads == 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        ForkJoinPool old = pathComputationPool;
+        if (old != null && old.getParallelism() == threads) {
+            return;
+        }
+        pathComputationPool = threads > 1 ? new ForkJoinPool(threads) : null;
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+
     @Override
     public int getMaxPathsToCompute() {
         return maxPathsToCompute;
@@ -524,6 +727,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
                     "to HA change from STANDBY->ACTIVE");
             newInstanceTask.reschedule(TOPOLOGY_COMPUTE_INTERVAL_MS,
                     TimeUnit.MILLISECONDS);
+            startUtilizationSampling(utilizationUpdateInterval);
         }
 
         @Override
@@ -612,6 +816,7 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         ldUpdates = new LinkedBlockingQueue<LDUpdate>();
         haListener = new HAListenerDelegate();
         registerTopologyDebugCounters();
+        portUtilization = Collections.emptyMap();
 
         Map<String, String> configOptions = context.getConfigParams(this);
         String metric = configOptions.get("pathMetric") != null
@@ -652,6 +857,93 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
                     }
                 }
                 log.info("Will compute a max of {} paths upon topology updates", maxPathsToCompute);
+
+                String lazy = configOptions.get("lazyPathComputation");
+                if (lazy != null) {
+                    lazyPathComputation = Boolean.parseBoolean(lazy.trim());
+                }
+                String cacheSize = configOptions.get("pathCacheSize") != null
+                        ? configOptions.get("pathCacheSize").trim() : null;
+                if (cacheSize != null) {
+                    try {
+                        pathCacheSize = Integer.parseInt(cacheSize);
+                        if (pathCacheSize < 1) {
+                            throw new NumberFormatException();
+                        }
+                    } catch (NumberFormatException e) {
+                        pathCacheSize = TopologyInstance.PATH_CACHE_SIZE;
+                        log.error("Invalid 'pathCacheSize'. Using default {}", pathCacheSize);
+                    }
+                }
+                if (lazyPathComputation) {
+                    log.info("Will compute paths on first request, caching up to {} switch pairs", pathCacheSize);
+                }
+
+                String threads = configOptions.get("pathComputationThreads") != null
+                        ? configOptions.get("pathComputationThreads").trim() : null;
+                if (threads != null) {
+                    try {
+                        int n = Integer.parseInt(threads);
+                        if (n < 0) {
+                            throw new NumberFormatException();
+                        }
+                        setPathComputationThreads(n);
+                    } catch (NumberFormatException e) {
+                        log.error("Invalid 'pathComputationThreads'. Computing paths on a single thread");
+                        setPathComputationThreads(1);
+                    }
+                }
+                if (pathComputationPool != null) {
+                    log.info("Will compute paths on {} threads upon topology updates",
+                            pathComputationPool.getParallelism());
+                }
+
+                String incremental = configOptions.get("incrementalUpdates");
+                if (incremental != null) {
+                    incrementalUpdates = Boolean.parseBoolean(incremental.trim());
+                }
+                if (incrementalUpdates) {
+                    log.info("Will only compute the paths that link updates affect");
+                }
+
+                String congestion = configOptions.get("congestionAwareRouting");
+                if (congestion != null) {
+                    congestionAwareRouting = Boolean.parseBoolean(congestion.trim());
+                }
+                String interval = configOptions.get("utilizationUpdateIntervalSeconds") != null
+                        ? configOptions.get("utilizationUpdateIntervalSeconds").trim() : null;
+                if (interval != null) {
+                    try {
+                        utilizationUpdateInterval = Integer.parseInt(interval);
+                        if (utilizationUpdateInterval < 1) {
+                            throw new NumberFormatException();
+                        }
+                    } catch (NumberFormatException e) {
+                        utilizationUpdateInterval = 10;
+                        log.error("Invalid 'utilizationUpdateIntervalSeconds'. Using default {}", utilizationUpdateInterval);
+                    }
+                }
+                String hysteresis = configOptions.get("utilizationHysteresis") != null
+                        ? configOptions.get("utilizationHysteresis").trim() : null;
+                if (hysteresis != null) {
+                    try {
+                        utilizationHysteresis = Integer.parseInt(hysteresis);
+                        if (utilizationHysteresis < 0 || utilizationHysteresis > 100) {
+                            throw new NumberFormatException();
+                        }
+                    } catch (NumberFormatException e) {
+                        utilizationHysteresis = 10;
+                        log.error("Invalid 'utilizationHysteresis'. Using default {}", utilizationHysteresis);
+                    }
+                }
+                if (isSamplingUtilization()) {
+                    log.info("Will sample port utilization every {}s, with a hysteresis of {}%",
+                            utilizationUpdateInterval, utilizationHysteresis);
+                    if (pathMetric != PATH_METRIC.UTILIZATION) {
+                        log.warn("Path metric is {}, paths will not be recomputed on port utilization",
+                                pathMetric.getMetricName());
+                    }
+                }
     }
 
     @Override
@@ -662,10 +954,12 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
 
         ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
         newInstanceTask = new SingletonTask(ses, new UpdateTopologyWorker());
+        utilizationTask = new SingletonTask(ses, new UtilizationWorker());
 
         if (role != HARole.STANDBY) {
             newInstanceTask.reschedule(TOPOLOGY_COMPUTE_INTERVAL_MS, TimeUnit.MILLISECONDS);
         }
+        startUtilizationSampling(utilizationUpdateInterval);
 
         linkDiscoveryService.addListener(this);
         floodlightProviderService.addOFMessageListener(OFType.PACKET_IN, this);
@@ -681,6 +975,24 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
         ctrIncoming = debugCounterService.registerCounter(
                 PACKAGE, "incoming",
                 "All incoming packets seen by this module");
+        ctrPathCacheHit = debugCounterService.registerCounter(
+                PACKAGE, "path-cache-hit",
+                "Path requests answered from the path cache when computing paths on first request");
+        ctrPathCacheMiss = debugCounterService.registerCounter(
+                PACKAGE, "path-cache-miss",
+                "Path requests for which paths were computed when computing paths on first request");
+        ctrPathComputeTime = debugCounterService.registerCounter(
+                PACKAGE, "path-compute-time-us",
+                "Time spent computing paths with Yen's algorithm, in microseconds");
+        ctrIncrementalUpdate = debugCounterService.registerCounter(
+                PACKAGE, "incremental-update",
+                "Topology instances computed reusing the paths of the previous one");
+        ctrPathsReused = debugCounterService.registerCounter(
+                PACKAGE, "paths-reused",
+                "Switch pairs whose paths were reused from the previous topology instance");
+        ctrUtilizationUpdate = debugCounterService.registerCounter(
+                PACKAGE, "utilization-update",
+                "Port bandwidth samples that changed the utilization of ports past the hysteresis");
     }
 
     protected void addRestletRoutable() {
@@ -959,9 +1271,10 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
     protected boolean createNewInstance(String reason, boolean forced) {
         Set<NodePortTuple> blockedPorts = new HashSet<NodePortTuple>();
 
-        if (!linksUpdated && !forced) {
+        if (!linksUpdated && !utilizationUpdated && !forced) {
             return false;
         }
+        utilizationUpdated = false;
 
         Map<NodePortTuple, Set<Link>> openflowLinks;
         openflowLinks =
@@ -1012,7 +1325,8 @@ ITopologyManagerBackend, ILinkDiscoveryListener, IOFMessageListener {
                 allPorts,
                 interClusterLinks);
 
-        nt.compute();
+        /* a forced recomputation computes every path again */
+        nt.compute(forced ? null : currentInstance);
 
         currentInstance = nt;
 
@@ -17,6 +17,7 @@
 package org.sdnplatform.sync;
 
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.sdnplatform.sync.error.ObsoleteVersionException;
@@ -145,6 +146,21 @@ public interface IStoreClient<K, V> {
     public IVersion put(K key, Versioned<V> versioned)
             throws SyncException;
 
+    /**
+     * Put all the given values, as {@link #put(Object, Object)} would for
+     * each of them, in the iteration order of the map.  The store handles
+     * the values as one batch, so this is cheaper than putting them one at
+     * a time, and listeners are notified of the keys once.
+     *
+     * The same caveats as for {@link #put(Object, Object)} apply.
+     *
+     * @param values The keys and their values
+     * @throws ObsoleteVersionException
+     * @throws SyncException if one of the puts fails, in which case the
+     * values before it have been stored
+     */
+    public void putAll(Map<K, V> values) throws SyncException;
+
     /**
      * Put the versioned value to the key, ignoring any ObsoleteVersionException
      * that may be thrown
@@ -1,6 +1,8 @@
 package org.sdnplatform.sync.internal;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.sdnplatform.sync.IStoreClient;
 import org.sdnplatform.sync.IVersion;
@@ -39,6 +41,25 @@ public abstract class AbstractStoreClient<K,V> implements IStoreClient<K, V> {
 
     @Override
     public IVersion put(K key, V value) throws SyncException {
+        return put(key, newVersion(key, value));
+    }
+
+    @Override
+    public void putAll(Map<K, V> values) throws SyncException {
+        for (Entry<K, V> e : values.entrySet()) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Get the value to write for an unversioned put of the given value,
+     * based on the versions currently in the store for the key
+     * @param key the key
+     * @param value the value
+     * @return the versioned value
+     * @throws SyncException
+     */
+    protected Versioned<V> newVersion(K key, V value) throws SyncException {
         List<IVersion> versions = getVersions(key);
         Versioned<V> versioned;
         if(versions.isEmpty())
@@ -52,7 +73,7 @@ public abstract class AbstractStoreClient<K,V> implements IStoreClient<K, V> {
             else
                 versioned.setValue(value);
         }
-        return put(key, versioned);
+        return versioned;
     }
 
     @Override
@@ -1,6 +1,8 @@
 package org.sdnplatform.sync.internal;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import com.fasterxml.jackson.core.type.TypeReference;
@@ -90,6 +92,21 @@ public class DefaultStoreClient<K, V> extends AbstractStoreClient<K, V> {
         return versioned.getVersion();
     }
 
+    @Override
+    public void putAll(Map<K, V> values) throws SyncException {
+        List<Entry<K, Versioned<V>>> batch =
+                new ArrayList<Entry<K, Versioned<V>>>(values.size());
+        long now = System.currentTimeMillis();
+        for (Entry<K, V> e : values.entrySet()) {
+            Versioned<V> versioned = newVersion(e.getKey(), e.getValue());
+            VectorClock vc = ((VectorClock)versioned.getVersion())
+                    .incremented(syncManager.getLocalNodeId(), now);
+            batch.add(new Pair<K, Versioned<V>>(e.getKey(),
+                    Versioned.value(versioned.getValue(), vc)));
+        }
+        delegate.putAll(batch);
+    }
+
     @Override
     public void addStoreListener(IStoreListener<K> listener) {
         if (listener == null)
@@ -93,6 +93,14 @@ public class RemoteStore implements IStore<ByteArray, byte[]> {
         getReply(header.getTransactionId(), bsm);
     }
 
+    @Override
+    public void putAll(List<Entry<ByteArray, Versioned<byte[]>>> entries)
+            throws SyncException {
+        for (Entry<ByteArray, Versioned<byte[]>> e : entries) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
     @Override
     public List<IVersion> getVersions(ByteArray key) throws SyncException {
         List<Versioned<byte[]>> values = get(key);
@@ -67,6 +67,19 @@ public interface IStore<K, V> {
     public void put(K key, Versioned<V> value)
             throws SyncException;
 
+    /**
+     * Associate each value with its key and version in this store.  This
+     * is equivalent to calling {@link #put(Object, Versioned)} for each
+     * entry in order, but allows the store to handle the batch as a whole,
+     * e.g. to notify its listeners only once.
+     *
+     * @param entries the keys and the values to store with their versions
+     * @throws SyncException if one of the puts fails, in which case the
+     * entries before it have been stored
+     */
+    public void putAll(List<Entry<K, Versioned<V>>> entries)
+            throws SyncException;
+
     /**
      * Get a list of the versions associated with the given key
      * @param key the key
@@ -87,6 +87,14 @@ public class InMemoryStorageEngine<K, V> implements IStorageEngine<K, V> {
             throw new ObsoleteVersionException();
     }
 
+    @Override
+    public void putAll(List<Entry<K, Versioned<V>>> entries)
+            throws SyncException {
+        for (Entry<K, Versioned<V>> e : entries) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
     public boolean doput(K key, Versioned<V> value) throws SyncException {
         StoreUtils.assertValidKey(key);
 
@@ -113,6 +113,22 @@ public class JacksonStore<K, V> implements IStore<K, V> {
                      new Versioned<byte[]>(valuebytes, value.getVersion()));
     }
 
+    @Override
+    public void putAll(List<Entry<K, Versioned<V>>> entries)
+            throws SyncException {
+        List<Entry<ByteArray, Versioned<byte[]>>> raw =
+                new ArrayList<Entry<ByteArray, Versioned<byte[]>>>(entries.size());
+        for (Entry<K, Versioned<V>> e : entries) {
+            Versioned<V> value = e.getValue();
+            byte[] valuebytes = value.getValue() != null
+                    ? getValueBytes(value.getValue())
+                    : null;
+            raw.add(new Pair<ByteArray, Versioned<byte[]>>(getKeyBytes(e.getKey()),
+                    new Versioned<byte[]>(valuebytes, value.getVersion())));
+        }
+        delegate.putAll(raw);
+    }
+
     @Override
     public String getName() {
         return delegate.getName();
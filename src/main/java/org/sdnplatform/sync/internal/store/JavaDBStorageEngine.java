@@ -214,6 +214,14 @@ public class JavaDBStorageEngine implements IStorageEngine<ByteArray, byte[]> {
         }
     }
 
+    @Override
+    public void putAll(List<Entry<ByteArray, Versioned<byte[]>>> entries)
+            throws SyncException {
+        for (Entry<ByteArray, Versioned<byte[]>> e : entries) {
+            put(e.getKey(), e.getValue());
+        }
+    }
+
     @Override
     public IClosableIterator<ByteArray> keys() {
         return StoreUtils.keys(entries());
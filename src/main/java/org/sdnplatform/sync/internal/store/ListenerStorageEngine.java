@@ -81,6 +81,26 @@ public class ListenerStorageEngine
         notifyListeners(key, UpdateType.LOCAL);
     }
 
+    /**
+     * Stores the batch, then notifies the listeners once with all the keys
+     * that were stored.
+     */
+    @Override
+    public void putAll(List<Entry<ByteArray, Versioned<byte[]>>> entries)
+            throws SyncException {
+        List<ByteArray> keys = new ArrayList<ByteArray>(entries.size());
+        try {
+            for (Entry<ByteArray, Versioned<byte[]>> e : entries) {
+                updateCounter(SyncManager.counterPuts);
+                putLocal(e.getKey(), e.getValue());
+                keys.add(e.getKey());
+            }
+        } finally {
+            if (!keys.isEmpty())
+                notifyListeners(keys, UpdateType.LOCAL);
+        }
+    }
+
     @Override
     public IClosableIterator<ByteArray> keys() {
         return localStorage.keys();
@@ -141,6 +161,16 @@ public class ListenerStorageEngine
         notifyListeners(Collections.singleton(key).iterator(), type);
     }
 
+    protected void notifyListeners(List<ByteArray> keys, UpdateType type) {
+        for (MappingStoreListener msl : listeners) {
+            try {
+                msl.notify(keys.iterator(), type);
+            } catch (Exception e) {
+                logger.error("An error occurred in a sync listener", e);
+            }
+        }
+    }
+
     protected void notifyListeners(Iterator<ByteArray> keys, UpdateType type) {
         for (MappingStoreListener msl : listeners) {
             try {
@@ -151,6 +181,15 @@ public class ListenerStorageEngine
         }
     }
 
+    /**
+     * Store a single entry of a batch in the local storage
+     * @see #putAll(List)
+     */
+    protected void putLocal(ByteArray key, Versioned<byte[]> value)
+            throws SyncException {
+        localStorage.put(key, value);
+    }
+
     protected void updateCounter(IDebugCounter counter) {
         if (debugCounter != null) {
             counter.increment();
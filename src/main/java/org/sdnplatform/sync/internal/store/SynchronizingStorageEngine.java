@@ -62,6 +62,14 @@ public class SynchronizingStorageEngine extends ListenerStorageEngine {
             syncManager.queueSyncTask(this, key, value);
     }
     
+    @Override
+    protected void putLocal(ByteArray key, Versioned<byte[]> value)
+            throws SyncException {
+        super.putLocal(key, value);
+        if (!Scope.UNSYNCHRONIZED.equals(scope))
+            syncManager.queueSyncTask(this, key, value);
+    }
+
     // **************
     // Public methods
     // **************
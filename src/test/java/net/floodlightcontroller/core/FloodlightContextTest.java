@@ -0,0 +1,85 @@
+package net.floodlightcontroller.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class FloodlightContextTest {
+    private static final String KEY_A = "net.floodlightcontroller.core.FloodlightContextTest.a";
+    private static final String KEY_B = "net.floodlightcontroller.core.FloodlightContextTest.b";
+
+    private final FloodlightContextStore<String> store = new FloodlightContextStore<String>();
+
+    @Test
+    public void testStoreAndKeyShareSlots() {
+        FloodlightContext bc = new FloodlightContext();
+        FloodlightContextKey<String> keyA = FloodlightContextKey.register(KEY_A);
+        assertSame(keyA, store.key(KEY_A));
+
+        store.put(bc, KEY_A, "a");
+        assertEquals("a", keyA.get(bc));
+
+        keyA.put(bc, "a2");
+        assertEquals("a2", store.get(bc, KEY_A));
+
+        store.remove(bc, KEY_A);
+        assertNull(keyA.get(bc));
+        assertTrue(bc.isEmpty());
+    }
+
+    @Test
+    public void testKeysRegisteredAfterContext() {
+        FloodlightContext bc = new FloodlightContext();
+        String name = "net.floodlightcontroller.core.FloodlightContextTest.late" + System.nanoTime();
+        assertNull(store.get(bc, name));
+
+        /* the context grows to hold keys registered after it was created */
+        store.put(bc, name, "late");
+        assertEquals("late", store.get(bc, name));
+    }
+
+    @Test
+    public void testLookupsDoNotRegister() {
+        FloodlightContext bc = new FloodlightContext();
+        String name = "net.floodlightcontroller.core.FloodlightContextTest.unknown" + System.nanoTime();
+        int size = FloodlightContextKey.size();
+
+        assertNull(store.get(bc, name));
+        store.remove(bc, name);
+        assertEquals(size, FloodlightContextKey.size());
+        assertEquals(-1, FloodlightContextKey.find(name));
+
+        store.put(bc, name, "known");
+        assertEquals(size + 1, FloodlightContextKey.size());
+        assertEquals("known", store.get(bc, name));
+    }
+
+    @Test
+    public void testClear() {
+        FloodlightContext bc = new FloodlightContext();
+        store.put(bc, KEY_A, "a");
+        store.put(bc, KEY_B, "b");
+        assertFalse(bc.isEmpty());
+
+        bc.clear();
+        assertTrue(bc.isEmpty());
+        assertNull(store.get(bc, KEY_A));
+        assertNull(store.get(bc, KEY_B));
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testGetStorage() {
+        FloodlightContext bc = new FloodlightContext();
+        store.put(bc, KEY_A, "a");
+        Map<String, Object> storage = bc.getStorage();
+        assertEquals(1, storage.size());
+        assertEquals("a", storage.get(KEY_A));
+    }
+}
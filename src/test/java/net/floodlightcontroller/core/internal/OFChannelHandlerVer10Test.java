@@ -213,7 +213,9 @@ public class OFChannelHandlerVer10Test {
      */
     void sendMessageToHandlerNoControllerReset(List<OFMessage> messages)
             throws Exception {
-        handler.channelRead(ctx, messages);
+        for (OFMessage m : messages) {
+            handler.channelRead(ctx, m);
+        }
     }
 
     /**
@@ -218,7 +218,9 @@ public class OFChannelHandlerVer13Test {
 	 */
 	void sendMessageToHandlerNoControllerReset(List<OFMessage> messages)
 			throws Exception {
-		handler.channelRead(ctx, messages);
+		for (OFMessage m : messages) {
+			handler.channelRead(ctx, m);
+		}
 	}
 
 	/**
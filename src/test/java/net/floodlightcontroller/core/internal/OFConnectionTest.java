@@ -3,6 +3,7 @@ package net.floodlightcontroller.core.internal;
 import static org.easymock.EasyMock.capture;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 
@@ -30,6 +31,7 @@ import net.floodlightcontroller.core.test.TestEventLoop;
 import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 
+import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
 import org.projectfloodlight.openflow.protocol.OFControllerRole;
 import org.projectfloodlight.openflow.protocol.OFEchoReply;
 import org.projectfloodlight.openflow.protocol.OFEchoRequest;
@@ -278,4 +280,64 @@ public class OFConnectionTest {
                 Matchers.<OFMessage> contains(hello, packetOut));
     }
 
+    private OFPacketOut buildPacketOut() {
+        return factory.buildPacketOut()
+                .setData(new byte[] { 0x01, 0x02, 0x03, 0x04 })
+                .setActions(ImmutableList.<OFAction>of( factory.actions().output(OFPort.of(1), 0)))
+                .build();
+    }
+
+    /** batched writes are flushed once, after the queued writes ran */
+    @Test(timeout = 5000)
+    public void testWriteBatching() throws InterruptedException, ExecutionException {
+        conn.setWriteBatching(true, 64, 0);
+        EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        expect(channel.write(EasyMock.anyObject())).andReturn(null).times(3);
+        expect(channel.flush()).andReturn(channel).once();
+        replay(channel);
+
+        conn.write(buildPacketOut());
+        conn.write(buildPacketOut());
+        conn.write(ImmutableList.<OFMessage>of(buildPacketOut()));
+        eventLoop.runTasks();
+        verify(channel);
+    }
+
+    /** reaching the batch size flushes without waiting */
+    @Test(timeout = 5000)
+    public void testWriteBatchingMaxMessages() throws InterruptedException, ExecutionException {
+        conn.setWriteBatching(true, 2, 0);
+        EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        expect(channel.write(EasyMock.anyObject())).andReturn(null).times(3);
+        expect(channel.flush()).andReturn(channel).times(2);
+        replay(channel);
+
+        conn.write(buildPacketOut());
+        conn.write(buildPacketOut());
+        conn.write(buildPacketOut());
+        eventLoop.runTasks();
+        verify(channel);
+    }
+
+    /** echo and barrier requests bypass the batching and flush what is pending */
+    @Test(timeout = 5000)
+    public void testWriteBatchingImmediateFlush() throws InterruptedException, ExecutionException {
+        conn.setWriteBatching(true, 64, 0);
+        EasyMock.expect(channel.isActive()).andReturn(Boolean.TRUE).anyTimes();
+        expect(channel.write(EasyMock.anyObject())).andReturn(null).once();
+        Capture<List<OFMessage>> cMsgList = EasyMock.newCapture();
+        expect(channel.writeAndFlush(capture(cMsgList))).andReturn(null).once();
+        replay(channel);
+
+        OFBarrierRequest barrier = factory.buildBarrierRequest().build();
+        conn.write(buildPacketOut());
+        conn.write(barrier);
+
+        /* the barrier goes out before the deferred flush runs */
+        eventLoop.runTasks();
+        assertThat("Should have captured MsgList", cMsgList.getValue(),
+                Matchers.<OFMessage> contains(barrier));
+        verify(channel);
+    }
+
 }
@@ -0,0 +1,278 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.internal;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowRemovedReason;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFMessageReader;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFPortReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
+
+/**
+ * Replays a stream of OpenFlow messages sent by a switch through the
+ * decoding end of the pipeline, and compares the decoder as it was before
+ * (a list of messages per read, read buffers allocated afresh) against
+ * OFMessageDecoder (every message passed on individually, read buffers from
+ * the pooled allocator). Reports messages per second and bytes allocated
+ * per message.
+ *
+ * The stream is either a capture given as the first argument, i.e. the raw
+ * TCP payload of a switch to controller connection (e.g. Wireshark's
+ * "Follow TCP Stream", one direction, saved as raw), or, without argument
+ * or with "-", a synthetic OF1.3 stream with the mix of a busy edge switch:
+ * mostly packet-ins of 60 to 1514 bytes, with echo requests, flow-removed
+ * and port-status messages.
+ * The stream is fed in reads of the size given as the second argument
+ * (default 2048 bytes), so that messages straddle reads as they do on a
+ * socket.
+ *
+ * Not a unit test, run it with:
+ * java -cp ... net.floodlightcontroller.core.internal.OFMessageDecoderBenchmark [capture] [read size]
+ */
+public class OFMessageDecoderBenchmark {
+    private static final int SYNTHETIC_MESSAGES = 200000;
+    private static final int ROUNDS = 5;
+
+    /** The decoder as it was before, for comparison */
+    private static class ListDecoder extends ByteToMessageDecoder {
+        private final OFMessageReader<OFMessage> reader = OFFactories.getGenericReader();
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+            OFMessage singleMessage = null;
+            List<OFMessage> list = null;
+            for (;;) {
+                OFMessage message = reader.readFrom(in);
+                if (message == null) {
+                    break;
+                }
+                if (singleMessage == null && list == null) {
+                    singleMessage = message;
+                } else {
+                    if (list == null) {
+                        list = new ArrayList<>();
+                        list.add(singleMessage);
+                        singleMessage = null;
+                    }
+                    list.add(message);
+                }
+            }
+            if (list != null) {
+                out.add(list);
+            } else if (singleMessage != null) {
+                out.add(Collections.singletonList(singleMessage));
+            }
+        }
+    }
+
+    /** Stands for OFChannelHandler as it was before */
+    private static class ListSink extends SimpleChannelInboundHandler<Iterable<OFMessage>> {
+        long received;
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, Iterable<OFMessage> msgList) {
+            for (OFMessage m : msgList) {
+                received += m.getXid() == -1 ? 0 : 1;
+            }
+        }
+    }
+
+    /** Stands for OFChannelHandler */
+    private static class MessageSink extends SimpleChannelInboundHandler<OFMessage> {
+        long received;
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, OFMessage m) {
+            received += m.getXid() == -1 ? 0 : 1;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        byte[] stream;
+        if (args.length > 0 && !args[0].equals("-")) {
+            stream = Files.readAllBytes(Paths.get(args[0]));
+        } else {
+            stream = syntheticStream(SYNTHETIC_MESSAGES);
+        }
+        int readSize = args.length > 1 ? Integer.parseInt(args[1]) : 2048;
+        long messages = countMessages(stream);
+        System.out.println(String.format("replaying %d messages, %d bytes, in reads of %d bytes",
+                messages, stream.length, readSize));
+
+        long before = Long.MAX_VALUE;
+        long after = Long.MAX_VALUE;
+        long beforeBytes = 0;
+        long afterBytes = 0;
+        /* the first round warms up both paths */
+        for (int i = 0; i <= ROUNDS; i++) {
+            ListSink listSink = new ListSink();
+            long[] b = replay(stream, readSize, new ListDecoder(), listSink,
+                    UnpooledByteBufAllocator.DEFAULT);
+            MessageSink messageSink = new MessageSink();
+            long[] a = replay(stream, readSize, new OFMessageDecoder(), messageSink,
+                    PooledByteBufAllocator.DEFAULT);
+            if (listSink.received != messages || messageSink.received != messages)
+                throw new IllegalStateException("lost messages: " + listSink.received
+                        + " and " + messageSink.received + " of " + messages);
+            if (i > 0 && b[0] < before) {
+                before = b[0];
+                beforeBytes = b[1];
+            }
+            if (i > 0 && a[0] < after) {
+                after = a[0];
+                afterBytes = a[1];
+            }
+        }
+
+        double perBefore = messages * 1e9 / before;
+        double perAfter = messages * 1e9 / after;
+        System.out.println(String.format(
+                "list per read, unpooled: %.0f msgs/s %s, single messages, pooled: %.0f msgs/s %s, speedup: %.2fx",
+                perBefore, allocated(beforeBytes, messages),
+                perAfter, allocated(afterBytes, messages), perAfter / perBefore));
+    }
+
+    /**
+     * @return the time taken and the bytes allocated by the replay, or -1
+     * if the JVM does not tell
+     */
+    private static long[] replay(byte[] stream, int readSize, ByteToMessageDecoder decoder,
+            ChannelHandler sink, ByteBufAllocator alloc) {
+        EmbeddedChannel channel = new EmbeddedChannel(decoder, sink);
+        channel.config().setAllocator(alloc);
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int offset = 0; offset < stream.length; offset += readSize) {
+            /* a socket read goes to a buffer from the channel's allocator */
+            int length = Math.min(readSize, stream.length - offset);
+            ByteBuf buf = alloc.heapBuffer(length);
+            buf.writeBytes(stream, offset, length);
+            channel.writeInbound(buf);
+        }
+        long time = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+        channel.finish();
+        return new long[] { time, allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore };
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static String allocated(long bytes, long messages) {
+        return bytes < 0 ? "" : String.format("(%.0f bytes allocated/msg)", (double) bytes / messages);
+    }
+
+    private static long countMessages(byte[] stream) throws Exception {
+        OFMessageReader<OFMessage> reader = OFFactories.getGenericReader();
+        ByteBuf buf = Unpooled.wrappedBuffer(stream);
+        long n = 0;
+        while (reader.readFrom(buf) != null) {
+            n++;
+        }
+        return n;
+    }
+
+    private static byte[] syntheticStream(int count) {
+        OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+        Random random = new Random(42);
+        ByteBuf buf = Unpooled.buffer();
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(100);
+            OFMessage m;
+            if (kind < 90) {
+                /* LLDPs and ARPs at the minimum frame size, then IP traffic */
+                int size = kind < 30 ? 60 : 64 + random.nextInt(1514 - 64);
+                byte[] data = new byte[size];
+                random.nextBytes(data);
+                m = factory.buildPacketIn()
+                        .setXid(i)
+                        .setBufferId(OFBufferId.NO_BUFFER)
+                        .setTotalLen(size)
+                        .setReason(OFPacketInReason.NO_MATCH)
+                        .setTableId(TableId.of(0))
+                        .setCookie(U64.ZERO)
+                        .setMatch(factory.buildMatch()
+                                .setExact(MatchField.IN_PORT, OFPort.of(1 + random.nextInt(48)))
+                                .build())
+                        .setData(data)
+                        .build();
+            } else if (kind < 95) {
+                m = factory.buildEchoRequest().setXid(i).build();
+            } else if (kind < 98) {
+                m = factory.buildFlowRemoved()
+                        .setXid(i)
+                        .setCookie(U64.of(random.nextInt()))
+                        .setReason(OFFlowRemovedReason.IDLE_TIMEOUT)
+                        .setTableId(TableId.of(0))
+                        .setIdleTimeout(5)
+                        .setPacketCount(U64.of(random.nextInt(1000)))
+                        .setByteCount(U64.of(random.nextInt(1000000)))
+                        .setMatch(factory.buildMatch()
+                                .setExact(MatchField.IN_PORT, OFPort.of(1 + random.nextInt(48)))
+                                .build())
+                        .build();
+            } else {
+                m = factory.buildPortStatus()
+                        .setXid(i)
+                        .setReason(OFPortReason.MODIFY)
+                        .setDesc(factory.buildPortDesc()
+                                .setPortNo(OFPort.of(1 + random.nextInt(48)))
+                                .setHwAddr(MacAddress.of(random.nextInt()))
+                                .setName("eth" + random.nextInt(48))
+                                .build())
+                        .build();
+            }
+            m.writeTo(buf);
+        }
+        byte[] stream = new byte[buf.readableBytes()];
+        buf.readBytes(stream);
+        return stream;
+    }
+}
@@ -0,0 +1,173 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.PacketInAdmissionControl.Level;
+import net.floodlightcontroller.core.internal.PacketInAdmissionControl.Limit;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+public class PacketInAdmissionControlTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private ControllerCounters counters;
+    private IOFSwitch sw1;
+    private IOFSwitch sw2;
+
+    @Before
+    public void setUp() {
+        IDebugCounterService debugCounterService = new DebugCounterServiceImpl();
+        counters = new ControllerCounters(debugCounterService);
+        sw1 = createSwitch(1);
+        sw2 = createSwitch(2);
+    }
+
+    private IOFSwitch createSwitch(long dpid) {
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.of(dpid)).anyTimes();
+        replay(sw);
+        return sw;
+    }
+
+    private OFPacketIn createPacketIn(int inPort, int srcMac) {
+        byte[] data = new byte[] {
+                0x00, 0x00, 0x00, 0x00, 0x00, 0x01,
+                0x00, 0x00, 0x00, 0x00, 0x00, (byte) srcMac,
+                0x08, 0x00 };
+        return factory.buildPacketIn()
+                .setMatch(factory.buildMatch().setExact(MatchField.IN_PORT, OFPort.of(inPort)).build())
+                .setReason(OFPacketInReason.NO_MATCH)
+                .setData(data)
+                .build();
+    }
+
+    @Test
+    public void testDisabled() {
+        PacketInAdmissionControl admission = new PacketInAdmissionControl(counters, false,
+                new Limit(1, 1), new Limit(1, 1), new Limit(1, 1));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(admission.admit(sw1, createPacketIn(1, 1)));
+        }
+        assertEquals(0, admission.getBucketCount(Level.SWITCH));
+    }
+
+    @Test
+    public void testSwitchLimit() {
+        PacketInAdmissionControl admission = new PacketInAdmissionControl(counters, true,
+                new Limit(0.001, 5), new Limit(0, 0), new Limit(0, 0));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(admission.admit(sw1, createPacketIn(i, 1)));
+        }
+        assertFalse(admission.admit(sw1, createPacketIn(1, 1)));
+
+        /* other switches have their own bucket */
+        assertTrue(admission.admit(sw2, createPacketIn(1, 1)));
+        assertEquals(6, counters.packetInAdmitted.getCounterValue());
+        assertEquals(1, counters.packetInRejectedSwitch.getCounterValue());
+    }
+
+    @Test
+    public void testPortAndMacLimits() {
+        PacketInAdmissionControl admission = new PacketInAdmissionControl(counters, true,
+                new Limit(0, 0), new Limit(0.001, 2), new Limit(0.001, 3));
+        assertTrue(admission.admit(sw1, createPacketIn(1, 1)));
+        assertTrue(admission.admit(sw1, createPacketIn(1, 2)));
+        assertFalse(admission.admit(sw1, createPacketIn(1, 3)));
+        assertEquals(1, counters.packetInRejectedPort.getCounterValue());
+
+        /* a storm from one MAC is stopped on every port */
+        assertTrue(admission.admit(sw1, createPacketIn(2, 1)));
+        assertTrue(admission.admit(sw1, createPacketIn(3, 1)));
+        assertFalse(admission.admit(sw1, createPacketIn(4, 1)));
+        assertEquals(1, counters.packetInRejectedMac.getCounterValue());
+        assertEquals(4, admission.getBucketCount(Level.PORT));
+    }
+
+    @Test
+    public void testFloodingPortDoesNotDrainSwitch() {
+        PacketInAdmissionControl admission = new PacketInAdmissionControl(counters, true,
+                new Limit(0.001, 5), new Limit(0.001, 2), new Limit(0, 0));
+        assertTrue(admission.admit(sw1, createPacketIn(1, 1)));
+        assertTrue(admission.admit(sw1, createPacketIn(1, 1)));
+        for (int i = 0; i < 100; i++) {
+            assertFalse(admission.admit(sw1, createPacketIn(1, 1)));
+        }
+        assertEquals(100, counters.packetInRejectedPort.getCounterValue());
+
+        /* the rejected packet-ins gave their switch tokens back */
+        assertTrue(admission.admit(sw1, createPacketIn(2, 1)));
+        assertTrue(admission.admit(sw1, createPacketIn(2, 1)));
+        assertEquals(0, counters.packetInRejectedSwitch.getCounterValue());
+    }
+
+    @Test
+    public void testFloodingMacDoesNotDrainPort() {
+        PacketInAdmissionControl admission = new PacketInAdmissionControl(counters, true,
+                new Limit(0.001, 10), new Limit(0.001, 5), new Limit(0.001, 1));
+        assertTrue(admission.admit(sw1, createPacketIn(1, 1)));
+        for (int i = 0; i < 100; i++) {
+            assertFalse(admission.admit(sw1, createPacketIn(1, 1)));
+        }
+        for (int i = 2; i < 6; i++) {
+            assertTrue(admission.admit(sw1, createPacketIn(1, i)));
+        }
+        assertEquals(100, counters.packetInRejectedMac.getCounterValue());
+        assertEquals(0, counters.packetInRejectedPort.getCounterValue());
+    }
+
+    @Test
+    public void testRefill() throws Exception {
+        PacketInAdmissionControl admission = new PacketInAdmissionControl(counters, true,
+                new Limit(1000, 1), new Limit(0, 0), new Limit(0, 0));
+        assertTrue(admission.admit(sw1, createPacketIn(1, 1)));
+        assertFalse(admission.admit(sw1, createPacketIn(1, 1)));
+        Thread.sleep(20);
+        assertTrue(admission.admit(sw1, createPacketIn(1, 1)));
+    }
+
+    @Test
+    public void testAdaptiveScale() throws Exception {
+        PacketInAdmissionControl admission = new PacketInAdmissionControl(counters, true,
+                new Limit(1000, 1000), new Limit(0, 0), new Limit(0, 0));
+        admission.setAdaptive(true, 100);
+        assertEquals(1.0, admission.getScale(), 0.0);
+
+        /* slow listeners scale the rates down */
+        Thread.sleep(110);
+        admission.recordLatency(1000000);
+        assertTrue(admission.getScale() < 1.0);
+        double scaled = admission.getScale();
+
+        /* fast ones scale them back up */
+        for (int i = 0; i < 200; i++) {
+            admission.recordLatency(1000);
+        }
+        Thread.sleep(110);
+        admission.recordLatency(1000);
+        assertTrue(admission.getScale() > scaled);
+
+        admission.setAdaptive(false, 100);
+        assertEquals(1.0, admission.getScale(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimit() {
+        new Limit(10, 0);
+    }
+}
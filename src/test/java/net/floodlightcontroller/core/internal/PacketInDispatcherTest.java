@@ -0,0 +1,174 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.PacketInDispatcher.IPacketInHandler;
+import net.floodlightcontroller.core.internal.PacketInDispatcher.OverflowPolicy;
+import net.floodlightcontroller.packet.Ethernet;
+
+public class PacketInDispatcherTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private PacketInDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    private IOFSwitch createSwitch(long dpid) {
+        IOFSwitch sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.of(dpid)).anyTimes();
+        replay(sw);
+        return sw;
+    }
+
+    private OFMessage createPacketIn(long xid) {
+        return factory.buildPacketIn()
+                .setXid(xid)
+                .setReason(OFPacketInReason.NO_MATCH)
+                .setData(new byte[] { 0x01 })
+                .build();
+    }
+
+    /** packet-ins of a switch are handled in order, on a single worker */
+    @Test(timeout = 10000)
+    public void testPerSwitchOrdering() throws Exception {
+        final int switches = 8;
+        final int perSwitch = 500;
+        final CountDownLatch done = new CountDownLatch(switches * perSwitch);
+        final Map<DatapathId, List<Long>> seen = new HashMap<DatapathId, List<Long>>();
+        final Map<DatapathId, List<String>> threads = new HashMap<DatapathId, List<String>>();
+
+        dispatcher = new PacketInDispatcher(new IPacketInHandler() {
+            @Override
+            public void handle(IOFSwitch sw, OFMessage m, Ethernet eth) {
+                synchronized (seen) {
+                    if (!seen.containsKey(sw.getId())) {
+                        seen.put(sw.getId(), new ArrayList<Long>());
+                        threads.put(sw.getId(), new ArrayList<String>());
+                    }
+                    seen.get(sw.getId()).add(m.getXid());
+                    threads.get(sw.getId()).add(Thread.currentThread().getName());
+                }
+                done.countDown();
+            }
+        }, null, 4, switches * perSwitch, OverflowPolicy.BLOCK, 1000);
+
+        List<IOFSwitch> sws = new ArrayList<IOFSwitch>();
+        for (int i = 1; i <= switches; i++) {
+            sws.add(createSwitch(i));
+        }
+        for (int x = 0; x < perSwitch; x++) {
+            for (IOFSwitch sw : sws) {
+                assertTrue(dispatcher.dispatch(sw, createPacketIn(x), null));
+            }
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (IOFSwitch sw : sws) {
+            List<Long> xids = seen.get(sw.getId());
+            assertEquals(perSwitch, xids.size());
+            for (int x = 0; x < perSwitch; x++) {
+                assertEquals(x, xids.get(x).longValue());
+            }
+            assertEquals(1, new java.util.HashSet<String>(threads.get(sw.getId())).size());
+        }
+        assertEquals(switches * perSwitch, dispatcher.getQueuedCount());
+        assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    /** a full queue drops the new packet-in, or the oldest one */
+    @Test(timeout = 10000)
+    public void testOverflowPolicies() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Long> handled = Collections.synchronizedList(new ArrayList<Long>());
+        IPacketInHandler handler = new IPacketInHandler() {
+            @Override
+            public void handle(IOFSwitch sw, OFMessage m, Ethernet eth) {
+                blocked.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                handled.add(m.getXid());
+            }
+        };
+        IOFSwitch sw = createSwitch(1);
+
+        dispatcher = new PacketInDispatcher(handler, null, 1, 2, OverflowPolicy.DROP_OLDEST, 0);
+        assertTrue(dispatcher.dispatch(sw, createPacketIn(0), null));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        /* the worker is busy with 0, 1 is dropped to make room for 3 */
+        assertTrue(dispatcher.dispatch(sw, createPacketIn(1), null));
+        assertTrue(dispatcher.dispatch(sw, createPacketIn(2), null));
+        assertTrue(dispatcher.dispatch(sw, createPacketIn(3), null));
+        assertEquals(2, dispatcher.getQueueDepth());
+        assertEquals(2, dispatcher.getMaxQueueDepth());
+        assertEquals(1, dispatcher.getDroppedCount());
+
+        release.countDown();
+        for (int i = 0; i < 500 && dispatcher.getProcessedCount() < 3; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, dispatcher.getProcessedCount());
+        assertEquals(java.util.Arrays.asList(0L, 2L, 3L), handled);
+        dispatcher.shutdown();
+
+        final CountDownLatch hold = new CountDownLatch(1);
+        dispatcher = new PacketInDispatcher(new IPacketInHandler() {
+            @Override
+            public void handle(IOFSwitch s, OFMessage m, Ethernet eth) {
+                try {
+                    hold.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, null, 1, 1, OverflowPolicy.DROP_NEWEST, 0);
+        dispatcher.dispatch(sw, createPacketIn(0), null);
+        for (int i = 0; i < 500 && dispatcher.getQueueDepth() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(dispatcher.dispatch(sw, createPacketIn(1), null));
+        assertFalse(dispatcher.dispatch(sw, createPacketIn(2), null));
+        assertEquals(1, dispatcher.getDroppedCount());
+        hold.countDown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidConfig() {
+        new PacketInDispatcher(new IPacketInHandler() {
+            @Override
+            public void handle(IOFSwitch sw, OFMessage m, Ethernet eth) {
+            }
+        }, null, 0, 10, OverflowPolicy.BLOCK, 0);
+    }
+}
@@ -48,6 +48,7 @@ import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.RoleInfo;
 import net.floodlightcontroller.core.internal.Controller.IUpdate;
 import net.floodlightcontroller.core.internal.Controller.ModuleLoaderState;
+import net.floodlightcontroller.core.internal.PacketInAdmissionControl;
 import net.floodlightcontroller.core.internal.RoleManager;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
@@ -78,6 +79,11 @@ public class MockFloodlightProvider implements IFloodlightModule, IFloodlightPro
     private volatile Future<?> mostRecentUpdateFuture;
     // paag
     private ConcurrentLinkedQueue<IControllerCompletionListener> completionListeners;
+    private final PacketInAdmissionControl packetInAdmissionControl =
+            new PacketInAdmissionControl(null, false,
+                    new PacketInAdmissionControl.Limit(0, 0),
+                    new PacketInAdmissionControl.Limit(0, 0),
+                    new PacketInAdmissionControl.Limit(0, 0));
 
     /**
      *
@@ -375,6 +381,11 @@ public class MockFloodlightProvider implements IFloodlightModule, IFloodlightPro
         return m;
     }
 
+    @Override
+    public PacketInAdmissionControl getPacketInAdmissionControl() {
+        return packetInAdmissionControl;
+    }
+
     @Override
     public Long getUptime() {
         return 1000000L;
@@ -0,0 +1,71 @@
+package net.floodlightcontroller.core.util;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFType;
+
+import net.floodlightcontroller.core.IOFMessageListener;
+
+public class EnumListenerDispatcherTest {
+
+    private IOFMessageListener createListener(String name, String... prereqs) {
+        IOFMessageListener mock = createNiceMock(IOFMessageListener.class);
+        expect(mock.getName()).andReturn(name).anyTimes();
+        for (String p : prereqs) {
+            expect(mock.isCallbackOrderingPrereq(OFType.PACKET_IN, p)).andReturn(true).anyTimes();
+        }
+        replay(mock);
+        return mock;
+    }
+
+    @Test
+    public void testOrderedSnapshots() {
+        EnumListenerDispatcher<OFType, IOFMessageListener> ld =
+                new EnumListenerDispatcher<OFType, IOFMessageListener>(OFType.class, IOFMessageListener.class);
+        assertEquals(0, ld.getListeners(OFType.PACKET_IN).length);
+
+        IOFMessageListener b = createListener("b", "a");
+        IOFMessageListener a = createListener("a");
+        IOFMessageListener c = createListener("c");
+        ld.addListener(OFType.PACKET_IN, b);
+        ld.addListener(OFType.PACKET_IN, a);
+        ld.addListener(OFType.FLOW_REMOVED, c);
+
+        IOFMessageListener[] pi = ld.getListeners(OFType.PACKET_IN);
+        assertEquals(2, pi.length);
+        assertSame(a, pi[0]);
+        assertSame(b, pi[1]);
+        /* the snapshot is only republished on changes */
+        assertSame(pi, ld.getListeners(OFType.PACKET_IN));
+        assertEquals(1, ld.getListeners(OFType.FLOW_REMOVED).length);
+
+        ld.removeListener(OFType.PACKET_IN, a);
+        IOFMessageListener[] pi2 = ld.getListeners(OFType.PACKET_IN);
+        assertNotSame(pi, pi2);
+        assertEquals(1, pi2.length);
+        assertSame(b, pi2[0]);
+        /* readers holding the old snapshot are not affected */
+        assertEquals(2, pi.length);
+
+        Map<OFType, List<IOFMessageListener>> lists = ld.getOrderedListeners();
+        assertEquals(2, lists.size());
+        assertSame(c, lists.get(OFType.FLOW_REMOVED).get(0));
+
+        ld.removeListeners(OFType.PACKET_IN);
+        assertEquals(0, ld.getListeners(OFType.PACKET_IN).length);
+        assertNull(ld.getOrderedListeners().get(OFType.PACKET_IN));
+
+        ld.clearListeners();
+        assertEquals(0, ld.getOrderedListeners().size());
+    }
+}
@@ -0,0 +1,86 @@
+package net.floodlightcontroller.debugcounter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CounterTimeSeriesTest {
+    private DebugCounterServiceImpl counterService;
+    private IDebugCounter packetIn;
+
+    @Before
+    public void setUp() {
+        counterService = new DebugCounterServiceImpl();
+        counterService.registerModule("mod");
+        packetIn = counterService.registerCounter("mod", "packet-in", "packet-ins");
+        /* 1s samples kept for 4s: 5 samples */
+        counterService.enableTimeSeries(1000, 4000);
+    }
+
+    @Test
+    public void testSamplesAndRates() {
+        for (int i = 1; i <= 3; i++) {
+            packetIn.add(100 * i);
+            counterService.sampleCounters(i * 1000);
+        }
+        CounterSamples samples = counterService.getCounterSamples("mod", "packet-in", 0);
+        assertArrayEquals(new long[] { 1000, 2000, 3000 }, samples.getTimes());
+        assertArrayEquals(new long[] { 100, 300, 600 }, samples.getValues());
+        assertArrayEquals(new double[] { 200, 300 }, samples.getRates(), 0.0);
+        assertEquals(250, samples.getRate(), 0.0);
+
+        /* only the samples after the given time */
+        samples = counterService.getCounterSamples("mod", "packet-in", 2000);
+        assertArrayEquals(new long[] { 3000 }, samples.getTimes());
+        assertTrue(Double.isNaN(samples.getRate()));
+
+        assertEquals(300, counterService.getCounterRate("mod", "packet-in", 1000), 0.0);
+        assertEquals(250, counterService.getCounterRate("mod", "packet-in", 2000), 0.0);
+        assertNull(counterService.getCounterSamples("mod", "nosuchcounter", 0));
+    }
+
+    @Test
+    public void testRetention() {
+        for (int i = 1; i <= 8; i++) {
+            packetIn.increment();
+            counterService.sampleCounters(i * 1000);
+        }
+        CounterSamples samples = counterService.getCounterSamples("mod", "packet-in", 0);
+        assertArrayEquals(new long[] { 4000, 5000, 6000, 7000, 8000 }, samples.getTimes());
+        assertArrayEquals(new long[] { 4, 5, 6, 7, 8 }, samples.getValues());
+    }
+
+    @Test
+    public void testResetAndLateCounters() {
+        packetIn.add(500);
+        counterService.sampleCounters(1000);
+        IDebugCounter late = counterService.registerCounter("mod", "late", "registered late");
+        counterService.resetAllCounters();
+        packetIn.add(50);
+        late.add(10);
+        counterService.sampleCounters(2000);
+
+        /* a reset counter counted from zero */
+        assertArrayEquals(new double[] { 50 },
+                counterService.getCounterSamples("mod", "packet-in", 0).getRates(), 0.0);
+        /* a counter registered after a sample starts with the next one */
+        CounterSamples samples = counterService.getCounterSamples("mod", "late", 0);
+        assertArrayEquals(new long[] { 2000 }, samples.getTimes());
+        assertArrayEquals(new long[] { 10 }, samples.getValues());
+    }
+
+    @Test
+    public void testDisabled() {
+        DebugCounterServiceImpl disabled = new DebugCounterServiceImpl();
+        disabled.registerModule("mod");
+        disabled.registerCounter("mod", "packet-in", "packet-ins");
+        disabled.sampleCounters(1000);
+        assertNull(disabled.getCounterSamples("mod", "packet-in", 0));
+        assertTrue(Double.isNaN(disabled.getCounterRate("mod", "packet-in", 1000)));
+        assertEquals(0, disabled.getTimeSeriesResolutionMs());
+    }
+}
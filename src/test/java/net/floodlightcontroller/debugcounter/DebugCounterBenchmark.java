@@ -0,0 +1,114 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.debugcounter;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
+
+/**
+ * Compares the throughput of 1 to 32 threads incrementing the same counter,
+ * for a DebugCounterImpl (striped cells, lastModified computed on read)
+ * against the previous implementation (one AtomicLong and a timestamp
+ * written on every increment).
+ *
+ * Not a unit test, run it with:
+ * java -cp ... net.floodlightcontroller.debugcounter.DebugCounterBenchmark
+ */
+public class DebugCounterBenchmark {
+    private static final int INCREMENTS = 2000000;
+    private static final int ROUNDS = 3;
+
+    /** The counter as it was before, for comparison */
+    private static class AtomicCounter {
+        private final AtomicLong value = new AtomicLong();
+        private final Date lastModified = new Date();
+
+        void increment() {
+            value.incrementAndGet();
+            lastModified.setTime(System.currentTimeMillis());
+        }
+    }
+
+    private interface Incrementer {
+        void increment();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] threadCounts = new int[] { 1, 2, 4, 8, 16, 32 };
+        for (int threads : threadCounts) {
+            long atomic = Long.MAX_VALUE;
+            long striped = Long.MAX_VALUE;
+            /* the first round warms up both counters */
+            for (int i = 0; i <= ROUNDS; i++) {
+                final AtomicCounter a = new AtomicCounter();
+                long t = run(threads, new Incrementer() {
+                    @Override
+                    public void increment() {
+                        a.increment();
+                    }
+                });
+                final DebugCounterImpl c = new DebugCounterImpl("bench", "counter",
+                        "benchmark counter", Collections.<MetaData>emptyList());
+                long u = run(threads, new Incrementer() {
+                    @Override
+                    public void increment() {
+                        c.increment();
+                    }
+                });
+                if (c.getCounterValue() != (long) threads * INCREMENTS)
+                    throw new IllegalStateException("lost increments: " + c.getCounterValue());
+                if (i > 0) {
+                    atomic = Math.min(atomic, t);
+                    striped = Math.min(striped, u);
+                }
+            }
+            double total = (double) threads * INCREMENTS;
+            System.out.println(String.format(
+                    "threads=%2d AtomicLong+timestamp: %6.1f M increments/s, striped: %7.1f M increments/s, speedup: %.1fx",
+                    threads, total * 1e3 / atomic, total * 1e3 / striped,
+                    (double) atomic / striped));
+        }
+    }
+
+    /** @return the time taken by all the threads, in ns */
+    private static long run(int threads, final Incrementer incrementer) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < INCREMENTS; j++) {
+                        incrementer.increment();
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - begin;
+    }
+}
@@ -78,4 +78,48 @@ public class DebugCounterImplTest {
         assertEquals(ImmutableSet.of(MetaData.WARN, MetaData.DROP),
                      c2.getMetaData());
     }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        final DebugCounterImpl c =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        c.increment();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(800000L, c.getCounterValue());
+    }
+
+    @Test
+    public void testLastModified() throws Exception {
+        DebugCounterImpl c =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        long created = c.getLastModified();
+        Thread.sleep(5);
+        /* unchanged counters keep their time */
+        assertEquals(created, c.getLastModified());
+
+        c.increment();
+        long modified = c.getLastModified();
+        assertTrue(modified > created);
+        Thread.sleep(5);
+        assertEquals(modified, c.getLastModified());
+
+        Thread.sleep(5);
+        c.reset();
+        assertTrue(c.getLastModified() > modified);
+    }
 }
@@ -0,0 +1,244 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class AsyncElectionTest {
+
+	private final String none = "none";
+	private final Map<AsyncElection, String> ids = new HashMap<>();
+
+	@Test
+	public void testAwaitLeader() throws Exception {
+		final AsyncElection ae = new AsyncElection("127.0.0.1:4242", "1");
+		Thread setter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+				}
+				ae.setLeader("2");
+			}
+		});
+		setter.setDaemon(true);
+		setter.start();
+		assertEquals("2", ae.awaitLeader(5000));
+	}
+
+	@Test
+	public void testAwaitLeaderTimeout() throws Exception {
+		AsyncElection ae = new AsyncElection("127.0.0.1:4242", "1");
+		long start = System.nanoTime();
+		assertEquals(none, ae.awaitLeader(100));
+		assertTrue(System.nanoTime() - start >= 100 * 1000000L);
+	}
+
+	@Test
+	public void testLeaderChangeListener() {
+		AsyncElection ae = new AsyncElection("127.0.0.1:4242", "1");
+		final List<String> changes = new ArrayList<>();
+		ae.addLeaderChangeListener(new ILeaderChangeListener() {
+			@Override
+			public void leaderChanged(String oldLeader, String newLeader) {
+				changes.add(oldLeader + "->" + newLeader);
+			}
+		});
+		ae.setLeader("3");
+		ae.setLeader("3");
+		ae.setLeader(none);
+		assertEquals(2, changes.size());
+		assertEquals("none->3", changes.get(0));
+		assertEquals("3->none", changes.get(1));
+	}
+
+	@Test
+	public void testVoteOncePerTerm() {
+		AsyncElection ae = new AsyncElection("127.0.0.1:4242", "1");
+		HAMessage reply = ae.handleVoteRequest(new HAMessage(HAMessage.Type.VOTE, 1, 2, 10));
+		assertEquals(HAMessage.Type.VOTEOK, reply.getType());
+		assertEquals(1, ae.getTerm());
+
+		reply = ae.handleVoteRequest(new HAMessage(HAMessage.Type.VOTE, 1, 3, 11));
+		assertEquals(HAMessage.Type.NO, reply.getType());
+		reply = ae.handleVoteRequest(new HAMessage(HAMessage.Type.VOTE, 1, 2, 12));
+		assertEquals(HAMessage.Type.VOTEOK, reply.getType());
+
+		reply = ae.handleVoteRequest(new HAMessage(HAMessage.Type.VOTE, 2, 3, 13));
+		assertEquals(HAMessage.Type.VOTEOK, reply.getType());
+		assertEquals(2, reply.getTerm());
+		assertEquals(13, reply.getTimestamp());
+
+		reply = ae.handleVoteRequest(new HAMessage(HAMessage.Type.VOTE, 1, 2, 14));
+		assertEquals(HAMessage.Type.NO, reply.getType());
+		assertEquals(2, reply.getTerm());
+	}
+
+	@Test
+	public void testPreVoteKeepsTerm() {
+		AsyncElection ae = new AsyncElection("127.0.0.1:4242", "1");
+		HAMessage reply = ae.handleVoteRequest(new HAMessage(HAMessage.Type.PREVOTE, 1, 2, 10));
+		assertEquals(HAMessage.Type.VOTEOK, reply.getType());
+		reply = ae.handleVoteRequest(new HAMessage(HAMessage.Type.PREVOTE, 1, 3, 11));
+		assertEquals(HAMessage.Type.VOTEOK, reply.getType());
+		assertEquals(0, ae.getTerm());
+		reply = ae.handleVoteRequest(new HAMessage(HAMessage.Type.PREVOTE, 0, 3, 12));
+		assertEquals(HAMessage.Type.NO, reply.getType());
+	}
+
+	@Test
+	public void testLeaseIsHonoured() {
+		AsyncElection ae = new AsyncElection("127.0.0.1:4242", "1");
+		HAMessage reply = ae.handleHeartbeat(new HAMessage(HAMessage.Type.HEARTBEAT, 3, 2, 10));
+		assertEquals(HAMessage.Type.HBACK, reply.getType());
+		assertEquals(3, reply.getTerm());
+		assertEquals("2", ae.getLeader());
+
+		reply = ae.handleVoteRequest(new HAMessage(HAMessage.Type.PREVOTE, 4, 3, 11));
+		assertEquals(HAMessage.Type.NO, reply.getType());
+		reply = ae.handleVoteRequest(new HAMessage(HAMessage.Type.VOTE, 4, 3, 12));
+		assertEquals(HAMessage.Type.NO, reply.getType());
+		assertEquals(3, ae.getTerm());
+		assertEquals("2", ae.getLeader());
+
+		reply = ae.handleHeartbeat(new HAMessage(HAMessage.Type.HEARTBEAT, 2, 3, 13));
+		assertEquals(HAMessage.Type.NO, reply.getType());
+		assertEquals(3, reply.getTerm());
+		assertEquals("2", ae.getLeader());
+	}
+
+	@Test
+	public void testElectionOnLoopback() throws Exception {
+		List<AsyncElection> nodes = startNodes(4352);
+		try {
+			AsyncElection leader = awaitAgreement(nodes, 5000);
+			assertNotNull(leader);
+			long term = leader.getTerm();
+			assertTrue(term > 0);
+			for (AsyncElection ae : nodes) {
+				assertEquals(term, ae.getTerm());
+			}
+		} finally {
+			stopNodes(nodes);
+		}
+	}
+
+	@Test
+	public void testLeaderFailover() throws Exception {
+		List<AsyncElection> nodes = startNodes(4362);
+		try {
+			AsyncElection leader = awaitAgreement(nodes, 5000);
+			assertNotNull(leader);
+			long term = leader.getTerm();
+
+			leader.stop();
+			List<AsyncElection> rest = new ArrayList<>(nodes);
+			rest.remove(leader);
+			long start = System.nanoTime();
+			AsyncElection newLeader = awaitAgreement(rest, 5000);
+			long elapsed = (System.nanoTime() - start) / 1000000;
+
+			assertNotNull(newLeader);
+			assertTrue(newLeader.getTerm() > term);
+			assertTrue("Failover took " + elapsed + " ms", elapsed < 3000);
+		} finally {
+			stopNodes(nodes);
+		}
+	}
+
+	@Test
+	public void testLeaderStepsDownWithoutMajority() throws Exception {
+		List<AsyncElection> nodes = startNodes(4372);
+		try {
+			AsyncElection leader = awaitAgreement(nodes, 5000);
+			assertNotNull(leader);
+
+			for (AsyncElection ae : nodes) {
+				if (ae != leader) {
+					ae.stop();
+				}
+			}
+			Thread.sleep(1000);
+			assertEquals(none, leader.getLeader());
+		} finally {
+			stopNodes(nodes);
+		}
+	}
+
+	/**
+	 * Starts a three node cluster on consecutive loopback ports.
+	 */
+
+	private List<AsyncElection> startNodes(int basePort) {
+		List<String> servers = Arrays.asList("127.0.0.1:" + basePort, "127.0.0.1:" + (basePort + 1),
+				"127.0.0.1:" + (basePort + 2));
+		List<AsyncElection> nodes = new ArrayList<>();
+		for (int i = 0; i < servers.size(); i++) {
+			String id = String.valueOf(i + 1);
+			NetworkNode network = new NetworkNode(servers.get(i), id, servers, false);
+			AsyncElection ae = new AsyncElection(servers.get(i), id, network, null);
+			ids.put(ae, id);
+			nodes.add(ae);
+		}
+		for (AsyncElection ae : nodes) {
+			ae.run();
+		}
+		return nodes;
+	}
+
+	private void stopNodes(List<AsyncElection> nodes) {
+		for (AsyncElection ae : nodes) {
+			ae.stop();
+		}
+	}
+
+	/**
+	 * Waits until all given nodes agree on a leader among them.
+	 *
+	 * @return The leader, or null if they did not agree in time.
+	 */
+
+	private AsyncElection awaitAgreement(List<AsyncElection> nodes, long timeoutMs) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutMs * 1000000L;
+		while (System.nanoTime() < deadline) {
+			String leader = nodes.get(0).getLeader();
+			boolean agreed = !leader.equals(none);
+			for (AsyncElection ae : nodes) {
+				agreed = agreed && ae.getLeader().equals(leader);
+			}
+			if (agreed) {
+				for (AsyncElection ae : nodes) {
+					if (leader.equals(ids.get(ae))) {
+						return ae;
+					}
+				}
+			}
+			Thread.sleep(20);
+		}
+		return null;
+	}
+
+}
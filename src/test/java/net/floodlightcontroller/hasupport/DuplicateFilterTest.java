@@ -0,0 +1,109 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the rotating Bloom filter used by the FilterQueues.
+ */
+public class DuplicateFilterTest {
+
+	@Test
+	public void testDuplicates() {
+		DuplicateFilter filter = new DuplicateFilter();
+		assertTrue(filter.add(DuplicateFilter.hash("cat")));
+		assertFalse(filter.add(DuplicateFilter.hash("cat")));
+		assertTrue(filter.add(DuplicateFilter.hash("dog")));
+		assertTrue(filter.mightContain(DuplicateFilter.hash("dog")));
+
+		assertEquals(1, filter.getHits());
+		assertEquals(2, filter.getMisses());
+		assertEquals(2, filter.size());
+
+		/**
+		 * A new hash which is not accepted is not remembered.
+		 */
+		assertFalse(filter.add(DuplicateFilter.hash("cow"), () -> false));
+		assertTrue(filter.add(DuplicateFilter.hash("cow"), () -> true));
+		assertFalse(filter.add(DuplicateFilter.hash("cow"), () -> true));
+		assertEquals(3, filter.size());
+
+		filter.clear();
+		assertEquals(0, filter.size());
+		assertFalse(filter.mightContain(DuplicateFilter.hash("cat")));
+	}
+
+	@Test
+	public void testBoundedMemory() {
+		DuplicateFilter filter = new DuplicateFilter(0.01, 4096, 0);
+		assertEquals(4096, filter.getResidentBytes());
+		assertEquals(7, filter.getHashCount());
+
+		/**
+		 * Once both generations have been filled the oldest entries are
+		 * forgotten, and the size never exceeds two generations.
+		 */
+		int capacity = filter.getCapacity();
+		for (int i = 0; i < 10 * capacity; i++) {
+			filter.add(DuplicateFilter.hash("update " + i));
+			assertTrue(filter.size() <= 2L * capacity);
+		}
+		assertEquals(4096, filter.getResidentBytes());
+		assertFalse(filter.mightContain(DuplicateFilter.hash("update 0")));
+		assertTrue(filter.mightContain(DuplicateFilter.hash("update " + (10 * capacity - 1))));
+	}
+
+	@Test
+	public void testFalsePositiveRate() {
+		DuplicateFilter filter = new DuplicateFilter(0.01, 64 * 1024, 0);
+		int n = filter.getCapacity() - 1;
+		for (int i = 0; i < n; i++) {
+			filter.add(DuplicateFilter.hash("seen " + i));
+		}
+
+		int falsePositives = 0;
+		int trials = 20000;
+		for (int i = 0; i < trials; i++) {
+			if (filter.mightContain(DuplicateFilter.hash("new " + i))) {
+				falsePositives++;
+			}
+		}
+		assertTrue("False positives: " + falsePositives, falsePositives < trials * 0.02);
+	}
+
+	@Test
+	public void testWindow() throws InterruptedException {
+		DuplicateFilter filter = new DuplicateFilter(0.01, 4096, 20);
+		filter.add(DuplicateFilter.hash("cat"));
+		Thread.sleep(25);
+		assertFalse(filter.add(DuplicateFilter.hash("cat")));
+		Thread.sleep(25);
+		filter.add(DuplicateFilter.hash("dog"));
+		Thread.sleep(25);
+		filter.add(DuplicateFilter.hash("dog"));
+		assertFalse(filter.mightContain(DuplicateFilter.hash("cat")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadRate() {
+		new DuplicateFilter(1.5, 4096, 0);
+	}
+
+}
@@ -0,0 +1,154 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+public class HAMessageCodecTest {
+
+	private final long timestamp = 1234567890123L;
+
+	@Test
+	public void testByteBufRoundTrip() {
+		HAMessage msg = new HAMessage(HAMessage.Type.HEARTBEAT, 7, 2, timestamp);
+		ByteBuf buf = Unpooled.buffer();
+		HAMessageCodec.encode(msg, buf);
+		assertEquals(HAMessageCodec.FRAME_LENGTH, buf.readableBytes());
+		assertEquals(msg, HAMessageCodec.decode(buf));
+		assertEquals(0, buf.readableBytes());
+	}
+
+	@Test
+	public void testByteBufferRoundTrip() {
+		HAMessage msg = new HAMessage(HAMessage.Type.IWON, 3, 4, timestamp);
+		ByteBuffer buf = ByteBuffer.allocate(HAMessageCodec.FRAME_LENGTH);
+		HAMessageCodec.encode(msg, buf);
+		buf.flip();
+		assertEquals(msg, HAMessageCodec.decode(buf));
+		assertEquals(0, buf.remaining());
+	}
+
+	@Test
+	public void testSplitFrame() {
+		HAMessage msg = new HAMessage(HAMessage.Type.LEADER, 0, 3, timestamp);
+		ByteBuf full = Unpooled.buffer();
+		HAMessageCodec.encode(msg, full);
+
+		ByteBuf part = Unpooled.buffer();
+		part.writeBytes(full, 10);
+		assertNull(HAMessageCodec.decode(part));
+		assertEquals(10, part.readableBytes());
+
+		part.writeBytes(full);
+		assertEquals(msg, HAMessageCodec.decode(part));
+	}
+
+	@Test
+	public void testCoalescedFrames() {
+		ByteBuf buf = Unpooled.buffer();
+		HAMessageCodec.encode(HAMessage.PULSE, buf);
+		HAMessageCodec.encode(HAMessage.LEADOK, buf);
+		assertEquals(HAMessage.PULSE, HAMessageCodec.decode(buf));
+		assertEquals(HAMessage.LEADOK, HAMessageCodec.decode(buf));
+		assertNull(HAMessageCodec.decode(buf));
+	}
+
+	@Test
+	public void testLongerBodyIsSkipped() {
+		ByteBuf buf = Unpooled.buffer();
+		buf.writeByte(HAMessageCodec.MAGIC);
+		buf.writeByte(HAMessageCodec.VERSION);
+		buf.writeShort(HAMessageCodec.BODY_LENGTH + 4);
+		buf.writeByte(HAMessage.Type.ACK.getCode());
+		buf.writeLong(0);
+		buf.writeInt(HAMessage.NO_CONTROLLER);
+		buf.writeLong(HAMessage.NO_TIMESTAMP);
+		buf.writeInt(42);
+		HAMessageCodec.encode(HAMessage.NO, buf);
+		assertEquals(HAMessage.ACK, HAMessageCodec.decode(buf));
+		assertEquals(HAMessage.NO, HAMessageCodec.decode(buf));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadMagic() {
+		ByteBuf buf = Unpooled.copiedBuffer("PULSE".getBytes());
+		HAMessageCodec.decode(buf);
+	}
+
+	@Test
+	public void testLegacyRequests() {
+		assertEquals(new HAMessage(HAMessage.Type.IWON, 2, timestamp),
+				HAMessageCodec.legacyDecodeRequest("IWON 2 " + timestamp));
+		assertEquals(new HAMessage(HAMessage.Type.HEARTBEAT, 2, HAMessage.NO_TIMESTAMP),
+				HAMessageCodec.legacyDecodeRequest("HEARTBEAT 2 "));
+		assertEquals(new HAMessage(HAMessage.Type.SUBSCRIBE, 1, HAMessage.NO_TIMESTAMP),
+				HAMessageCodec.legacyDecodeRequest("KSUBSCRIBE C1"));
+		assertEquals(HAMessage.PULSE, HAMessageCodec.legacyDecodeRequest("PULSE"));
+		assertEquals(HAMessage.PULSE, HAMessageCodec.legacyDecodeRequest("mhi#QREF$$@"));
+		assertEquals(HAMessage.DONTCARE, HAMessageCodec.legacyDecodeRequest("@#$%"));
+	}
+
+	@Test
+	public void testLegacyRoundTrip() {
+		HAMessage[] msgs = new HAMessage[] { new HAMessage(HAMessage.Type.SETLEAD, 3, timestamp),
+				new HAMessage(HAMessage.Type.YOU, HAMessage.NO_CONTROLLER, timestamp), HAMessage.PUBLISH,
+				new HAMessage(HAMessage.Type.SUBSCRIBE, 4, HAMessage.NO_TIMESTAMP) };
+		for (HAMessage msg : msgs) {
+			assertEquals(msg, HAMessageCodec.legacyDecodeRequest(HAMessageCodec.legacyEncode(msg)));
+		}
+	}
+
+	@Test
+	public void testLegacyReplies() {
+		assertEquals("ACK" + timestamp,
+				HAMessageCodec.legacyEncode(new HAMessage(HAMessage.Type.HBACK, 1, timestamp)));
+		assertEquals("1 " + timestamp,
+				HAMessageCodec.legacyEncode(new HAMessage(HAMessage.Type.LEADERIS, 1, timestamp)));
+		assertEquals(new HAMessage(HAMessage.Type.HBACK, HAMessage.NO_CONTROLLER, timestamp),
+				HAMessageCodec.legacyDecodeReply("ACK" + timestamp));
+		assertEquals(new HAMessage(HAMessage.Type.LEADERIS, 1, timestamp),
+				HAMessageCodec.legacyDecodeReply("1 " + timestamp));
+		assertEquals(HAMessage.LEADOK, HAMessageCodec.legacyDecodeReply("LEADOK"));
+		assertNull(HAMessageCodec.legacyDecodeReply("none"));
+	}
+
+	@Test
+	public void testLegacyTerms() {
+		HAMessage[] msgs = new HAMessage[] { new HAMessage(HAMessage.Type.HEARTBEAT, 5, 2, timestamp),
+				new HAMessage(HAMessage.Type.PREVOTE, 6, 3, timestamp),
+				new HAMessage(HAMessage.Type.VOTE, 6, 3, timestamp) };
+		for (HAMessage msg : msgs) {
+			assertEquals(msg, HAMessageCodec.legacyDecodeRequest(HAMessageCodec.legacyEncode(msg)));
+		}
+
+		HAMessage voteok = new HAMessage(HAMessage.Type.VOTEOK, 6, HAMessage.NO_CONTROLLER, timestamp);
+		assertEquals(voteok, HAMessageCodec.legacyDecodeReply(HAMessageCodec.legacyEncode(voteok)));
+		HAMessage no = new HAMessage(HAMessage.Type.NO, 7, HAMessage.NO_CONTROLLER, HAMessage.NO_TIMESTAMP);
+		assertEquals(no, HAMessageCodec.legacyDecodeReply(HAMessageCodec.legacyEncode(no)));
+		HAMessage hback = new HAMessage(HAMessage.Type.HBACK, 5, HAMessage.NO_CONTROLLER, timestamp);
+		assertEquals(hback, HAMessageCodec.legacyDecodeReply(HAMessageCodec.legacyEncode(hback)));
+		assertEquals("HEARTBEAT 2 " + timestamp,
+				HAMessageCodec.legacyEncode(new HAMessage(HAMessage.Type.HEARTBEAT, 2, timestamp)));
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the per HAWorker pipelines.
+ */
+public class HAWorkerPipelineTest {
+
+	/**
+	 * A HAWorker whose hooks wait for a latch.
+	 */
+	private static class TestWorker implements IHAWorker {
+		private final CountDownLatch release;
+		private final CountDownLatch published = new CountDownLatch(1);
+		private final List<String> subscribed = new ArrayList<>();
+
+		TestWorker(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public List<String> assembleUpdate() {
+			return new ArrayList<>();
+		}
+
+		@Override
+		public boolean publishHook() {
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				return false;
+			}
+			published.countDown();
+			return true;
+		}
+
+		@Override
+		public synchronized List<String> subscribeHook(String controllerID) {
+			subscribed.add(controllerID);
+			return new ArrayList<>();
+		}
+	}
+
+	@Test
+	public void testSlowWorkerDoesNotBlockOthers() throws Exception {
+		CountDownLatch slowRelease = new CountDownLatch(1);
+		TestWorker slow = new TestWorker(slowRelease);
+		TestWorker fast = new TestWorker(new CountDownLatch(0));
+		HAWorkerPipeline slowPipeline = new HAWorkerPipeline("slow", slow);
+		HAWorkerPipeline fastPipeline = new HAWorkerPipeline("fast", fast);
+
+		assertTrue(slowPipeline.publish());
+		assertTrue(fastPipeline.publish());
+		assertTrue(fast.published.await(5, TimeUnit.SECONDS));
+		assertEquals(1, slow.published.getCount());
+
+		slowRelease.countDown();
+		assertTrue(slow.published.await(5, TimeUnit.SECONDS));
+		slowPipeline.stop();
+		fastPipeline.stop();
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		TestWorker worker = new TestWorker(release);
+		HAWorkerPipeline pipeline = new HAWorkerPipeline("worker", worker);
+
+		/**
+		 * The first publish blocks the pipeline, the second one is pending,
+		 * and the third one is merged into it.
+		 */
+		assertTrue(pipeline.publish());
+		Thread.sleep(50);
+		assertTrue(pipeline.publish());
+		assertFalse(pipeline.publish());
+
+		assertTrue(pipeline.subscribe("C1"));
+		assertFalse(pipeline.subscribe("C2"));
+		assertEquals(2, pipeline.getCoalescedCount());
+
+		release.countDown();
+		for (int i = 0; i < 100 && pipeline.getSubscribeCount() == 0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, pipeline.getPublishCount());
+		assertEquals(1, pipeline.getSubscribeCount());
+		synchronized (worker) {
+			assertEquals("C2", worker.subscribed.get(0));
+		}
+		pipeline.stop();
+	}
+
+}
@@ -0,0 +1,135 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit tests for the persistent connections between the nodes.
+ */
+public class PeerConnectionTest {
+
+	private static final String serverPort = "127.0.0.1:4252";
+	private static final String downPort = "127.0.0.1:4253";
+	private static HAServer server;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		server = new HAServer(serverPort, new AsyncElection("127.0.0.1:4251", "1"), "1");
+		Thread ts = new Thread(server);
+		ts.setDaemon(true);
+		ts.start();
+		Thread.sleep(500);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void testRequestReply() {
+		PeerConnection conn = new PeerConnection(serverPort, 500, false);
+		assertTrue(conn.connect());
+		for (int i = 0; i < 10; i++) {
+			assertTrue(conn.send(HAMessage.PULSE));
+			assertEquals(HAMessage.Type.ACK, conn.recvMessage().getType());
+		}
+		assertEquals(0, conn.getConsecutiveFailures());
+		assertTrue(conn.getLastRttNanos() >= 0);
+
+		/**
+		 * Text messages go through the same connection.
+		 */
+		assertTrue(conn.send("PULSE"));
+		assertEquals("ACK", conn.recv());
+		assertTrue(conn.send(HAMessage.PULSE));
+		assertEquals(HAMessage.Type.ACK, conn.recvMessage().getType());
+
+		assertEquals(1, conn.getConnectCount());
+		conn.close();
+		assertFalse(conn.isActive());
+		assertFalse(conn.send(HAMessage.PULSE));
+	}
+
+	@Test
+	public void testBackoff() {
+		PeerConnection conn = new PeerConnection(downPort, 500, false);
+		assertFalse(conn.connect());
+		assertEquals(2 * PeerConnection.MIN_BACKOFF_MILLIS, conn.getBackoffMillis());
+
+		/**
+		 * Within the backoff no new attempt is made.
+		 */
+		assertFalse(conn.connect());
+		assertEquals(2 * PeerConnection.MIN_BACKOFF_MILLIS, conn.getBackoffMillis());
+		assertEquals(1, conn.getConsecutiveFailures());
+		assertNull(conn.recvMessage());
+	}
+
+	@Test
+	public void testRecvDeadline() {
+		PeerConnection conn = new PeerConnection(serverPort, 5000, false);
+		assertTrue(conn.connect());
+
+		/**
+		 * No request was sent, so nothing arrives: waiting ends at the
+		 * deadline, long before the socket timeout.
+		 */
+		long start = System.nanoTime();
+		assertNull(conn.recvMessage(start + TimeUnit.MILLISECONDS.toNanos(50)));
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(2000));
+		assertEquals(1, conn.getConsecutiveFailures());
+
+		/**
+		 * A reply that arrives in time is returned.
+		 */
+		assertTrue(conn.send(HAMessage.PULSE));
+		assertEquals(HAMessage.Type.ACK, conn.recvMessage().getType());
+		assertTrue(conn.send(HAMessage.PULSE));
+		assertEquals(HAMessage.Type.ACK, conn.recvMessage(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500)).getType());
+		conn.close();
+	}
+
+	@Test
+	public void testConnectionsAreKept() {
+		NetworkNode node = new NetworkNode("127.0.0.1:4251", "1", Arrays.asList("127.0.0.1:4251", serverPort),
+				false);
+		node.connectClients();
+		assertTrue(node.getSocketDict().containsKey(serverPort));
+
+		/**
+		 * Refreshing the state and expiring connections reuse the open
+		 * connection.
+		 */
+		node.cleanState();
+		node.connectClients();
+		node.expireOldConnections();
+		assertTrue(node.getSocketDict().containsKey(serverPort));
+		assertEquals(1, node.getPeers().get(serverPort).getConnectCount());
+		node.getPeers().get(serverPort).close();
+	}
+
+}
@@ -0,0 +1,218 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.error.SyncException;
+import org.sdnplatform.sync.test.MockSyncService;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.hasupport.ReplicationPipeline.OverflowPolicy;
+
+/**
+ * Unit tests for the generic replication pipeline.
+ */
+public class ReplicationPipelineTest {
+
+	/**
+	 * Updates of the form "entity=state", keyed on the entity.
+	 */
+	private static final IReplicationCodec<String> codec = new IReplicationCodec<String>() {
+		@Override
+		public String getKey(String update) {
+			return update.substring(0, update.indexOf('='));
+		}
+
+		@Override
+		public long hash(String update) {
+			return DuplicateFilter.hash(update);
+		}
+
+		@Override
+		public String encode(String update) {
+			return update;
+		}
+
+		@Override
+		public String decode(String value) {
+			return value.indexOf('=') > 0 ? value : null;
+		}
+	};
+
+	private IStoreClient<String, String> store;
+
+	@Before
+	public void setUp() throws Exception {
+		MockSyncService syncService = new MockSyncService();
+		syncService.init(new FloodlightModuleContext());
+		syncService.registerStore("DeviceUpdates", Scope.GLOBAL);
+		store = syncService.getStoreClient("DeviceUpdates", String.class, String.class);
+	}
+
+	@Test
+	public void testPublishAndSubscribe() throws Exception {
+		ReplicationPipeline<String> pipeline = new ReplicationPipeline<>("DeviceHAWorker", store, "C1", codec);
+		assertTrue(pipeline.offer("d1=up"));
+		assertTrue(pipeline.offer("d2=up"));
+		assertFalse(pipeline.offer("d1=up"));
+		assertTrue(pipeline.offer("d1=down"));
+		assertEquals(Arrays.asList("d1=up", "d2=up", "d1=down"), pipeline.assembleUpdate());
+
+		assertTrue(pipeline.publishHook());
+		assertEquals(0, pipeline.getQueueSize());
+		assertEquals(1, pipeline.getDuplicateCount());
+		assertEquals(3, pipeline.getWrittenCount());
+		assertEquals(1, pipeline.getBatchCount());
+		assertEquals("d1, d2", store.getValue("C1"));
+		assertEquals("d1=up, d1=down", store.getValue("d1"));
+
+		assertEquals(Arrays.asList("d1=up", "d1=down", "d2=up"), pipeline.subscribe("C1"));
+		assertEquals(Collections.emptyList(), pipeline.subscribeHook("C1"));
+
+		pipeline.offer("d2=down");
+		pipeline.publishHook();
+		assertEquals(Arrays.asList("d2=down"), pipeline.subscribeHook("C1"));
+	}
+
+	@Test
+	public void testBatches() throws Exception {
+		ReplicationPipeline<String> pipeline = new ReplicationPipeline<>("DeviceHAWorker", store, "C1", codec, 100,
+				2, OverflowPolicy.DROP_NEWEST, 0, null);
+		for (int i = 0; i < 5; i++) {
+			pipeline.offer("d" + i + "=up");
+		}
+		pipeline.publishHook();
+		assertEquals(3, pipeline.getBatchCount());
+		assertEquals("d0, d1, d2, d3, d4", store.getValue("C1"));
+	}
+
+	@Test
+	public void testOverflow() throws Exception {
+		ReplicationPipeline<String> newest = new ReplicationPipeline<>("P1", store, "C1", codec, 2, 10,
+				OverflowPolicy.DROP_NEWEST, 0, new DuplicateFilter());
+		assertTrue(newest.offer("a=1"));
+		assertTrue(newest.offer("b=1"));
+		assertFalse(newest.offer("c=1"));
+		assertEquals(Arrays.asList("a=1", "b=1"), newest.assembleUpdate());
+		assertEquals(1, newest.getDroppedCount());
+
+		/**
+		 * A dropped update is not remembered as a duplicate.
+		 */
+		newest.publishHook();
+		assertTrue(newest.offer("c=1"));
+
+		ReplicationPipeline<String> oldest = new ReplicationPipeline<>("P2", store, "C2", codec, 2, 10,
+				OverflowPolicy.DROP_OLDEST, 0, null);
+		oldest.offer("a=1");
+		oldest.offer("b=1");
+		assertTrue(oldest.offer("c=1"));
+		assertEquals(Arrays.asList("b=1", "c=1"), oldest.assembleUpdate());
+		assertEquals(1, oldest.getDroppedCount());
+
+		ReplicationPipeline<String> block = new ReplicationPipeline<>("P3", store, "C3", codec, 1, 10,
+				OverflowPolicy.BLOCK, 10, null);
+		assertTrue(block.offer("a=1"));
+		assertFalse(block.offer("b=1"));
+		assertEquals(1, block.getDroppedCount());
+	}
+
+	@Test
+	public void testBlockedOfferDoesNotHoldFilter() throws Exception {
+		final ReplicationPipeline<String> pipeline = new ReplicationPipeline<>("P", store, "C1", codec, 1, 10,
+				OverflowPolicy.BLOCK, 10000, new DuplicateFilter());
+		assertTrue(pipeline.offer("a=1"));
+
+		final AtomicBoolean queued = new AtomicBoolean();
+		Thread producer = new Thread(() -> queued.set(pipeline.offer("b=1")));
+		producer.start();
+		while (producer.getState() != Thread.State.TIMED_WAITING) {
+			Thread.sleep(1);
+		}
+
+		/**
+		 * Another producer is still checked for duplicates while the first
+		 * one waits for room, and the waiting one gets in once the queue is
+		 * drained.
+		 */
+		long start = System.nanoTime();
+		assertFalse(pipeline.offer("a=1"));
+		assertTrue(System.nanoTime() - start < 5000000000L);
+		assertEquals(1, pipeline.getDuplicateCount());
+
+		assertTrue(pipeline.publishHook());
+		producer.join(5000);
+		assertTrue(queued.get());
+		assertEquals(Arrays.asList("b=1"), pipeline.assembleUpdate());
+		assertEquals(0, pipeline.getDroppedCount());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testFailedWriteIsRetried() throws Exception {
+		final AtomicBoolean fail = new AtomicBoolean(true);
+		IStoreClient<String, String> failing = (IStoreClient<String, String>) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { IStoreClient.class }, (proxy, method, args) -> {
+					if (method.getName().equals("putAll") && fail.get()) {
+						throw new SyncException("store down");
+					}
+					try {
+						return method.invoke(store, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+
+		ReplicationPipeline<String> pipeline = new ReplicationPipeline<>("P", failing, "C1", codec, 10, 1,
+				OverflowPolicy.DROP_NEWEST, 0, new DuplicateFilter());
+		assertTrue(pipeline.offer("a=1"));
+		assertTrue(pipeline.offer("b=1"));
+		assertFalse(pipeline.publishHook());
+
+		/**
+		 * The batch is back in the queue, in its order, and is still
+		 * remembered as a duplicate.
+		 */
+		assertEquals(Arrays.asList("a=1", "b=1"), pipeline.assembleUpdate());
+		assertFalse(pipeline.offer("a=1"));
+		assertEquals(1, pipeline.getDuplicateCount());
+		assertEquals(0, pipeline.getDroppedCount());
+
+		fail.set(false);
+		assertTrue(pipeline.publishHook());
+		assertEquals(0, pipeline.getQueueSize());
+		assertEquals(2, pipeline.getWrittenCount());
+		assertEquals("a, b", store.getValue("C1"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidConfiguration() {
+		new ReplicationPipeline<>("P", store, "C1", codec, 0, 1, OverflowPolicy.BLOCK, 0, null);
+	}
+
+}
@@ -0,0 +1,125 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.test.MockSyncService;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+
+/**
+ * Unit tests for the per controller high-water marks used by unpackJSON().
+ */
+public class SyncCursorTest {
+
+	private IStoreClient<String, String> store;
+
+	@Before
+	public void setUp() throws Exception {
+		MockSyncService syncService = new MockSyncService();
+		syncService.init(new FloodlightModuleContext());
+		syncService.registerStore("Updates", Scope.GLOBAL);
+		store = syncService.getStoreClient("Updates", String.class, String.class);
+	}
+
+	@Test
+	public void testOnlyNewUpdates() throws Exception {
+		SyncCursor cursor = new SyncCursor(store);
+		assertTrue(cursor.isListening());
+
+		store.put("C1", "k1, k2");
+		store.put("k1", "a1, a2");
+		store.put("k2", "b1");
+		assertEquals(Arrays.asList("a1", "a2", "b1"), cursor.poll("C1"));
+		assertEquals(Collections.emptyList(), cursor.poll("C1"));
+
+		/**
+		 * Appending to a key, and publishing a new key.
+		 */
+		store.put("k2", "b1, b2");
+		store.put("k3", "c1");
+		store.put("C1", "k1, k2, k3");
+		assertEquals(Arrays.asList("b2", "c1"), cursor.poll("C1"));
+		assertEquals(Collections.emptyList(), cursor.poll("C1"));
+
+		/**
+		 * Keys of other controllers are not read.
+		 */
+		store.put("C2", "k4");
+		store.put("k4", "d1");
+		assertEquals(Collections.emptyList(), cursor.poll("C1"));
+		assertEquals(Arrays.asList("d1"), cursor.poll("C2"));
+
+		cursor.reset("C1");
+		assertEquals(Arrays.asList("a1", "a2", "b1", "b2", "c1"), cursor.poll("C1"));
+	}
+
+	@Test
+	public void testReplacedValues() throws Exception {
+		SyncCursor cursor = new SyncCursor(store);
+		store.put("C1", "k1");
+		store.put("k1", "a1, a2");
+		assertEquals(Arrays.asList("a1", "a2"), cursor.poll("C1"));
+
+		/**
+		 * A value replaced by a longer one which does not start with the part
+		 * already read is read from the start.
+		 */
+		store.put("k1", "x1, x2, x3");
+		assertEquals(Arrays.asList("x1", "x2", "x3"), cursor.poll("C1"));
+		store.put("k1", "x1, x2, x3, x4");
+		assertEquals(Arrays.asList("x4"), cursor.poll("C1"));
+
+		/**
+		 * So are collated keys which were replaced.
+		 */
+		store.put("k2", "b1");
+		store.put("C1", "k2, k1");
+		assertEquals(Arrays.asList("b1"), cursor.poll("C1"));
+	}
+
+	@Test
+	public void testLegacyValues() throws Exception {
+		SyncCursor cursor = new SyncCursor(store);
+		String legacy = "{\"src\":\"00:00:00:00:00:00:00:01\",\"operation\":\"Switch Updated\"}";
+
+		store.put("C1", "k1");
+		store.put("k1", legacy);
+		assertEquals(Arrays.asList(legacy), cursor.poll("C1"));
+		assertEquals(Collections.emptyList(), cursor.poll("C1"));
+
+		/**
+		 * A history replacing the old JSON value is read from the start.
+		 */
+		store.put("k1", "a1");
+		assertEquals(Arrays.asList("a1"), cursor.poll("C1"));
+	}
+
+	@Test
+	public void testNoStore() throws Exception {
+		SyncCursor cursor = new SyncCursor(null);
+		assertEquals(Collections.emptyList(), cursor.poll("C1"));
+	}
+
+}
@@ -21,6 +21,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.sdnplatform.sync.IStoreClient;
 
+import net.floodlightcontroller.hasupport.DuplicateFilter;
+
 public class LDFilterQueueTest {
 
 	protected static IStoreClient<String, String> storeLD;
@@ -41,7 +43,7 @@ public class LDFilterQueueTest {
 		assertEquals(ldf2.enqueueForward(testJson), true);
 		ldf2.dequeueForward();
 		assertEquals(LDFilterQueue.filterQueue.size(), 0);
-		LDFilterQueue.myMap.clear();
+		LDFilterQueue.duplicateFilter.clear();
 		LDFilterQueue.filterQueue.clear();
 	}
 
@@ -55,8 +57,12 @@ public class LDFilterQueueTest {
 	public void testEnqueueForward() {
 		LDFilterQueue ldf = new LDFilterQueue(storeLD, controllerID);
 		assertEquals(ldf.enqueueForward("cat"), true);
-		assertEquals(LDFilterQueue.myMap.get("d077f244def8a70e5ea758bd8352fcd8"), "cat");
-		LDFilterQueue.myMap.clear();
+		assertEquals(ldf.enqueueForward("cat"), true);
+		assertEquals(LDFilterQueue.filterQueue.size(), 1);
+		assertEquals(LDFilterQueue.filterQueue.peek(), "cat");
+		assertEquals(ldf.getDuplicateFilter().getMisses(), 1);
+		assertEquals(ldf.getDuplicateFilter().getHits(), 1);
+		LDFilterQueue.duplicateFilter.clear();
 		LDFilterQueue.filterQueue.clear();
 	}
 
@@ -65,10 +71,10 @@ public class LDFilterQueueTest {
 		LDFilterQueue ldf2 = new LDFilterQueue(storeLD, controllerID);
 		String testJson = new String("{\"src\":\"00:00:00:00:00:00:00:05\",\"operation\":\"Switch Removed\"}");
 		assertEquals(ldf2.enqueueForward(testJson), true);
-		assertEquals(LDFilterQueue.myMap.get("f6816a638cbd1fcec9dcd88ebc2cfcb0"), testJson);
-		assertEquals(LDFilterQueue.myMap.get("f6816a638cbd1fcec9dcd88bc2cfcb0"), null);
-		assertEquals(LDFilterQueue.myMap.size(), 1);
-		LDFilterQueue.myMap.clear();
+		assertEquals(LDFilterQueue.duplicateFilter.mightContain(DuplicateFilter.hash(testJson)), true);
+		assertEquals(LDFilterQueue.duplicateFilter.mightContain(DuplicateFilter.hash(testJson + " ")), false);
+		assertEquals(LDFilterQueue.duplicateFilter.size(), 1);
+		LDFilterQueue.duplicateFilter.clear();
 		LDFilterQueue.filterQueue.clear();
 	}
 
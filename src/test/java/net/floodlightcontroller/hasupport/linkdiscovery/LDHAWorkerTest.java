@@ -313,7 +313,7 @@ public class LDHAWorkerTest {
 		}
 
 		LDFilterQueue.filterQueue.clear();
-		LDFilterQueue.myMap.clear();
+		LDFilterQueue.duplicateFilter.clear();
 		ldhaworker.synLDUList.clear();
 
 		logger.info("[Test Publish 2] Success, Published blank update string.");
@@ -0,0 +1,108 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport.linkdiscovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.test.MockSyncService;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.UpdateOperation;
+
+/**
+ * Compares the throughput of LDSyncAdapter.packRecords() when a drained
+ * batch is written one update at a time (a read, a put and a collated keys
+ * update per update, as before) against one batched write per drain, for
+ * drains of 1k and 10k updates. Both run against the in-memory sync store.
+ *
+ * Not a unit test, run it with:
+ * java -cp ... net.floodlightcontroller.hasupport.linkdiscovery.LDSyncBatchBenchmark
+ */
+public class LDSyncBatchBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args) throws Exception {
+		int[] drains = new int[] { 1000, 10000 };
+		for (int drain : drains) {
+			List<LDUpdateRecord> records = makeRecords(drain);
+
+			/**
+			 * Warm up both paths before timing them.
+			 */
+			for (int i = 0; i < 2; i++) {
+				single(records);
+				batched(records);
+			}
+
+			long single = 0;
+			long batched = 0;
+			for (int i = 0; i < ROUNDS; i++) {
+				single += single(records);
+				batched += batched(records);
+			}
+
+			double perSingle = (double) ROUNDS * drain * 1e9 / single;
+			double perBatched = (double) ROUNDS * drain * 1e9 / batched;
+			System.out.println(String.format(
+					"drain=%d one put per update: %.0f updates/s, one putAll per drain: %.0f updates/s, speedup: %.1fx",
+					drain, perSingle, perBatched, perBatched / perSingle));
+		}
+	}
+
+	private static List<LDUpdateRecord> makeRecords(int n) {
+		List<LDUpdateRecord> records = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			UpdateOperation op = (i % 2 == 0) ? UpdateOperation.LINK_UPDATED : UpdateOperation.LINK_REMOVED;
+			records.add(LDUpdateRecord.of(new LDUpdate(DatapathId.of(1 + (i % 64)), OFPort.of(1 + (i % 48)),
+					DatapathId.of(65 + (i % 64)), OFPort.of(1 + (i % 24)), U64.of(i), LinkType.DIRECT_LINK, op)));
+		}
+		return records;
+	}
+
+	private static LDSyncAdapter newAdapter() throws Exception {
+		MockSyncService syncService = new MockSyncService();
+		syncService.init(new FloodlightModuleContext());
+		syncService.registerStore("LDUpdates", Scope.GLOBAL);
+		IStoreClient<String, String> store = syncService.getStoreClient("LDUpdates", String.class, String.class);
+		return new LDSyncAdapter(store, "C1", null);
+	}
+
+	private static long single(List<LDUpdateRecord> records) throws Exception {
+		LDSyncAdapter adapter = newAdapter();
+		long start = System.nanoTime();
+		for (LDUpdateRecord record : records) {
+			adapter.packRecords(Collections.singletonList(record));
+		}
+		return System.nanoTime() - start;
+	}
+
+	private static long batched(List<LDUpdateRecord> records) throws Exception {
+		LDSyncAdapter adapter = newAdapter();
+		long start = System.nanoTime();
+		adapter.packRecords(records);
+		return System.nanoTime() - start;
+	}
+
+}
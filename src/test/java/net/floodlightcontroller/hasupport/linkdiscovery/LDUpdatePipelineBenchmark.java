@@ -0,0 +1,153 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport.linkdiscovery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.UpdateOperation;
+
+/**
+ * Compares the cost per LDUpdate of the String pipeline (toString(),
+ * assembleUpdate() / parseChunk(), the MD5 duplicate filter and the Jackson
+ * round trip with the MD5 key in packJSON) against the LDUpdateRecord
+ * pipeline (of(), the record duplicate filter, getKey() and toBase64()), for
+ * a burst of link updates such as a link flap produces. The syncDB itself is
+ * left out, both pipelines do the same number of reads and writes.
+ *
+ * Not a unit test, run it with:
+ * java -cp ... net.floodlightcontroller.hasupport.linkdiscovery.LDUpdatePipelineBenchmark
+ */
+public class LDUpdatePipelineBenchmark {
+
+	private static final int ROUNDS = 10;
+
+	public static void main(String[] args) throws Exception {
+		int[] bursts = new int[] { 100, 250, 500 };
+		for (int burst : bursts) {
+			List<LDUpdate> updates = makeUpdates(burst);
+
+			/**
+			 * Warm up both pipelines before timing them.
+			 */
+			for (int i = 0; i < 5; i++) {
+				stringPipeline(updates);
+				recordPipeline(updates);
+			}
+
+			long strings = 0;
+			long records = 0;
+			for (int i = 0; i < ROUNDS; i++) {
+				long start = System.nanoTime();
+				stringPipeline(updates);
+				strings += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				recordPipeline(updates);
+				records += System.nanoTime() - start;
+			}
+
+			long perString = strings / ((long) ROUNDS * burst);
+			long perRecord = records / ((long) ROUNDS * burst);
+			System.out.println("burst=" + burst + " string pipeline: " + perString + " ns/update, record pipeline: "
+					+ perRecord + " ns/update, speedup: " + (perRecord == 0 ? "n/a" : (perString / perRecord) + "x"));
+		}
+	}
+
+	private static List<LDUpdate> makeUpdates(int n) {
+		List<LDUpdate> updates = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			UpdateOperation op = (i % 2 == 0) ? UpdateOperation.LINK_UPDATED : UpdateOperation.LINK_REMOVED;
+			updates.add(new LDUpdate(DatapathId.of(1 + (i % 64)), OFPort.of(1 + (i % 48)), DatapathId.of(65 + (i % 64)),
+					OFPort.of(1 + (i % 24)), U64.of(i), LinkType.DIRECT_LINK, op));
+		}
+		return updates;
+	}
+
+	/**
+	 * The work LDHAWorker, LDFilterQueue and LDSyncAdapter did per burst
+	 * before the updates were kept typed.
+	 */
+
+	private static int stringPipeline(List<LDUpdate> updates) throws Exception {
+		LDHAWorker worker = new LDHAWorker(null, "C1");
+		for (LDUpdate update : updates) {
+			worker.synLDUList.add(update.toString());
+		}
+		List<String> json = worker.assembleUpdate();
+
+		LDHAUtils utils = new LDHAUtils();
+		Map<String, String> seen = new HashMap<>();
+		List<String> queued = new ArrayList<>();
+		for (String value : json) {
+			String md5 = utils.calculateMD5Hash(value);
+			if (!seen.containsKey(md5)) {
+				seen.put(md5, value);
+				queued.add(value);
+			}
+		}
+
+		ObjectMapper mapper = new ObjectMapper();
+		TypeReference<HashMap<String, String>> typeRef = new TypeReference<HashMap<String, String>>() {
+		};
+		int bytes = 0;
+		for (String up : queued) {
+			HashMap<String, String> map = mapper.readValue(up, typeRef);
+			String key = utils.getCMD5Hash(up, map);
+			map.put("timestamp", Long.toString(System.nanoTime()));
+			bytes += key.length() + mapper.writeValueAsString(map).length();
+		}
+		return bytes;
+	}
+
+	/**
+	 * The same work on LDUpdateRecords.
+	 */
+
+	private static int recordPipeline(List<LDUpdate> updates) {
+		List<LDUpdateRecord> list = new ArrayList<>(updates.size());
+		for (LDUpdate update : updates) {
+			list.add(LDUpdateRecord.of(update));
+		}
+
+		Set<LDUpdateRecord> seen = new HashSet<>();
+		List<LDUpdateRecord> queued = new ArrayList<>();
+		for (LDUpdateRecord rec : list) {
+			if (seen.add(rec)) {
+				queued.add(rec);
+			}
+		}
+
+		int bytes = 0;
+		for (LDUpdateRecord rec : queued) {
+			bytes += rec.getKey().length() + rec.toBase64().length();
+		}
+		return bytes;
+	}
+
+}
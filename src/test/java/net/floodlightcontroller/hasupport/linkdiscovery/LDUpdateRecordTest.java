@@ -0,0 +1,155 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.hasupport.linkdiscovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.test.MockSyncService;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.SwitchType;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.UpdateOperation;
+
+/**
+ * Unit tests for the binary LDUpdateRecord and the typed path through the
+ * LDFilterQueue and LDSyncAdapter.
+ */
+public class LDUpdateRecordTest {
+
+	private static final LDUpdate link = new LDUpdate(DatapathId.of(2L), OFPort.of(2), DatapathId.of(1L),
+			OFPort.of(3), U64.of(0x177), LinkType.MULTIHOP_LINK, UpdateOperation.LINK_UPDATED);
+	private static final LDUpdate port = new LDUpdate(DatapathId.of(1L), OFPort.LOCAL, UpdateOperation.PORT_UP);
+	private static final LDUpdate sw = new LDUpdate(DatapathId.of(5L), SwitchType.CORE_SWITCH,
+			UpdateOperation.SWITCH_REMOVED);
+
+	@Test
+	public void testBinaryRoundTrip() {
+		for (LDUpdate update : Arrays.asList(link, port, sw)) {
+			LDUpdateRecord rec = LDUpdateRecord.of(update, 42L);
+			byte[] buf = rec.toBytes();
+			assertEquals(LDUpdateRecord.SIZE, buf.length);
+
+			LDUpdateRecord dec = LDUpdateRecord.decode(buf, 0);
+			assertEquals(rec, dec);
+			assertEquals(42L, dec.getTimestamp());
+			assertEquals(update.toString(), dec.toLDUpdate().toString());
+			assertEquals(rec, LDUpdateRecord.fromBase64(rec.toBase64()));
+		}
+		assertEquals(SwitchType.CORE_SWITCH, LDUpdateRecord.of(sw).getSrcType());
+	}
+
+	@Test
+	public void testBadInput() {
+		assertNull(LDUpdateRecord.of(null));
+		assertNull(LDUpdateRecord.decode(new byte[4], 0));
+		byte[] buf = LDUpdateRecord.of(link).toBytes();
+		buf[0] = 9;
+		assertNull(LDUpdateRecord.decode(buf, 0));
+		assertNull(LDUpdateRecord.fromBase64("not base64!"));
+		assertNull(LDUpdateRecord.fromJSON(new HashMap<String, String>()));
+	}
+
+	@Test
+	public void testEqualityIgnoresTimestamp() {
+		LDUpdateRecord a = LDUpdateRecord.of(link, 1L);
+		LDUpdateRecord b = LDUpdateRecord.of(link, 2L);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertEquals(a.hash64(), b.hash64());
+		assertNotEquals(a.hash64(), LDUpdateRecord.of(port, 1L).hash64());
+		assertNotEquals(a, LDUpdateRecord.of(port, 1L));
+	}
+
+	@Test
+	public void testKey() {
+		LDUpdateRecord rec = LDUpdateRecord.of(link);
+		assertEquals("0000000000000002" + "00000002" + "0000000000000001" + "00000003" + "02", rec.getKey());
+
+		LDUpdate removed = new LDUpdate(link);
+		removed.setOperation(UpdateOperation.LINK_REMOVED);
+		assertEquals(rec.getKey(), LDUpdateRecord.of(removed).getKey());
+		assertNotEquals(rec.getKey(), LDUpdateRecord.of(port).getKey());
+	}
+
+	@Test
+	public void testMatchesStringPipeline() throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		TypeReference<HashMap<String, String>> typeRef = new TypeReference<HashMap<String, String>>() {
+		};
+		LDHAUtils parser = new LDHAUtils();
+
+		for (LDUpdate update : Arrays.asList(link, port)) {
+			String chunk = Arrays.asList(update.toString()).toString().substring(1);
+			String json = parser.parseChunk(chunk).get(0);
+			Map<String, String> fields = mapper.readValue(json, typeRef);
+			assertEquals(LDUpdateRecord.of(update), LDUpdateRecord.fromJSON(fields));
+
+			Map<String, String> rendered = mapper.readValue(LDUpdateRecord.of(update).toJSON(), typeRef);
+			rendered.remove("timestamp");
+			assertEquals(fields, rendered);
+		}
+	}
+
+	@Test
+	public void testPackAndUnpack() throws Exception {
+		MockSyncService syncService = new MockSyncService();
+		syncService.init(new FloodlightModuleContext());
+		syncService.registerStore("LDUpdates", Scope.GLOBAL);
+		IStoreClient<String, String> store = syncService.getStoreClient("LDUpdates", String.class, String.class);
+
+		LDFilterQueue filterQ = new LDFilterQueue(store, "C1");
+		LDFilterQueue.duplicateFilter.clear();
+		filterQ.enqueueForward(LDUpdateRecord.of(link));
+		filterQ.enqueueForward(LDUpdateRecord.of(link));
+		filterQ.enqueueForward(LDUpdateRecord.of(port));
+		assertEquals(2, LDFilterQueue.recordQueue.size());
+		assertTrue(filterQ.dequeueForward());
+
+		LDUpdate removed = new LDUpdate(link);
+		removed.setOperation(UpdateOperation.LINK_REMOVED);
+		filterQ.enqueueForward(LDUpdateRecord.of(removed));
+		assertTrue(filterQ.dequeueForward());
+
+		String keys = store.getValue("C1");
+		assertEquals(LDUpdateRecord.of(link).getKey() + ", " + LDUpdateRecord.of(port).getKey(), keys);
+
+		filterQ.subscribe("C1");
+		List<LDUpdateRecord> recs = filterQ.dequeueReverseRecords();
+		assertEquals(new ArrayList<>(Arrays.asList(LDUpdateRecord.of(link), LDUpdateRecord.of(removed),
+				LDUpdateRecord.of(port))), recs);
+		LDFilterQueue.duplicateFilter.clear();
+	}
+
+}
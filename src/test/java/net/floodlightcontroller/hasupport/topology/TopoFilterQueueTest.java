@@ -21,6 +21,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.sdnplatform.sync.IStoreClient;
 
+import net.floodlightcontroller.hasupport.DuplicateFilter;
+
 public class TopoFilterQueueTest {
 
 	protected static IStoreClient<String, String> storeTopo;
@@ -41,7 +43,7 @@ public class TopoFilterQueueTest {
 		assertEquals(Topof2.enqueueForward(testJson), true);
 		Topof2.dequeueForward();
 		assertEquals(TopoFilterQueue.filterQueue.size(), 0);
-		TopoFilterQueue.myMap.clear();
+		TopoFilterQueue.duplicateFilter.clear();
 		TopoFilterQueue.filterQueue.clear();
 	}
 
@@ -55,8 +57,12 @@ public class TopoFilterQueueTest {
 	public void testEnqueueForward() {
 		TopoFilterQueue tf = new TopoFilterQueue(storeTopo, controllerID);
 		assertEquals(tf.enqueueForward("cat"), true);
-		assertEquals(TopoFilterQueue.myMap.get("d077f244def8a70e5ea758bd8352fcd8"), "cat");
-		TopoFilterQueue.myMap.clear();
+		assertEquals(tf.enqueueForward("cat"), true);
+		assertEquals(TopoFilterQueue.filterQueue.size(), 1);
+		assertEquals(TopoFilterQueue.filterQueue.peek(), "cat");
+		assertEquals(tf.getDuplicateFilter().getMisses(), 1);
+		assertEquals(tf.getDuplicateFilter().getHits(), 1);
+		TopoFilterQueue.duplicateFilter.clear();
 		TopoFilterQueue.filterQueue.clear();
 	}
 
@@ -65,10 +71,10 @@ public class TopoFilterQueueTest {
 		TopoFilterQueue Topof2 = new TopoFilterQueue(storeTopo, controllerID);
 		String testJson = new String("{\"src\":\"00:00:00:00:00:00:00:05\",\"operation\":\"Switch Removed\"}");
 		assertEquals(Topof2.enqueueForward(testJson), true);
-		assertEquals(TopoFilterQueue.myMap.get("f6816a638cbd1fcec9dcd88ebc2cfcb0"), testJson);
-		assertEquals(TopoFilterQueue.myMap.get("f6816a638cbd1fcec9dcd88bc2cfcb0"), null);
-		assertEquals(TopoFilterQueue.myMap.size(), 1);
-		TopoFilterQueue.myMap.clear();
+		assertEquals(TopoFilterQueue.duplicateFilter.mightContain(DuplicateFilter.hash(testJson)), true);
+		assertEquals(TopoFilterQueue.duplicateFilter.mightContain(DuplicateFilter.hash(testJson + " ")), false);
+		assertEquals(TopoFilterQueue.duplicateFilter.size(), 1);
+		TopoFilterQueue.duplicateFilter.clear();
 		TopoFilterQueue.filterQueue.clear();
 	}
 
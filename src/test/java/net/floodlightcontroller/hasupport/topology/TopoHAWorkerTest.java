@@ -313,7 +313,7 @@ public class TopoHAWorkerTest {
 		}
 
 		TopoFilterQueue.filterQueue.clear();
-		TopoFilterQueue.myMap.clear();
+		TopoFilterQueue.duplicateFilter.clear();
 		topohaworker.synTopoUList.clear();
 
 		logger.info("[Test Publish 2] Success, Published blank update string.");
@@ -14,13 +14,25 @@
 
 package net.floodlightcontroller.hasupport.topology;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
 import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.test.MockSyncService;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.hasupport.linkdiscovery.LDUpdateRecord;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.UpdateOperation;
 
 /**
  * Unit tests for the Sync Adapter class. Test both packing and unpacking of the
@@ -152,4 +164,48 @@ public class TopoSyncAdapterTest {
 		}
 	}
 
+	@Test
+	public void testPackRecords() throws Exception {
+		MockSyncService syncService = new MockSyncService();
+		syncService.init(new FloodlightModuleContext());
+		syncService.registerStore("TopoUpdates", Scope.GLOBAL);
+		IStoreClient<String, String> store = syncService.getStoreClient("TopoUpdates", String.class, String.class);
+
+		LDUpdate link = new LDUpdate(DatapathId.of(1L), OFPort.of(2), DatapathId.of(2L), OFPort.of(2),
+				U64.of(0x177), LinkType.MULTIHOP_LINK, UpdateOperation.LINK_UPDATED);
+		LDUpdate port = new LDUpdate(DatapathId.of(2L), OFPort.LOCAL, UpdateOperation.PORT_UP);
+
+		TopoHAWorker worker = new TopoHAWorker(store, "C1");
+		TopoFilterQueue.duplicateFilter.clear();
+		worker.topologyChanged(Arrays.asList(link, port, link));
+		worker.publishHook();
+
+		/**
+		 * The same update as a String goes through packJSON into the same
+		 * record format, and only adds to the history of its key.
+		 */
+		worker.getFilterQ().enqueueForward(
+				"{\"dstPort\":\"2\",\"dst\":\"00:00:00:00:00:00:00:02\",\"src\":\"00:00:00:00:00:00:00:01\",\"latency\":\"0x0000000000000177\",\"srcPort\":\"2\",\"type\":\"external\",\"operation\":\"Link Removed\"}");
+		worker.getFilterQ().dequeueForward();
+
+		/**
+		 * Values written in the old JSON format are passed through.
+		 */
+		store.put("C2", "legacy");
+		store.put("legacy", "{\"src\":\"00:00:00:00:00:00:00:01\",\"operation\":\"Switch Updated\"}");
+
+		assertEquals(LDUpdateRecord.of(link).getKey() + ", " + LDUpdateRecord.of(port).getKey(), store.getValue("C1"));
+
+		worker.getFilterQ().subscribe("C1");
+		List<LDUpdateRecord> recs = worker.getFilterQ().dequeueReverseRecords();
+		assertEquals(3, recs.size());
+		assertEquals(LDUpdateRecord.of(link), recs.get(0));
+		assertEquals(UpdateOperation.LINK_REMOVED, recs.get(1).getOperation());
+		assertEquals(LDUpdateRecord.of(port), recs.get(2));
+
+		List<String> updates = worker.subscribeHook("C2");
+		assertEquals(Arrays.asList("{\"src\":\"00:00:00:00:00:00:00:01\",\"operation\":\"Switch Updated\"}"), updates);
+		TopoFilterQueue.duplicateFilter.clear();
+	}
+
 }
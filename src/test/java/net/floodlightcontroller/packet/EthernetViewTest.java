@@ -0,0 +1,159 @@
+package net.floodlightcontroller.packet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.ArpOpcode;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv6Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+public class EthernetViewTest {
+
+    private byte[] buildTcp(short vlan) {
+        Ethernet eth = (Ethernet) new Ethernet()
+            .setDestinationMACAddress("00:11:22:33:44:55")
+            .setSourceMACAddress("00:44:33:22:11:00")
+            .setVlanID(vlan)
+            .setPriorityCode((byte) 3)
+            .setEtherType(EthType.IPv4)
+            .setPayload(new IPv4()
+                    .setTtl((byte) 128)
+                    .setSourceAddress("192.168.1.1")
+                    .setDestinationAddress("192.168.1.2")
+                    .setPayload(new TCP()
+                            .setSourcePort(5000)
+                            .setDestinationPort(80)
+                            .setPayload(new Data(new byte[] { 0x01 }))));
+        return eth.serialize();
+    }
+
+    @Test
+    public void testTcp() {
+        byte[] data = buildTcp(Ethernet.VLAN_UNTAGGED);
+        EthernetView view = EthernetView.of(data);
+        Ethernet eth = view.toEthernet();
+
+        assertEquals(eth.getDestinationMACAddress(), view.getDestinationMACAddress());
+        assertEquals(eth.getSourceMACAddress(), view.getSourceMACAddress());
+        assertEquals(EthType.IPv4, view.getEtherType());
+        assertEquals(Ethernet.VLAN_UNTAGGED, view.getVlanID());
+        assertFalse(view.isTagged());
+        assertTrue(view.isIPv4());
+        assertEquals(IPv4Address.of("192.168.1.1"), view.getIPv4Source());
+        assertEquals(IPv4Address.of("192.168.1.2"), view.getIPv4Destination());
+        assertEquals(IpProtocol.TCP, view.getIpProtocol());
+        assertEquals(TransportPort.of(5000), view.getTransportSource());
+        assertEquals(TransportPort.of(80), view.getTransportDestination());
+        assertNull(view.getIPv6Source());
+        assertNull(view.getArpOpcode());
+
+        /* the original bytes are re-emitted as they are */
+        assertSame(data, view.getData());
+        assertTrue(Arrays.equals(data, eth.serialize()));
+    }
+
+    @Test
+    public void testVlan() {
+        EthernetView view = EthernetView.of(buildTcp((short) 42));
+        assertTrue(view.isTagged());
+        assertEquals(42, view.getVlanID());
+        assertEquals(3, view.getPriorityCode());
+        assertEquals(EthType.IPv4, view.getEtherType());
+        assertEquals(18, view.getPayloadOffset());
+        assertEquals(TransportPort.of(80), view.getTransportDestination());
+    }
+
+    @Test
+    public void testSlice() {
+        byte[] frame = buildTcp(Ethernet.VLAN_UNTAGGED);
+        byte[] buffer = new byte[frame.length + 10];
+        System.arraycopy(frame, 0, buffer, 7, frame.length);
+
+        EthernetView view = EthernetView.of(buffer, 7, frame.length);
+        assertEquals(MacAddress.of("00:44:33:22:11:00"), view.getSourceMACAddress());
+        assertEquals(TransportPort.of(5000), view.getTransportSource());
+        assertTrue(Arrays.equals(frame, view.getData()));
+    }
+
+    @Test
+    public void testArp() {
+        byte[] data = new Ethernet()
+            .setDestinationMACAddress("ff:ff:ff:ff:ff:ff")
+            .setSourceMACAddress("00:44:33:22:11:00")
+            .setEtherType(EthType.ARP)
+            .setPayload(new ARP()
+                    .setHardwareType(ARP.HW_TYPE_ETHERNET)
+                    .setProtocolType(ARP.PROTO_TYPE_IP)
+                    .setHardwareAddressLength((byte) 6)
+                    .setProtocolAddressLength((byte) 4)
+                    .setOpCode(ArpOpcode.REQUEST)
+                    .setSenderHardwareAddress(MacAddress.of("00:44:33:22:11:00"))
+                    .setSenderProtocolAddress(IPv4Address.of("10.0.0.1"))
+                    .setTargetHardwareAddress(MacAddress.NONE)
+                    .setTargetProtocolAddress(IPv4Address.of("10.0.0.2")))
+            .serialize();
+
+        EthernetView view = EthernetView.of(data);
+        assertTrue(view.isBroadcast());
+        assertTrue(view.isARP());
+        assertEquals(ArpOpcode.REQUEST, view.getArpOpcode());
+        assertEquals(IPv4Address.of("10.0.0.1"), view.getArpSenderProtocolAddress());
+        assertEquals(IPv4Address.of("10.0.0.2"), view.getArpTargetProtocolAddress());
+        assertNull(view.getIpProtocol());
+        assertNull(view.getTransportSource());
+    }
+
+    @Test
+    public void testIPv6Udp() {
+        byte[] data = new Ethernet()
+            .setDestinationMACAddress("33:33:00:00:00:01")
+            .setSourceMACAddress("00:44:33:22:11:00")
+            .setEtherType(EthType.IPv6)
+            .setPayload(new IPv6()
+                    .setSourceAddress(IPv6Address.of("fe80::1"))
+                    .setDestinationAddress(IPv6Address.of("ff02::1"))
+                    .setNextHeader(IpProtocol.UDP)
+                    .setHopLimit((byte) 1)
+                    .setPayload(new UDP()
+                            .setSourcePort(TransportPort.of(546))
+                            .setDestinationPort(TransportPort.of(547))
+                            .setPayload(new Data(new byte[] { 0x01 }))))
+            .serialize();
+
+        EthernetView view = EthernetView.of(data);
+        assertTrue(view.isMulticast());
+        assertTrue(view.isIPv6());
+        assertEquals(IPv6Address.of("fe80::1"), view.getIPv6Source());
+        assertEquals(IPv6Address.of("ff02::1"), view.getIPv6Destination());
+        assertEquals(IpProtocol.UDP, view.getIpProtocol());
+        assertEquals(TransportPort.of(546), view.getTransportSource());
+        assertEquals(TransportPort.of(547), view.getTransportDestination());
+        assertNull(view.getIPv4Source());
+    }
+
+    @Test
+    public void testTruncated() {
+        byte[] data = buildTcp(Ethernet.VLAN_UNTAGGED);
+        EthernetView view = EthernetView.of(Arrays.copyOf(data, 20));
+        assertEquals(EthType.IPv4, view.getEtherType());
+        assertFalse(view.isIPv4());
+        assertNull(view.getIPv4Source());
+        assertNull(view.getTransportSource());
+
+        view = EthernetView.of(new byte[6]);
+        assertFalse(view.isValid());
+        assertNull(view.getSourceMACAddress());
+        assertNull(view.getEtherType());
+        assertEquals(-1, view.getPayloadOffset());
+    }
+}
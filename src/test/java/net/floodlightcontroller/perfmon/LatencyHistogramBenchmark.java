@@ -0,0 +1,111 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the cost of LatencyHistogram.record() from 1 to 32 threads
+ * recording into the same histogram, with the time passed in as the
+ * Controller does when it times the listeners, and with record() reading
+ * System.nanoTime() itself. The histogram is meant to be always on, so a
+ * record should stay well under 50 ns. The cost is the CPU time of the
+ * recording threads per record, so it does not depend on the number of
+ * cores.
+ *
+ * Not a unit test, run it with:
+ * java -cp ... net.floodlightcontroller.perfmon.LatencyHistogramBenchmark
+ */
+public class LatencyHistogramBenchmark {
+    private static final int RECORDS = 10000000;
+    private static final int ROUNDS = 3;
+    private static final long TARGET_NS = 50;
+    /* latencies from 200 ns to about 1 ms, spread over the buckets */
+    private static final long[] VALUES = new long[1024];
+
+    static {
+        Random random = new Random(17);
+        for (int i = 0; i < VALUES.length; i++) {
+            VALUES[i] = 100 + (long) Math.pow(10000, random.nextDouble()) * 100;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] threadCounts = new int[] { 1, 2, 4, 8, 16, 32 };
+        for (int threads : threadCounts) {
+            long given = Long.MAX_VALUE;
+            long read = Long.MAX_VALUE;
+            /* the first round warms up both */
+            for (int i = 0; i <= ROUNDS; i++) {
+                LatencyHistogram h = new LatencyHistogram("bench", 10L * 1000000000, 6);
+                long t = run(threads, h, true);
+                long u = run(threads, h, false);
+                long count = h.getSnapshot().getCount();
+                if (count != 2L * threads * RECORDS)
+                    throw new IllegalStateException("lost records: " + count);
+                if (i > 0) {
+                    given = Math.min(given, t);
+                    read = Math.min(read, u);
+                }
+            }
+            double givenNs = (double) given / threads / RECORDS;
+            double readNs = (double) read / threads / RECORDS;
+            System.out.println(String.format(
+                    "threads=%2d record(value, now): %5.1f ns, record(value): %5.1f ns, under %d ns: %s",
+                    threads, givenNs, readNs, TARGET_NS,
+                    Math.max(givenNs, readNs) < TARGET_NS ? "yes" : "no"));
+        }
+    }
+
+    /** @return the CPU time used by all the threads, in ns */
+    private static long run(int threads, final LatencyHistogram h,
+            final boolean timeGiven) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong cpu = new AtomicLong();
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    long begin = bean.getCurrentThreadCpuTime();
+                    long now = System.nanoTime();
+                    for (int j = 0; j < RECORDS; j++) {
+                        long v = VALUES[j & (VALUES.length - 1)];
+                        if (timeGiven) {
+                            h.record(v, now + j);
+                        } else {
+                            h.record(v);
+                        }
+                    }
+                    cpu.addAndGet(bean.getCurrentThreadCpuTime() - begin);
+                    done.countDown();
+                }
+            }.start();
+        }
+        start.countDown();
+        done.await();
+        return cpu.get();
+    }
+}
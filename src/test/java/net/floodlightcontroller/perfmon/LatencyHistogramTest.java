@@ -0,0 +1,107 @@
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    private static final long WINDOW_NS = 1000000000L;
+
+    @Test
+    public void testBuckets() {
+        for (long v = 0; v < 100000; v++) {
+            int b = LatencyHistogram.bucketOf(v);
+            long high = LatencyHistogram.highestValueOf(b);
+            assertTrue(v + " above " + high, v <= high);
+            /* within one sub-bucket of the value */
+            assertTrue(v + " reported as " + high, high - v <= v / LatencyHistogram.SUB_BUCKETS);
+            if (b > 0) {
+                assertTrue(LatencyHistogram.highestValueOf(b - 1) < v);
+            }
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+        assertEquals(LatencyHistogram.MAX_VALUE_NS,
+                LatencyHistogram.highestValueOf(LatencyHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram("test", WINDOW_NS, 6);
+        for (int i = 1; i <= 1000; i++) {
+            h.record(i * 1000, 0);
+        }
+        LatencyHistogram.Snapshot s = h.getSnapshot(0);
+        assertEquals(1000, s.getCount());
+        assertEquals(1000000, s.getMax());
+        assertEquals(500000, s.getP50(), 500000 / 16);
+        assertEquals(990000, s.getP99(), 990000 / 16);
+        assertEquals(999000, s.getP999(), 999000 / 16);
+        assertEquals(500000, s.getMean(), 500000 / 16);
+
+        assertEquals(0, new LatencyHistogram("empty", WINDOW_NS, 6).getSnapshot(0).getP99());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        LatencyHistogram h = new LatencyHistogram("test", WINDOW_NS, 3);
+        h.record(100, 0);
+        h.record(200, WINDOW_NS);
+        h.record(300, 2 * WINDOW_NS);
+        assertEquals(3, h.getSnapshot(2 * WINDOW_NS).getCount());
+
+        /* the first window slides out, and is reused for new values */
+        assertEquals(2, h.getSnapshot(3 * WINDOW_NS).getCount());
+        h.record(400, 3 * WINDOW_NS);
+        LatencyHistogram.Snapshot s = h.getSnapshot(3 * WINDOW_NS);
+        assertEquals(3, s.getCount());
+        assertEquals(400, s.getMax());
+        assertEquals(0, h.getSnapshot(10 * WINDOW_NS).getCount());
+    }
+
+    @Test
+    public void testThreadsMerged() throws Exception {
+        final LatencyHistogram h = new LatencyHistogram("test", WINDOW_NS, 6);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        h.record(1000);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        LatencyHistogram.Snapshot s = h.getSnapshot();
+        assertEquals(40000, s.getCount());
+        assertEquals(1000, s.getP50(), 1000 / 16);
+
+        h.reset();
+        assertEquals(0, h.getSnapshot().getCount());
+    }
+
+    @Test
+    public void testDeadThreadsDropped() throws Exception {
+        final LatencyHistogram h = new LatencyHistogram("test", WINDOW_NS, 3);
+        h.record(100, 0);
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                h.record(200, 0);
+            }
+        };
+        t.start();
+        t.join();
+
+        /* the values of a dead thread are read until they slide out */
+        assertEquals(2, h.getSnapshot(2 * WINDOW_NS).getCount());
+        assertEquals(2, h.getRecorderCount());
+        assertEquals(0, h.getSnapshot(3 * WINDOW_NS).getCount());
+        assertEquals(1, h.getRecorderCount());
+    }
+}
@@ -0,0 +1,294 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+import net.floodlightcontroller.routing.BroadcastTree;
+
+/**
+ * Compares the destination rooted dijkstra of TopologyInstance as it was
+ * before (maps of DatapathId, a PriorityQueue with O(n) removal, the map of
+ * links rebuilt for every run without some switches) against IndexedGraph
+ * (int-indexed arrays, an indexed binary heap, switches and ports excluded
+ * in place), on fat-tree topologies. It times a run from every switch on the
+ * whole topology, as for broadcast trees, and with a switch and its
+ * neighbours excluded, as Yen's spur runs exclude the root path. It reports the
+ * time and bytes allocated per run, and checks both find the same trees.
+ *
+ * Not a unit test, run it with:
+ * java -cp ... net.floodlightcontroller.topology.DijkstraBenchmark [k...]
+ */
+public class DijkstraBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(DijkstraBenchmark.class);
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int[] ks = new int[] { 8, 16 };
+        if (args.length > 0) {
+            ks = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                ks[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int k : ks) {
+            TopologyComputeBenchmark.Topology t = TopologyComputeBenchmark.fatTree(k);
+            Set<DatapathId> switches = t.ports.keySet();
+            List<DatapathId> roots = new ArrayList<DatapathId>(switches);
+            IndexedGraph graph = new IndexedGraph(switches, t.ports, t.links);
+            int[] costs = graph.getEdgeCosts(null);
+            IndexedGraph.Search search = graph.newSearch();
+            Map<DatapathId, Set<DatapathId>> excluded = new HashMap<DatapathId, Set<DatapathId>>();
+            for (DatapathId root : roots) {
+                /* the lowest switch other than the root, and its neighbours */
+                DatapathId first = graph.getNode(0).equals(root) ? graph.getNode(1) : graph.getNode(0);
+                Set<DatapathId> x = new HashSet<DatapathId>();
+                x.add(first);
+                for (OFPort p : t.ports.get(first)) {
+                    for (Link l : t.links.get(new NodePortTuple(first, p))) {
+                        x.add(l.getSrc());
+                        x.add(l.getDst());
+                    }
+                }
+                x.remove(root);
+                excluded.put(root, x);
+            }
+
+            /* the same trees */
+            Map<DatapathId, Set<Link>> linkDpidMap = buildLinkDpidMap(switches, t.ports, t.links);
+            for (DatapathId root : roots) {
+                BroadcastTree before = dijkstra(linkDpidMap, root, null, true);
+                search.clearExclusions();
+                search.run(root, costs);
+                BroadcastTree after = search.toBroadcastTree();
+                if (!before.getLinks().equals(after.getLinks()))
+                    throw new IllegalStateException("different trees for root " + root);
+            }
+
+            long[] mapsFull = new long[] { Long.MAX_VALUE, 0 };
+            long[] indexedFull = new long[] { Long.MAX_VALUE, 0 };
+            long[] mapsSpur = new long[] { Long.MAX_VALUE, 0 };
+            long[] indexedSpur = new long[] { Long.MAX_VALUE, 0 };
+            /* the first round warms up both */
+            for (int i = 0; i <= ROUNDS; i++) {
+                long a0 = allocatedBytes();
+                long t0 = System.nanoTime();
+                for (DatapathId root : roots) {
+                    dijkstra(linkDpidMap, root, null, true);
+                }
+                long t1 = System.nanoTime();
+                long a1 = allocatedBytes();
+                search.clearExclusions();
+                for (DatapathId root : roots) {
+                    search.run(root, costs);
+                }
+                long t2 = System.nanoTime();
+                long a2 = allocatedBytes();
+                for (DatapathId root : roots) {
+                    Set<DatapathId> remaining = new HashSet<DatapathId>(switches);
+                    remaining.removeAll(excluded.get(root));
+                    dijkstra(buildLinkDpidMap(remaining, t.ports, t.links), root, null, true);
+                }
+                long t3 = System.nanoTime();
+                long a3 = allocatedBytes();
+                for (DatapathId root : roots) {
+                    search.clearExclusions();
+                    for (DatapathId x : excluded.get(root)) {
+                        search.excludeNode(x);
+                    }
+                    search.run(root, costs);
+                }
+                long t4 = System.nanoTime();
+                long a4 = allocatedBytes();
+                if (i > 0) {
+                    best(mapsFull, t1 - t0, a1 - a0);
+                    best(indexedFull, t2 - t1, a2 - a1);
+                    best(mapsSpur, t3 - t2, a3 - a2);
+                    best(indexedSpur, t4 - t3, a4 - a3);
+                }
+            }
+
+            int n = roots.size();
+            System.out.println(String.format("fat-tree k=%d (%d switches, %d links):",
+                    k, n, graph.getEdgeCount()));
+            System.out.println(String.format(
+                    "  whole topology: maps %.1f us/run (%d bytes/run), indexed %.1f us/run (%d bytes/run), speedup: %.1fx",
+                    mapsFull[0] / 1e3 / n, mapsFull[1] / n, indexedFull[0] / 1e3 / n, indexedFull[1] / n,
+                    (double) mapsFull[0] / indexedFull[0]));
+            System.out.println(String.format(
+                    "  switches excluded: maps %.1f us/run (%d bytes/run), indexed %.1f us/run (%d bytes/run), speedup: %.1fx",
+                    mapsSpur[0] / 1e3 / n, mapsSpur[1] / n, indexedSpur[0] / 1e3 / n, indexedSpur[1] / n,
+                    (double) mapsSpur[0] / indexedSpur[0]));
+        }
+    }
+
+    private static void best(long[] best, long time, long bytes) {
+        if (time < best[0]) {
+            best[0] = time;
+            best[1] = bytes;
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /*
+     * TopologyInstance's dijkstra as it was before, for comparison here and in IndexedGraphTest
+     */
+
+    private static class NodeDist implements Comparable<NodeDist> {
+        private final DatapathId node;
+        private final int dist;
+
+        NodeDist(DatapathId node, int dist) {
+            this.node = node;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(NodeDist o) {
+            if (o.dist == this.dist) {
+                return (int)(this.node.getLong() - o.node.getLong());
+            }
+            return this.dist - o.dist;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null || getClass() != obj.getClass())
+                return false;
+            return node.equals(((NodeDist) obj).node);
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+    }
+
+    static BroadcastTree dijkstra(Map<DatapathId, Set<Link>> links, DatapathId root,
+            Map<Link, Integer> linkCost,
+            boolean isDstRooted) {
+        HashMap<DatapathId, Link> nexthoplinks = new HashMap<DatapathId, Link>();
+        HashMap<DatapathId, Integer> cost = new HashMap<DatapathId, Integer>();
+        int w;
+
+        for (DatapathId node : links.keySet()) {
+            nexthoplinks.put(node, null);
+            cost.put(node, TopologyInstance.MAX_PATH_WEIGHT);
+        }
+
+        HashMap<DatapathId, Boolean> seen = new HashMap<DatapathId, Boolean>();
+        PriorityQueue<NodeDist> nodeq = new PriorityQueue<NodeDist>();
+        nodeq.add(new NodeDist(root, 0));
+        cost.put(root, 0);
+
+        while (nodeq.peek() != null) {
+            NodeDist n = nodeq.poll();
+            DatapathId cnode = n.node;
+            int cdist = n.dist;
+
+            if (cdist >= TopologyInstance.MAX_PATH_WEIGHT) break;
+            if (seen.containsKey(cnode)) continue;
+            seen.put(cnode, true);
+
+            if (links.get(cnode) == null) continue;
+            for (Link link : links.get(cnode)) {
+                DatapathId neighbor;
+
+                if (isDstRooted == true) {
+                    neighbor = link.getSrc();
+                } else {
+                    neighbor = link.getDst();
+                }
+
+                if (neighbor.equals(cnode)) continue;
+
+                if (seen.containsKey(neighbor)) continue;
+
+                if (linkCost == null || linkCost.get(link) == null) {
+                    w = 1;
+                } else {
+                    w = linkCost.get(link);
+                }
+
+                int ndist = cdist + w;
+                log.debug("Neighbor: {}", neighbor);
+                log.debug("Cost: {}", cost);
+                log.debug("Neighbor cost: {}", cost.get(neighbor));
+
+                if (ndist < cost.get(neighbor)) {
+                    cost.put(neighbor, ndist);
+                    nexthoplinks.put(neighbor, link);
+
+                    NodeDist ndTemp = new NodeDist(neighbor, ndist);
+                    nodeq.remove(ndTemp);
+                    nodeq.add(ndTemp);
+                }
+            }
+        }
+
+        return new BroadcastTree(nexthoplinks, cost);
+    }
+
+    static Map<DatapathId, Set<Link>> buildLinkDpidMap(Set<DatapathId> switches, Map<DatapathId,
+            Set<OFPort>> portsWithLinks, Map<NodePortTuple, Set<Link>> links) {
+
+        Map<DatapathId, Set<Link>> linkDpidMap = new HashMap<DatapathId, Set<Link>>();
+        for (DatapathId s : switches) {
+            if (portsWithLinks.get(s) == null) continue;
+            for (OFPort p : portsWithLinks.get(s)) {
+                NodePortTuple np = new NodePortTuple(s, p);
+                if (links.get(np) == null) continue;
+                for (Link l : links.get(np)) {
+                    if (switches.contains(l.getSrc()) && switches.contains(l.getDst())) {
+                        if (linkDpidMap.containsKey(s)) {
+                            linkDpidMap.get(s).add(l);
+                        } else {
+                            linkDpidMap.put(s, new HashSet<Link>(Arrays.asList(l)));
+                        }
+                    }
+                }
+            }
+        }
+
+        return linkDpidMap;
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+import net.floodlightcontroller.routing.BroadcastTree;
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks the trees and distances of IndexedGraph against the map based
+ * dijkstra TopologyInstance used before, kept in DijkstraBenchmark.
+ */
+public class IndexedGraphTest {
+    private final TopologyComputeBenchmark.Topology t = TopologyComputeBenchmark.fatTree(4);
+    private final Set<DatapathId> switches = t.ports.keySet();
+    private final IndexedGraph graph = new IndexedGraph(switches, t.ports, t.links);
+
+    @Test
+    public void testWholeTopology() {
+        IndexedGraph.Search search = graph.newSearch();
+        int[] costs = graph.getEdgeCosts(null);
+        Map<DatapathId, Set<Link>> linkDpidMap = DijkstraBenchmark.buildLinkDpidMap(switches, t.ports, t.links);
+        for (DatapathId root : switches) {
+            search.run(root, costs);
+            BroadcastTree expected = DijkstraBenchmark.dijkstra(linkDpidMap, root, null, true);
+            assertSameTree(root, expected, search, switches);
+            assertEquals(expected.getLinks(), search.toBroadcastTree().getLinks());
+            assertEquals(expected.getCosts(), search.toBroadcastTree().getCosts());
+        }
+    }
+
+    @Test
+    public void testLinkCosts() {
+        Random random = new Random(7);
+        Map<Link, Integer> linkCost = new HashMap<Link, Integer>();
+        for (Set<Link> ls : t.links.values()) {
+            for (Link l : ls) {
+                if (!linkCost.containsKey(l)) {
+                    linkCost.put(l, 1 + random.nextInt(10));
+                }
+            }
+        }
+        IndexedGraph.Search search = graph.newSearch();
+        int[] costs = graph.getEdgeCosts(linkCost);
+        Map<DatapathId, Set<Link>> linkDpidMap = DijkstraBenchmark.buildLinkDpidMap(switches, t.ports, t.links);
+        for (DatapathId root : switches) {
+            search.run(root, costs);
+            BroadcastTree expected = DijkstraBenchmark.dijkstra(linkDpidMap, root, linkCost, true);
+            assertSameTree(root, expected, search, switches);
+        }
+    }
+
+    @Test
+    public void testExcludedSwitches() {
+        IndexedGraph.Search search = graph.newSearch();
+        int[] costs = graph.getEdgeCosts(null);
+        for (DatapathId root : switches) {
+            /* the switches next to the root, so the paths must go around them */
+            Set<DatapathId> excluded = new HashSet<DatapathId>();
+            for (OFPort p : t.ports.get(root)) {
+                for (Link l : t.links.get(new NodePortTuple(root, p))) {
+                    excluded.add(l.getSrc());
+                }
+            }
+            excluded.remove(root);
+            excluded.remove(excluded.iterator().next());
+            Set<DatapathId> remaining = new HashSet<DatapathId>(switches);
+            remaining.removeAll(excluded);
+
+            search.clearExclusions();
+            for (DatapathId x : excluded) {
+                search.excludeNode(x);
+            }
+            search.run(root, costs);
+            BroadcastTree expected = DijkstraBenchmark.dijkstra(
+                    DijkstraBenchmark.buildLinkDpidMap(remaining, t.ports, t.links), root, null, true);
+            assertSameTree(root, expected, search, remaining);
+            for (DatapathId x : excluded) {
+                assertEquals(TopologyInstance.MAX_PATH_WEIGHT, search.getDistance(x));
+                assertNull(search.getNextLink(x));
+            }
+        }
+    }
+
+    @Test
+    public void testExcludedPorts() {
+        IndexedGraph.Search search = graph.newSearch();
+        int[] costs = graph.getEdgeCosts(null);
+        for (DatapathId root : switches) {
+            /* all but one port of the root, and the ports at the other end */
+            Set<NodePortTuple> excluded = new HashSet<NodePortTuple>();
+            for (OFPort p : t.ports.get(root)) {
+                if (p.getPortNumber() == 1) continue;
+                for (Link l : t.links.get(new NodePortTuple(root, p))) {
+                    excluded.add(new NodePortTuple(l.getSrc(), l.getSrcPort()));
+                    excluded.add(new NodePortTuple(l.getDst(), l.getDstPort()));
+                }
+            }
+            Map<NodePortTuple, Set<Link>> remaining = new HashMap<NodePortTuple, Set<Link>>(t.links);
+            remaining.keySet().removeAll(excluded);
+
+            search.clearExclusions();
+            for (NodePortTuple npt : excluded) {
+                search.excludePort(npt);
+            }
+            search.run(root, costs);
+            BroadcastTree expected = DijkstraBenchmark.dijkstra(
+                    DijkstraBenchmark.buildLinkDpidMap(switches, t.ports, remaining), root, null, true);
+            assertSameTree(root, expected, search, switches);
+        }
+    }
+
+    @Test
+    public void testExclusionsCleared() {
+        IndexedGraph.Search search = graph.newSearch();
+        int[] costs = graph.getEdgeCosts(null);
+        DatapathId root = graph.getNode(0);
+        for (DatapathId sw : switches) {
+            if (!sw.equals(root)) {
+                search.excludeNode(sw);
+            }
+        }
+        search.run(root, costs);
+        assertEquals(TopologyInstance.MAX_PATH_WEIGHT, search.getDistance(graph.getNode(1)));
+
+        search.clearExclusions();
+        search.run(root, costs);
+        BroadcastTree expected = DijkstraBenchmark.dijkstra(
+                DijkstraBenchmark.buildLinkDpidMap(switches, t.ports, t.links), root, null, true);
+        assertSameTree(root, expected, search, switches);
+    }
+
+    private static void assertSameTree(DatapathId root, BroadcastTree expected,
+            IndexedGraph.Search search, Set<DatapathId> switches) {
+        for (DatapathId sw : switches) {
+            int cost = expected.getCost(sw) < 0 ? TopologyInstance.MAX_PATH_WEIGHT : expected.getCost(sw);
+            assertEquals("cost from " + sw + " to " + root, cost, search.getDistance(sw));
+            assertEquals("link from " + sw + " to " + root, expected.getTreeLink(sw), search.getNextLink(sw));
+        }
+    }
+}
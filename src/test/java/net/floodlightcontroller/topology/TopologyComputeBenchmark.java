@@ -0,0 +1,163 @@
+/**
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.U64;
+
+import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.linkdiscovery.Link;
+
+/**
+ * Compares the time a TopologyInstance takes to be built and compute the
+ * broadcast trees and all the paths of fat-tree topologies on the thread
+ * updating the topology against the fork-join pool, and checks that both
+ * give the same paths and broadcast ports.
+ *
+ * A fat-tree of parameter k has k pods of k/2 edge and k/2 aggregation
+ * switches, and (k/2)^2 core switches: 80 switches for k=8 and 320 for
+ * k=16, i.e. 6400 and 102400 pairs of switches to compute paths for.
+ *
+ * Not a unit test, run it with:
+ * java -cp ... net.floodlightcontroller.topology.TopologyComputeBenchmark [threads] [k...]
+ */
+public class TopologyComputeBenchmark {
+    private static final int ROUNDS = 1;
+
+    /** The maps TopologyManager builds from the links, to create instances from */
+    static class Topology {
+        final Map<DatapathId, Set<OFPort>> ports = new HashMap<DatapathId, Set<OFPort>>();
+        final Map<NodePortTuple, Set<Link>> links = new HashMap<NodePortTuple, Set<Link>>();
+
+        void connect(long a, long b) {
+            OFPort pa = addPort(DatapathId.of(a));
+            OFPort pb = addPort(DatapathId.of(b));
+            addLink(new Link(DatapathId.of(a), pa, DatapathId.of(b), pb, U64.of(1)));
+            addLink(new Link(DatapathId.of(b), pb, DatapathId.of(a), pa, U64.of(1)));
+        }
+
+        private OFPort addPort(DatapathId sw) {
+            if (!ports.containsKey(sw)) {
+                ports.put(sw, new HashSet<OFPort>());
+            }
+            OFPort p = OFPort.of(ports.get(sw).size() + 1);
+            ports.get(sw).add(p);
+            return p;
+        }
+
+        private void addLink(Link l) {
+            for (NodePortTuple npt : new NodePortTuple[] {
+                    new NodePortTuple(l.getSrc(), l.getSrcPort()),
+                    new NodePortTuple(l.getDst(), l.getDstPort()) }) {
+                if (!links.containsKey(npt)) {
+                    links.put(npt, new HashSet<Link>());
+                }
+                links.get(npt).add(l);
+            }
+        }
+
+        TopologyInstance newInstance() {
+            Set<NodePortTuple> none = Collections.emptySet();
+            Map<NodePortTuple, Set<Link>> noLinks = Collections.emptyMap();
+            return new TopologyInstance(ports, none, links, none, none, links, ports, noLinks);
+        }
+    }
+
+    static Topology fatTree(int k) {
+        Topology t = new Topology();
+        int half = k / 2;
+        int cores = half * half;
+        for (int pod = 0; pod < k; pod++) {
+            for (int a = 0; a < half; a++) {
+                long agg = cores + pod * k + a + 1;
+                for (int c = 0; c < half; c++) {
+                    t.connect(agg, a * half + c + 1);
+                }
+                for (int e = 0; e < half; e++) {
+                    t.connect(agg, cores + pod * k + half + e + 1);
+                }
+            }
+        }
+        return t;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int[] ks = new int[] { 8, 16 };
+        if (args.length > 1) {
+            ks = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                ks[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int k : ks) {
+            Topology topology = fatTree(k);
+            long sequential = Long.MAX_VALUE;
+            long parallel = Long.MAX_VALUE;
+            int parallelism = 0;
+            /* the first round warms up both modes */
+            for (int i = 0; i <= ROUNDS; i++) {
+                TopologyManager.setPathComputationThreads(1);
+                /* the graph and link costs are built with the instance */
+                long start = System.nanoTime();
+                TopologyInstance s = topology.newInstance();
+                s.compute();
+                long t = System.nanoTime() - start;
+
+                TopologyManager.setPathComputationThreads(threads);
+                parallelism = TopologyManager.getPathComputationPoolInternal() == null
+                        ? 1 : TopologyManager.getPathComputationPoolInternal().getParallelism();
+                start = System.nanoTime();
+                TopologyInstance p = topology.newInstance();
+                p.compute();
+                long u = System.nanoTime() - start;
+
+                if (i == 0) {
+                    check(s, p);
+                } else {
+                    sequential = Math.min(sequential, t);
+                    parallel = Math.min(parallel, u);
+                }
+            }
+            System.out.println(String.format(
+                    "fat-tree k=%d (%d switches): one thread: %.0f ms, fork-join on %d threads: %.0f ms, speedup: %.2fx",
+                    k, topology.ports.size(), sequential / 1e6, parallelism, parallel / 1e6,
+                    (double) sequential / parallel));
+        }
+        TopologyManager.setPathComputationThreads(1);
+    }
+
+    private static void check(TopologyInstance s, TopologyInstance p) {
+        if (!s.getAllBroadcastPorts().equals(p.getAllBroadcastPorts()))
+            throw new IllegalStateException("different broadcast ports");
+        List<DatapathId> sws = new ArrayList<DatapathId>(s.getSwitches());
+        for (DatapathId src : sws) {
+            for (DatapathId dst : sws) {
+                if (!s.getPathsFast(src, dst, Integer.MAX_VALUE).equals(p.getPathsFast(src, dst, Integer.MAX_VALUE)))
+                    throw new IllegalStateException("different paths from " + src + " to " + dst);
+            }
+        }
+    }
+}
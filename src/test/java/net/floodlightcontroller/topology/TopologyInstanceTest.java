@@ -23,13 +23,17 @@ import net.floodlightcontroller.core.test.MockFloodlightProvider;
 import net.floodlightcontroller.core.test.MockSwitchManager;
 import net.floodlightcontroller.core.test.MockThreadPoolService;
 import net.floodlightcontroller.core.types.NodePortTuple;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.MockDebugCounterService;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscovery;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
 import net.floodlightcontroller.routing.IRoutingService;
 import net.floodlightcontroller.routing.Path;
+import net.floodlightcontroller.routing.PathId;
 import net.floodlightcontroller.routing.RoutingManager;
+import net.floodlightcontroller.statistics.SwitchPortBandwidth;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import org.easymock.EasyMock;
 import org.junit.Before;
@@ -42,12 +46,18 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import static net.floodlightcontroller.routing.IRoutingService.PATH_METRIC.HOPCOUNT;
 import static net.floodlightcontroller.routing.IRoutingService.PATH_METRIC.LATENCY;
+import static net.floodlightcontroller.routing.IRoutingService.PATH_METRIC.UTILIZATION;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 public class TopologyInstanceTest {
@@ -932,5 +942,332 @@ public class TopologyInstanceTest {
         }
         verifyRoute(r10, r10.size());
     }
-    
-}
\ No newline at end of file
+
+    @Test
+    public void testLazyPathComputation() throws Exception {
+        /* the SECOND TOPOLOGY of testgetPathsFast() */
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {1, 2, 4, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 3, 5, 2, DIRECT_LINK},
+                {3, 4, 6, 2, DIRECT_LINK},
+                {4, 2, 2, 3, DIRECT_LINK},
+                {4, 3, 3, 2, DIRECT_LINK},
+                {4, 4, 5, 1, DIRECT_LINK},
+                {5, 3, 6, 1, DIRECT_LINK},
+        };
+        int [] lat = {3,2,4,2,1,1,2,3,2};
+        int k = topologyManager.getMaxPathsToCompute();
+
+        topologyManager.setPathMetric(HOPCOUNT);
+        configureTopology(linkArray, lat);
+        TopologyInstance eager = topologyManager.getCurrentInstance();
+        Map<PathId, List<Path>> expected = new HashMap<PathId, List<Path>>();
+        for (int i = 1; i <= 6; i++) {
+            for (int j = 1; j <= 6; j++) {
+                DatapathId src = DatapathId.of(i);
+                DatapathId dst = DatapathId.of(j);
+                expected.put(new PathId(src, dst), new ArrayList<Path>(eager.getPathsFast(src, dst, k)));
+            }
+        }
+
+        fmc.addConfigParam(topologyManager, "lazyPathComputation", "true");
+        fmc.addConfigParam(topologyManager, "pathCacheSize", "4");
+        topologyManager.init(fmc);
+        try {
+            DebugCounterServiceImpl counters = new DebugCounterServiceImpl();
+            counters.registerModule("test");
+            IDebugCounter hit = counters.registerCounter("test", "hit", "");
+            IDebugCounter miss = counters.registerCounter("test", "miss", "");
+            TopologyManager.ctrPathCacheHit = hit;
+            TopologyManager.ctrPathCacheMiss = miss;
+
+            topologyManager.setPathMetric(HOPCOUNT);
+            configureTopology(linkArray, lat);
+            TopologyInstance lazy = topologyManager.getCurrentInstance();
+            assertEquals(0, miss.getCounterValue());
+            assertFalse(lazy.getAllBroadcastPorts().isEmpty());
+
+            /* same paths as computing all of them upfront */
+            for (Map.Entry<PathId, List<Path>> e : expected.entrySet()) {
+                assertEquals(e.getValue(), lazy.getPathsFast(e.getKey().getSrc(), e.getKey().getDst(), k));
+            }
+            assertEquals(36, miss.getCounterValue());
+            assertEquals(0, hit.getCounterValue());
+
+            /* the 4 most recently used are cached, older ones are computed again */
+            DatapathId one = DatapathId.of(1);
+            DatapathId six = DatapathId.of(6);
+            lazy.getPath(one, six);
+            long hits = hit.getCounterValue();
+            assertEquals(expected.get(new PathId(one, six)).get(0), lazy.getPath(one, six));
+            assertEquals(hits + 1, hit.getCounterValue());
+            for (int i = 2; i <= 5; i++) {
+                lazy.getPath(DatapathId.of(i), six);
+            }
+            long misses = miss.getCounterValue();
+            assertEquals(expected.get(new PathId(one, six)).get(0), lazy.getPath(one, six));
+            assertEquals(misses + 1, miss.getCounterValue());
+
+            /* a new instance starts with an empty cache */
+            topologyManager.createNewInstance();
+            topologyManager.getCurrentInstance().getPath(one, six);
+            assertEquals(misses + 2, miss.getCounterValue());
+        } finally {
+            fmc.addConfigParam(topologyManager, "lazyPathComputation", "false");
+            topologyManager.init(fmc);
+        }
+    }
+
+    @Test
+    public void testParallelComputation() throws Exception {
+        /* the SECOND TOPOLOGY of testgetPathsFast(), with the links both ways */
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {1, 2, 4, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 3, 5, 2, DIRECT_LINK},
+                {3, 4, 6, 2, DIRECT_LINK},
+                {4, 2, 2, 3, DIRECT_LINK},
+                {4, 3, 3, 2, DIRECT_LINK},
+                {4, 4, 5, 1, DIRECT_LINK},
+                {5, 3, 6, 1, DIRECT_LINK},
+                {2, 1, 1, 1, DIRECT_LINK},
+                {4, 1, 1, 2, DIRECT_LINK},
+                {3, 1, 2, 2, DIRECT_LINK},
+                {5, 2, 3, 3, DIRECT_LINK},
+                {6, 2, 3, 4, DIRECT_LINK},
+                {2, 3, 4, 2, DIRECT_LINK},
+                {3, 2, 4, 3, DIRECT_LINK},
+                {5, 1, 4, 4, DIRECT_LINK},
+                {6, 1, 5, 3, DIRECT_LINK},
+        };
+        int [] lat = {3,2,4,2,1,1,2,3,2,3,2,4,2,1,1,2,3,2};
+        int k = 5;
+
+        for (String lazy : new String[] { "false", "true" }) {
+            fmc.addConfigParam(topologyManager, "lazyPathComputation", lazy);
+            fmc.addConfigParam(topologyManager, "pathComputationThreads", "1");
+            topologyManager.init(fmc);
+            topologyManager.setPathMetric(LATENCY);
+            configureTopology(linkArray, lat);
+            TopologyInstance sequential = topologyManager.getCurrentInstance();
+
+            fmc.addConfigParam(topologyManager, "pathComputationThreads", "4");
+            topologyManager.init(fmc);
+            try {
+                assertNotNull(TopologyManager.getPathComputationPoolInternal());
+                topologyManager.setPathMetric(LATENCY);
+                configureTopology(linkArray, lat);
+                TopologyInstance parallel = topologyManager.getCurrentInstance();
+
+                assertEquals(sequential.getAllBroadcastPorts(), parallel.getAllBroadcastPorts());
+                for (int i = 1; i <= 6; i++) {
+                    for (int j = 1; j <= 6; j++) {
+                        DatapathId src = DatapathId.of(i);
+                        DatapathId dst = DatapathId.of(j);
+                        assertEquals(sequential.getPathsFast(src, dst, k), parallel.getPathsFast(src, dst, k));
+                        assertEquals(sequential.pathExists(src, dst), parallel.pathExists(src, dst));
+                    }
+                }
+            } finally {
+                fmc.addConfigParam(topologyManager, "lazyPathComputation", "false");
+                fmc.addConfigParam(topologyManager, "pathComputationThreads", "1");
+                topologyManager.init(fmc);
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdates() throws Exception {
+        /* the topology of testParallelComputation() */
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {1, 2, 4, 1, DIRECT_LINK},
+                {2, 2, 3, 1, DIRECT_LINK},
+                {3, 3, 5, 2, DIRECT_LINK},
+                {3, 4, 6, 2, DIRECT_LINK},
+                {4, 2, 2, 3, DIRECT_LINK},
+                {4, 3, 3, 2, DIRECT_LINK},
+                {4, 4, 5, 1, DIRECT_LINK},
+                {5, 3, 6, 1, DIRECT_LINK},
+                {2, 1, 1, 1, DIRECT_LINK},
+                {4, 1, 1, 2, DIRECT_LINK},
+                {3, 1, 2, 2, DIRECT_LINK},
+                {5, 2, 3, 3, DIRECT_LINK},
+                {6, 2, 3, 4, DIRECT_LINK},
+                {2, 3, 4, 2, DIRECT_LINK},
+                {3, 2, 4, 3, DIRECT_LINK},
+                {5, 1, 4, 4, DIRECT_LINK},
+                {6, 1, 5, 3, DIRECT_LINK},
+        };
+        int [] lat = {3,2,4,2,1,1,2,3,2,3,2,4,2,1,1,2,3,2};
+
+        for (String lazy : new String[] { "false", "true" }) {
+            fmc.addConfigParam(topologyManager, "lazyPathComputation", lazy);
+            fmc.addConfigParam(topologyManager, "incrementalUpdates", "true");
+            topologyManager.init(fmc);
+            try {
+                DebugCounterServiceImpl counters = new DebugCounterServiceImpl();
+                counters.registerModule("test");
+                IDebugCounter incremental = counters.registerCounter("test", "incremental", "");
+                IDebugCounter reused = counters.registerCounter("test", "reused", "");
+                TopologyManager.ctrIncrementalUpdate = incremental;
+                TopologyManager.ctrPathsReused = reused;
+
+                topologyManager.setPathMetric(LATENCY);
+                configureTopology(linkArray, lat);
+                assertEquals(0, incremental.getCounterValue());
+
+                /* a latency change on one link only affects the paths through it */
+                TopologyInstance previous = topologyManager.getCurrentInstance();
+                getAllPaths(previous);
+                topologyManager.addOrUpdateLink(DatapathId.of(3), OFPort.of(4), DatapathId.of(6), OFPort.of(2),
+                        U64.of(3), ILinkDiscovery.LinkType.DIRECT_LINK);
+                assertSameAsFullRebuild();
+                assertEquals(1, incremental.getCounterValue());
+                assertTrue(reused.getCounterValue() > 0);
+                assertTrue(reused.getCounterValue() < 36);
+
+                /* the paths of any mix of latency changes, link removals and additions are those of a full rebuild */
+                Random random = new Random(42);
+                boolean[] removed = new boolean[linkArray.length];
+                for (int n = 0; n < 100; n++) {
+                    for (int m = random.nextInt(3); m >= 0; m--) {
+                        int i = random.nextInt(linkArray.length);
+                        int [] r = linkArray[i];
+                        removed[i] = !removed[i] && random.nextInt(4) == 0;
+                        if (removed[i]) {
+                            topologyManager.removeLink(DatapathId.of(r[0]), OFPort.of(r[1]),
+                                    DatapathId.of(r[2]), OFPort.of(r[3]));
+                        } else {
+                            topologyManager.addOrUpdateLink(DatapathId.of(r[0]), OFPort.of(r[1]),
+                                    DatapathId.of(r[2]), OFPort.of(r[3]), U64.of(1 + random.nextInt(5)),
+                                    ILinkDiscovery.LinkType.DIRECT_LINK);
+                        }
+                    }
+                    getAllPaths(topologyManager.getCurrentInstance());
+                    assertSameAsFullRebuild();
+                }
+                assertTrue(incremental.getCounterValue() > 1);
+            } finally {
+                fmc.addConfigParam(topologyManager, "lazyPathComputation", "false");
+                fmc.addConfigParam(topologyManager, "incrementalUpdates", "false");
+                topologyManager.init(fmc);
+            }
+        }
+    }
+
+    @Test
+    public void testCongestionAwareRouting() throws Exception {
+        /* two paths of two hops from 1 to 4, through 2 and through 3 */
+        int [][] linkArray = {
+                {1, 1, 2, 1, DIRECT_LINK},
+                {2, 1, 1, 1, DIRECT_LINK},
+                {1, 2, 3, 1, DIRECT_LINK},
+                {3, 1, 1, 2, DIRECT_LINK},
+                {2, 2, 4, 1, DIRECT_LINK},
+                {4, 1, 2, 2, DIRECT_LINK},
+                {3, 2, 4, 2, DIRECT_LINK},
+                {4, 2, 3, 2, DIRECT_LINK},
+        };
+        DatapathId one = DatapathId.of(1);
+        DatapathId four = DatapathId.of(4);
+        OFPort host = OFPort.of(10);
+
+        fmc.addConfigParam(topologyManager, "incrementalUpdates", "true");
+        topologyManager.init(fmc);
+        try {
+            /* without samples, both paths cost the same */
+            /* the utilization is sampled on this metric even though the flag is off */
+            assertFalse(TopologyManager.isSamplingUtilization());
+            topologyManager.setPathMetric(UTILIZATION);
+            assertTrue(TopologyManager.isSamplingUtilization());
+            createTopologyFromLinks(linkArray);
+            List<Path> paths = routingManager.getPathsFast(one, four);
+            assertEquals(2, paths.size());
+            assertEquals(paths.get(0).getPath().size(), paths.get(1).getPath().size());
+            NodePortTuple first = paths.get(0).getPath().get(0);
+            NodePortTuple second = paths.get(1).getPath().get(0);
+
+            /* a busy port makes its links costlier, and the paths are recomputed */
+            TopologyInstance before = topologyManager.getCurrentInstance();
+            assertTrue(topologyManager.updatePortUtilization(sample(first, 80, second, 0)));
+            assertTrue(before != topologyManager.getCurrentInstance());
+            assertEquals(second, routingManager.getPath(one, four).getPath().get(0));
+
+            /* samples within the hysteresis change nothing */
+            before = topologyManager.getCurrentInstance();
+            assertFalse(topologyManager.updatePortUtilization(sample(first, 75, second, 5)));
+            assertTrue(before == topologyManager.getCurrentInstance());
+            assertEquals(second, routingManager.getPath(one, four).getPath().get(0));
+
+            /* they do once they moved past it */
+            assertTrue(topologyManager.updatePortUtilization(sample(first, 0, second, 90)));
+            assertEquals(first, routingManager.getPath(one, four).getPath().get(0));
+
+            /* on another metric, samples do not recompute paths, but flows can take the least loaded */
+            topologyManager.setPathMetric(HOPCOUNT);
+            assertFalse(TopologyManager.isSamplingUtilization());
+            topologyManager.forceRecompute();
+            NodePortTuple best = routingManager.getPath(one, four).getPath().get(0);
+            NodePortTuple other = best.equals(first) ? second : first;
+            before = topologyManager.getCurrentInstance();
+            assertFalse(topologyManager.updatePortUtilization(sample(best, 60, other, 20)));
+            assertTrue(before == topologyManager.getCurrentInstance());
+            assertEquals(best, routingManager.getPath(one, host, four, host).getPath().get(1));
+            Path leastLoaded = routingManager.getLeastLoadedPath(one, host, four, host);
+            assertEquals(new NodePortTuple(one, host), leastLoaded.getPath().get(0));
+            assertEquals(other, leastLoaded.getPath().get(1));
+            assertEquals(new NodePortTuple(four, host), leastLoaded.getPath().get(leastLoaded.getPath().size() - 1));
+        } finally {
+            fmc.addConfigParam(topologyManager, "incrementalUpdates", "false");
+            topologyManager.init(fmc);
+        }
+    }
+
+    /* the bandwidth of two ports of 1 Gbps transmitting at the given utilization, in percent */
+    private Map<NodePortTuple, SwitchPortBandwidth> sample(NodePortTuple a, int ua, NodePortTuple b, int ub) {
+        Map<NodePortTuple, SwitchPortBandwidth> bandwidth = new HashMap<NodePortTuple, SwitchPortBandwidth>();
+        bandwidth.put(a, SwitchPortBandwidth.of(a.getNodeId(), a.getPortId(), U64.of(1000000),
+                U64.ZERO, U64.of(ua * 10000000L), U64.ZERO, U64.ZERO));
+        bandwidth.put(b, SwitchPortBandwidth.of(b.getNodeId(), b.getPortId(), U64.of(1000000),
+                U64.ZERO, U64.of(ub * 10000000L), U64.ZERO, U64.ZERO));
+        return bandwidth;
+    }
+
+    /* computing paths lazily, only the ones asked for are there to reuse */
+    private void getAllPaths(TopologyInstance ti) {
+        for (DatapathId src : ti.getSwitches()) {
+            for (DatapathId dst : ti.getSwitches()) {
+                ti.getPathsFast(src, dst, Integer.MAX_VALUE);
+            }
+        }
+    }
+
+    /*
+     * Computes a new instance from the current one, checks it is the same as
+     * computing every path, and makes it the current one again.
+     */
+    private void assertSameAsFullRebuild() {
+        topologyManager.createNewInstance();
+        TopologyInstance updated = topologyManager.getCurrentInstance();
+        topologyManager.forceRecompute();
+        TopologyInstance rebuilt = topologyManager.getCurrentInstance();
+        topologyManager.currentInstance = updated;
+
+        assertEquals(rebuilt.getAllBroadcastPorts(), updated.getAllBroadcastPorts());
+        for (DatapathId src : rebuilt.getSwitches()) {
+            for (DatapathId dst : rebuilt.getSwitches()) {
+                List<Path> expected = rebuilt.getPathsFast(src, dst, Integer.MAX_VALUE);
+                List<Path> actual = updated.getPathsFast(src, dst, Integer.MAX_VALUE);
+                assertEquals(expected, actual);
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(expected.get(i).getLatency(), actual.get(i).getLatency());
+                }
+                assertEquals(rebuilt.pathExists(src, dst), updated.pathExists(src, dst));
+            }
+        }
+    }
+}
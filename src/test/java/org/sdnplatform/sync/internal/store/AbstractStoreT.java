@@ -32,6 +32,7 @@ import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.internal.TUtils;
 import org.sdnplatform.sync.internal.store.IStore;
 import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.util.Pair;
 import org.sdnplatform.sync.internal.version.VectorClock;
 
 
@@ -171,6 +172,29 @@ public abstract class AbstractStoreT<K, V> {
         assertTrue("Values not equal!", valuesEqual(versioned.getValue(), found.get(0).getValue()));
     }
 
+    @Test
+    public void testPutAll() throws Exception {
+        List<K> keys = getKeys(3);
+        List<V> values = getValues(3);
+        IStore<K, V> store = getStore();
+        List<Entry<K, Versioned<V>>> entries =
+                new ArrayList<Entry<K, Versioned<V>>>();
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals("Store not empty at start!", 0,
+                         store.get(keys.get(i)).size());
+            entries.add(new Pair<K, Versioned<V>>(keys.get(i),
+                    new Versioned<V>(values.get(i), getClock(1, 1))));
+        }
+        store.putAll(entries);
+        for (int i = 0; i < keys.size(); i++) {
+            List<Versioned<V>> found = store.get(keys.get(i));
+            assertEquals("Should only be one version stored.",
+                         1, found.size());
+            assertTrue("Values not equal!",
+                       valuesEqual(values.get(i), found.get(0).getValue()));
+        }
+    }
+
     @Test
     public void testVersionedPut() throws Exception {
         K key = getKey();